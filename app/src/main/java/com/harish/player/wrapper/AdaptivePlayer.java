@@ -0,0 +1,764 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Plays one title served as several progressive-download variants of different bitrates, switching
+ * between them mid-playback without a visible reset.
+ * <p>
+ * The current variant plays on one {@link Player} while a switch prepares the target variant on a
+ * shadow player. Once prepared, the shadow player seeks to the position the current one has reached
+ * meanwhile. If the current one has moved on by more than {@code MAX_HANDOFF_DRIFT_MS} by the time
+ * the seek completes, it is paused and the shadow player seeks once more to where it stopped, so that
+ * a switch never rewinds by the seek latency. The shadow player then takes over: it starts if playback
+ * was running, and the previous player is reset. Resetting instead of releasing it is intentional, it
+ * frees the decoders and the connection as well, but keeps the instance for the next switch.
+ * Switches are decided by a {@link SwitchPolicy} from the {@link BufferHealthEstimator} of the current
+ * player, on every buffering update and stall, or requested through {@link #switchTo(int)}.
+ * <p>
+ * Instrumented are the switches up and down, the switches which failed, the time stalled, an
+ * estimate of the stall time avoided by switching down, and an estimate of the bytes downloaded per
+ * variant from their buffering updates.
+ * <p>
+ * The players are driven by this class and must not be controlled directly.
+ */
+public final class AdaptivePlayer {
+    private static final String TAG = AdaptivePlayer.class.getSimpleName();
+
+    //No variant.
+    public static final int NONE = -1;
+
+    //Media played ahead over which the stall time avoided by switching down is estimated.
+    private static final long STALL_WINDOW_MS = 60_000;
+
+    //Distance the current player may have moved on from the position the shadow one seeked to.
+    static final long MAX_HANDOFF_DRIFT_MS = 200;
+
+    private final Slot[] mSlots = new Slot[2];
+
+    //Index of the slot of the current variant within mSlots, the other one is the shadow.
+    private int mCurrent;
+
+    private final List<Variant> mVariants = new ArrayList<>();
+    private final SwitchPolicy mPolicy;
+    private final PlaybackMetrics.Clock mClock;
+    private final BufferHealthEstimator mEstimator;
+    private final PlayerEventBus.PlayerEventListener mPolicyListener;
+    private PlayerEventBus.Subscription mPolicySubscription;
+
+    private boolean mPlayWhenReady;
+
+    //Whether the current player is paused while the shadow one seeks to where it stopped.
+    private boolean mHeld;
+    private boolean mAutoSwitch = true;
+    private long mMinSwitchIntervalMs = 5_000;
+    private long mLastSwitchAtMs = Long.MIN_VALUE / 2;
+
+    private volatile VariantListener mListener;
+
+    //Counters.
+    private long mUpSwitches;
+    private long mDownSwitches;
+    private long mFailedSwitches;
+    private long mStallStartMs = NONE;
+    private long mStallMs;
+    private long mStallAvoidedMs;
+    private long[] mBytes = new long[0];
+
+    /**
+     * Constructor, backed by the native player and switching by {@link DefaultSwitchPolicy}.
+     */
+    public AdaptivePlayer() {
+        this(null, new DefaultSwitchPolicy(), PlaybackMetrics.Clock.SYSTEM);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param engineFactory creates the engines of both players, null for the native player.
+     * @param policy        decides when to switch and to which variant.
+     * @param clock         the monotonic clock stalls and switches are timed with.
+     */
+    public AdaptivePlayer(@Nullable PlaybackEngine.Factory engineFactory, @NonNull SwitchPolicy policy,
+                          @NonNull PlaybackMetrics.Clock clock) {
+        for (int i = 0; i < mSlots.length; i++) {
+            Player player = engineFactory != null ? new Player(engineFactory) : new Player();
+            mSlots[i] = new Slot(player);
+            mSlots[i].subscription = player.getEventBus().subscribe(mSlots[i]);
+        }
+        this.mPolicy = policy;
+        this.mClock = clock;
+        this.mEstimator = new BufferHealthEstimator(clock, BufferHealthEstimator.DEFAULT_FAST_HALF_LIFE_MS,
+                BufferHealthEstimator.DEFAULT_SLOW_HALF_LIFE_MS);
+        //Subscribed after the estimator, so that the policy sees the update it is called for.
+        mPolicyListener = new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event == PlayerEventBus.EVENT_BUFFERING_UPDATE
+                        || (event == PlayerEventBus.EVENT_INFO && arg1 == MediaPlayer.MEDIA_INFO_BUFFERING_START)) {
+                    evaluate();
+                }
+            }
+        };
+    }
+
+    /**
+     * Register a callback to be invoked on variant changes.
+     *
+     * @param listener the callback that will be run
+     */
+    public void setVariantListener(@Nullable VariantListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Replaces the variants, stopping the playback. Variants are ordered by ascending bitrate, and
+     * referred to by their index within that order.
+     *
+     * @param variants the variants of the title.
+     */
+    public synchronized void setVariants(@NonNull List<Variant> variants) {
+        unload(current());
+        unload(shadow());
+        mVariants.clear();
+        mVariants.addAll(variants);
+        Collections.sort(mVariants, new Comparator<Variant>() {
+            @Override
+            public int compare(Variant first, Variant second) {
+                return first.bitrate < second.bitrate ? -1 : (first.bitrate == second.bitrate ? 0 : 1);
+            }
+        });
+        mBytes = new long[mVariants.size()];
+        mPlayWhenReady = false;
+        mEstimator.clear();
+    }
+
+    /**
+     * @return the variants, by ascending bitrate.
+     */
+    public synchronized List<Variant> getVariants() {
+        return new ArrayList<>(mVariants);
+    }
+
+    /**
+     * Starts playing the given variant from the beginning, as soon as it is prepared.
+     *
+     * @param variant the index of the variant.
+     */
+    public synchronized void play(int variant) {
+        checkVariant(variant);
+        unload(shadow());
+        Slot current = current();
+        unload(current);
+        mPlayWhenReady = true;
+        mEstimator.clear();
+        follow(current);
+        load(current, variant);
+    }
+
+    /**
+     * Pauses playback.
+     */
+    public synchronized void pause() {
+        mPlayWhenReady = false;
+        Player player = current().player;
+        if (player.getCurrentState() == Player.STATE_STARTED) {
+            player.pause();
+        }
+    }
+
+    /**
+     * Resumes playback, or starts it once prepared.
+     */
+    public synchronized void resume() {
+        mPlayWhenReady = true;
+        if (!mHeld) {
+            startIfReady(current());
+        }
+    }
+
+    /**
+     * Seeks the current variant, cancelling a switch in progress.
+     *
+     * @param msec the offset in milliseconds from the start to seek to.
+     */
+    public synchronized void seekTo(long msec) {
+        cancelSwitch();
+        Slot current = current();
+        current.player.seekTo(msec);
+        current.percent = NONE;
+    }
+
+    /**
+     * Switches to the given variant at the current position, unless it is current or being switched to.
+     *
+     * @param variant the index of the variant.
+     */
+    public synchronized void switchTo(int variant) {
+        checkVariant(variant);
+        Slot current = current();
+        Slot shadow = shadow();
+        if (shadow.variant == variant) {
+            return;
+        }
+        cancelSwitch();
+        if (current.variant == variant || !isPlayable(current.player)) {
+            return;
+        }
+        mLastSwitchAtMs = nowMs();
+        load(shadow, variant);
+    }
+
+    /**
+     * Enables or disables the switches decided by the policy, {@link #switchTo(int)} still works.
+     */
+    public synchronized void setAutoSwitch(boolean autoSwitch) {
+        mAutoSwitch = autoSwitch;
+    }
+
+    /**
+     * Sets the minimum time between two switches decided by the policy, 5 seconds by default.
+     *
+     * @param intervalMs the interval in milliseconds.
+     */
+    public synchronized void setMinSwitchInterval(long intervalMs) {
+        mMinSwitchIntervalMs = intervalMs;
+    }
+
+    /**
+     * @return the index of the current variant, or {@link #NONE}.
+     */
+    public synchronized int getCurrentVariant() {
+        return current().variant;
+    }
+
+    /**
+     * @return the index of the variant being switched to, or {@link #NONE}.
+     */
+    public synchronized int getPendingVariant() {
+        return shadow().variant;
+    }
+
+    /**
+     * @return the player of the current variant, to be observed but not controlled.
+     */
+    public synchronized Player getCurrentPlayer() {
+        return current().player;
+    }
+
+    /**
+     * @return the estimator following the current player.
+     */
+    public BufferHealthEstimator getEstimator() {
+        return mEstimator;
+    }
+
+    /**
+     * @return number of switches to a higher bitrate.
+     */
+    public synchronized long getUpSwitchCount() {
+        return mUpSwitches;
+    }
+
+    /**
+     * @return number of switches to a lower bitrate.
+     */
+    public synchronized long getDownSwitchCount() {
+        return mDownSwitches;
+    }
+
+    /**
+     * @return number of switches abandoned because the target variant failed to prepare or seek.
+     */
+    public synchronized long getFailedSwitchCount() {
+        return mFailedSwitches;
+    }
+
+    /**
+     * @return time stalled on an empty buffer, in milliseconds, including a stall in progress.
+     */
+    public synchronized long getStallTimeMs() {
+        return mStallMs + (mStallStartMs != NONE ? nowMs() - mStallStartMs : 0);
+    }
+
+    /**
+     * Returns the estimated stall time avoided by switching down: for every switch down, the time the
+     * previous variant would have stalled playing the next minute of media at the rate it was filling.
+     *
+     * @return the estimate in milliseconds.
+     */
+    public synchronized long getStallTimeAvoidedMs() {
+        return mStallAvoidedMs;
+    }
+
+    /**
+     * Returns the bytes downloaded for a variant, estimated from its buffering updates and byte size.
+     *
+     * @param variant the index of the variant.
+     * @return the estimate in bytes, 0 if the size of the variant cannot be estimated.
+     */
+    public synchronized long getBytesDownloaded(int variant) {
+        checkVariant(variant);
+        return mBytes[variant];
+    }
+
+    /**
+     * Releases both players, this cannot be used afterwards.
+     */
+    public synchronized void release() {
+        mPlayWhenReady = false;
+        mEstimator.detach();
+        unfollow();
+        for (Slot slot : mSlots) {
+            slot.player.getEventBus().unsubscribe(slot.subscription);
+            slot.player.release();
+            slot.variant = NONE;
+        }
+    }
+
+    private Slot current() {
+        return mSlots[mCurrent];
+    }
+
+    private Slot shadow() {
+        return mSlots[1 - mCurrent];
+    }
+
+    private void checkVariant(int variant) {
+        if (variant < 0 || variant >= mVariants.size()) {
+            throw new IndexOutOfBoundsException("Variant " + variant + " of " + mVariants.size());
+        }
+    }
+
+    private static boolean isPlayable(Player player) {
+        int state = player.getCurrentState();
+        return state == Player.STATE_PREPARED || state == Player.STATE_STARTED || state == Player.STATE_PAUSED;
+    }
+
+    //Points the estimator and the policy at the player of the given slot.
+    private void follow(Slot slot) {
+        unfollow();
+        mEstimator.attach(slot.player);
+        if (slot.variant != NONE) {
+            mEstimator.setContentLength(mVariants.get(slot.variant).getContentLength(durationOf(slot.player)));
+        }
+        mPolicySubscription = slot.player.getEventBus().subscribe(mPolicyListener);
+    }
+
+    private void unfollow() {
+        if (mPolicySubscription != null) {
+            for (Slot slot : mSlots) {
+                slot.player.getEventBus().unsubscribe(mPolicySubscription);
+            }
+            mPolicySubscription = null;
+        }
+    }
+
+    private void load(Slot slot, int variant) {
+        try {
+            slot.variant = variant;
+            slot.seeking = false;
+            slot.percent = NONE;
+            slot.player.setDataSource(mVariants.get(variant).url);
+            slot.player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            onLoadFailed(slot, e);
+        }
+    }
+
+    private void unload(Slot slot) {
+        if (slot != current()) {
+            mHeld = false;
+        }
+        slot.variant = NONE;
+        slot.seeking = false;
+        slot.resought = false;
+        int state = slot.player.getCurrentState();
+        if (state != Player.STATE_IDLE && state != Player.STATE_ENDED) {
+            slot.player.reset();
+        }
+    }
+
+    private void cancelSwitch() {
+        Slot shadow = shadow();
+        if (shadow.variant != NONE) {
+            resumeHeld();
+            unload(shadow);
+        }
+    }
+
+    //Resumes the current player if it was paused for the shadow one to catch up.
+    private void resumeHeld() {
+        if (mHeld) {
+            mHeld = false;
+            startIfReady(current());
+        }
+    }
+
+    private void startIfReady(Slot slot) {
+        int state = slot.player.getCurrentState();
+        if (mPlayWhenReady && (state == Player.STATE_PREPARED || state == Player.STATE_PAUSED)) {
+            slot.player.start();
+        }
+    }
+
+    private synchronized void evaluate() {
+        Slot current = current();
+        if (!mAutoSwitch || current.variant == NONE || shadow().variant != NONE
+                || nowMs() - mLastSwitchAtMs < mMinSwitchIntervalMs || !isPlayable(current.player)) {
+            return;
+        }
+        int target = mPolicy.select(Collections.unmodifiableList(mVariants), current.variant, mEstimator);
+        if (target != current.variant && target >= 0 && target < mVariants.size()) {
+            switchTo(target);
+        }
+    }
+
+    private synchronized void onSlotPrepared(Slot slot) {
+        if (slot == current()) {
+            mEstimator.setContentLength(mVariants.get(slot.variant).getContentLength(durationOf(slot.player)));
+            startIfReady(slot);
+            return;
+        }
+        if (slot.variant == NONE) {
+            return;
+        }
+        //Catch up with the current player, which kept playing meanwhile.
+        Player current = current().player;
+        long position = isPlayable(current) ? current.getCurrentPosition() : 0;
+        if (position <= 0) {
+            handOff(slot);
+            return;
+        }
+        seekShadow(slot, position);
+    }
+
+    private void seekShadow(Slot slot, long position) {
+        slot.seeking = true;
+        slot.seekPositionMs = position;
+        try {
+            slot.player.seekTo(position, Player.SEEK_MODE_PRECISE);
+        } catch (IllegalStateException e) {
+            onLoadFailed(slot, e);
+        }
+    }
+
+    private synchronized void onSlotSeekCompleted(Slot slot) {
+        if (slot != shadow() || !slot.seeking) {
+            return;
+        }
+        slot.seeking = false;
+        //The current player kept playing during the seek, taking over now would rewind by its latency.
+        Player current = current().player;
+        if (!slot.resought && isPlayable(current)
+                && Math.abs(current.getCurrentPosition() - slot.seekPositionMs) > MAX_HANDOFF_DRIFT_MS) {
+            slot.resought = true;
+            if (current.getCurrentState() == Player.STATE_STARTED) {
+                current.pause();
+                mHeld = true;
+            }
+            seekShadow(slot, current.getCurrentPosition());
+            return;
+        }
+        //Buffered from the new position on.
+        slot.percent = NONE;
+        handOff(slot);
+    }
+
+    //Makes the shadow player current, once it is prepared at the current position.
+    private void handOff(Slot shadow) {
+        Slot previous = current();
+        long now = nowMs();
+        int from = previous.variant;
+        int to = shadow.variant;
+        if (to > from) {
+            mUpSwitches++;
+        } else {
+            mDownSwitches++;
+            mStallAvoidedMs += estimateStallMs(previous.player);
+        }
+        if (mPlayWhenReady) {
+            shadow.player.start();
+        }
+        if (mStallStartMs != NONE) {
+            //The stall of the previous variant ends with it.
+            mStallMs += now - mStallStartMs;
+            mStallStartMs = NONE;
+        }
+        mHeld = false;
+        mCurrent = 1 - mCurrent;
+        mLastSwitchAtMs = now;
+        unload(previous);
+        follow(shadow);
+        double factor = (double) mVariants.get(from).bitrate / mVariants.get(to).bitrate;
+        mEstimator.scaleRate(factor);
+        VariantListener listener = mListener;
+        if (listener != null) {
+            listener.onVariantChanged(from, to);
+        }
+    }
+
+    //Stall time the given player would run into over the stall window, at the rate it fills.
+    private long estimateStallMs(Player player) {
+        if (!isPlayable(player)) {
+            return 0;
+        }
+        double rate = mEstimator.getFillRate();
+        long duration = durationOf(player);
+        long remaining = duration > 0 ? duration - player.getCurrentPosition() : STALL_WINDOW_MS;
+        long window = Math.min(remaining, STALL_WINDOW_MS);
+        long missing = window - mEstimator.getBufferedAheadMs();
+        if (missing <= 0 || rate >= 1) {
+            return 0;
+        }
+        if (rate <= 0) {
+            return window;
+        }
+        return Math.min(window, Math.max(0, (long) (missing / rate) - window));
+    }
+
+    private synchronized void onSlotBufferingUpdate(Slot slot, int percent) {
+        if (slot.variant == NONE) {
+            return;
+        }
+        if (slot.percent != NONE && percent > slot.percent) {
+            long size = mVariants.get(slot.variant).getContentLength(durationOf(slot.player));
+            if (size > 0) {
+                mBytes[slot.variant] += (percent - slot.percent) * size / 100;
+            }
+        }
+        slot.percent = percent;
+    }
+
+    private synchronized void onSlotInfo(Slot slot, int what) {
+        if (slot != current()) {
+            return;
+        }
+        if (what == MediaPlayer.MEDIA_INFO_BUFFERING_START && mStallStartMs == NONE) {
+            mStallStartMs = nowMs();
+        } else if (what == MediaPlayer.MEDIA_INFO_BUFFERING_END && mStallStartMs != NONE) {
+            mStallMs += nowMs() - mStallStartMs;
+            mStallStartMs = NONE;
+        }
+    }
+
+    private synchronized void onSlotError(Slot slot, int what, int extra) {
+        if (slot == shadow() && slot.variant != NONE) {
+            onLoadFailed(slot, new IOException("Error " + what + "/" + extra));
+        }
+    }
+
+    private synchronized void onSlotCompleted(Slot slot) {
+        if (slot == current()) {
+            //Nothing left to switch for.
+            cancelSwitch();
+        }
+    }
+
+    private void onLoadFailed(Slot slot, Exception error) {
+        int variant = slot.variant;
+        if (slot == shadow()) {
+            resumeHeld();
+            mFailedSwitches++;
+        }
+        unload(slot);
+        VariantListener listener = mListener;
+        if (listener != null) {
+            listener.onVariantFailed(variant, error);
+        }
+    }
+
+    private static long durationOf(Player player) {
+        return isPlayable(player) ? player.getDuration() : NONE;
+    }
+
+    private long nowMs() {
+        return mClock.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * One variant of the title.
+     */
+    public static final class Variant {
+        public final String url;
+        public final long bitrate;
+        public final long contentLength;
+
+        /**
+         * Constructor.
+         *
+         * @param url     the http URL of the variant, see {@link Player#setDataSource(String)}.
+         * @param bitrate the average bitrate of the variant, in bits per second.
+         */
+        public Variant(@NonNull String url, long bitrate) {
+            this(url, bitrate, NONE);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param url           the http URL of the variant, see {@link Player#setDataSource(String)}.
+         * @param bitrate       the average bitrate of the variant, in bits per second.
+         * @param contentLength the size of the variant in bytes, -1 to estimate it from the bitrate.
+         */
+        public Variant(@NonNull String url, long bitrate, long contentLength) {
+            if (bitrate <= 0) {
+                throw new IllegalArgumentException("Invalid bitrate " + bitrate);
+            }
+            this.url = url;
+            this.bitrate = bitrate;
+            this.contentLength = contentLength;
+        }
+
+        /**
+         * Returns the size of the variant, as given or estimated from the bitrate and the duration.
+         *
+         * @param durationMs the duration of the media, -1 if unknown.
+         * @return the size in bytes, -1 if unknown.
+         */
+        public long getContentLength(long durationMs) {
+            if (contentLength > 0) {
+                return contentLength;
+            }
+            return durationMs > 0 ? bitrate * durationMs / 8000 : NONE;
+        }
+    }
+
+    /**
+     * Decides which variant to play, called on every buffering update and stall of the current variant.
+     */
+    public interface SwitchPolicy {
+        /**
+         * @param variants  the variants, by ascending bitrate.
+         * @param current   the index of the current variant.
+         * @param estimator the estimator following the current variant.
+         * @return the index of the variant to play, the current one to stay.
+         */
+        int select(List<Variant> variants, int current, BufferHealthEstimator estimator);
+    }
+
+    /**
+     * Switches down as soon as a stall is expected within the horizon, to the highest variant the
+     * measured throughput sustains with a safety margin, and switches up once the buffer is healthy
+     * and the throughput sustains the higher variant with the same margin.
+     */
+    public static final class DefaultSwitchPolicy implements SwitchPolicy {
+        private final long mStallHorizonMs;
+        private final long mMinBufferForUpMs;
+        private final double mSafety;
+
+        /**
+         * Constructor, switching down 10 seconds ahead of a stall, up with 15 seconds buffered,
+         * using 80% of the throughput.
+         */
+        public DefaultSwitchPolicy() {
+            this(10_000, 15_000, 0.8);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param stallHorizonMs   switch down when a stall is expected within this horizon.
+         * @param minBufferForUpMs switch up only with at least this much media buffered ahead.
+         * @param safety           fraction of the throughput a variant may use, in (0, 1].
+         */
+        public DefaultSwitchPolicy(long stallHorizonMs, long minBufferForUpMs, double safety) {
+            if (safety <= 0 || safety > 1) {
+                throw new IllegalArgumentException("Invalid safety " + safety);
+            }
+            this.mStallHorizonMs = stallHorizonMs;
+            this.mMinBufferForUpMs = minBufferForUpMs;
+            this.mSafety = safety;
+        }
+
+        @Override
+        public int select(List<Variant> variants, int current, BufferHealthEstimator estimator) {
+            if (estimator.getSampleCount() < 2) {
+                return current;
+            }
+            //Throughput in bits per second, from the fill rate of the current variant.
+            double sustainable = estimator.getFillRate() * variants.get(current).bitrate * mSafety;
+            if (estimator.isStallExpected(mStallHorizonMs)) {
+                int target = 0;
+                for (int i = current - 1; i > 0; i--) {
+                    if (variants.get(i).bitrate <= sustainable) {
+                        target = i;
+                        break;
+                    }
+                }
+                return Math.min(target, current);
+            }
+            if (current + 1 < variants.size() && estimator.getBufferedAheadMs() >= mMinBufferForUpMs) {
+                int target = current;
+                for (int i = variants.size() - 1; i > current; i--) {
+                    if (variants.get(i).bitrate <= sustainable) {
+                        target = i;
+                        break;
+                    }
+                }
+                return target;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Interface definition of a callback to be invoked on variant changes.
+     */
+    public interface VariantListener {
+        void onVariantChanged(int from, int to);
+
+        void onVariantFailed(int variant, Exception error);
+    }
+
+    /**
+     * One of both players, along with the variant it holds.
+     */
+    private final class Slot implements PlayerEventBus.PlayerEventListener {
+        final Player player;
+        int variant = NONE;
+        boolean seeking;
+        boolean resought;
+        long seekPositionMs;
+        int percent = NONE;
+        PlayerEventBus.Subscription subscription;
+
+        Slot(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void onPlayerEvent(int event, long arg1, long arg2) {
+            switch (event) {
+                case PlayerEventBus.EVENT_PREPARED:
+                    onSlotPrepared(this);
+                    break;
+                case PlayerEventBus.EVENT_SEEK_COMPLETE:
+                    onSlotSeekCompleted(this);
+                    break;
+                case PlayerEventBus.EVENT_BUFFERING_UPDATE:
+                    onSlotBufferingUpdate(this, (int) arg1);
+                    break;
+                case PlayerEventBus.EVENT_INFO:
+                    onSlotInfo(this, (int) arg1);
+                    break;
+                case PlayerEventBus.EVENT_ERROR:
+                    onSlotError(this, (int) arg1, (int) arg2);
+                    break;
+                case PlayerEventBus.EVENT_COMPLETION:
+                    onSlotCompleted(this);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
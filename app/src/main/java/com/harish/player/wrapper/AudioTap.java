@@ -0,0 +1,559 @@
+package com.harish.player.wrapper;
+
+import android.media.audiofx.Visualizer;
+import android.support.annotation.NonNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Captures the decoded audio of a {@link Player} once, for any number of visualizers and level meters.
+ * <p>
+ * A tap is shared per player, see {@link #acquire(Player, PlayerEventBus.Scheduler)}: the first caller
+ * creates it, the following ones share it, and it is torn down once every caller has released it. The
+ * tap polls the audio session of the player into a preallocated buffer at the capture rate, and writes
+ * the samples into a {@link PcmRing}, which consumers read through their own {@link PcmRing.Reader}.
+ * Neither capturing nor reading allocates. {@link LevelMeter} and {@link SpectrumAnalyzer} compute
+ * levels and frequency bands incrementally from a reader.
+ * <p>
+ * The capture follows the lifecycle of the player: it is only enabled in {@link Player#STATE_STARTED},
+ * and freed when the player is released. State changes are applied on the scheduler, never on the thread
+ * of the player, as creating and enabling the capture are calls into the audio server. Captures are windows of the latest output, hence consecutive
+ * ones may overlap or leave gaps, depending on the rate.
+ */
+public final class AudioTap {
+    private static final String TAG = AudioTap.class.getSimpleName();
+
+    //Default ring capacity, about 3 seconds at 44.1kHz.
+    public static final int DEFAULT_RING_CAPACITY = 1 << 17;
+
+    //Shared taps, guarded by the class.
+    private static final Map<Player, AudioTap> sTaps = new IdentityHashMap<>();
+
+    private final Player mPlayer;
+    private final Capture.Factory mCaptureFactory;
+    private final PlayerEventBus.Scheduler mScheduler;
+    private final PcmRing mRing;
+    private final PlayerEventBus.Subscription mSubscription;
+    private final Runnable mApplyState = new Runnable() {
+        @Override
+        public void run() {
+            applyState();
+        }
+    };
+
+    //Guarded by this.
+    private int mReferences;
+    private int mState = Player.STATE_UNKNOWN;
+    private Capture mCapture;
+    private byte[] mBuffer;
+    private long mPollDelayMs;
+    private boolean mEnabled;
+    private Poll mPoll;
+    private long mCaptures;
+    private long mFailures;
+
+    /**
+     * Returns the tap of the given player, capturing through {@link Visualizer}, creating it if needed.
+     * Requires the RECORD_AUDIO permission. Every call must be balanced by a {@link #release()}.
+     *
+     * @param player    the player to capture.
+     * @param scheduler the scheduler to poll the capture on, e.g. a background handler.
+     * @return the shared tap.
+     */
+    @NonNull
+    public static AudioTap acquire(@NonNull Player player, @NonNull PlayerEventBus.Scheduler scheduler) {
+        return acquire(player, scheduler, VisualizerCapture.FACTORY, DEFAULT_RING_CAPACITY);
+    }
+
+    /**
+     * Returns the tap of the given player, creating it if needed. Every call must be balanced by a
+     * {@link #release()}.
+     *
+     * @param player         the player to capture.
+     * @param scheduler      the scheduler to poll the capture on.
+     * @param captureFactory creates the capture of the audio session, when the player first plays.
+     * @param ringCapacity   the number of samples kept, used by the call creating the tap only.
+     * @return the shared tap.
+     */
+    @NonNull
+    public static AudioTap acquire(@NonNull Player player, @NonNull PlayerEventBus.Scheduler scheduler,
+                                   @NonNull Capture.Factory captureFactory, int ringCapacity) {
+        AudioTap tap;
+        synchronized (AudioTap.class) {
+            tap = sTaps.get(player);
+            if (tap == null) {
+                //Subscribed before it is shared, a concurrent release() always has a subscription to drop.
+                tap = new AudioTap(player, scheduler, captureFactory, ringCapacity);
+                sTaps.put(player, tap);
+            }
+            synchronized (tap) {
+                tap.mReferences++;
+                if (tap.mReferences > 1) {
+                    return tap;
+                }
+            }
+        }
+        tap.onStateChanged(player.getCurrentState());
+        return tap;
+    }
+
+    private AudioTap(Player player, PlayerEventBus.Scheduler scheduler, Capture.Factory captureFactory,
+                     int ringCapacity) {
+        this.mPlayer = player;
+        this.mScheduler = scheduler;
+        this.mCaptureFactory = captureFactory;
+        this.mRing = new PcmRing(ringCapacity);
+        this.mSubscription = player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event == PlayerEventBus.EVENT_STATE_CHANGED) {
+                    onStateChanged((int) arg2);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the ring the captured samples are written to, to create readers from.
+     */
+    @NonNull
+    public PcmRing getRing() {
+        return mRing;
+    }
+
+    /**
+     * @return the sampling rate of the capture in Hz, 0 if not captured yet.
+     */
+    public synchronized int getSamplingRate() {
+        return mCapture != null ? mCapture.getSamplingRate() : 0;
+    }
+
+    /**
+     * @return TRUE if capturing, i.e. the player is playing.
+     */
+    public synchronized boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return number of captures written to the ring.
+     */
+    public synchronized long getCaptureCount() {
+        return mCaptures;
+    }
+
+    /**
+     * @return number of captures which failed, including the creation of the capture.
+     */
+    public synchronized long getFailureCount() {
+        return mFailures;
+    }
+
+    /**
+     * Releases a reference to this tap, tearing it down with the last one.
+     */
+    public void release() {
+        synchronized (AudioTap.class) {
+            synchronized (this) {
+                if (mReferences == 0 || --mReferences > 0) {
+                    return;
+                }
+            }
+            sTaps.remove(mPlayer);
+        }
+        mPlayer.getEventBus().unsubscribe(mSubscription);
+        free();
+    }
+
+    //Called with the lock of the player held, hence only recording the state.
+    private void onStateChanged(int state) {
+        synchronized (this) {
+            mState = state;
+        }
+        mScheduler.schedule(mApplyState, 0);
+    }
+
+    private void applyState() {
+        synchronized (this) {
+            int state = mState;
+            if (state == Player.STATE_ENDED || mReferences == 0) {
+                free();
+                return;
+            }
+            boolean enabled = state == Player.STATE_STARTED;
+            if (enabled == mEnabled) {
+                return;
+            }
+            if (enabled && !ensureCaptureLocked()) {
+                return;
+            }
+            mEnabled = enabled;
+            mCapture.setEnabled(enabled);
+            //A poll of a previous period still scheduled stops on its own.
+            mPoll = enabled ? new Poll() : null;
+            if (enabled) {
+                mScheduler.schedule(mPoll, 0);
+            }
+        }
+    }
+
+    private boolean ensureCaptureLocked() {
+        if (mCapture != null) {
+            return true;
+        }
+        int session = mPlayer.getAudioSessionId();
+        try {
+            mCapture = mCaptureFactory.create(session);
+        } catch (RuntimeException e) {
+            //E.g. missing permission or no such session.
+            mFailures++;
+            return false;
+        }
+        mBuffer = new byte[mCapture.getCaptureSize()];
+        int samplingRate = Math.max(1, mCapture.getSamplingRate());
+        //A capture per buffer worth of audio.
+        mPollDelayMs = Math.max(1, mBuffer.length * 1000L / samplingRate);
+        return true;
+    }
+
+    private synchronized void poll(Poll poll) {
+        if (poll != mPoll || mCapture == null) {
+            return;
+        }
+        int count = mCapture.capture(mBuffer);
+        if (count > 0) {
+            mRing.writeUnsigned8(mBuffer, count);
+            mCaptures++;
+        } else if (count < 0) {
+            mFailures++;
+        }
+        mScheduler.schedule(poll, mPollDelayMs);
+    }
+
+    private void free() {
+        synchronized (this) {
+            mEnabled = false;
+            mPoll = null;
+            if (mCapture != null) {
+                mCapture.release();
+                mCapture = null;
+                mBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * Polling task of one enabled period.
+     */
+    private final class Poll implements Runnable {
+        @Override
+        public void run() {
+            poll(this);
+        }
+    }
+
+    /**
+     * Level meter reading every sample of a ring, for a loudness or VU meter. Not thread safe.
+     */
+    public static final class LevelMeter {
+        private final PcmRing.Reader mReader;
+        private final float[] mChunk = new float[1024];
+        private final float mRelease;
+        private float mRms;
+        private float mPeak;
+        private float mLevel;
+
+        /**
+         * Constructor.
+         *
+         * @param ring    the ring to read, e.g. {@link AudioTap#getRing()}.
+         * @param release fraction of the level kept per update once the signal gets quieter, in [0, 1).
+         */
+        public LevelMeter(@NonNull PcmRing ring, float release) {
+            if (release < 0 || release >= 1) {
+                throw new IllegalArgumentException("Invalid release " + release);
+            }
+            this.mReader = ring.newReader();
+            this.mRelease = release;
+        }
+
+        /**
+         * Consumes the samples written since the last update, e.g. once per frame.
+         *
+         * @return the smoothed level, see {@link #getLevel()}.
+         */
+        public float update() {
+            double sumOfSquares = 0;
+            long count = 0;
+            float peak = 0;
+            int read;
+            while ((read = mReader.read(mChunk, 0, mChunk.length)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    float sample = mChunk[i];
+                    sumOfSquares += sample * sample;
+                    peak = Math.max(peak, Math.abs(sample));
+                }
+                count += read;
+            }
+            if (count > 0) {
+                mRms = (float) Math.sqrt(sumOfSquares / count);
+                mPeak = peak;
+            }
+            //Rises right away, falls off smoothly.
+            mLevel = mRms >= mLevel ? mRms : mLevel * mRelease + mRms * (1 - mRelease);
+            return mLevel;
+        }
+
+        /**
+         * @return RMS of the samples of the last update with samples, in [0, 1].
+         */
+        public float getRms() {
+            return mRms;
+        }
+
+        /**
+         * @return peak magnitude of the samples of the last update with samples, in [0, 1].
+         */
+        public float getPeak() {
+            return mPeak;
+        }
+
+        /**
+         * @return the smoothed RMS level, in [0, 1].
+         */
+        public float getLevel() {
+            return mLevel;
+        }
+
+        /**
+         * @return the smoothed level in dBFS, -inf for silence.
+         */
+        public float getLevelDb() {
+            return (float) (20 * Math.log10(mLevel));
+        }
+    }
+
+    /**
+     * Spectrum analyzer over the latest window of a ring, grouping the FFT bins into logarithmically
+     * spaced bands, for a bar visualizer. Tables and buffers are created up front. Not thread safe.
+     */
+    public static final class SpectrumAnalyzer {
+        private final PcmRing.Reader mReader;
+        private final int mSize;
+        private final float[] mWindow;
+        private final float[] mHann;
+        private final float[] mReal;
+        private final float[] mImaginary;
+        private final float[] mCos;
+        private final float[] mSin;
+        private final int[] mReversed;
+        private final int[] mBandEdges;
+        private final float[] mBands;
+        private final float mDecay;
+
+        /**
+         * Constructor.
+         *
+         * @param ring    the ring to read, e.g. {@link AudioTap#getRing()}.
+         * @param fftSize the number of samples per transform, a power of two.
+         * @param bands   the number of bands, at most half the FFT size.
+         * @param decay   fraction of a band kept per update once it gets quieter, in [0, 1).
+         */
+        public SpectrumAnalyzer(@NonNull PcmRing ring, int fftSize, int bands, float decay) {
+            if (fftSize < 2 || Integer.bitCount(fftSize) != 1 || bands < 1 || bands > fftSize / 2
+                    || decay < 0 || decay >= 1) {
+                throw new IllegalArgumentException("Invalid analyzer " + fftSize + "/" + bands + "/" + decay);
+            }
+            mReader = ring.newReader();
+            mSize = fftSize;
+            mWindow = new float[fftSize];
+            mHann = new float[fftSize];
+            mReal = new float[fftSize];
+            mImaginary = new float[fftSize];
+            mCos = new float[fftSize / 2];
+            mSin = new float[fftSize / 2];
+            mReversed = new int[fftSize];
+            mBands = new float[bands];
+            mDecay = decay;
+            for (int i = 0; i < fftSize; i++) {
+                mHann[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (fftSize - 1)));
+            }
+            for (int i = 0; i < fftSize / 2; i++) {
+                mCos[i] = (float) Math.cos(-2 * Math.PI * i / fftSize);
+                mSin[i] = (float) Math.sin(-2 * Math.PI * i / fftSize);
+            }
+            int bits = Integer.numberOfTrailingZeros(fftSize);
+            for (int i = 0; i < fftSize; i++) {
+                mReversed[i] = Integer.reverse(i) >>> (32 - bits);
+            }
+            //Bins 1 .. size/2, split evenly on a log scale, at least one bin per band.
+            mBandEdges = new int[bands + 1];
+            int bins = fftSize / 2;
+            mBandEdges[0] = 1;
+            for (int b = 1; b <= bands; b++) {
+                int edge = (int) Math.round(Math.pow(bins, (double) b / bands));
+                mBandEdges[b] = Math.min(bins + 1, Math.max(mBandEdges[b - 1] + 1, edge));
+            }
+            mBandEdges[bands] = bins + 1;
+        }
+
+        /**
+         * Transforms the latest window, e.g. once per frame.
+         *
+         * @return TRUE if a full window was available and the bands were updated.
+         */
+        public boolean update() {
+            if (!mReader.readLatest(mWindow)) {
+                return false;
+            }
+            for (int i = 0; i < mSize; i++) {
+                int j = mReversed[i];
+                mReal[j] = mWindow[i] * mHann[i];
+                mImaginary[j] = 0;
+            }
+            transform();
+            float scale = 2f / mSize;
+            for (int b = 0; b < mBands.length; b++) {
+                float magnitude = 0;
+                for (int k = mBandEdges[b]; k < mBandEdges[b + 1]; k++) {
+                    float magnitudeOfBin = (float) Math.sqrt(mReal[k] * mReal[k] + mImaginary[k] * mImaginary[k]);
+                    magnitude = Math.max(magnitude, magnitudeOfBin * scale);
+                }
+                mBands[b] = magnitude >= mBands[b] ? magnitude : mBands[b] * mDecay + magnitude * (1 - mDecay);
+            }
+            return true;
+        }
+
+        /**
+         * Copies the smoothed band magnitudes, lowest frequency first.
+         *
+         * @param out the array to copy to, of at least the number of bands.
+         */
+        public void getBands(@NonNull float[] out) {
+            System.arraycopy(mBands, 0, out, 0, mBands.length);
+        }
+
+        /**
+         * @return the number of bands.
+         */
+        public int getBandCount() {
+            return mBands.length;
+        }
+
+        //Iterative radix-2 FFT, in place on bit reversed input.
+        private void transform() {
+            for (int length = 2; length <= mSize; length <<= 1) {
+                int half = length >> 1;
+                int step = mSize / length;
+                for (int start = 0; start < mSize; start += length) {
+                    for (int k = 0; k < half; k++) {
+                        float cos = mCos[k * step];
+                        float sin = mSin[k * step];
+                        int even = start + k;
+                        int odd = even + half;
+                        float re = mReal[odd] * cos - mImaginary[odd] * sin;
+                        float im = mReal[odd] * sin + mImaginary[odd] * cos;
+                        mReal[odd] = mReal[even] - re;
+                        mImaginary[odd] = mImaginary[even] - im;
+                        mReal[even] += re;
+                        mImaginary[even] += im;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Capture of the output of an audio session.
+     */
+    public interface Capture {
+        /**
+         * @return the number of samples of a capture.
+         */
+        int getCaptureSize();
+
+        /**
+         * @return the sampling rate of the captured audio in Hz.
+         */
+        int getSamplingRate();
+
+        void setEnabled(boolean enabled);
+
+        /**
+         * Captures the latest output as unsigned 8-bit mono samples, 128 being silence.
+         *
+         * @param out the buffer of {@link #getCaptureSize()} samples.
+         * @return the number of samples captured, 0 if none is available, negative on failure.
+         */
+        int capture(byte[] out);
+
+        void release();
+
+        /**
+         * Creates captures.
+         */
+        interface Factory {
+            /**
+             * @param audioSessionId the audio session to capture.
+             * @return the capture, disabled.
+             * @throws RuntimeException if the session cannot be captured.
+             */
+            Capture create(int audioSessionId);
+        }
+    }
+
+    /**
+     * Capture through {@link Visualizer}, at its largest capture size.
+     */
+    private static final class VisualizerCapture implements Capture {
+        static final Factory FACTORY = new Factory() {
+            @Override
+            public Capture create(int audioSessionId) {
+                return new VisualizerCapture(audioSessionId);
+            }
+        };
+
+        private final Visualizer mVisualizer;
+
+        VisualizerCapture(int audioSessionId) {
+            mVisualizer = new Visualizer(audioSessionId);
+            try {
+                mVisualizer.setCaptureSize(Visualizer.getCaptureSizeRange()[1]);
+            } catch (RuntimeException e) {
+                mVisualizer.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public int getCaptureSize() {
+            return mVisualizer.getCaptureSize();
+        }
+
+        @Override
+        public int getSamplingRate() {
+            //Reported in milliHertz.
+            return mVisualizer.getSamplingRate() / 1000;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            mVisualizer.setEnabled(enabled);
+        }
+
+        @Override
+        public int capture(byte[] out) {
+            try {
+                return mVisualizer.getWaveForm(out) == Visualizer.SUCCESS ? out.length : -1;
+            } catch (IllegalStateException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void release() {
+            mVisualizer.release();
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+import android.support.annotation.NonNull;
+
+/**
+ * Online estimate of the download throughput and of the health of the buffer of a {@link Player},
+ * interpreting its buffering updates.
+ * <p>
+ * A buffering update reports how far the media is buffered, as a percentage of its duration. The
+ * media time buffered between two updates, over the wall time between them, is the fill rate: how
+ * many milliseconds of media are downloaded per millisecond. Fill rate samples are averaged by two
+ * exponentially weighted moving averages, a fast one following drops and a slow one smoothing out
+ * bursts, and the lower of both is used. Since updates only report whole percents, the rate is also
+ * capped by one percent over the time elapsed since the percentage last moved, so that a download
+ * which stalls is noticed before the next percent is reached. Memory is constant.
+ * <p>
+ * The buffer ahead is the media buffered past the playback position, extrapolated by the rate since the
+ * percentage last moved. While playing, it drains by the playback speed and fills by the rate, hence
+ * the time until stall is the buffer ahead over the net drain, {@link #NEVER} if the rate keeps up with
+ * playback. Given the byte size of the source, the rate converts to a throughput in bytes per second,
+ * to pick a bitrate the network sustains.
+ * <p>
+ * Driven either by {@link #attach(Player)}, or by feeding the on*() methods directly, e.g. to replay a
+ * recorded trace against a fake clock.
+ */
+public final class BufferHealthEstimator {
+    private static final String TAG = BufferHealthEstimator.class.getSimpleName();
+
+    //No stall in sight.
+    public static final long NEVER = Long.MAX_VALUE;
+
+    //Default half-lives of the averages, in milliseconds of wall time.
+    public static final long DEFAULT_FAST_HALF_LIFE_MS = 2000;
+    public static final long DEFAULT_SLOW_HALF_LIFE_MS = 8000;
+
+    //No sample yet.
+    private static final int NONE = -1;
+
+    private final PlaybackMetrics.Clock mClock;
+    private final double mFastHalfLifeMs;
+    private final double mSlowHalfLifeMs;
+
+    //Inputs, guarded by this.
+    private long mDurationMs = NONE;
+    private long mContentLength = NONE;
+    private long mPositionMs;
+    private long mPositionAtMs;
+    private boolean mPlaying;
+    private boolean mStalled;
+
+    //Last percentage and the time it was reached, or NONE to take the next update as the baseline.
+    private int mPercent = NONE;
+    private long mPercentAtMs;
+
+    //Averaged fill rates, in media milliseconds per millisecond, and the weight of the samples so far.
+    private double mFastRate;
+    private double mSlowRate;
+    private double mFastWeight;
+    private double mSlowWeight;
+    private long mSamples;
+
+    //Attached player.
+    private Player mPlayer;
+    private PlayerEventBus.Subscription mSubscription;
+
+    /**
+     * Constructor, averaging with {@link #DEFAULT_FAST_HALF_LIFE_MS} and {@link #DEFAULT_SLOW_HALF_LIFE_MS}.
+     */
+    public BufferHealthEstimator() {
+        this(PlaybackMetrics.Clock.SYSTEM, DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param clock          the monotonic clock the updates are timed with.
+     * @param fastHalfLifeMs half-life of the fast average, in milliseconds.
+     * @param slowHalfLifeMs half-life of the slow average, in milliseconds.
+     */
+    public BufferHealthEstimator(@NonNull PlaybackMetrics.Clock clock, long fastHalfLifeMs, long slowHalfLifeMs) {
+        if (fastHalfLifeMs <= 0 || slowHalfLifeMs < fastHalfLifeMs) {
+            throw new IllegalArgumentException("Invalid half-lives " + fastHalfLifeMs + "/" + slowHalfLifeMs);
+        }
+        this.mClock = clock;
+        this.mFastHalfLifeMs = fastHalfLifeMs;
+        this.mSlowHalfLifeMs = slowHalfLifeMs;
+    }
+
+    /**
+     * Starts following the buffering updates, state changes and seeks of the given player, replacing
+     * the player attached before. The estimate starts over, keeping the averaged rate, and again
+     * whenever the player gets a new data source.
+     *
+     * @param player the player to follow.
+     */
+    public void attach(@NonNull final Player player) {
+        synchronized (this) {
+            detach();
+            reset();
+            mPlayer = player;
+            mSubscription = player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+                @Override
+                public void onPlayerEvent(int event, long arg1, long arg2) {
+                    onEvent(player, event, arg1, arg2);
+                }
+            });
+        }
+        //Outside of the lock, the player calls back with its own lock held.
+        samplePosition(player);
+        onPlaying(player.getCurrentState() == Player.STATE_STARTED);
+    }
+
+    /**
+     * Stops following the attached player, if any.
+     */
+    public synchronized void detach() {
+        if (mPlayer != null) {
+            mPlayer.getEventBus().unsubscribe(mSubscription);
+            mPlayer = null;
+            mSubscription = null;
+        }
+    }
+
+    /**
+     * Sets the byte size of the source, e.g. its Content-Length, to convert the rate to a throughput.
+     *
+     * @param bytes the size in bytes, -1 if unknown.
+     */
+    public synchronized void setContentLength(long bytes) {
+        mContentLength = bytes > 0 ? bytes : NONE;
+    }
+
+    /**
+     * Records a buffering update.
+     *
+     * @param percent how far the media is buffered, as a percentage of its duration.
+     */
+    public synchronized void onBufferingUpdate(int percent) {
+        long now = nowMs();
+        percent = Math.max(0, Math.min(100, percent));
+        if (mPercent == NONE || percent < mPercent) {
+            //Baseline, or a seek outside of the buffer restarted the download.
+            mPercent = percent;
+            mPercentAtMs = now;
+            return;
+        }
+        if (percent == mPercent || mDurationMs <= 0) {
+            return;
+        }
+        long elapsedMs = now - mPercentAtMs;
+        if (elapsedMs > 0) {
+            double rate = (percent - mPercent) * mDurationMs / 100.0 / elapsedMs;
+            mFastWeight = average(mFastWeight, 1, elapsedMs, mFastHalfLifeMs);
+            mSlowWeight = average(mSlowWeight, 1, elapsedMs, mSlowHalfLifeMs);
+            mFastRate = average(mFastRate, rate, elapsedMs, mFastHalfLifeMs);
+            mSlowRate = average(mSlowRate, rate, elapsedMs, mSlowHalfLifeMs);
+            mSamples++;
+        }
+        mPercent = percent;
+        mPercentAtMs = now;
+    }
+
+    /**
+     * Records the playback position.
+     *
+     * @param positionMs the position in milliseconds.
+     * @param durationMs the duration of the media in milliseconds, -1 if unknown.
+     */
+    public synchronized void onPosition(long positionMs, long durationMs) {
+        mPositionMs = positionMs;
+        mPositionAtMs = nowMs();
+        if (durationMs > 0) {
+            mDurationMs = durationMs;
+        }
+    }
+
+    /**
+     * Records whether the player is playing, i.e. draining the buffer.
+     *
+     * @param playing TRUE if in {@link Player#STATE_STARTED}.
+     */
+    public synchronized void onPlaying(boolean playing) {
+        if (playing == mPlaying) {
+            return;
+        }
+        //Freeze or resume the extrapolated position.
+        mPositionMs = positionMs(nowMs());
+        mPositionAtMs = nowMs();
+        mPlaying = playing;
+    }
+
+    /**
+     * Records the start or the end of a stall, i.e. of {@link MediaPlayer#MEDIA_INFO_BUFFERING_START}.
+     *
+     * @param stalled TRUE if playback is stalled on an empty buffer.
+     */
+    public synchronized void onStall(boolean stalled) {
+        if (stalled == mStalled) {
+            return;
+        }
+        mPositionMs = positionMs(nowMs());
+        mPositionAtMs = nowMs();
+        mStalled = stalled;
+    }
+
+    /**
+     * Records a seek to the given position. The next buffering update is taken as a new baseline,
+     * the averaged rate is kept.
+     *
+     * @param positionMs the position seeked to.
+     */
+    public synchronized void onSeek(long positionMs) {
+        mPositionMs = positionMs;
+        mPositionAtMs = nowMs();
+        mPercent = NONE;
+    }
+
+    /**
+     * Starts over, e.g. for a new data source. The averaged rate is kept as a prior only if the
+     * network is expected to be the same, see {@link #clear()} otherwise.
+     */
+    public synchronized void reset() {
+        mDurationMs = NONE;
+        mContentLength = NONE;
+        mPositionMs = 0;
+        mPositionAtMs = nowMs();
+        mPlaying = false;
+        mStalled = false;
+        mPercent = NONE;
+    }
+
+    /**
+     * Starts over, forgetting the averaged rate as well.
+     */
+    public synchronized void clear() {
+        reset();
+        mFastRate = 0;
+        mSlowRate = 0;
+        mFastWeight = 0;
+        mSlowWeight = 0;
+        mSamples = 0;
+    }
+
+    /**
+     * Scales the averaged rate, e.g. by the ratio of both bitrates when switching to another variant
+     * of the same media over the same network, so that the throughput carries over.
+     *
+     * @param factor the factor to scale the rate by.
+     */
+    public synchronized void scaleRate(double factor) {
+        mFastRate *= factor;
+        mSlowRate *= factor;
+    }
+
+    /**
+     * @return media buffered past the playback position, in milliseconds.
+     */
+    public synchronized long getBufferedAheadMs() {
+        return bufferedAheadMs(nowMs());
+    }
+
+    /**
+     * Returns the conservative fill rate: media milliseconds downloaded per millisecond. Playback keeps
+     * up as long as it stays above 1 at normal speed.
+     *
+     * @return the fill rate, 0 if there is no sample yet.
+     */
+    public synchronized double getFillRate() {
+        return fillRate(nowMs());
+    }
+
+    /**
+     * @return the conservative download throughput in bytes per second, -1 if the content length or
+     * the duration is unknown.
+     */
+    public synchronized long getThroughputBytesPerSecond() {
+        if (mContentLength == NONE || mDurationMs <= 0) {
+            return NONE;
+        }
+        return (long) (fillRate(nowMs()) * mContentLength * 1000 / mDurationMs);
+    }
+
+    /**
+     * Predicts the time until playback stalls on an empty buffer, assuming playback at normal speed
+     * and the fill rate to hold.
+     *
+     * @return the time until stall in milliseconds, 0 if stalled, {@link #NEVER} if the buffer does not
+     * drain, i.e. not playing, fully buffered or downloading faster than playing.
+     */
+    public synchronized long getTimeUntilStallMs() {
+        long now = nowMs();
+        if (mStalled) {
+            return 0;
+        }
+        if (!mPlaying || mPercent == 100) {
+            return NEVER;
+        }
+        double drain = 1 - fillRate(now);
+        if (drain <= 0) {
+            return NEVER;
+        }
+        return (long) (bufferedAheadMs(now) / drain);
+    }
+
+    /**
+     * Checks whether playback is expected to stall within the given horizon, e.g. the time it takes to
+     * switch to a lower bitrate, to act before the stall happens.
+     *
+     * @param horizonMs the horizon in milliseconds.
+     * @return TRUE if a stall is predicted within the horizon.
+     */
+    public boolean isStallExpected(long horizonMs) {
+        return getTimeUntilStallMs() <= horizonMs;
+    }
+
+    /**
+     * @return number of rate samples averaged so far.
+     */
+    public synchronized long getSampleCount() {
+        return mSamples;
+    }
+
+    private void onEvent(Player player, int event, long arg1, long arg2) {
+        switch (event) {
+            case PlayerEventBus.EVENT_BUFFERING_UPDATE:
+                samplePosition(player);
+                onBufferingUpdate((int) arg1);
+                break;
+            case PlayerEventBus.EVENT_POSITION:
+                onPosition(arg1, arg2);
+                break;
+            case PlayerEventBus.EVENT_SEEK_COMPLETE:
+                try {
+                    onSeek(player.getCurrentPosition());
+                } catch (IllegalStateException e) {
+                    //Changed state meanwhile.
+                }
+                break;
+            case PlayerEventBus.EVENT_INFO:
+                if (arg1 == MediaPlayer.MEDIA_INFO_BUFFERING_START) {
+                    onStall(true);
+                } else if (arg1 == MediaPlayer.MEDIA_INFO_BUFFERING_END) {
+                    onStall(false);
+                }
+                break;
+            case PlayerEventBus.EVENT_STATE_CHANGED:
+                int state = (int) arg2;
+                if (state == Player.STATE_IDLE || state == Player.STATE_INITIALIZED || state == Player.STATE_ENDED) {
+                    reset();
+                } else if (state == Player.STATE_PREPARED) {
+                    samplePosition(player);
+                }
+                onPlaying(state == Player.STATE_STARTED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    //Buffering updates come without the position, which is only published by a ProgressTicker if any.
+    private void samplePosition(Player player) {
+        int state = player.getCurrentState();
+        if (state != Player.STATE_PREPARED && state != Player.STATE_STARTED && state != Player.STATE_PAUSED) {
+            return;
+        }
+        try {
+            onPosition(player.getCurrentPosition(), player.getDuration());
+        } catch (IllegalStateException e) {
+            //Changed state meanwhile.
+        }
+    }
+
+    private long positionMs(long now) {
+        if (!mPlaying || mStalled) {
+            return mPositionMs;
+        }
+        return mPositionMs + (now - mPositionAtMs);
+    }
+
+    private long bufferedAheadMs(long now) {
+        if (mPercent == NONE || mDurationMs <= 0) {
+            return 0;
+        }
+        long bufferedMs = mPercent * mDurationMs / 100;
+        if (mPercent < 100) {
+            //Downloaded since the percentage last moved, short of the next percent, none for media under 100ms.
+            long sinceMs = Math.max(0, now - mPercentAtMs);
+            bufferedMs += Math.min((long) (fillRate(now) * sinceMs), Math.max(0, mDurationMs / 100 - 1));
+        }
+        return Math.max(0, bufferedMs - positionMs(now));
+    }
+
+    private double fillRate(long now) {
+        if (mFastWeight <= 0 || mSlowWeight <= 0) {
+            return 0;
+        }
+        //Averages start from 0, corrected by their weight.
+        double rate = Math.min(mFastRate / mFastWeight, mSlowRate / mSlowWeight);
+        long sinceMs = now - mPercentAtMs;
+        if (mPercent != NONE && mPercent < 100 && sinceMs > 0 && mDurationMs > 0) {
+            //The next percent is not there yet, the rate cannot be higher than a percent over that time.
+            rate = Math.min(rate, mDurationMs / 100.0 / sinceMs);
+        }
+        return rate;
+    }
+
+    private static double average(double average, double sample, long elapsedMs, double halfLifeMs) {
+        double alpha = 1 - Math.pow(0.5, elapsedMs / halfLifeMs);
+        return average + alpha * (sample - average);
+    }
+
+    private long nowMs() {
+        return mClock.nanoTime() / 1_000_000;
+    }
+}
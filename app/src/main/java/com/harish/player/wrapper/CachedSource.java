@@ -0,0 +1,166 @@
+package com.harish.player.wrapper;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * {@link RandomAccessSource} serving reads from a {@link SegmentCache}, falling through to an
+ * upstream source on a miss.
+ * <p>
+ * Misses fetch the whole enclosing block from the upstream and store it, so that a replay of the
+ * same resource is served from disk without reaching the upstream. The size of the resource is
+ * recorded in the cache as well.
+ */
+public final class CachedSource implements RandomAccessSource {
+    private static final String TAG = CachedSource.class.getSimpleName();
+
+    private final SegmentCache mCache;
+    private final int mKeyId;
+    private final RandomAccessSource mUpstream;
+
+    //Block fetched from the upstream, reused across misses.
+    private final byte[] mBlock;
+
+    private long mSize = -1;
+
+    //Counters.
+    private long mHits;
+    private long mMisses;
+    private long mBytesFromCache;
+    private long mBytesFromUpstream;
+
+    /**
+     * Constructor.
+     *
+     * @param cache    the cache to serve from.
+     * @param key      the key of the resource in the cache, e.g. its URL.
+     * @param upstream the source to read from on a miss, closed along with this source.
+     */
+    public CachedSource(@NonNull SegmentCache cache, @NonNull String key, @NonNull RandomAccessSource upstream) {
+        this.mCache = cache;
+        this.mKeyId = cache.keyId(key);
+        this.mUpstream = upstream;
+        this.mBlock = new byte[cache.getBlockSize()];
+    }
+
+    /**
+     * Creates a data source for an http/https URL, to be passed to {@link Player#setDataSource(android.media.MediaDataSource)}
+     * instead of the URL itself.
+     *
+     * @param cache   the cache to serve from.
+     * @param url     the http/https URL of the resource.
+     * @param headers the headers to be sent together with every request, may be null.
+     * @return the caching data source.
+     * @throws IOException if the URL is malformed.
+     */
+    @RequiresApi(Build.VERSION_CODES.M)
+    public static MediaDataSourceAdapter forUrl(@NonNull SegmentCache cache, @NonNull String url,
+                                                @Nullable Map<String, String> headers) throws IOException {
+        return new MediaDataSourceAdapter(new CachedSource(cache, url, new HttpSource(url, headers)));
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        long total = getSize();
+        if (total >= 0 && position >= total) {
+            return -1;
+        }
+        int blockSize = mBlock.length;
+        long block = position / blockSize;
+        int blockOffset = (int) (position % blockSize);
+        int count = Math.min(size, blockSize - blockOffset);
+
+        int read = mCache.read(mKeyId, block, blockOffset, buffer, offset, count);
+        if (read >= 0) {
+            mHits++;
+            mBytesFromCache += read;
+            return read;
+        }
+        mMisses++;
+        int length = fetchBlock(block * blockSize);
+        if (length <= blockOffset) {
+            return -1;
+        }
+        mCache.write(mKeyId, block, mBlock, 0, length);
+        count = Math.min(count, length - blockOffset);
+        System.arraycopy(mBlock, blockOffset, buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public synchronized long getSize() throws IOException {
+        if (mSize < 0) {
+            mSize = mCache.getSize(mKeyId);
+        }
+        if (mSize < 0) {
+            mSize = mUpstream.getSize();
+            if (mSize >= 0) {
+                mCache.setSize(mKeyId, mSize);
+            }
+        }
+        return mSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mUpstream.close();
+    }
+
+    /**
+     * @return number of reads served from the cache.
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return number of reads which had to reach the upstream.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return share of the reads served from the cache, within [0, 1].
+     */
+    public synchronized float getHitRatio() {
+        long total = mHits + mMisses;
+        return total == 0 ? 0f : (float) mHits / total;
+    }
+
+    /**
+     * @return number of bytes served from the cache instead of the upstream.
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesFromCache;
+    }
+
+    /**
+     * @return number of bytes read from the upstream.
+     */
+    public synchronized long getBytesFromUpstream() {
+        return mBytesFromUpstream;
+    }
+
+    //Reads the block starting at the given position, up to the end of the resource.
+    private int fetchBlock(long position) throws IOException {
+        int length = 0;
+        while (length < mBlock.length) {
+            int count = mUpstream.readAt(position + length, mBlock, length, mBlock.length - length);
+            if (count <= 0) {
+                break;
+            }
+            length += count;
+        }
+        mBytesFromUpstream += length;
+        return length;
+    }
+}
@@ -0,0 +1,119 @@
+package com.harish.player.wrapper;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaDataSource;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data source last set on a {@link Player}, so that it can be set again after a reset, e.g. when
+ * restoring a player demoted by {@link PlayerGovernor}.
+ * <p>
+ * Only paths and Uris can be set again. File descriptors may have been closed by the caller, and the
+ * native player closes a {@link MediaDataSource} on reset.
+ */
+final class DataSourceSpec {
+    private static final String TAG = DataSourceSpec.class.getSimpleName();
+
+    private static final int TYPE_PATH = 0;
+    private static final int TYPE_URI = 1;
+    private static final int TYPE_URI_COOKIES = 2;
+    private static final int TYPE_FILE_DESCRIPTOR = 3;
+    private static final int TYPE_ASSET_FILE_DESCRIPTOR = 4;
+    private static final int TYPE_MEDIA_DATA_SOURCE = 5;
+
+    private final int mType;
+    private final String mPath;
+    private final Context mContext;
+    private final Uri mUri;
+    private final Map<String, String> mHeaders;
+    private final List<HttpCookie> mCookies;
+
+    private DataSourceSpec(int type, String path, Context context, Uri uri,
+                           Map<String, String> headers, List<HttpCookie> cookies) {
+        this.mType = type;
+        this.mPath = path;
+        this.mContext = context;
+        this.mUri = uri;
+        this.mHeaders = headers == null ? null : new HashMap<>(headers);
+        this.mCookies = cookies == null ? null : new ArrayList<>(cookies);
+    }
+
+    static DataSourceSpec of(@NonNull String path) {
+        return new DataSourceSpec(TYPE_PATH, path, null, null, null, null);
+    }
+
+    static DataSourceSpec of(@NonNull Context context, @NonNull Uri uri, @Nullable Map<String, String> headers) {
+        //Application context, a player may outlive the activity it was set up in.
+        return new DataSourceSpec(TYPE_URI, null, context.getApplicationContext(), uri, headers, null);
+    }
+
+    static DataSourceSpec of(@NonNull Context context, @NonNull Uri uri, @Nullable Map<String, String> headers,
+                             @Nullable List<HttpCookie> cookies) {
+        return new DataSourceSpec(TYPE_URI_COOKIES, null, context.getApplicationContext(), uri, headers, cookies);
+    }
+
+    @SuppressWarnings("unused")
+    static DataSourceSpec of(FileDescriptor fd) {
+        return new DataSourceSpec(TYPE_FILE_DESCRIPTOR, null, null, null, null, null);
+    }
+
+    @SuppressWarnings("unused")
+    static DataSourceSpec of(AssetFileDescriptor afd) {
+        return new DataSourceSpec(TYPE_ASSET_FILE_DESCRIPTOR, null, null, null, null, null);
+    }
+
+    @SuppressWarnings("unused")
+    static DataSourceSpec of(MediaDataSource dataSource) {
+        return new DataSourceSpec(TYPE_MEDIA_DATA_SOURCE, null, null, null, null, null);
+    }
+
+    /**
+     * @return TRUE if the source can be set again on the engine.
+     */
+    boolean isReusable() {
+        return mType == TYPE_PATH || mType == TYPE_URI || mType == TYPE_URI_COOKIES;
+    }
+
+    /**
+     * @return the path or Uri of the source, or null if it is not addressable.
+     */
+    @Nullable
+    String getLocation() {
+        if (mType == TYPE_PATH) {
+            return mPath;
+        }
+        return mUri != null ? mUri.toString() : null;
+    }
+
+    /**
+     * Sets the source on the given engine.
+     *
+     * @throws IllegalStateException if the source is not reusable.
+     */
+    void apply(PlaybackEngine engine) throws IOException {
+        switch (mType) {
+            case TYPE_PATH:
+                engine.setDataSource(mPath);
+                break;
+            case TYPE_URI:
+                engine.setDataSource(mContext, mUri, mHeaders);
+                break;
+            case TYPE_URI_COOKIES:
+                engine.setDataSource(mContext, mUri, mHeaders, mCookies);
+                break;
+            default:
+                throw new IllegalStateException("Data source of type " + mType + " cannot be set again");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link RandomAccessSource} reading an http/https URL with range requests.
+ * <p>
+ * Every {@link #readAt(long, byte[], int, int)} issues one request for exactly the requested range,
+ * so it is meant to be used behind a {@link CachedSource} reading whole blocks.
+ */
+public final class HttpSource implements RandomAccessSource {
+    private static final String TAG = HttpSource.class.getSimpleName();
+
+    private static final int TIMEOUT_MS = 15_000;
+
+    //Size marker, not requested yet.
+    private static final long SIZE_UNRESOLVED = -2;
+
+    private final URL mUrl;
+    private final Map<String, String> mHeaders;
+
+    private long mSize = SIZE_UNRESOLVED;
+
+    //Counters.
+    private long mRequests;
+    private long mBytesFetched;
+
+    /**
+     * Constructor.
+     *
+     * @param url     the http/https URL of the resource.
+     * @param headers the headers to be sent together with every request, may be null.
+     * @throws IOException if the URL is malformed.
+     */
+    public HttpSource(@NonNull String url, @Nullable Map<String, String> headers) throws IOException {
+        this.mUrl = new URL(url);
+        this.mHeaders = headers == null
+                ? Collections.<String, String>emptyMap()
+                : new HashMap<>(headers);
+    }
+
+    @Override
+    public synchronized int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        long total = getSize();
+        if (total >= 0 && position >= total) {
+            return -1;
+        }
+        HttpURLConnection connection = open("bytes=" + position + "-" + (position + size - 1));
+        try {
+            int code = connection.getResponseCode();
+            if (code == 416) {
+                return -1;
+            }
+            if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response " + code + " for " + mUrl);
+            }
+            InputStream input = connection.getInputStream();
+            try {
+                if (code == HttpURLConnection.HTTP_OK) {
+                    //Range not supported by the server, skip up to the requested position.
+                    skipFully(input, position);
+                }
+                int read = 0;
+                while (read < size) {
+                    int count = input.read(buffer, offset + read, size - read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
+                }
+                mBytesFetched += read;
+                return read == 0 ? -1 : read;
+            } finally {
+                input.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public synchronized long getSize() throws IOException {
+        if (mSize != SIZE_UNRESOLVED) {
+            return mSize;
+        }
+        HttpURLConnection connection = open("bytes=0-0");
+        try {
+            int code = connection.getResponseCode();
+            String range = connection.getHeaderField("Content-Range");
+            if (code == HttpURLConnection.HTTP_PARTIAL && range != null && range.lastIndexOf('/') >= 0) {
+                String total = range.substring(range.lastIndexOf('/') + 1).trim();
+                mSize = "*".equals(total) ? -1 : Long.parseLong(total);
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                mSize = connection.getContentLength();
+            } else {
+                throw new IOException("Unexpected response " + code + " for " + mUrl);
+            }
+            return mSize;
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed Content-Range for " + mUrl, e);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return number of requests issued.
+     */
+    public synchronized long getRequestCount() {
+        return mRequests;
+    }
+
+    /**
+     * @return number of bytes fetched over the network.
+     */
+    public synchronized long getBytesFetched() {
+        return mBytesFetched;
+    }
+
+    @Override
+    public void close() {
+        //Nothing kept open between reads.
+    }
+
+    private HttpURLConnection open(String range) throws IOException {
+        mRequests++;
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        for (Map.Entry<String, String> header : mHeaders.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        connection.setRequestProperty("Range", range);
+        //Compressed responses would break byte offsets.
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+
+    private static void skipFully(InputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaDataSource;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+
+import java.io.IOException;
+
+/**
+ * Exposes a {@link RandomAccessSource} as {@link MediaDataSource}, to be passed to
+ * {@link Player#setDataSource(MediaDataSource)}.
+ */
+@RequiresApi(Build.VERSION_CODES.M)
+public final class MediaDataSourceAdapter extends MediaDataSource {
+    private static final String TAG = MediaDataSourceAdapter.class.getSimpleName();
+
+    private final RandomAccessSource mSource;
+
+    /**
+     * Constructor.
+     *
+     * @param source the source to read from, closed along with this data source.
+     */
+    public MediaDataSourceAdapter(@NonNull RandomAccessSource source) {
+        this.mSource = source;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        return mSource.readAt(position, buffer, offset, size);
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mSource.getSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+}
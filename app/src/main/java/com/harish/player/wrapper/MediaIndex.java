@@ -0,0 +1,636 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaMetadataRetriever;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent index of the metadata of media resources (duration, video size, bitrate and tracks), so
+ * that browse screens can show them without preparing a {@link Player} per item.
+ * <p>
+ * Metadata is extracted once per resource with {@link MediaMetadataRetriever}, which reads the container
+ * without creating codecs, on a fixed number of worker threads. Results are appended to a log file in
+ * the index directory, each record guarded by a checksum, and found again through an in-memory map of
+ * record offsets. The most recently used entries are kept decoded in memory. A torn record at the end of
+ * the log, e.g. after the process died, is dropped when opening the index, and the log is compacted
+ * once it holds more stale records than live ones.
+ * <p>
+ * Entries are keyed by the location of the resource and validated against a version of it: its ETag for
+ * a remote resource, or its modification time and length for a local file, see {@link #validatorOf(File)}.
+ * An entry of another version is stale and extracted again.
+ * <p>
+ * {@link #seed(Player, String)} hands known metadata to a player before it is prepared, see
+ * {@link Player#getMetadataHint()}.
+ */
+public final class MediaIndex implements Closeable {
+    private static final String TAG = MediaIndex.class.getSimpleName();
+
+    private static final String LOG_FILE = "media.idx";
+    private static final int LOG_MAGIC = 0x4d494431;    //"MID1".
+    private static final int HEADER_SIZE = 4;
+
+    //Record header: payload length and checksum.
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    //Stale records tolerated before compacting, besides one per live record.
+    private static final int COMPACT_SLACK = 256;
+
+    private final File mDirectory;
+    private final int mDiskCapacity;
+    private final Extractor mExtractor;
+    private final ExecutorService mExecutor;
+
+    private RandomAccessFile mFile;
+
+    //Offset of the latest record of every location on disk, least recently used first.
+    private final LinkedHashMap<String, Long> mOffsets = new LinkedHashMap<>(64, 0.75f, true);
+
+    //Decoded entries, least recently used first.
+    private final LinkedHashMap<String, Metadata> mMemory;
+
+    //Pending extractions by location and version, see #pendingKey, along with the listeners waiting for them.
+    private final Map<String, List<MetadataListener>> mPending = new HashMap<>();
+
+    //Number of records in the log, live or stale.
+    private int mRecordCount;
+    private boolean mClosed;
+
+    //Counters.
+    private long mMemoryHits;
+    private long mDiskHits;
+    private long mMisses;
+    private long mExtractions;
+    private long mFailures;
+    private long mExtractionTotalNanos;
+
+    /**
+     * Constructor, opening or creating the index in the given directory and extracting with
+     * {@link MediaMetadataRetriever}.
+     *
+     * @param directory      the directory of the index, created if missing.
+     * @param memoryCapacity the maximum number of entries kept decoded in memory.
+     * @param diskCapacity   the maximum number of entries kept on disk.
+     * @param workers        the number of threads extracting metadata.
+     * @throws IOException if the index could not be opened.
+     */
+    public MediaIndex(@NonNull File directory, int memoryCapacity, int diskCapacity, int workers)
+            throws IOException {
+        this(directory, memoryCapacity, diskCapacity, workers, null);
+    }
+
+    /**
+     * Constructor, opening or creating the index in the given directory.
+     *
+     * @param directory      the directory of the index, created if missing.
+     * @param memoryCapacity the maximum number of entries kept decoded in memory.
+     * @param diskCapacity   the maximum number of entries kept on disk.
+     * @param workers        the number of threads extracting metadata.
+     * @param extractor      extracts the metadata of a resource, null for {@link MediaMetadataRetriever}.
+     * @throws IOException if the index could not be opened.
+     */
+    public MediaIndex(@NonNull File directory, final int memoryCapacity, int diskCapacity, int workers,
+                      @Nullable Extractor extractor) throws IOException {
+        if (memoryCapacity < 1 || diskCapacity < memoryCapacity || workers < 1) {
+            throw new IllegalArgumentException("Invalid capacities " + memoryCapacity + "/" + diskCapacity
+                    + "/" + workers);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.mDirectory = directory;
+        this.mDiskCapacity = diskCapacity;
+        this.mExtractor = extractor != null ? extractor : new RetrieverExtractor();
+        this.mMemory = new LinkedHashMap<String, Metadata>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+                return size() > memoryCapacity;
+            }
+        };
+        this.mExecutor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        open();
+    }
+
+    /**
+     * Returns the version of a local file, its modification time and length.
+     *
+     * @param file the file.
+     * @return the validator of the file.
+     */
+    @NonNull
+    public static String validatorOf(@NonNull File file) {
+        return file.lastModified() + "-" + file.length();
+    }
+
+    /**
+     * Looks the metadata of a resource up, in memory then on disk, without extracting it.
+     *
+     * @param location  the path or http/rtsp URL of the resource.
+     * @param validator the version of the resource, e.g. its ETag, or null for the modification time
+     *                  and length of a local file, and any version of a remote one.
+     * @return the metadata, or null if unknown or stale.
+     */
+    @Nullable
+    public synchronized Metadata get(@NonNull String location, @Nullable String validator) {
+        checkOpen();
+        validator = resolve(location, validator);
+        Metadata metadata = mMemory.get(location);
+        if (matches(metadata, validator)) {
+            mMemoryHits++;
+            return metadata;
+        }
+        Long offset = mOffsets.get(location);
+        if (offset != null) {
+            metadata = readRecord(offset);
+            if (matches(metadata, validator)) {
+                mDiskHits++;
+                mMemory.put(location, metadata);
+                return metadata;
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Delivers the metadata of a resource, extracting it on a worker thread if unknown or stale.
+     * Concurrent requests of a resource share one extraction.
+     * <p>
+     * The listener runs on the calling thread if the metadata is known, on a worker thread otherwise.
+     *
+     * @param location  the path or http/rtsp URL of the resource.
+     * @param validator the version of the resource, see {@link #get(String, String)}.
+     * @param headers   the headers of the request of a remote resource, or null.
+     * @param listener  the callback that will be run
+     */
+    public void request(@NonNull final String location, @Nullable String validator,
+                        @Nullable final Map<String, String> headers, @NonNull MetadataListener listener) {
+        Metadata metadata;
+        final String resolved;
+        final String key;
+        synchronized (this) {
+            metadata = get(location, validator);
+            resolved = resolve(location, validator);
+            key = pendingKey(location, resolved);
+            if (metadata == null) {
+                List<MetadataListener> listeners = mPending.get(key);
+                if (listeners != null) {
+                    listeners.add(listener);
+                    return;
+                }
+                listeners = new ArrayList<>();
+                listeners.add(listener);
+                mPending.put(key, listeners);
+            }
+        }
+        if (metadata != null) {
+            listener.onMetadata(metadata);
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                extract(key, location, resolved != null ? resolved : "", headers);
+            }
+        });
+    }
+
+    /**
+     * Hands the known metadata of the data source of a player to it, so that layouts can use the
+     * duration and video size before it is prepared. Reads the disk if the entry is not in memory.
+     *
+     * @param player    a player with a data source set by path or Uri.
+     * @param validator the version of the resource, see {@link #get(String, String)}.
+     * @return TRUE if the metadata was known.
+     */
+    public boolean seed(@NonNull Player player, @Nullable String validator) {
+        String location = player.getDataSourceLocation();
+        if (location == null) {
+            return false;
+        }
+        Metadata metadata = get(location, validator);
+        if (metadata == null) {
+            return false;
+        }
+        player.setMetadataHint(metadata);
+        return true;
+    }
+
+    /**
+     * Forces the records written so far to storage.
+     *
+     * @throws IOException if the records could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        mFile.getFD().sync();
+    }
+
+    /**
+     * Stops the workers and closes the index, pending extractions are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mExecutor.shutdownNow();
+        mPending.clear();
+        mFile.close();
+    }
+
+    /**
+     * @return number of lookups served from memory.
+     */
+    public synchronized long getMemoryHitCount() {
+        return mMemoryHits;
+    }
+
+    /**
+     * @return number of lookups served from disk.
+     */
+    public synchronized long getDiskHitCount() {
+        return mDiskHits;
+    }
+
+    /**
+     * @return number of lookups of unknown or stale entries.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return number of successful extractions.
+     */
+    public synchronized long getExtractionCount() {
+        return mExtractions;
+    }
+
+    /**
+     * @return number of failed extractions.
+     */
+    public synchronized long getFailureCount() {
+        return mFailures;
+    }
+
+    /**
+     * @return average time of a successful extraction, in nanoseconds.
+     */
+    public synchronized long getAverageExtractionNanos() {
+        return mExtractions == 0 ? 0 : mExtractionTotalNanos / mExtractions;
+    }
+
+    /**
+     * @return number of entries on disk.
+     */
+    public synchronized int size() {
+        return mOffsets.size();
+    }
+
+    private void extract(String key, String location, String validator, Map<String, String> headers) {
+        long startNanos = System.nanoTime();
+        Metadata metadata = null;
+        Exception error = null;
+        try {
+            metadata = mExtractor.extract(location, validator, headers);
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        List<MetadataListener> listeners;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            listeners = mPending.remove(key);
+            if (metadata != null) {
+                mExtractions++;
+                mExtractionTotalNanos += System.nanoTime() - startNanos;
+                mMemory.put(location, metadata);
+                try {
+                    appendRecord(metadata);
+                } catch (IOException e) {
+                    //Still served from memory, extracted again after a restart.
+                    mFailures++;
+                }
+            } else {
+                mFailures++;
+            }
+        }
+        if (listeners == null) {
+            return;
+        }
+        for (MetadataListener listener : listeners) {
+            if (metadata != null) {
+                listener.onMetadata(metadata);
+            } else {
+                listener.onMetadataFailed(location, error);
+            }
+        }
+    }
+
+    //Requests of another version of a resource do not share its extraction.
+    private static String pendingKey(String location, String validator) {
+        return validator != null ? location + '\n' + validator : location;
+    }
+
+    //Null for any version of a remote resource.
+    private static String resolve(String location, String validator) {
+        if (validator != null) {
+            return validator;
+        }
+        if (location.startsWith("/")) {
+            return validatorOf(new File(location));
+        }
+        if (location.startsWith("file://")) {
+            return validatorOf(new File(location.substring("file://".length())));
+        }
+        return null;
+    }
+
+    private static boolean matches(Metadata metadata, String validator) {
+        return metadata != null && (validator == null || metadata.validator.equals(validator));
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Index has been closed!");
+        }
+    }
+
+    //Opens the log and indexes its records, dropping anything after the first broken one.
+    private void open() throws IOException {
+        mFile = new RandomAccessFile(new File(mDirectory, LOG_FILE), "rw");
+        if (mFile.length() < HEADER_SIZE || mFile.readInt() != LOG_MAGIC) {
+            mFile.setLength(0);
+            mFile.writeInt(LOG_MAGIC);
+            return;
+        }
+        long offset = HEADER_SIZE;
+        long length = mFile.length();
+        while (offset + RECORD_HEADER_SIZE <= length) {
+            Metadata metadata = readRecord(offset);
+            if (metadata == null) {
+                break;
+            }
+            mOffsets.put(metadata.location, offset);
+            mRecordCount++;
+            offset = mFile.getFilePointer();
+        }
+        if (offset != length) {
+            mFile.setLength(offset);
+        }
+        trimToCapacity();
+    }
+
+    //Reads the record at the given offset, null if it is torn or corrupt.
+    private Metadata readRecord(long offset) {
+        try {
+            mFile.seek(offset);
+            int size = mFile.readInt();
+            int checksum = mFile.readInt();
+            if (size <= 0 || size > MAX_RECORD_SIZE || offset + RECORD_HEADER_SIZE + size > mFile.length()) {
+                return null;
+            }
+            byte[] payload = new byte[size];
+            mFile.readFully(payload);
+            if (checksum(payload, size) != checksum) {
+                return null;
+            }
+            return Metadata.read(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void appendRecord(Metadata metadata) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        metadata.write(new DataOutputStream(bytes));
+        byte[] payload = bytes.toByteArray();
+        if (payload.length > MAX_RECORD_SIZE) {
+            throw new IOException("Metadata of " + metadata.location + " is too large");
+        }
+        long offset = mFile.length();
+        mFile.seek(offset);
+        mFile.writeInt(payload.length);
+        mFile.writeInt(checksum(payload, payload.length));
+        mFile.write(payload);
+        mOffsets.put(metadata.location, offset);
+        mRecordCount++;
+        trimToCapacity();
+        if (mRecordCount > 2 * mOffsets.size() + COMPACT_SLACK) {
+            compact();
+        }
+    }
+
+    private void trimToCapacity() {
+        while (mOffsets.size() > mDiskCapacity) {
+            String eldest = mOffsets.keySet().iterator().next();
+            mOffsets.remove(eldest);
+            mMemory.remove(eldest);
+        }
+    }
+
+    //Rewrites the live records, least recently used first, then swaps the logs.
+    private void compact() throws IOException {
+        File temp = new File(mDirectory, LOG_FILE + ".tmp");
+        RandomAccessFile output = new RandomAccessFile(temp, "rw");
+        Map<String, Long> offsets = new LinkedHashMap<>();
+        try {
+            output.setLength(0);
+            output.writeInt(LOG_MAGIC);
+            byte[] buffer = new byte[MAX_RECORD_SIZE + RECORD_HEADER_SIZE];
+            for (Map.Entry<String, Long> entry : mOffsets.entrySet()) {
+                mFile.seek(entry.getValue());
+                int size = mFile.readInt();
+                mFile.seek(entry.getValue());
+                mFile.readFully(buffer, 0, RECORD_HEADER_SIZE + size);
+                offsets.put(entry.getKey(), output.getFilePointer());
+                output.write(buffer, 0, RECORD_HEADER_SIZE + size);
+            }
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temp.renameTo(new File(mDirectory, LOG_FILE))) {
+            throw new IOException("Could not compact the index of " + mDirectory);
+        }
+        mFile.close();
+        mFile = new RandomAccessFile(new File(mDirectory, LOG_FILE), "rw");
+        //Same order, the iteration above did not count as accesses.
+        mOffsets.clear();
+        mOffsets.putAll(offsets);
+        mRecordCount = offsets.size();
+    }
+
+    private static int checksum(byte[] payload, int size) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, size);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Extracts the metadata of a resource, on a worker thread of the index.
+     */
+    public interface Extractor {
+        /**
+         * @param location  the path or http/rtsp URL of the resource.
+         * @param validator the version of the resource, to be kept in the metadata.
+         * @param headers   the headers of the request of a remote resource, or null.
+         * @return the metadata.
+         * @throws IOException if the resource could not be read.
+         */
+        @NonNull
+        Metadata extract(@NonNull String location, @NonNull String validator,
+                         @Nullable Map<String, String> headers) throws IOException;
+    }
+
+    /**
+     * Interface definition of a callback to be invoked once metadata has been looked up or extracted.
+     */
+    public interface MetadataListener {
+        void onMetadata(Metadata metadata);
+
+        void onMetadataFailed(String location, Exception error);
+    }
+
+    /**
+     * Metadata of a version of a media resource.
+     */
+    public static final class Metadata {
+        public final String location;
+        public final String validator;
+        public final int durationMs;        //-1 if unknown, e.g. for live streams.
+        public final int width;             //0 if no video.
+        public final int height;
+        public final int rotation;          //Clockwise rotation of the video, in degrees.
+        public final int bitrate;           //Bits per second, 0 if unknown.
+        @Nullable
+        public final String mimeType;
+        public final boolean hasAudio;
+        public final boolean hasVideo;
+        public final int trackCount;
+
+        public Metadata(@NonNull String location, @NonNull String validator, int durationMs, int width,
+                        int height, int rotation, int bitrate, @Nullable String mimeType, boolean hasAudio,
+                        boolean hasVideo, int trackCount) {
+            this.location = location;
+            this.validator = validator;
+            this.durationMs = durationMs;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.bitrate = bitrate;
+            this.mimeType = mimeType;
+            this.hasAudio = hasAudio;
+            this.hasVideo = hasVideo;
+            this.trackCount = trackCount;
+        }
+
+        void write(DataOutputStream output) throws IOException {
+            output.writeUTF(location);
+            output.writeUTF(validator);
+            output.writeInt(durationMs);
+            output.writeShort(width);
+            output.writeShort(height);
+            output.writeShort(rotation);
+            output.writeInt(bitrate);
+            output.writeUTF(mimeType != null ? mimeType : "");
+            output.writeByte((hasAudio ? 1 : 0) | (hasVideo ? 2 : 0));
+            output.writeByte(trackCount);
+        }
+
+        static Metadata read(DataInputStream input) throws IOException {
+            String location = input.readUTF();
+            String validator = input.readUTF();
+            int durationMs = input.readInt();
+            int width = input.readUnsignedShort();
+            int height = input.readUnsignedShort();
+            int rotation = input.readShort();
+            int bitrate = input.readInt();
+            String mimeType = input.readUTF();
+            int flags = input.readUnsignedByte();
+            int trackCount = input.readUnsignedByte();
+            return new Metadata(location, validator, durationMs, width, height, rotation, bitrate,
+                    mimeType.isEmpty() ? null : mimeType, (flags & 1) != 0, (flags & 2) != 0, trackCount);
+        }
+
+        @Override
+        public String toString() {
+            return location + " duration=" + durationMs + " size=" + width + "x" + height
+                    + " bitrate=" + bitrate + " tracks=" + trackCount;
+        }
+    }
+
+    /**
+     * Extractor reading the container through {@link MediaMetadataRetriever}, without creating codecs.
+     */
+    private static final class RetrieverExtractor implements Extractor {
+        @NonNull
+        @Override
+        public Metadata extract(@NonNull String location, @NonNull String validator,
+                                @Nullable Map<String, String> headers) throws IOException {
+            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+            try {
+                if (location.startsWith("http://") || location.startsWith("https://") || headers != null) {
+                    retriever.setDataSource(location, headers != null ? headers : new HashMap<String, String>());
+                } else {
+                    retriever.setDataSource(location.startsWith("file://")
+                            ? location.substring("file://".length()) : location);
+                }
+                return new Metadata(location, validator,
+                        parse(retriever, MediaMetadataRetriever.METADATA_KEY_DURATION, -1),
+                        parse(retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH, 0),
+                        parse(retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT, 0),
+                        parse(retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION, 0),
+                        parse(retriever, MediaMetadataRetriever.METADATA_KEY_BITRATE, 0),
+                        retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE),
+                        retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_HAS_AUDIO) != null,
+                        retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_HAS_VIDEO) != null,
+                        parse(retriever, MediaMetadataRetriever.METADATA_KEY_NUM_TRACKS, 0));
+            } catch (RuntimeException e) {
+                throw new IOException("Could not extract the metadata of " + location, e);
+            } finally {
+                retriever.release();
+            }
+        }
+
+        private static int parse(MediaMetadataRetriever retriever, int key, int fallback) {
+            String value = retriever.extractMetadata(key);
+            if (value == null) {
+                return fallback;
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.harish.player.wrapper;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaDataSource;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PlaybackEngine} backed by the native {@link android.media.MediaPlayer}.
+ */
+public final class MediaPlayerEngine implements PlaybackEngine,
+        MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnErrorListener,
+        MediaPlayer.OnInfoListener,
+        MediaPlayer.OnCompletionListener,
+        MediaPlayer.OnBufferingUpdateListener,
+        MediaPlayer.OnSeekCompleteListener {
+    private static final String TAG = MediaPlayerEngine.class.getSimpleName();
+
+    //Creates native backed engines, e.g. for the lazy construction of a Player.
+    public static final PlaybackEngine.Factory FACTORY = new PlaybackEngine.Factory() {
+        @Override
+        public PlaybackEngine create() {
+            return new MediaPlayerEngine();
+        }
+    };
+
+    //Native Player instance.
+    private final MediaPlayer mPlayer;
+
+    //Receiver of the native callbacks.
+    private volatile Callback mCallback;
+
+    /**
+     * Constructor.
+     */
+    public MediaPlayerEngine() {
+        mPlayer = new MediaPlayer();
+        mPlayer.setOnPreparedListener(this);
+        mPlayer.setOnErrorListener(this);
+        mPlayer.setOnInfoListener(this);
+        mPlayer.setOnCompletionListener(this);
+        mPlayer.setOnBufferingUpdateListener(this);
+        mPlayer.setOnSeekCompleteListener(this);
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        mPlayer.setDataSource(path);
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd) throws IOException {
+        mPlayer.setDataSource(fd);
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd, long offset, long length) throws IOException {
+        mPlayer.setDataSource(fd, offset, length);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    @Override
+    public void setDataSource(@NonNull AssetFileDescriptor afd) throws IOException {
+        mPlayer.setDataSource(afd);
+    }
+
+    @Override
+    public void setDataSource(@NonNull Context context, @NonNull Uri uri,
+                              @Nullable Map<String, String> headers) throws IOException {
+        mPlayer.setDataSource(context, uri, headers);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    @Override
+    public void setDataSource(@NonNull Context context, @NonNull Uri uri,
+                              @Nullable Map<String, String> headers,
+                              @Nullable List<HttpCookie> cookies) throws IOException {
+        mPlayer.setDataSource(context, uri, headers, cookies);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.M)
+    @Override
+    public void setDataSource(MediaDataSource dataSource) {
+        mPlayer.setDataSource(dataSource);
+    }
+
+    @Override
+    public void prepare() throws IOException {
+        mPlayer.prepare();
+    }
+
+    @Override
+    public void prepareAsync() {
+        mPlayer.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        mPlayer.start();
+    }
+
+    @Override
+    public void pause() {
+        mPlayer.pause();
+    }
+
+    @Override
+    public void stop() {
+        mPlayer.stop();
+    }
+
+    @Override
+    public void seekTo(long msec, int mode) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mPlayer.seekTo(msec, mode);
+        } else {
+            //Only previous sync frame seeks are available before Oreo.
+            mPlayer.seekTo((int) msec);
+        }
+    }
+
+    @Override
+    public void setNextEngine(@Nullable PlaybackEngine next) {
+        if (next != null && !(next instanceof MediaPlayerEngine)) {
+            throw new IllegalArgumentException("Can only hand off to a " + TAG + ", was " + next);
+        }
+        mPlayer.setNextMediaPlayer(next == null ? null : ((MediaPlayerEngine) next).mPlayer);
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mPlayer.isPlaying();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        return mPlayer.getDuration();
+    }
+
+    @Override
+    public int getAudioSessionId() {
+        return mPlayer.getAudioSessionId();
+    }
+
+    @Override
+    public void reset() {
+        mPlayer.reset();
+    }
+
+    @Override
+    public void release() {
+        mPlayer.release();
+    }
+
+    @Override
+    public void setCallback(@Nullable Callback callback) {
+        this.mCallback = callback;
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mediaPlayer) {
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onCompletion(this);
+        }
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+        Callback callback = mCallback;
+        return callback != null && callback.onError(this, what, extra);
+    }
+
+    @Override
+    public boolean onInfo(MediaPlayer mediaPlayer, int what, int extra) {
+        Callback callback = mCallback;
+        return callback != null && callback.onInfo(this, what, extra);
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer mediaPlayer) {
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onPrepared(this);
+        }
+    }
+
+    @Override
+    public void onBufferingUpdate(MediaPlayer mediaPlayer, int percent) {
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onBufferingUpdate(this, percent);
+        }
+    }
+
+    @Override
+    public void onSeekComplete(MediaPlayer mediaPlayer) {
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onSeekComplete(this);
+        }
+    }
+}
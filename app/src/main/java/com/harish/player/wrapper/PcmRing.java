@@ -0,0 +1,211 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated ring of PCM samples, written by a single producer and read by any number of consumers.
+ * <p>
+ * Samples are floats normalized to [-1, 1]. The producer claims the range it is about to overwrite,
+ * copies samples in, then publishes the new total count, without locking: a slow consumer never holds
+ * the producer back, it is overrun instead. Each consumer reads through its own {@link Reader}, either
+ * every sample in order, e.g. for a level meter, or the latest window, e.g. for a visualizer. Reads copy
+ * into caller owned arrays and check afterwards against the claim that the producer has not started
+ * overwriting what was copied, so neither side allocates nor blocks.
+ * <p>
+ * The check is a seqlock, which is only sound if a reader that loads a sample stored after a claim also
+ * sees that claim. Plain array stores give no such guarantee, so the samples are kept as the bits of
+ * their floats in an {@link AtomicIntegerArray}: the producer claims with a volatile store and stores
+ * the samples with release semantics ({@code lazySet}), readers load them with acquire semantics
+ * ({@code get}) before loading the claim. A sample stored after a claim thus carries the claim along,
+ * on any VM honouring the java.util.concurrent memory effects, without relying on the fences a
+ * particular VM happens to emit.
+ */
+public final class PcmRing {
+    private static final String TAG = PcmRing.class.getSimpleName();
+
+    //Raw bits of the samples, see the class comment.
+    private final AtomicIntegerArray mSamples;
+    private final int mCapacity;
+    private final int mMask;
+
+    //Total number of samples written, published after the samples themselves.
+    private final AtomicLong mWritten = new AtomicLong();
+
+    //Total number of samples the producer has started to write, claimed before the samples are stored.
+    private final AtomicLong mClaimed = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the number of samples kept, rounded up to a power of two.
+     */
+    public PcmRing(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mSamples = new AtomicIntegerArray(size);
+        mCapacity = size;
+        mMask = size - 1;
+    }
+
+    /**
+     * @return the number of samples kept.
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return total number of samples written.
+     */
+    public long getWrittenCount() {
+        return mWritten.get();
+    }
+
+    /**
+     * Appends samples. Only to be called by the single producer.
+     *
+     * @param samples the samples.
+     * @param offset  the offset of the first sample.
+     * @param count   the number of samples.
+     */
+    public void write(@NonNull float[] samples, int offset, int count) {
+        long written = claim(count);
+        if (count > mCapacity) {
+            //Only the tail survives.
+            written += count - mCapacity;
+            offset += count - mCapacity;
+            count = mCapacity;
+        }
+        for (int i = 0; i < count; i++) {
+            mSamples.lazySet((int) (written + i) & mMask, Float.floatToRawIntBits(samples[offset + i]));
+        }
+        mWritten.lazySet(written + count);
+    }
+
+    /**
+     * Appends unsigned 8-bit samples, as captured by {@link android.media.audiofx.Visualizer}, converting
+     * them in place. Only to be called by the single producer.
+     *
+     * @param samples the samples, 128 being silence.
+     * @param count   the number of samples.
+     */
+    public void writeUnsigned8(@NonNull byte[] samples, int count) {
+        long written = claim(count);
+        for (int i = Math.max(0, count - mCapacity); i < count; i++) {
+            float sample = ((samples[i] & 0xff) - 128) / 128f;
+            mSamples.lazySet((int) (written + i) & mMask, Float.floatToRawIntBits(sample));
+        }
+        mWritten.lazySet(written + count);
+    }
+
+    //Claims the next count samples ahead of storing them, returning the total written so far.
+    private long claim(int count) {
+        long written = mWritten.get();
+        mClaimed.set(written + count);
+        return written;
+    }
+
+    /**
+     * Creates a consumer, starting at the samples written from now on.
+     *
+     * @return the reader.
+     */
+    @NonNull
+    public Reader newReader() {
+        return new Reader(mWritten.get());
+    }
+
+    /**
+     * Consumer of a {@link PcmRing}, not thread safe: one reader per consuming thread.
+     */
+    public final class Reader {
+        private long mPosition;
+        private long mOverruns;
+
+        Reader(long position) {
+            this.mPosition = position;
+        }
+
+        /**
+         * Reads the next samples in order. If the producer has overrun this reader, it skips ahead to
+         * the oldest sample still kept.
+         *
+         * @param out    the array to copy the samples to.
+         * @param offset the offset of the first sample in the array.
+         * @param count  the maximum number of samples to read.
+         * @return the number of samples read, 0 if none is available.
+         */
+        public int read(@NonNull float[] out, int offset, int count) {
+            while (true) {
+                long written = mWritten.get();
+                long oldest = written - mCapacity;
+                if (mPosition < oldest) {
+                    mOverruns++;
+                    mPosition = oldest;
+                }
+                int available = (int) Math.min(count, written - mPosition);
+                if (available <= 0) {
+                    return 0;
+                }
+                if (copy(mPosition, out, offset, available)) {
+                    mPosition += available;
+                    return available;
+                }
+            }
+        }
+
+        /**
+         * Reads the latest samples, e.g. the window drawn by a visualizer. Samples read before may be read
+         * again, and the ones skipped are not read by {@link #read(float[], int, int)} afterwards.
+         *
+         * @param out the array to copy the window to, filled entirely.
+         * @return TRUE if a full window was available.
+         */
+        public boolean readLatest(@NonNull float[] out) {
+            if (out.length > mCapacity) {
+                throw new IllegalArgumentException("Window " + out.length + " exceeds capacity " + mCapacity);
+            }
+            while (true) {
+                long written = mWritten.get();
+                if (written < out.length) {
+                    return false;
+                }
+                if (copy(written - out.length, out, 0, out.length)) {
+                    mPosition = written;
+                    return true;
+                }
+            }
+        }
+
+        //Copies samples [from, from + count) into out, FALSE if the producer started overwriting any of them.
+        private boolean copy(long from, float[] out, int offset, int count) {
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = Float.intBitsToFloat(mSamples.get((int) (from + i) & mMask));
+            }
+            //Sample i is only overwritten once the claim reaches i + capacity.
+            return mClaimed.get() - mCapacity <= from;
+        }
+
+        /**
+         * @return number of samples available to {@link #read(float[], int, int)}, capped by the capacity.
+         */
+        public int available() {
+            return (int) Math.min(mCapacity, mWritten.get() - mPosition);
+        }
+
+        /**
+         * @return number of times the producer overran this reader.
+         */
+        public long getOverrunCount() {
+            return mOverruns;
+        }
+    }
+}
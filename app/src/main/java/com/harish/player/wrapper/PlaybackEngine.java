@@ -0,0 +1,129 @@
+package com.harish.player.wrapper;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaDataSource;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Playback engine driven by {@link Player}.
+ * <p>
+ * The default implementation is {@link MediaPlayerEngine} which delegates to the native
+ * {@link android.media.MediaPlayer}. Keeping the engine behind this interface allows the state
+ * handling of {@link Player} to run without the native layer, e.g. against {@code FakePlaybackEngine}.
+ * <p>
+ * Implementations report asynchronous events through the registered {@link Callback}, passing
+ * themselves as the source so that stale events of a replaced engine can be ignored.
+ */
+public interface PlaybackEngine {
+
+    //Seek modes, same values as android.media.MediaPlayer#SEEK_*.
+    int SEEK_PREVIOUS_SYNC = 0x00;  //Sync frame at or before the given position.
+    int SEEK_NEXT_SYNC = 0x01;      //Sync frame at or after the given position.
+    int SEEK_CLOSEST_SYNC = 0x02;   //Sync frame closest to the given position (fast).
+    int SEEK_CLOSEST = 0x03;        //Frame closest to the given position (precise).
+
+    void setDataSource(String path) throws IOException;
+
+    void setDataSource(FileDescriptor fd) throws IOException;
+
+    void setDataSource(FileDescriptor fd, long offset, long length) throws IOException;
+
+    @RequiresApi(Build.VERSION_CODES.N)
+    void setDataSource(@NonNull AssetFileDescriptor afd) throws IOException;
+
+    void setDataSource(@NonNull Context context, @NonNull Uri uri,
+                       @Nullable Map<String, String> headers) throws IOException;
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    void setDataSource(@NonNull Context context, @NonNull Uri uri,
+                       @Nullable Map<String, String> headers,
+                       @Nullable List<HttpCookie> cookies) throws IOException;
+
+    @RequiresApi(Build.VERSION_CODES.M)
+    void setDataSource(MediaDataSource dataSource);
+
+    void prepare() throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    /**
+     * Seeks to the given position.
+     *
+     * @param msec the offset in milliseconds from the start to seek to.
+     * @param mode one of the SEEK_* modes, engines which cannot honour it fall back to a sync frame,
+     *             e.g. {@link MediaPlayerEngine} seeks to {@link #SEEK_PREVIOUS_SYNC} before Android O.
+     */
+    void seekTo(long msec, int mode);
+
+    /**
+     * Sets the engine to start right when this one completes, for gapless playback.
+     *
+     * @param next a prepared engine of the same implementation, or null to clear it.
+     * @throws IllegalArgumentException if the engine cannot hand off to the given one.
+     */
+    void setNextEngine(@Nullable PlaybackEngine next);
+
+    boolean isPlaying();
+
+    int getCurrentPosition();
+
+    int getDuration();
+
+    /**
+     * @return the id of the audio session of this engine, e.g. to attach audio effects to.
+     */
+    int getAudioSessionId();
+
+    void reset();
+
+    void release();
+
+    /**
+     * Registers the callback receiving the asynchronous events of this engine.
+     *
+     * @param callback the callback, or null to stop receiving events.
+     */
+    void setCallback(@Nullable Callback callback);
+
+    /**
+     * Creates engines, e.g. for players constructed by {@link PlayerPool}.
+     */
+    interface Factory {
+        PlaybackEngine create();
+    }
+
+    /**
+     * Asynchronous events raised by a {@link PlaybackEngine}, mirroring the listeners
+     * of {@link android.media.MediaPlayer}.
+     */
+    interface Callback {
+        void onPrepared(PlaybackEngine engine);
+
+        void onCompletion(PlaybackEngine engine);
+
+        boolean onError(PlaybackEngine engine, int what, int extra);
+
+        boolean onInfo(PlaybackEngine engine, int what, int extra);
+
+        void onBufferingUpdate(PlaybackEngine engine, int percent);
+
+        void onSeekComplete(PlaybackEngine engine);
+    }
+}
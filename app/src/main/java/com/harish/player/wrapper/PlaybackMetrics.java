@@ -0,0 +1,433 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+import android.support.annotation.NonNull;
+
+/**
+ * Quality of experience metrics of a {@link Player}, registered through
+ * {@link Player#setPlaybackMetrics(PlaybackMetrics)}.
+ * <p>
+ * Every state transition is timestamped with a monotonic clock, from which the following are derived:
+ * <ul>
+ * <li>prepare latency, from {@link Player#STATE_PREPARING} until {@link Player#STATE_PREPARED}.</li>
+ * <li>time to first frame, from the first {@link Player#STATE_STARTED} of a session until
+ * {@link MediaPlayer#MEDIA_INFO_VIDEO_RENDERING_START}.</li>
+ * <li>rebuffer count and duration, between {@link MediaPlayer#MEDIA_INFO_BUFFERING_START} and
+ * {@link MediaPlayer#MEDIA_INFO_BUFFERING_END}.</li>
+ * <li>seek latency, as reported by {@link Player#seekTo(long, int)}.</li>
+ * <li>recovery attempts and time to recover, from the first attempt after an error until prepared
+ * again, see {@link Player#setRecoveryPolicy(RecoveryPolicy)}.</li>
+ * <li>engine construction time, and the time callers were blocked in setDataSource() and prepare(),
+ * in total and on the main thread.</li>
+ * <li>dwell time per state, as a histogram.</li>
+ * </ul>
+ * A session starts when a data source is set and ends on reset or release. Restores by
+ * {@link PlayerGovernor}, {@link StallWatchdog} or error recovery set the data source again, but carry
+ * the session on, e.g. the first frame is only measured once. Recording does not
+ * allocate, all storage is created up front. {@link #snapshot(Snapshot)} copies the metrics into a
+ * caller owned {@link Snapshot} which can be reused as well.
+ */
+public final class PlaybackMetrics {
+    private static final String TAG = PlaybackMetrics.class.getSimpleName();
+
+    //Number of states, from Player#STATE_UNKNOWN to Player#STATE_ENDED.
+    public static final int STATE_COUNT = Player.STATE_ENDED - Player.STATE_UNKNOWN + 1;
+
+    //Histogram buckets, bucket i holds durations in [2^(i-1), 2^i) milliseconds, the last one is open ended.
+    public static final int BUCKET_COUNT = 20;
+
+    //Not within a measured interval.
+    private static final long NONE = -1;
+
+    private final Clock mClock;
+
+    //Current state and the time it was entered.
+    private int mState = Player.STATE_UNKNOWN;
+    private long mStateSinceNanos = NONE;
+
+    //Start of the interval being measured, or NONE.
+    private long mPrepareStartNanos = NONE;
+    private long mFirstStartNanos = NONE;
+    private long mRebufferStartNanos = NONE;
+    private long mRecoveryStartNanos = NONE;
+    private boolean mFirstFrameRendered;
+
+    private final Stat mPrepare = new Stat();
+    private final Stat mFirstFrame = new Stat();
+    private final Stat mRebuffer = new Stat();
+    private final Stat mSeek = new Stat();
+    private final Stat mRecovery = new Stat();
+    private final Stat mEngineCreation = new Stat();
+    private final Stat mBlocking = new Stat();
+    private final Stat mMainThreadBlocking = new Stat();
+    private final Stat[] mDwell = new Stat[STATE_COUNT];
+
+    private long mSessions;
+    private long mRecoveryAttempts;
+    private long mRecoveryFailures;
+
+    /**
+     * Constructor, timestamping with {@link System#nanoTime()}.
+     */
+    public PlaybackMetrics() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param clock the monotonic clock to timestamp with.
+     */
+    public PlaybackMetrics(@NonNull Clock clock) {
+        this.mClock = clock;
+        for (int i = 0; i < STATE_COUNT; i++) {
+            mDwell[i] = new Stat();
+        }
+    }
+
+    /**
+     * Records a state transition.
+     */
+    public void onStateChanged(int from, int to) {
+        onStateChanged(from, to, false);
+    }
+
+    /**
+     * Records a state transition.
+     *
+     * @param restore TRUE if the transition is part of a restore, which carries the session on.
+     */
+    public synchronized void onStateChanged(int from, int to, boolean restore) {
+        long now = mClock.nanoTime();
+        if (mStateSinceNanos != NONE) {
+            mDwell[index(mState)].add(now - mStateSinceNanos);
+        }
+        mState = to;
+        mStateSinceNanos = now;
+
+        switch (to) {
+            case Player.STATE_INITIALIZED:
+                if (!restore) {
+                    mSessions++;
+                }
+                break;
+            case Player.STATE_PREPARING:
+                mPrepareStartNanos = now;
+                break;
+            case Player.STATE_PREPARED:
+                if (mPrepareStartNanos != NONE) {
+                    mPrepare.add(now - mPrepareStartNanos);
+                    mPrepareStartNanos = NONE;
+                }
+                break;
+            case Player.STATE_STARTED:
+                if (mFirstStartNanos == NONE && !mFirstFrameRendered) {
+                    mFirstStartNanos = now;
+                }
+                break;
+            case Player.STATE_IDLE:
+            case Player.STATE_ENDED:
+                if (!restore) {
+                    endSession(now);
+                }
+                break;
+            default:
+                break;
+        }
+        if (to != Player.STATE_STARTED && to != Player.STATE_PAUSED) {
+            //Buffering does not continue past playback.
+            endRebuffer(now);
+        }
+    }
+
+    /**
+     * Records an info/warning event.
+     */
+    public synchronized void onInfo(int what, int extra) {
+        long now = mClock.nanoTime();
+        switch (what) {
+            case MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START:
+                if (!mFirstFrameRendered && mFirstStartNanos != NONE) {
+                    mFirstFrame.add(now - mFirstStartNanos);
+                }
+                mFirstFrameRendered = true;
+                mFirstStartNanos = NONE;
+                break;
+            case MediaPlayer.MEDIA_INFO_BUFFERING_START:
+                if (mRebufferStartNanos == NONE) {
+                    mRebufferStartNanos = now;
+                }
+                break;
+            case MediaPlayer.MEDIA_INFO_BUFFERING_END:
+                endRebuffer(now);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Records a completed seek.
+     */
+    public synchronized void onSeekCompleted(long latencyNanos) {
+        mSeek.add(latencyNanos);
+    }
+
+    /**
+     * Records the construction of the engine of the player, which is part of the blocking call creating it.
+     *
+     * @param nanos time the construction took.
+     */
+    public synchronized void onEngineCreated(long nanos) {
+        mEngineCreation.add(nanos);
+    }
+
+    /**
+     * Records a blocking setDataSource() or prepare() call, including the construction of the engine if any.
+     *
+     * @param nanos      time the caller was blocked.
+     * @param mainThread TRUE if the caller runs on the main thread.
+     */
+    public synchronized void onBlockingCall(long nanos, boolean mainThread) {
+        mBlocking.add(nanos);
+        if (mainThread) {
+            mMainThreadBlocking.add(nanos);
+        }
+    }
+
+    /**
+     * Records a recovery attempt after an error.
+     *
+     * @param attempt the number of the attempt within the current recovery, starting at 1.
+     */
+    public synchronized void onRecoveryAttempt(int attempt) {
+        mRecoveryAttempts++;
+        if (attempt == 1 || mRecoveryStartNanos == NONE) {
+            mRecoveryStartNanos = mClock.nanoTime();
+        }
+    }
+
+    /**
+     * Records the end of a recovery, the player has been prepared again.
+     */
+    public synchronized void onRecovered() {
+        if (mRecoveryStartNanos != NONE) {
+            mRecovery.add(mClock.nanoTime() - mRecoveryStartNanos);
+            mRecoveryStartNanos = NONE;
+        }
+    }
+
+    /**
+     * Records a recovery given up after running out of attempts.
+     */
+    public synchronized void onRecoveryFailed() {
+        mRecoveryFailures++;
+        mRecoveryStartNanos = NONE;
+    }
+
+    /**
+     * Clears every metric, keeping the current state.
+     */
+    public synchronized void clear() {
+        mPrepare.clear();
+        mFirstFrame.clear();
+        mRebuffer.clear();
+        mSeek.clear();
+        mRecovery.clear();
+        mEngineCreation.clear();
+        mBlocking.clear();
+        mMainThreadBlocking.clear();
+        for (Stat stat : mDwell) {
+            stat.clear();
+        }
+        mSessions = 0;
+        mRecoveryAttempts = 0;
+        mRecoveryFailures = 0;
+        if (mStateSinceNanos != NONE) {
+            mStateSinceNanos = mClock.nanoTime();
+        }
+    }
+
+    /**
+     * Copies the metrics into the given snapshot, without allocating.
+     * The dwell time of the current state is included up to now.
+     *
+     * @param out the snapshot to be filled.
+     * @return the given snapshot.
+     */
+    public synchronized Snapshot snapshot(@NonNull Snapshot out) {
+        long now = mClock.nanoTime();
+        out.timestampNanos = now;
+        out.sessions = mSessions;
+        out.state = mState;
+        mPrepare.copyTo(out.prepare);
+        mFirstFrame.copyTo(out.firstFrame);
+        mRebuffer.copyTo(out.rebuffer);
+        mSeek.copyTo(out.seek);
+        mRecovery.copyTo(out.recovery);
+        mEngineCreation.copyTo(out.engineCreation);
+        mBlocking.copyTo(out.blocking);
+        mMainThreadBlocking.copyTo(out.mainThreadBlocking);
+        out.recoveryAttempts = mRecoveryAttempts;
+        out.recoveryFailures = mRecoveryFailures;
+        for (int i = 0; i < STATE_COUNT; i++) {
+            mDwell[i].copyTo(out.dwell[i]);
+        }
+        if (mStateSinceNanos != NONE) {
+            out.dwell[index(mState)].add(now - mStateSinceNanos);
+        }
+        if (mRebufferStartNanos != NONE) {
+            out.rebuffer.add(now - mRebufferStartNanos);
+        }
+        return out;
+    }
+
+    /**
+     * Hands a snapshot of the metrics to the given exporter, on the calling thread.
+     *
+     * @param exporter the exporter, e.g. an analytics uploader.
+     * @param scratch  the snapshot to be filled and handed over, reused by the caller.
+     */
+    public void export(@NonNull Exporter exporter, @NonNull Snapshot scratch) {
+        exporter.export(snapshot(scratch));
+    }
+
+    private void endSession(long now) {
+        mPrepareStartNanos = NONE;
+        mFirstStartNanos = NONE;
+        mFirstFrameRendered = false;
+        endRebuffer(now);
+    }
+
+    private void endRebuffer(long now) {
+        if (mRebufferStartNanos != NONE) {
+            mRebuffer.add(now - mRebufferStartNanos);
+            mRebufferStartNanos = NONE;
+        }
+    }
+
+    private static int index(int state) {
+        return state - Player.STATE_UNKNOWN;
+    }
+
+    /**
+     * Monotonic time source.
+     */
+    public interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        };
+
+        long nanoTime();
+    }
+
+    /**
+     * Receiver of exported snapshots.
+     */
+    public interface Exporter {
+        void export(Snapshot snapshot);
+    }
+
+    /**
+     * Count, total, maximum and histogram of a measured interval.
+     */
+    public static final class Stat {
+        public long count;
+        public long totalNanos;
+        public long maxNanos;
+        public long lastNanos;
+        public final long[] histogram = new long[BUCKET_COUNT];
+
+        void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            lastNanos = nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+            histogram[bucket(nanos)]++;
+        }
+
+        void clear() {
+            count = 0;
+            totalNanos = 0;
+            maxNanos = 0;
+            lastNanos = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                histogram[i] = 0;
+            }
+        }
+
+        void copyTo(Stat out) {
+            out.count = count;
+            out.totalNanos = totalNanos;
+            out.maxNanos = maxNanos;
+            out.lastNanos = lastNanos;
+            System.arraycopy(histogram, 0, out.histogram, 0, BUCKET_COUNT);
+        }
+
+        /**
+         * @return average of the measured intervals, in nanoseconds.
+         */
+        public long getAverageNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * @return upper bound of the histogram bucket, in milliseconds, or Long.MAX_VALUE for the last one.
+         */
+        public static long getBucketUpperBoundMs(int bucket) {
+            return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        private static int bucket(long nanos) {
+            long ms = nanos / 1_000_000;
+            int bucket = 64 - Long.numberOfLeadingZeros(ms);
+            return Math.min(bucket, BUCKET_COUNT - 1);
+        }
+    }
+
+    /**
+     * Point in time copy of the metrics.
+     */
+    public static final class Snapshot {
+        public long timestampNanos;
+        public long sessions;
+        public long recoveryAttempts;
+        public long recoveryFailures;
+        public int state;
+        public final Stat prepare = new Stat();
+        public final Stat firstFrame = new Stat();
+        public final Stat rebuffer = new Stat();
+        public final Stat seek = new Stat();
+        public final Stat recovery = new Stat();
+        public final Stat engineCreation = new Stat();
+        public final Stat blocking = new Stat();
+        public final Stat mainThreadBlocking = new Stat();
+        public final Stat[] dwell = new Stat[STATE_COUNT];
+
+        public Snapshot() {
+            for (int i = 0; i < STATE_COUNT; i++) {
+                dwell[i] = new Stat();
+            }
+        }
+
+        /**
+         * @return dwell time statistics of the given state.
+         */
+        public Stat getDwell(int state) {
+            return dwell[index(state)];
+        }
+
+        /**
+         * @return time spent rebuffering relative to the time spent in {@link Player#STATE_STARTED}.
+         */
+        public float getRebufferRatio() {
+            long started = getDwell(Player.STATE_STARTED).totalNanos;
+            return started == 0 ? 0f : (float) rebuffer.totalNanos / started;
+        }
+    }
+}
@@ -15,21 +15,24 @@ import java.io.IOException;
 import java.net.HttpCookie;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author HARISH.
  *         <p>
  *         Wraps the native {@link android.media.MediaPlayer} class.
  *         This class provides the current state of the player whether it is in preparing, buffering, idle, etc.
+ *         <p>
+ *         The native player is reached through a {@link PlaybackEngine}, {@link MediaPlayerEngine} by default.
+ *         <p>
+ *         Transitions are validated against {@link PlayerStateMachine}, calls which are illegal in the current
+ *         state are rejected with an {@link IllegalStateException} before they reach the engine. The state is
+ *         read without locking, control calls are serialised among themselves only so that the engine sees them
+ *         in the same order as the state does.
  * @see android.media.MediaPlayer for more information.
  * @since 18.07.2018
  */
-public final class Player implements MediaPlayer.OnPreparedListener,
-        MediaPlayer.OnErrorListener,
-        MediaPlayer.OnInfoListener,
-        MediaPlayer.OnCompletionListener,
-        MediaPlayer.OnBufferingUpdateListener,
-        MediaPlayer.OnSeekCompleteListener {
+public final class Player implements PlaybackEngine.Callback {
     private static final String TAG = Player.class.getSimpleName();
 
     //States.
@@ -45,26 +48,125 @@ public final class Player implements MediaPlayer.OnPreparedListener,
     public static final int STATE_COMPLETED = 7;    //Playback is completed, or if onError() not registered might have resulted in STATE_COMPLETED.
     public static final int STATE_ENDED = 8;        //After calling #release(), all resources are released and state ends here.
 
-    //Native Player instance.
-    private MediaPlayer mPlayer;
+    //Seek modes.
+    public static final int SEEK_MODE_FAST = PlaybackEngine.SEEK_CLOSEST_SYNC;     //Closest sync frame, cheap to decode.
+    public static final int SEEK_MODE_PRECISE = PlaybackEngine.SEEK_CLOSEST;       //Closest frame, Android O onwards.
+
+    //No pending seek.
+    private static final long NO_SEEK = -1;
+
+    //Restores, after a demotion by PlayerGovernor or an error handled by the RecoveryPolicy.
+    private static final int RESTORE_NONE = 0;
+    private static final int RESTORE_FROM_STOP = 1;
+    private static final int RESTORE_FROM_RESET = 2;
+    private static final int RESTORE_FROM_ERROR = 3;
+
+    //Playback engine, wrapping the native player instance. Created on the first data source if
+    //the player was constructed with a factory, written under mLock.
+    private volatile PlaybackEngine mEngine;
+    private final PlaybackEngine.Factory mEngineFactory;
 
-    //Current player state.
-    private int mCurrentState = STATE_UNKNOWN;
+    //Current player state, also written from the callback thread of the engine.
+    private final AtomicInteger mCurrentState = new AtomicInteger(STATE_UNKNOWN);
+
+    //Serialises the control calls, never taken on the read path. On the callback path it is only taken by
+    //onSeekComplete(), onCompletion(), onPrepared() and onError(), to issue the pending seek, hand off to the
+    //next player, and restore a demoted or failed player.
+    private final Object mLock = new Object();
+
+    //Seek tracking, guarded by mLock. At most one seek is in flight on the engine and one is pending.
+    private boolean mSeekInFlight;
+    private long mSeekInFlightRequestNanos;
+    private long mPendingSeekMs = NO_SEEK;
+    private int mPendingSeekMode;
+    private long mPendingSeekRequestNanos;
+    private int mSupersededSeeks;
 
     //Listeners.
-    private PlayerPreparationListener mPreparedListener;
-    private PlayerBufferingUpdateListener mBufferingUpdateListener;
-    private PlaybackCompletionListener mCompletionListener;
-    private PlayerSeekCompletionListener mSeekCompletionListener;
-    private PlayerInfoListener mInfoListener;
-    private PlayerErrorListener mErrorListener;
+    private volatile PlayerPreparationListener mPreparedListener;
+    private volatile PlayerBufferingUpdateListener mBufferingUpdateListener;
+    private volatile PlaybackCompletionListener mCompletionListener;
+    private volatile PlayerSeekCompletionListener mSeekCompletionListener;
+    private volatile PlayerInfoListener mInfoListener;
+    private volatile PlayerErrorListener mErrorListener;
+    private volatile PlayerSeekLatencyListener mSeekLatencyListener;
+
+    //Events for any number of subscribers, next to the single listeners above.
+    private final PlayerEventBus mEventBus = new PlayerEventBus();
+
+    //Player started by the engine when this one completes, guarded by mLock.
+    private Player mNextPlayer;
+
+    //Optional metrics recorder, fed from the transitions and callbacks.
+    private volatile PlaybackMetrics mMetrics;
+
+    //Optional trace recorder of every call and callback, and the id of this player within it.
+    private volatile TraceRecorder mTraceRecorder;
+    private volatile int mTraceId;
+
+    //Data source last set, to set it again when restoring from a reset. Written under mLock.
+    private volatile DataSourceSpec mDataSource;
+
+    //Metadata known ahead of preparation, valid while its location is the one of the data source.
+    private volatile MediaIndex.Metadata mMetadataHint;
+
+    //Pending restore and the position to restore, written under mLock. A demoted player restores
+    //itself on the next start(), prepare() or prepareAsync(), a failed one when the retry is due.
+    private volatile int mRestore = RESTORE_NONE;
+    private volatile long mRestorePositionMs;
+    private boolean mStartWhenRestored;
+
+    //Set, under mLock, while a restore takes the player through idle and initialized again, which the
+    //metrics do not count as the end of a session and the start of a new one.
+    private volatile boolean mRestoreTransition;
+
+    //Last position read from the engine or requested by a seek, the engine cannot be asked after an error.
+    private volatile long mLastPositionMs;
+
+    //Optional error recovery, with the attempts of the current recovery guarded by mLock.
+    //The generation is bumped by reset() and release(), cancelling a scheduled retry or a
+    //synchronous prepare() in progress.
+    private volatile RecoveryPolicy mRecoveryPolicy;
+    private int mRecoveryAttempts;
+    private int mRecoveryGeneration;
 
     /**
-     * Constructor.
+     * Constructor, backed by the native {@link android.media.MediaPlayer}. The native player is only
+     * created on the first setDataSource(), which is best called off the main thread,
+     * see {@link PlayerPreparer}.
      */
     public Player() {
-        mPlayer = new MediaPlayer();
-        mCurrentState = STATE_IDLE;
+        this(MediaPlayerEngine.FACTORY);
+    }
+
+    /**
+     * Constructor, creating the engine lazily on the first setDataSource().
+     *
+     * @param engineFactory creates the playback engine to drive.
+     */
+    public Player(@NonNull PlaybackEngine.Factory engineFactory) {
+        mEngineFactory = engineFactory;
+        init();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param engine the playback engine to drive.
+     */
+    public Player(@NonNull PlaybackEngine engine) {
+        mEngineFactory = null;
+        mEngine = engine;
+        mEngine.setCallback(this);
+        init();
+    }
+
+    private void init() {
+        mCurrentState.set(STATE_IDLE);
+        PlayerGovernor governor = PlayerGovernor.getInstance();
+        if (governor != null) {
+            governor.track(this);
+        }
     }
 
     /**
@@ -84,30 +186,548 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * {@link #STATE_UNKNOWN}
      */
     public int getCurrentState() {
-        return mCurrentState;
+        return mCurrentState.get();
+    }
+
+    /**
+     * Moves to the given state if the transition is legal from the current state.
+     * Used on the callback path, where a stale event must not override a newer state.
+     *
+     * @param state The new player state.
+     * @return TRUE if the state was changed, FALSE if the transition is illegal.
+     */
+    private boolean setCurrentState(int state) {
+        while (true) {
+            int from = mCurrentState.get();
+            if (!PlayerStateMachine.canTransition(from, state)) {
+                return false;
+            }
+            if (compareAndSetState(from, state)) {
+                onStateChanged(from, state);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claims a transition before the call reaches the engine, so that callbacks raised from
+     * within the call already see the new state.
+     *
+     * @param call  name of the control call, for the error message.
+     * @param state the state the call leads to.
+     * @return the state the transition started from, to be passed to {@link #rollback(int, int)}.
+     * @throws IllegalStateException if the call is illegal in the current state.
+     */
+    private int beginTransition(String call, int state) {
+        while (true) {
+            int from = mCurrentState.get();
+            if (!PlayerStateMachine.canTransition(from, state)) {
+                throw new IllegalStateException(call + "() called in state " + from);
+            }
+            if (compareAndSetState(from, state)) {
+                onStateChanged(from, state);
+                return from;
+            }
+        }
+    }
+
+    /**
+     * Restores the state claimed by {@link #beginTransition(String, int)} after the engine
+     * rejected the call, unless a callback has moved the state on meanwhile.
+     */
+    private void rollback(int from, int state) {
+        if (compareAndSetState(state, from)) {
+            onStateChanged(state, from);
+        }
+    }
+
+    //Records a control call on arrival, before it is checked against the state.
+    private void trace(int op, long arg1, long arg2) {
+        TraceRecorder recorder = mTraceRecorder;
+        if (recorder != null) {
+            recorder.record(mTraceId, op, mCurrentState.get(), arg1, arg2);
+        }
+    }
+
+    //Records an engine callback on arrival, including the stale ones which are dropped.
+    private void traceCallback(PlaybackEngine engine, int op, long arg1, long arg2) {
+        TraceRecorder recorder = mTraceRecorder;
+        if (recorder != null) {
+            int flags = engine != mEngine ? TraceRecorder.FLAG_STALE : 0;
+            recorder.record(mTraceId, op | flags, mCurrentState.get(), arg1, arg2);
+        }
+    }
+
+    /**
+     * Changes the current state, recording the transition in the metrics if any. The metrics are
+     * recorded by the winner of the change while holding their lock, so that racing transitions are
+     * recorded in the order they took effect, and dwell times add up.
+     *
+     * @return TRUE if the state was changed, FALSE if it was not the expected one anymore.
+     */
+    private boolean compareAndSetState(int from, int to) {
+        PlaybackMetrics metrics = mMetrics;
+        if (metrics == null) {
+            return mCurrentState.compareAndSet(from, to);
+        }
+        synchronized (metrics) {
+            if (!mCurrentState.compareAndSet(from, to)) {
+                return false;
+            }
+            if (from != to) {
+                metrics.onStateChanged(from, to, mRestoreTransition);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Called after every change of the current state, on the thread which made it. Events of racing
+     * transitions may be published out of order, listeners needing the latest state read it.
+     */
+    private void onStateChanged(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        mEventBus.publish(PlayerEventBus.EVENT_STATE_CHANGED, from, to);
+    }
+
+    private void issueSeekLocked(long msec, int mode, long requestNanos) {
+        //Set before the call, the engine may complete the seek before seekTo() returns.
+        mSeekInFlight = true;
+        mSeekInFlightRequestNanos = requestNanos;
+        mEventBus.publish(PlayerEventBus.EVENT_SEEK_STARTED, msec, mode);
+        try {
+            mEngine.seekTo(msec, mode);
+        } catch (RuntimeException e) {
+            clearSeeksLocked();
+            throw e;
+        }
+    }
+
+    private void clearSeeksLocked() {
+        mSeekInFlight = false;
+        mPendingSeekMs = NO_SEEK;
+        mSupersededSeeks = 0;
+    }
+
+    private void onDataSourceSetLocked(DataSourceSpec dataSource, long startNanos) {
+        mDataSource = dataSource;
+        mRestore = RESTORE_NONE;
+        onBlockingCallEnded(startNanos);
+    }
+
+    /**
+     * @return TRUE if the player has an engine, or creates one on the first data source.
+     */
+    private boolean hasEngine() {
+        return mEngine != null || mEngineFactory != null;
+    }
+
+    /**
+     * Returns the engine, creating it on first use if it is created lazily.
+     */
+    private PlaybackEngine engineLocked() {
+        PlaybackEngine engine = mEngine;
+        if (engine == null) {
+            long startNanos = System.nanoTime();
+            engine = mEngineFactory.create();
+            engine.setCallback(this);
+            mEngine = engine;
+            PlaybackMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.onEngineCreated(System.nanoTime() - startNanos);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Records the time the caller was blocked in a setDataSource() or prepare() call.
+     */
+    private void onBlockingCallEnded(long startNanos) {
+        PlaybackMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onBlockingCall(System.nanoTime() - startNanos, PlayerHelper.isMainThread());
+        }
+    }
+
+    /**
+     * Sets the data source of a player being restored from a reset again, ahead of preparing it.
+     */
+    private void restoreDataSourceLocked() {
+        if (mRestore == RESTORE_NONE || mRestore == RESTORE_FROM_STOP || mCurrentState.get() != STATE_IDLE) {
+            return;
+        }
+        int from;
+        mRestoreTransition = true;
+        try {
+            from = beginTransition("setDataSource", STATE_INITIALIZED);
+        } finally {
+            mRestoreTransition = false;
+        }
+        try {
+            mDataSource.apply(mEngine);
+        } catch (IOException | RuntimeException e) {
+            rollback(from, STATE_INITIALIZED);
+            throw new IllegalStateException("Could not restore the data source", e);
+        }
+    }
+
+    /**
+     * Resets the player ahead of setting its data source again, the session carries on.
+     */
+    private void resetForRestoreLocked() {
+        mRestoreTransition = true;
+        try {
+            reset();
+        } finally {
+            mRestoreTransition = false;
+        }
+    }
+
+    /**
+     * Completes the restore of a demoted or failed player once it is prepared again: seeks back to the
+     * saved position and resumes playback if it was playing, or if start() was called meanwhile.
+     *
+     * @return TRUE if the player was being restored.
+     */
+    private boolean onRestoredLocked() {
+        if (mRestore == RESTORE_NONE) {
+            return false;
+        }
+        if (mRestore == RESTORE_FROM_ERROR) {
+            mRecoveryAttempts = 0;
+            PlaybackMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.onRecovered();
+            }
+        }
+        mRestore = RESTORE_NONE;
+        if (mRestorePositionMs > 0) {
+            seekTo(mRestorePositionMs);
+        }
+        if (mStartWhenRestored) {
+            mStartWhenRestored = false;
+            start();
+        }
+        return true;
+    }
+
+    /**
+     * Moves the player one step down to free its resources, called by {@link PlayerGovernor}:
+     * playing to paused, prepared, paused or completed to stopped, and stopped to reset.
+     * The position is saved, and the next start(), prepare() or prepareAsync() restores it.
+     * Stopped players are only reset if their data source can be set again.
+     *
+     * @return TRUE if the player was demoted.
+     */
+    boolean demote() {
+        if (mEngine == null) {
+            return false;
+        }
+        synchronized (mLock) {
+            int state = mCurrentState.get();
+            if (mRestore != RESTORE_NONE && state != STATE_STOPPED) {
+                //Being restored.
+                return false;
+            }
+            switch (state) {
+                case STATE_STARTED:
+                    pause();
+                    return true;
+                case STATE_PREPARED:
+                case STATE_PAUSED:
+                case STATE_COMPLETED:
+                    long position;
+                    if (state == STATE_COMPLETED) {
+                        position = 0;
+                    } else if (mPendingSeekMs != NO_SEEK) {
+                        position = mPendingSeekMs;
+                    } else {
+                        position = mEngine.getCurrentPosition();
+                    }
+                    stop();
+                    mRestorePositionMs = position;
+                    mStartWhenRestored = false;
+                    mRestore = RESTORE_FROM_STOP;
+                    return true;
+                case STATE_STOPPED:
+                    if (mDataSource == null || !mDataSource.isReusable()) {
+                        return false;
+                    }
+                    //Stopped by the caller, playback starts from the beginning again.
+                    long restorePosition = mRestore == RESTORE_FROM_STOP ? mRestorePositionMs : 0;
+                    resetForRestoreLocked();
+                    mRestorePositionMs = restorePosition;
+                    mStartWhenRestored = false;
+                    mRestore = RESTORE_FROM_RESET;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Resets the player and prepares its data source again, called by {@link StallWatchdog} when the
+     * engine hangs. Once prepared, the position is restored and playback resumes if it was playing.
+     *
+     * @return TRUE if the player is being restarted, FALSE if its data source cannot be set again.
+     */
+    boolean restart() {
+        if (mEngine == null) {
+            return false;
+        }
+        synchronized (mLock) {
+            int state = mCurrentState.get();
+            if (state == STATE_IDLE || state == STATE_ENDED || mDataSource == null || !mDataSource.isReusable()) {
+                return false;
+            }
+            long position;
+            boolean start;
+            if (mRestore != RESTORE_NONE) {
+                //Hung while being restored, keep what the restore was heading for.
+                position = mRestorePositionMs;
+                start = mStartWhenRestored;
+            } else {
+                position = mPendingSeekMs != NO_SEEK ? mPendingSeekMs : mLastPositionMs;
+                start = state == STATE_STARTED;
+            }
+            resetForRestoreLocked();
+            mRestorePositionMs = position;
+            mStartWhenRestored = start;
+            mRestore = RESTORE_FROM_RESET;
+            prepareAsync();
+            return true;
+        }
+    }
+
+    /**
+     * @return TRUE if a seek has been issued to the engine and has not completed yet.
+     */
+    boolean isSeekInFlight() {
+        synchronized (mLock) {
+            return mSeekInFlight;
+        }
+    }
+
+    /**
+     * @return TRUE if the player has been stopped or reset by {@link PlayerGovernor} and restores itself
+     * on the next start(), prepare() or prepareAsync().
+     */
+    public boolean isDemoted() {
+        int restore = mRestore;
+        return restore == RESTORE_FROM_STOP || restore == RESTORE_FROM_RESET;
+    }
+
+    /**
+     * @return the path or Uri of the data source last set, or null if none or if it is not addressable.
+     */
+    @Nullable
+    String getDataSourceLocation() {
+        DataSourceSpec dataSource = mDataSource;
+        return dataSource != null ? dataSource.getLocation() : null;
+    }
+
+    /**
+     * Sets metadata of the current data source known ahead of preparation, e.g. from {@link MediaIndex},
+     * so that the duration and the video size can be laid out before the player is prepared.
+     *
+     * @param hint the metadata of the data source, ignored once another data source is set.
+     */
+    public void setMetadataHint(@Nullable MediaIndex.Metadata hint) {
+        this.mMetadataHint = hint;
+    }
+
+    /**
+     * @return the metadata hint of the current data source, or null if none.
+     */
+    @Nullable
+    public MediaIndex.Metadata getMetadataHint() {
+        MediaIndex.Metadata hint = mMetadataHint;
+        return hint != null && hint.location.equals(getDataSourceLocation()) ? hint : null;
+    }
+
+    /**
+     * @return TRUE if the player is recovering from an error, see {@link #setRecoveryPolicy(RecoveryPolicy)}.
+     */
+    public boolean isRecovering() {
+        return mRestore == RESTORE_FROM_ERROR;
     }
 
     /**
-     * Sets the current state.
+     * Schedules the next recovery attempt after an error, if the policy allows it.
+     * The position and whether playback resumes are taken when the first attempt is scheduled.
      *
-     * @param mCurrentState The current player state.
+     * @param from the state the error interrupted.
+     * @return TRUE if an attempt has been scheduled, FALSE if the error is left to the error listener.
+     */
+    private boolean scheduleRecoveryLocked(int from, int what, int extra) {
+        RecoveryPolicy policy = mRecoveryPolicy;
+        if (policy == null || mDataSource == null || !mDataSource.isReusable()
+                || !policy.isRecoverable(what, extra)) {
+            return false;
+        }
+        PlaybackMetrics metrics = mMetrics;
+        if (mRecoveryAttempts >= policy.getMaxAttempts()) {
+            //Out of budget, given up.
+            mRestore = RESTORE_NONE;
+            mRecoveryAttempts = 0;
+            mStartWhenRestored = false;
+            if (metrics != null) {
+                metrics.onRecoveryFailed();
+            }
+            return false;
+        }
+        if (mRestore == RESTORE_NONE) {
+            mRestorePositionMs = errorPositionLocked(from);
+            mStartWhenRestored = from == STATE_STARTED;
+        }
+        mRestore = RESTORE_FROM_ERROR;
+        long delayMs = policy.getDelayMs(mRecoveryAttempts);
+        mRecoveryAttempts++;
+        if (metrics != null) {
+            metrics.onRecoveryAttempt(mRecoveryAttempts);
+        }
+        final int generation = mRecoveryGeneration;
+        policy.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                recover(generation);
+            }
+        }, delayMs);
+        return true;
+    }
+
+    //Position the error interrupted. The last one read through getCurrentPosition() may be stale, the
+    //engine is asked first, falling back to the last one if it rejects the call in its error state.
+    private long errorPositionLocked(int from) {
+        if (mPendingSeekMs != NO_SEEK) {
+            return mPendingSeekMs;
+        }
+        if (from == STATE_PREPARED || from == STATE_STARTED || from == STATE_PAUSED) {
+            try {
+                return mEngine.getCurrentPosition();
+            } catch (IllegalStateException e) {
+                //Falls back to the last position read.
+            }
+        }
+        return mLastPositionMs;
+    }
+
+    /**
+     * Recovery attempt: resets the player, sets the data source again and prepares it. Once prepared,
+     * the saved position is restored by {@link #onRestoredLocked()}.
      */
-    private void setCurrentState(int mCurrentState) {
-        this.mCurrentState = mCurrentState;
+    private void recover(int generation) {
+        boolean failed = false;
+        synchronized (mLock) {
+            if (generation != mRecoveryGeneration || mRestore != RESTORE_FROM_ERROR
+                    || mCurrentState.get() != STATE_ERROR) {
+                //Cancelled by reset() or release() meanwhile.
+                return;
+            }
+            long position = mRestorePositionMs;
+            boolean start = mStartWhenRestored;
+            int attempts = mRecoveryAttempts;
+            resetForRestoreLocked();
+            mRestorePositionMs = position;
+            mStartWhenRestored = start;
+            mRecoveryAttempts = attempts;
+            mRestore = RESTORE_FROM_ERROR;
+            try {
+                prepareAsync();
+            } catch (RuntimeException e) {
+                //Data source failed again, counted as a failed attempt.
+                int from = mCurrentState.get();
+                if (setCurrentState(STATE_ERROR)) {
+                    failed = !scheduleRecoveryLocked(from, MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+                }
+            }
+        }
+        if (failed) {
+            //Given up, reported as an error of the engine would be.
+            mEventBus.publish(PlayerEventBus.EVENT_ERROR, MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+            PlayerErrorListener listener = mErrorListener;
+            if (listener != null) {
+                listener.onError(MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+            }
+        }
     }
 
     /**
      * Checks whether the MediaPlayer is playing.
      *
-     * @return true if currently playing, false otherwise
-     * @throws IllegalStateException if the internal player engine has not been
-     *                               initialized or has been released.
+     * @return true if currently playing, false otherwise, also before the engine has been created.
+     * @throws IllegalStateException if the player has been released.
      */
     public boolean isPlaying() throws IllegalStateException {
-        if (mPlayer != null) {
-            return mPlayer.isPlaying();
+        if (mEngine != null) {
+            return mEngine.isPlaying();
+        }
+        checkNotEnded();
+        return false;
+    }
+
+    /**
+     * Gets the current playback position.
+     *
+     * @return the current position in milliseconds, 0 before the engine has been created.
+     * @throws IllegalStateException if the player has been released.
+     */
+    public int getCurrentPosition() throws IllegalStateException {
+        if (mEngine != null) {
+            if (mRestore != RESTORE_NONE) {
+                return (int) mRestorePositionMs;
+            }
+            int position = mEngine.getCurrentPosition();
+            mLastPositionMs = position;
+            return position;
         }
-        throw new IllegalStateException("Player engine not initialized or has been released!");
+        checkNotEnded();
+        return 0;
+    }
+
+    /**
+     * Gets the duration of the file. Before the player is prepared, the duration of the metadata hint
+     * is returned if any, see {@link #setMetadataHint(MediaIndex.Metadata)}.
+     *
+     * @return the duration in milliseconds, if no duration is available
+     * (for example, if streaming live content) or the engine has not been created, -1 is returned.
+     * @throws IllegalStateException if the player has been released.
+     */
+    public int getDuration() throws IllegalStateException {
+        if (mEngine != null) {
+            int state = getCurrentState();
+            if (state == STATE_INITIALIZED || state == STATE_PREPARING) {
+                //The engine cannot tell before it is prepared.
+                MediaIndex.Metadata hint = getMetadataHint();
+                if (hint != null && hint.durationMs >= 0) {
+                    return hint.durationMs;
+                }
+            }
+            return mEngine.getDuration();
+        }
+        checkNotEnded();
+        return -1;
+    }
+
+    //The engine is only missing before the first data source of a lazily created one, or after release().
+    private void checkNotEnded() {
+        if (mCurrentState.get() == STATE_ENDED) {
+            throw new IllegalStateException("Player has been released!");
+        }
+    }
+
+    /**
+     * Gets the audio session id of the player, e.g. to attach a Visualizer or an audio effect to.
+     *
+     * @return the audio session id, 0 if the engine has not been created yet.
+     */
+    public int getAudioSessionId() {
+        PlaybackEngine engine = mEngine;
+        return engine != null ? engine.getAudioSessionId() : 0;
     }
 
     /**
@@ -123,11 +743,21 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *                               As an alternative, the application could first open the file for reading,
      *                               and then use the file descriptor form.
      */
-    public synchronized void setDataSource(String path)
+    public void setDataSource(String path)
             throws IOException, IllegalArgumentException, SecurityException, IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(path);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(path);
+                } catch (IOException | RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(path), startNanos);
+            }
         }
     }
 
@@ -138,20 +768,40 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * @param fd the FileDescriptor for the file you want to play
      * @throws IllegalStateException if it is called in an invalid state
      */
-    public synchronized void setDataSource(FileDescriptor fd)
+    public void setDataSource(FileDescriptor fd)
             throws IOException, IllegalArgumentException, IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(fd);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(fd);
+                } catch (IOException | RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(fd), startNanos);
+            }
         }
     }
 
     @RequiresApi(Build.VERSION_CODES.N)
-    public synchronized void setDataSource(@NonNull AssetFileDescriptor afd)
+    public void setDataSource(@NonNull AssetFileDescriptor afd)
             throws IOException, IllegalArgumentException, IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(afd);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(afd);
+                } catch (IOException | RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(afd), startNanos);
+            }
         }
     }
 
@@ -162,11 +812,21 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * @param uri     the Content URI of the data you want to play
      * @throws IllegalStateException if it is called in an invalid state
      */
-    public synchronized void setDataSource(@NonNull Context context, @NonNull Uri uri)
+    public void setDataSource(@NonNull Context context, @NonNull Uri uri)
             throws IOException, IllegalArgumentException, SecurityException, IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(context, uri);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(context, uri, null);
+                } catch (IOException | RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(context, uri, null), startNanos);
+            }
         }
     }
 
@@ -178,11 +838,21 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * @throws IllegalStateException    if it is called in an invalid state
      */
     @RequiresApi(Build.VERSION_CODES.M)
-    public synchronized void setDataSource(MediaDataSource dataSource)
+    public void setDataSource(MediaDataSource dataSource)
             throws IllegalArgumentException, IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(dataSource);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(dataSource);
+                } catch (RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(dataSource), startNanos);
+            }
         }
     }
 
@@ -198,13 +868,23 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *                to disallow or allow cross domain redirection.
      * @throws IllegalStateException if it is called in an invalid state
      */
-    public synchronized void setDataSource(@NonNull Context context, @NonNull Uri uri,
+    public void setDataSource(@NonNull Context context, @NonNull Uri uri,
                                            @Nullable Map<String, String> headers)
             throws IOException, IllegalArgumentException,
             SecurityException, IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(context, uri, headers);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(context, uri, headers);
+                } catch (IOException | RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(context, uri, headers), startNanos);
+            }
         }
     }
 
@@ -218,11 +898,21 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * @param length the length in bytes of the data to be played
      * @throws IllegalStateException if it is called in an invalid state
      */
-    public synchronized void setDataSource(FileDescriptor fd, long offset, long length)
+    public void setDataSource(FileDescriptor fd, long offset, long length)
             throws IOException, IllegalArgumentException, IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(fd, offset, length);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(fd, offset, length);
+                } catch (IOException | RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(fd), startNanos);
+            }
         }
     }
 
@@ -239,26 +929,72 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * @throws IllegalStateException if it is called in an invalid state
      */
     @RequiresApi(Build.VERSION_CODES.O)
-    public synchronized void setDataSource(@NonNull Context context, @NonNull Uri uri,
+    public void setDataSource(@NonNull Context context, @NonNull Uri uri,
                                            @Nullable Map<String, String> headers,
                                            @Nullable List<HttpCookie> cookies)
             throws IOException {
-        if (mPlayer != null) {
-            mPlayer.setDataSource(context, uri, headers, cookies);
-            setCurrentState(STATE_INITIALIZED);
+        trace(TraceRecorder.OP_SET_DATA_SOURCE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("setDataSource", STATE_INITIALIZED);
+                long startNanos = System.nanoTime();
+                try {
+                    engineLocked().setDataSource(context, uri, headers, cookies);
+                } catch (IOException | RuntimeException e) {
+                    rollback(from, STATE_INITIALIZED);
+                    throw e;
+                }
+                onDataSourceSetLocked(DataSourceSpec.of(context, uri, headers, cookies), startNanos);
+            }
         }
     }
 
     /**
-     * Prepares the player for playback, synchronously.
+     * Prepares the player for playback, synchronously. Other calls are not blocked meanwhile, a reset()
+     * or release() from another thread abandons the preparation and this call returns without error.
      *
      * @throws IllegalStateException if it is called in an invalid state
      */
-    public synchronized void prepare() throws IOException, IllegalStateException {
-        if (mPlayer != null) {
-            //Waiting call, hence setting state before calling prepare() on the parent class.
-            setCurrentState(STATE_PREPARING);
-            mPlayer.prepare();
+    public void prepare() throws IOException, IllegalStateException {
+        trace(TraceRecorder.OP_PREPARE, 0, 0);
+        if (hasEngine()) {
+            PlaybackEngine engine;
+            int from;
+            int generation;
+            synchronized (mLock) {
+                restoreDataSourceLocked();
+                //Waiting call, hence setting state before calling prepare() on the engine.
+                from = beginTransition("prepare", STATE_PREPARING);
+                engine = mEngine;
+                generation = mRecoveryGeneration;
+            }
+            //Not holding mLock while blocked, so that reset(), release() or pause() on another thread
+            //return right away instead of waiting for the preparation to finish.
+            long startNanos = System.nanoTime();
+            try {
+                engine.prepare();
+            } catch (IOException | RuntimeException e) {
+                synchronized (mLock) {
+                    if (generation != mRecoveryGeneration) {
+                        //Abandoned by reset() or release() meanwhile, which is why the engine failed.
+                        return;
+                    }
+                    rollback(from, STATE_PREPARING);
+                }
+                throw e;
+            }
+            onBlockingCallEnded(startNanos);
+            synchronized (mLock) {
+                if (generation != mRecoveryGeneration) {
+                    return;
+                }
+                //The engine raises onPrepared() within or after prepare(), whichever of both makes the
+                //transition notifies.
+                if (!setCurrentState(STATE_PREPARED) || onRestoredLocked()) {
+                    return;
+                }
+            }
+            notifyPrepared();
         }
     }
 
@@ -267,10 +1003,19 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @throws IllegalStateException if it is called in an invalid state
      */
-    public synchronized void prepareAsync() throws IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.prepareAsync();
-            setCurrentState(STATE_PREPARING);
+    public void prepareAsync() throws IllegalStateException {
+        trace(TraceRecorder.OP_PREPARE_ASYNC, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                restoreDataSourceLocked();
+                int from = beginTransition("prepareAsync", STATE_PREPARING);
+                try {
+                    mEngine.prepareAsync();
+                } catch (RuntimeException e) {
+                    rollback(from, STATE_PREPARING);
+                    throw e;
+                }
+            }
         }
     }
 
@@ -282,10 +1027,26 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @throws IllegalStateException if it is called in an invalid state
      */
-    public synchronized void start() throws IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.start();
-            setCurrentState(STATE_STARTED);
+    public void start() throws IllegalStateException {
+        trace(TraceRecorder.OP_START, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                if (mRestore != RESTORE_NONE) {
+                    //Started once prepared again.
+                    mStartWhenRestored = true;
+                    if (mRestore != RESTORE_FROM_ERROR && mCurrentState.get() != STATE_PREPARING) {
+                        prepareAsync();
+                    }
+                    return;
+                }
+                int from = beginTransition("start", STATE_STARTED);
+                try {
+                    mEngine.start();
+                } catch (RuntimeException e) {
+                    rollback(from, STATE_STARTED);
+                    throw e;
+                }
+            }
         }
     }
 
@@ -295,10 +1056,26 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * @throws IllegalStateException if the internal player engine has not been
      *                               initialized.
      */
-    public synchronized void stop() throws IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.stop();
-            setCurrentState(STATE_STOPPED);
+    public void stop() throws IllegalStateException {
+        trace(TraceRecorder.OP_STOP, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                if (mRestore != RESTORE_NONE) {
+                    //Already stopped, the next restore starts from the beginning.
+                    mStartWhenRestored = false;
+                    mRestorePositionMs = 0;
+                    return;
+                }
+                int from = beginTransition("stop", STATE_STOPPED);
+                clearSeeksLocked();
+                mNextPlayer = null;
+                try {
+                    mEngine.stop();
+                } catch (RuntimeException e) {
+                    rollback(from, STATE_STOPPED);
+                    throw e;
+                }
+            }
         }
     }
 
@@ -308,10 +1085,114 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * @throws IllegalStateException if the internal player engine has not been
      *                               initialized.
      */
-    public synchronized void pause() throws IllegalStateException {
-        if (mPlayer != null) {
-            mPlayer.pause();
-            setCurrentState(STATE_PAUSED);
+    public void pause() throws IllegalStateException {
+        trace(TraceRecorder.OP_PAUSE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                if (mRestore != RESTORE_NONE) {
+                    mStartWhenRestored = false;
+                    return;
+                }
+                int from = beginTransition("pause", STATE_PAUSED);
+                try {
+                    mEngine.pause();
+                } catch (RuntimeException e) {
+                    rollback(from, STATE_PAUSED);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the player to be started right when this one completes, without any gap.
+     * The next player has to be prepared already and must not be this player.
+     *
+     * @param next the prepared player to hand off to, or null to clear it.
+     * @throws IllegalStateException    if it is called in an invalid state, or the next player is not prepared.
+     * @throws IllegalArgumentException if the engines of both players cannot hand off to each other.
+     */
+    public void setNextPlayer(@Nullable Player next) throws IllegalStateException {
+        trace(TraceRecorder.OP_SET_NEXT_PLAYER, next != null ? next.mTraceId : 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int state = mCurrentState.get();
+                if (state == STATE_ENDED || state == STATE_ERROR || state == STATE_UNKNOWN) {
+                    throw new IllegalStateException("setNextPlayer() called in state " + state);
+                }
+                if (next == this) {
+                    throw new IllegalArgumentException("Next player cannot be the same player");
+                }
+                if (next != null && next.getCurrentState() != STATE_PREPARED) {
+                    throw new IllegalStateException("Next player must be prepared, was in state "
+                            + next.getCurrentState());
+                }
+                engineLocked().setNextEngine(next == null ? null : next.mEngine);
+                mNextPlayer = next;
+            }
+        }
+    }
+
+    /**
+     * @return the player to be started when this one completes, or null if none.
+     */
+    @Nullable
+    public Player getNextPlayer() {
+        synchronized (mLock) {
+            return mNextPlayer;
+        }
+    }
+
+    /**
+     * Seeks to the specified time position, to the sync frame at or before it.
+     *
+     * @param msec the offset in milliseconds from the start to seek to
+     * @throws IllegalStateException if it is called in an invalid state
+     * @see #seekTo(long, int)
+     */
+    public void seekTo(long msec) throws IllegalStateException {
+        seekTo(msec, PlaybackEngine.SEEK_PREVIOUS_SYNC);
+    }
+
+    /**
+     * Seeks to the specified time position. Only one seek is in flight on the engine at a time,
+     * a seek requested meanwhile is kept pending and replaces any seek pending before it, so that
+     * a scrubber issuing dozens of seeks per second only reaches the engine with the latest target.
+     * The seek completion listener is only called once the latest target has been reached.
+     *
+     * @param msec the offset in milliseconds from the start to seek to
+     * @param mode {@link #SEEK_MODE_FAST}, {@link #SEEK_MODE_PRECISE} or one of the
+     *             PlaybackEngine#SEEK_* modes. Modes other than the previous sync frame fall back
+     *             to it before Android O.
+     * @throws IllegalStateException if it is called in an invalid state
+     */
+    public void seekTo(long msec, int mode) throws IllegalStateException {
+        trace(TraceRecorder.OP_SEEK, msec, mode);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                if (mRestore != RESTORE_NONE) {
+                    mRestorePositionMs = msec;
+                    return;
+                }
+                int state = mCurrentState.get();
+                if (!PlayerStateMachine.canSeek(state)) {
+                    throw new IllegalStateException("seekTo() called in state " + state);
+                }
+                long now = System.nanoTime();
+                if (mSeekInFlight) {
+                    if (mPendingSeekMs != NO_SEEK) {
+                        mSupersededSeeks++;
+                    }
+                    mPendingSeekMs = msec;
+                    mPendingSeekMode = mode;
+                    mPendingSeekRequestNanos = now;
+                    mLastPositionMs = msec;
+                    return;
+                }
+                issueSeekLocked(msec, mode, now);
+                //Only once accepted, recovery and restart() restore it.
+                mLastPositionMs = msec;
+            }
         }
     }
 
@@ -333,10 +1214,27 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * may be expected when unnecessary multiple instances are used
      * at the same time.
      */
-    public synchronized void release() {
-        if (mPlayer != null) {
-            mPlayer.release();
-            setCurrentState(STATE_ENDED);
+    public void release() {
+        trace(TraceRecorder.OP_RELEASE, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("release", STATE_ENDED);
+                clearSeeksLocked();
+                mNextPlayer = null;
+                mRestore = RESTORE_NONE;
+                mStartWhenRestored = false;
+                mRecoveryAttempts = 0;
+                mRecoveryGeneration++;
+                try {
+                    //No engine yet if it is created lazily and no data source has been set.
+                    if (mEngine != null) {
+                        mEngine.release();
+                    }
+                } catch (RuntimeException e) {
+                    rollback(from, STATE_ENDED);
+                    throw e;
+                }
+            }
         }
     }
 
@@ -345,10 +1243,27 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      * this method, you will have to initialize it again by setting the
      * data source and calling prepare().
      */
-    public synchronized void reset() {
-        if (mPlayer != null) {
-            mPlayer.reset();
-            setCurrentState(STATE_IDLE);
+    public void reset() {
+        trace(TraceRecorder.OP_RESET, 0, 0);
+        if (hasEngine()) {
+            synchronized (mLock) {
+                int from = beginTransition("reset", STATE_IDLE);
+                clearSeeksLocked();
+                mNextPlayer = null;
+                mRestore = RESTORE_NONE;
+                mStartWhenRestored = false;
+                mRecoveryAttempts = 0;
+                mRecoveryGeneration++;
+                try {
+                    //No engine yet if it is created lazily and no data source has been set.
+                    if (mEngine != null) {
+                        mEngine.reset();
+                    }
+                } catch (RuntimeException e) {
+                    rollback(from, STATE_IDLE);
+                    throw e;
+                }
+            }
         }
     }
 
@@ -358,10 +1273,9 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @param listener the callback that will be run
      */
-    public synchronized void setOnPreparedListener(PlayerPreparationListener listener) {
-        if (mPlayer != null) {
+    public void setOnPreparedListener(PlayerPreparationListener listener) {
+        if (hasEngine()) {
             this.mPreparedListener = listener;
-            mPlayer.setOnPreparedListener(this);
         }
     }
 
@@ -371,10 +1285,9 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @param listener the callback that will be run
      */
-    public synchronized void setOnCompletionListener(PlaybackCompletionListener listener) {
-        if (mPlayer != null) {
+    public void setOnCompletionListener(PlaybackCompletionListener listener) {
+        if (hasEngine()) {
             this.mCompletionListener = listener;
-            mPlayer.setOnCompletionListener(this);
         }
     }
 
@@ -384,10 +1297,9 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @param listener the callback that will be run.
      */
-    public synchronized void setOnBufferingUpdateListener(PlayerBufferingUpdateListener listener) {
-        if (mPlayer != null) {
+    public void setOnBufferingUpdateListener(PlayerBufferingUpdateListener listener) {
+        if (hasEngine()) {
             this.mBufferingUpdateListener = listener;
-            mPlayer.setOnBufferingUpdateListener(this);
         }
     }
 
@@ -397,10 +1309,87 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @param listener the callback that will be run
      */
-    public synchronized void setOnSeekCompleteListener(PlayerSeekCompletionListener listener) {
-        if (mPlayer != null) {
+    public void setOnSeekCompleteListener(PlayerSeekCompletionListener listener) {
+        if (hasEngine()) {
             this.mSeekCompletionListener = listener;
-            mPlayer.setOnSeekCompleteListener(this);
+        }
+    }
+
+    /**
+     * Returns the event stream of this player. Unlike the setOn*Listener methods, it supports
+     * any number of subscribers, each on its own executor.
+     *
+     * @return the event bus of this player.
+     */
+    @NonNull
+    public PlayerEventBus getEventBus() {
+        return mEventBus;
+    }
+
+    /**
+     * Sets the recorder of the playback metrics of this player, the current state is recorded right away.
+     *
+     * @param metrics the recorder, or null to stop recording.
+     */
+    public void setPlaybackMetrics(@Nullable PlaybackMetrics metrics) {
+        if (metrics == null) {
+            this.mMetrics = null;
+            return;
+        }
+        synchronized (metrics) {
+            this.mMetrics = metrics;
+            metrics.onStateChanged(STATE_UNKNOWN, mCurrentState.get());
+        }
+    }
+
+    /**
+     * @return the recorder of the playback metrics of this player, or null if none.
+     */
+    @Nullable
+    public PlaybackMetrics getPlaybackMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Sets the recorder of the calls and callbacks of this player, see {@link TraceReplayer}.
+     *
+     * @param recorder the recorder, or null to stop recording.
+     */
+    public void setTraceRecorder(@Nullable TraceRecorder recorder) {
+        if (recorder != null) {
+            mTraceId = recorder.register();
+        }
+        this.mTraceRecorder = recorder;
+    }
+
+    /**
+     * @return the trace recorder of this player, or null if none.
+     */
+    @Nullable
+    public TraceRecorder getTraceRecorder() {
+        return mTraceRecorder;
+    }
+
+    /**
+     * Sets the policy to recover from errors with. On a recoverable error the player is reset, its data
+     * source is set again and prepared, and playback resumes from the last known position, with a backoff
+     * between attempts. The error listener is only called for errors which are not recovered from.
+     * Only players with a path or Uri data source can be recovered.
+     *
+     * @param policy the recovery policy, or null to leave errors to the error listener.
+     */
+    public void setRecoveryPolicy(@Nullable RecoveryPolicy policy) {
+        this.mRecoveryPolicy = policy;
+    }
+
+    /**
+     * Register a callback to be invoked with the latency of every completed seek.
+     *
+     * @param listener the callback that will be run
+     */
+    public void setOnSeekLatencyListener(PlayerSeekLatencyListener listener) {
+        if (hasEngine()) {
+            this.mSeekLatencyListener = listener;
         }
     }
 
@@ -410,10 +1399,9 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @param listener the callback that will be run
      */
-    public synchronized void setOnErrorListener(PlayerErrorListener listener) {
-        if (mPlayer != null) {
+    public void setOnErrorListener(PlayerErrorListener listener) {
+        if (hasEngine()) {
             this.mErrorListener = listener;
-            mPlayer.setOnErrorListener(this);
         }
     }
 
@@ -422,74 +1410,166 @@ public final class Player implements MediaPlayer.OnPreparedListener,
      *
      * @param listener the callback that will be run
      */
-    public synchronized void setOnInfoListener(PlayerInfoListener listener) {
-        if (mPlayer != null) {
+    public void setOnInfoListener(PlayerInfoListener listener) {
+        if (hasEngine()) {
             this.mInfoListener = listener;
-            mPlayer.setOnInfoListener(this);
         }
     }
 
     @Override
-    public void onCompletion(MediaPlayer mediaPlayer) {
-        if (this.mPlayer == mediaPlayer) {
-            setCurrentState(STATE_COMPLETED);
+    public void onCompletion(PlaybackEngine engine) {
+        traceCallback(engine, TraceRecorder.CB_COMPLETION, 0, 0);
+        if (this.mEngine == engine) {
+            //Stale completions, e.g. racing reset(), are dropped.
+            if (!setCurrentState(STATE_COMPLETED)) {
+                return;
+            }
+            //The engine has started the next player on its own.
+            Player next;
+            synchronized (mLock) {
+                next = mNextPlayer;
+                mNextPlayer = null;
+            }
+            if (next != null) {
+                next.setCurrentState(STATE_STARTED);
+            }
+            mEventBus.publish(PlayerEventBus.EVENT_COMPLETION, 0, 0);
             //Pass the playback completion state.
-            if (mCompletionListener != null) {
-                mCompletionListener.onPlaybackCompleted();
+            PlaybackCompletionListener listener = mCompletionListener;
+            if (listener != null) {
+                listener.onPlaybackCompleted();
             }
         }
     }
 
     @Override
-    public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
-        if (this.mPlayer == mediaPlayer) {
-            //Pass the error information.
-            setCurrentState(STATE_ERROR);
-            if (mErrorListener != null) {
-                return mErrorListener.onError(what, extra);
+    public boolean onError(PlaybackEngine engine, int what, int extra) {
+        traceCallback(engine, TraceRecorder.CB_ERROR, what, extra);
+        if (this.mEngine == engine) {
+            //Pass the error information, errors after release() are dropped.
+            int from = mCurrentState.get();
+            if (!setCurrentState(STATE_ERROR)) {
+                return false;
+            }
+            if (mRecoveryPolicy != null) {
+                synchronized (mLock) {
+                    if (scheduleRecoveryLocked(from, what, extra)) {
+                        //Handled, subscribers and the listener are only told once recovery has been given up.
+                        return true;
+                    }
+                }
+            }
+            mEventBus.publish(PlayerEventBus.EVENT_ERROR, what, extra);
+            PlayerErrorListener listener = mErrorListener;
+            if (listener != null) {
+                return listener.onError(what, extra);
             }
         }
         return false;
     }
 
     @Override
-    public boolean onInfo(MediaPlayer mediaPlayer, int what, int extra) {
-        if (this.mPlayer == mediaPlayer) {
+    public boolean onInfo(PlaybackEngine engine, int what, int extra) {
+        traceCallback(engine, TraceRecorder.CB_INFO, what, extra);
+        if (this.mEngine == engine) {
+            PlaybackMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.onInfo(what, extra);
+            }
+            mEventBus.publish(PlayerEventBus.EVENT_INFO, what, extra);
             //Pass the information received.
-            if (mInfoListener != null) {
-                return mInfoListener.onInfo(what, extra);
+            PlayerInfoListener listener = mInfoListener;
+            if (listener != null) {
+                return listener.onInfo(what, extra);
             }
         }
         return false;
     }
 
     @Override
-    public void onPrepared(MediaPlayer mediaPlayer) {
-        if (this.mPlayer == mediaPlayer) {
-            setCurrentState(STATE_PREPARED);
-            //Broadcast preparation status.
-            if (mPreparedListener != null) {
-                mPreparedListener.onPlayerPrepared();
+    public void onPrepared(PlaybackEngine engine) {
+        traceCallback(engine, TraceRecorder.CB_PREPARED, 0, 0);
+        if (this.mEngine == engine) {
+            //Stale preparations, e.g. racing reset(), are dropped.
+            if (!setCurrentState(STATE_PREPARED)) {
+                return;
+            }
+            synchronized (mLock) {
+                //Restores are transparent, the caller has been told about the first preparation only.
+                if (onRestoredLocked()) {
+                    return;
+                }
             }
+            notifyPrepared();
+        }
+    }
+
+    private void notifyPrepared() {
+        mEventBus.publish(PlayerEventBus.EVENT_PREPARED, 0, 0);
+        //Broadcast preparation status.
+        PlayerPreparationListener listener = mPreparedListener;
+        if (listener != null) {
+            listener.onPlayerPrepared();
         }
     }
 
     @Override
-    public void onBufferingUpdate(MediaPlayer mediaPlayer, int percent) {
-        if (this.mPlayer == mediaPlayer) {
+    public void onBufferingUpdate(PlaybackEngine engine, int percent) {
+        traceCallback(engine, TraceRecorder.CB_BUFFERING_UPDATE, percent, 0);
+        if (this.mEngine == engine) {
+            mEventBus.publish(PlayerEventBus.EVENT_BUFFERING_UPDATE, percent, 0);
             //Broadcast buffering update info.
-            if (mBufferingUpdateListener != null) {
-                mBufferingUpdateListener.onBufferingUpdate(percent);
+            PlayerBufferingUpdateListener listener = mBufferingUpdateListener;
+            if (listener != null) {
+                listener.onBufferingUpdate(percent);
             }
         }
     }
 
     @Override
-    public void onSeekComplete(MediaPlayer mediaPlayer) {
-        if (this.mPlayer == mediaPlayer) {
+    public void onSeekComplete(PlaybackEngine engine) {
+        traceCallback(engine, TraceRecorder.CB_SEEK_COMPLETE, 0, 0);
+        if (this.mEngine == engine) {
+            long latencyNanos = -1;
+            int superseded = 0;
+            synchronized (mLock) {
+                if (mSeekInFlight) {
+                    mSeekInFlight = false;
+                    long requestNanos = mSeekInFlightRequestNanos;
+                    int supersededSeeks = mSupersededSeeks;
+                    if (mPendingSeekMs != NO_SEEK && PlayerStateMachine.canSeek(mCurrentState.get())) {
+                        //A newer target arrived meanwhile, the reached position is already stale.
+                        long msec = mPendingSeekMs;
+                        mPendingSeekMs = NO_SEEK;
+                        mSupersededSeeks++;
+                        try {
+                            issueSeekLocked(msec, mPendingSeekMode, mPendingSeekRequestNanos);
+                            return;
+                        } catch (IllegalStateException e) {
+                            //Engine refused the pending seek, report the one which completed.
+                        }
+                    }
+                    mPendingSeekMs = NO_SEEK;
+                    mSupersededSeeks = 0;
+                    latencyNanos = System.nanoTime() - requestNanos;
+                    superseded = supersededSeeks;
+                }
+            }
+            if (latencyNanos >= 0) {
+                PlaybackMetrics metrics = mMetrics;
+                if (metrics != null) {
+                    metrics.onSeekCompleted(latencyNanos);
+                }
+                PlayerSeekLatencyListener latencyListener = mSeekLatencyListener;
+                if (latencyListener != null) {
+                    latencyListener.onSeekLatency(latencyNanos, superseded);
+                }
+            }
+            mEventBus.publish(PlayerEventBus.EVENT_SEEK_COMPLETE, latencyNanos, 0);
             //Pass the seek completion status.
-            if (mSeekCompletionListener != null) {
-                mSeekCompletionListener.onSeekCompleted();
+            PlayerSeekCompletionListener listener = mSeekCompletionListener;
+            if (listener != null) {
+                listener.onSeekCompleted();
             }
         }
     }
@@ -541,4 +1621,17 @@ public final class Player implements MediaPlayer.OnPreparedListener,
     public interface PlayerSeekCompletionListener {
         void onSeekCompleted();
     }
+
+    /**
+     * Interface definition of a callback to be invoked with the latency
+     * of a completed seek.
+     */
+    public interface PlayerSeekLatencyListener {
+        /**
+         * @param latencyNanos time from the request of the reached target until its completion.
+         * @param superseded   number of targets replaced by a newer one before reaching the engine
+         *                     or before their seek completed.
+         */
+        void onSeekLatency(long latencyNanos, int superseded);
+    }
 }
@@ -0,0 +1,480 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous front of a {@link Player} for rapid-fire control calls.
+ * <p>
+ * Commands are enqueued and return immediately, a single drain task executes them in order on the
+ * executor. A command replacing the pending tail of the queue is coalesced with it: a burst like
+ * pause, start, pause collapses into a single pause and only the last of a burst of seeks is executed.
+ * Commands which would not change the state of the player, e.g. pause in {@link Player#STATE_PAUSED},
+ * are completed without reaching the player.
+ * <p>
+ * Seeks reaching the player are coalesced further by {@link Player#seekTo(long, int)} itself.
+ * <p>
+ * Every command returns a {@link Future} which completes with the state of the player once the
+ * command (or the one it was coalesced into) has been executed. Cancellation is not supported.
+ */
+public final class PlayerCommandQueue {
+    private static final String TAG = PlayerCommandQueue.class.getSimpleName();
+
+    //Commands.
+    public static final int COMMAND_START = 1;
+    public static final int COMMAND_PAUSE = 2;
+    public static final int COMMAND_STOP = 3;
+    public static final int COMMAND_PREPARE_ASYNC = 4;
+    public static final int COMMAND_RESET = 5;
+    public static final int COMMAND_RELEASE = 6;
+    public static final int COMMAND_SEEK = 7;
+
+    private final Player mPlayer;
+    private final Executor mExecutor;
+
+    //Executor created by this queue, shut down in #shutdown().
+    private final ExecutorService mOwnedExecutor;
+
+    //Pending commands, guarded by itself.
+    private final ArrayDeque<Command> mQueue = new ArrayDeque<>();
+
+    //Whether a drain task is scheduled or running.
+    private boolean mDraining;
+
+    private volatile CommandListener mListener;
+
+    //Counters, guarded by mQueue.
+    private long mSubmitted;
+    private long mCoalesced;
+    private long mSkipped;
+    private long mExecuted;
+    private int mMaxDepth;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Constructor, draining on a dedicated background thread.
+     *
+     * @param player the player to be driven.
+     */
+    public PlayerCommandQueue(@NonNull Player player) {
+        this(player, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param player   the player to be driven.
+     * @param executor the executor to drain on, null for a dedicated background thread.
+     *                 Commands are executed one at a time even on a multi-threaded executor.
+     */
+    public PlayerCommandQueue(@NonNull Player player, @Nullable Executor executor) {
+        this.mPlayer = player;
+        if (executor == null) {
+            mOwnedExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mExecutor = mOwnedExecutor;
+        } else {
+            mOwnedExecutor = null;
+            mExecutor = executor;
+        }
+    }
+
+    /**
+     * @return the player driven by this queue.
+     */
+    public Player getPlayer() {
+        return mPlayer;
+    }
+
+    /**
+     * Register a callback to be invoked, on the drain thread, whenever a command completes.
+     *
+     * @param listener the callback that will be run
+     */
+    public void setCommandListener(@Nullable CommandListener listener) {
+        this.mListener = listener;
+    }
+
+    public Future<Integer> start() {
+        return enqueue(new Command(COMMAND_START));
+    }
+
+    public Future<Integer> pause() {
+        return enqueue(new Command(COMMAND_PAUSE));
+    }
+
+    public Future<Integer> stop() {
+        return enqueue(new Command(COMMAND_STOP));
+    }
+
+    /**
+     * Enqueues a seek, replacing a seek still pending at the tail of the queue.
+     *
+     * @param msec the offset in milliseconds from the start to seek to.
+     * @param mode one of the Player#SEEK_MODE_* or PlaybackEngine#SEEK_* modes.
+     * @see Player#seekTo(long, int)
+     */
+    public Future<Integer> seekTo(long msec, int mode) {
+        return enqueue(new Command(COMMAND_SEEK, msec, mode));
+    }
+
+    public Future<Integer> prepareAsync() {
+        return enqueue(new Command(COMMAND_PREPARE_ASYNC));
+    }
+
+    public Future<Integer> reset() {
+        return enqueue(new Command(COMMAND_RESET));
+    }
+
+    public Future<Integer> release() {
+        return enqueue(new Command(COMMAND_RELEASE));
+    }
+
+    /**
+     * Stops the dedicated drain thread, if any, once the pending commands have been executed.
+     */
+    public void shutdown() {
+        if (mOwnedExecutor != null) {
+            mOwnedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @return number of commands waiting to be executed.
+     */
+    public int getQueueDepth() {
+        synchronized (mQueue) {
+            return mQueue.size();
+        }
+    }
+
+    /**
+     * @return highest number of commands which were waiting at the same time.
+     */
+    public int getMaxQueueDepth() {
+        synchronized (mQueue) {
+            return mMaxDepth;
+        }
+    }
+
+    /**
+     * @return number of commands submitted.
+     */
+    public long getSubmittedCount() {
+        synchronized (mQueue) {
+            return mSubmitted;
+        }
+    }
+
+    /**
+     * @return number of commands which reached the player.
+     */
+    public long getExecutedCount() {
+        synchronized (mQueue) {
+            return mExecuted;
+        }
+    }
+
+    /**
+     * @return number of commands merged into a later one.
+     */
+    public long getCoalescedCount() {
+        synchronized (mQueue) {
+            return mCoalesced;
+        }
+    }
+
+    /**
+     * @return number of commands completed without reaching the player, as they would not change its state.
+     */
+    public long getSkippedCount() {
+        synchronized (mQueue) {
+            return mSkipped;
+        }
+    }
+
+    /**
+     * @return share of the submitted commands which were merged into a later one, within [0, 1].
+     */
+    public float getCoalesceRatio() {
+        synchronized (mQueue) {
+            return mSubmitted == 0 ? 0f : (float) mCoalesced / mSubmitted;
+        }
+    }
+
+    Future<Integer> enqueue(Command command) {
+        boolean schedule;
+        synchronized (mQueue) {
+            mSubmitted++;
+            Command tail = mQueue.peekLast();
+            if (tail != null && tail.canBeReplacedBy(command)) {
+                mQueue.pollLast();
+                command.adopt(tail);
+                mCoalesced++;
+            }
+            mQueue.addLast(command);
+            if (mQueue.size() > mMaxDepth) {
+                mMaxDepth = mQueue.size();
+            }
+            schedule = !mDraining;
+            mDraining = true;
+        }
+        if (schedule) {
+            try {
+                mExecutor.execute(mDrain);
+            } catch (RuntimeException e) {
+                synchronized (mQueue) {
+                    mDraining = false;
+                }
+                throw e;
+            }
+        }
+        return command;
+    }
+
+    private void drain() {
+        boolean drained = false;
+        try {
+            while (true) {
+                Command command;
+                synchronized (mQueue) {
+                    command = mQueue.pollFirst();
+                    if (command == null) {
+                        mDraining = false;
+                        drained = true;
+                        return;
+                    }
+                }
+                execute(command);
+            }
+        } finally {
+            if (!drained) {
+                //A listener threw, which is left to the executor. Draining goes on in a new task, otherwise
+                //mDraining would stay set and no later command would ever be executed.
+                try {
+                    mExecutor.execute(mDrain);
+                } catch (RuntimeException e) {
+                    synchronized (mQueue) {
+                        mDraining = false;
+                    }
+                }
+            }
+        }
+    }
+
+    private void execute(Command command) {
+        RuntimeException error = null;
+        boolean skipped = command.isRedundant(mPlayer.getCurrentState());
+        if (!skipped) {
+            try {
+                command.run(mPlayer);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+        synchronized (mQueue) {
+            if (skipped) {
+                mSkipped++;
+            } else {
+                mExecuted++;
+            }
+        }
+        int state = mPlayer.getCurrentState();
+        command.complete(state, error);
+        CommandListener listener = mListener;
+        if (listener != null) {
+            if (error == null) {
+                listener.onCommandCompleted(command.mType, state);
+            } else {
+                listener.onCommandFailed(command.mType, error);
+            }
+        }
+    }
+
+    /**
+     * Interface definition of a callback to be invoked when a queued command has been executed.
+     */
+    public interface CommandListener {
+        void onCommandCompleted(int command, int state);
+
+        void onCommandFailed(int command, RuntimeException error);
+    }
+
+    /**
+     * Queued command, also the future handed out for it.
+     */
+    static class Command implements Future<Integer> {
+        final int mType;
+
+        //Target of a seek command.
+        final long mSeekMs;
+        final int mSeekMode;
+
+        //Commands coalesced into this one, completed along with it.
+        private List<Command> mMerged;
+
+        private boolean mDone;
+        private int mState;
+        private RuntimeException mError;
+
+        Command(int type) {
+            this(type, 0, 0);
+        }
+
+        Command(int type, long seekMs, int seekMode) {
+            this.mType = type;
+            this.mSeekMs = seekMs;
+            this.mSeekMode = seekMode;
+        }
+
+        /**
+         * @return TRUE if this pending command can be dropped in favour of the given newer one.
+         */
+        boolean canBeReplacedBy(Command next) {
+            //Only the last of consecutive seeks matters.
+            if (mType == COMMAND_SEEK) {
+                return next.mType == COMMAND_SEEK;
+            }
+            //Only the last of consecutive start/pause requests matters.
+            return (mType == COMMAND_START || mType == COMMAND_PAUSE)
+                    && (next.mType == COMMAND_START || next.mType == COMMAND_PAUSE);
+        }
+
+        /**
+         * @return TRUE if executing this command in the given state would not change anything.
+         */
+        boolean isRedundant(int state) {
+            switch (mType) {
+                case COMMAND_START:
+                    return state == Player.STATE_STARTED;
+                case COMMAND_PAUSE:
+                    return state == Player.STATE_PAUSED;
+                case COMMAND_STOP:
+                    return state == Player.STATE_STOPPED;
+                case COMMAND_RESET:
+                    return state == Player.STATE_IDLE;
+                case COMMAND_RELEASE:
+                    return state == Player.STATE_ENDED;
+                default:
+                    return false;
+            }
+        }
+
+        void run(Player player) {
+            switch (mType) {
+                case COMMAND_START:
+                    player.start();
+                    break;
+                case COMMAND_PAUSE:
+                    player.pause();
+                    break;
+                case COMMAND_STOP:
+                    player.stop();
+                    break;
+                case COMMAND_PREPARE_ASYNC:
+                    player.prepareAsync();
+                    break;
+                case COMMAND_RESET:
+                    player.reset();
+                    break;
+                case COMMAND_RELEASE:
+                    player.release();
+                    break;
+                case COMMAND_SEEK:
+                    player.seekTo(mSeekMs, mSeekMode);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + mType);
+            }
+        }
+
+        void adopt(Command replaced) {
+            if (mMerged == null) {
+                mMerged = new ArrayList<>();
+            }
+            mMerged.add(replaced);
+        }
+
+        void complete(int state, RuntimeException error) {
+            if (mMerged != null) {
+                for (Command merged : mMerged) {
+                    merged.complete(state, error);
+                }
+            }
+            synchronized (this) {
+                mState = state;
+                mError = error;
+                mDone = true;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return mDone;
+        }
+
+        @Override
+        public synchronized Integer get() throws InterruptedException, ExecutionException {
+            while (!mDone) {
+                wait();
+            }
+            return result();
+        }
+
+        @Override
+        public synchronized Integer get(long timeout, @NonNull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!mDone) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return result();
+        }
+
+        private Integer result() throws ExecutionException {
+            if (mError != null) {
+                throw new ExecutionException(mError);
+            }
+            return mState;
+        }
+    }
+}
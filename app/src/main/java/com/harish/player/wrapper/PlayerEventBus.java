@@ -0,0 +1,273 @@
+package com.harish.player.wrapper;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Typed stream of the events of a {@link Player}, with any number of subscribers.
+ * <p>
+ * Subscribers are kept in a copy-on-write array, so publishing never locks and does not allocate
+ * when nobody listens. Each subscriber chooses how it is called:
+ * <ul>
+ * <li>directly, on the thread publishing the event (usually the callback thread of the engine).</li>
+ * <li>on its own {@link Executor}, every event in publishing order.</li>
+ * <li>coalesced on a {@link Scheduler}, where high frequency events ({@link #EVENT_BUFFERING_UPDATE},
+ * {@link #EVENT_POSITION}) only keep their latest value and are delivered at most once per interval,
+ * together with the other events of the same batch.</li>
+ * </ul>
+ * The arguments of each event are documented with its constant.
+ */
+public final class PlayerEventBus {
+    private static final String TAG = PlayerEventBus.class.getSimpleName();
+
+    //Events.
+    public static final int EVENT_STATE_CHANGED = 1;        //arg1: previous state, arg2: new state.
+    public static final int EVENT_PREPARED = 2;             //No arguments.
+    public static final int EVENT_COMPLETION = 3;           //No arguments.
+    public static final int EVENT_ERROR = 4;                //arg1: what, arg2: extra. Once recovery, if any, gave up.
+    public static final int EVENT_INFO = 5;                 //arg1: what, arg2: extra.
+    public static final int EVENT_SEEK_COMPLETE = 6;        //arg1: seek latency in nanoseconds, or -1 if not tracked.
+    public static final int EVENT_BUFFERING_UPDATE = 7;     //arg1: buffered percent. Coalesced.
+    public static final int EVENT_POSITION = 8;             //arg1: position in milliseconds, arg2: duration. Coalesced.
+    public static final int EVENT_SEEK_STARTED = 9;         //arg1: target position in milliseconds, arg2: seek mode.
+    public static final int EVENT_STALL = 10;               //arg1: StallWatchdog#STALL_* type, arg2: stalled milliseconds.
+
+    private static final Subscription[] EMPTY = new Subscription[0];
+
+    //Copy-on-write, replaced as a whole under the lock of this bus.
+    private volatile Subscription[] mSubscriptions = EMPTY;
+
+    /**
+     * Subscribes for every event, called on the publishing thread.
+     *
+     * @param listener the callback that will be run.
+     * @return the subscription, to be passed to {@link #unsubscribe(Subscription)}.
+     */
+    public Subscription subscribe(@NonNull PlayerEventListener listener) {
+        return add(new Subscription(listener, null, null, 0));
+    }
+
+    /**
+     * Subscribes for every event, called on the given executor in publishing order.
+     *
+     * @param listener the callback that will be run.
+     * @param executor the executor to call the listener on, null to call it on the publishing thread.
+     * @return the subscription, to be passed to {@link #unsubscribe(Subscription)}.
+     */
+    public Subscription subscribe(@NonNull PlayerEventListener listener, @Nullable Executor executor) {
+        return add(new Subscription(listener, executor, null, 0));
+    }
+
+    /**
+     * Subscribes for every event, batched on the given scheduler. High frequency events only keep
+     * their latest value, and a batch is delivered at most once per interval, e.g. once per frame.
+     * Within a batch, the latest high frequency values are delivered ahead of the other events.
+     *
+     * @param listener   the callback that will be run.
+     * @param scheduler  the scheduler to deliver batches on, running one task at a time.
+     * @param intervalMs the minimum time between two batches, in milliseconds.
+     * @return the subscription, to be passed to {@link #unsubscribe(Subscription)}.
+     */
+    public Subscription subscribeCoalesced(@NonNull PlayerEventListener listener,
+                                           @NonNull Scheduler scheduler, long intervalMs) {
+        if (intervalMs < 0) {
+            throw new IllegalArgumentException("Interval must not be negative, was " + intervalMs);
+        }
+        return add(new Subscription(listener, null, scheduler, intervalMs));
+    }
+
+    /**
+     * Removes a subscription, events already handed to its executor or scheduler are dropped.
+     *
+     * @param subscription the subscription returned when subscribing.
+     */
+    public synchronized void unsubscribe(@NonNull Subscription subscription) {
+        subscription.mActive = false;
+        Subscription[] current = mSubscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription[] updated = new Subscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                mSubscriptions = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return TRUE if there is at least one subscriber.
+     */
+    public boolean hasSubscribers() {
+        return mSubscriptions.length > 0;
+    }
+
+    /**
+     * Publishes an event to every subscriber.
+     *
+     * @param event one of the EVENT_* values.
+     * @param arg1  first argument, as documented with the event.
+     * @param arg2  second argument, as documented with the event.
+     */
+    public void publish(int event, long arg1, long arg2) {
+        Subscription[] subscriptions = mSubscriptions;
+        for (Subscription subscription : subscriptions) {
+            subscription.deliver(event, arg1, arg2);
+        }
+    }
+
+    private synchronized Subscription add(Subscription subscription) {
+        Subscription[] current = mSubscriptions;
+        Subscription[] updated = new Subscription[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = subscription;
+        mSubscriptions = updated;
+        return subscription;
+    }
+
+    private static boolean isCoalesced(int event) {
+        return event == EVENT_BUFFERING_UPDATE || event == EVENT_POSITION;
+    }
+
+    /**
+     * @return a scheduler posting on the given handler, e.g. of the main looper.
+     */
+    public static Scheduler schedulerOf(@NonNull final Handler handler) {
+        return new Scheduler() {
+            @Override
+            public void schedule(@NonNull Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+        };
+    }
+
+    /**
+     * @return a scheduler running on the given executor service.
+     */
+    public static Scheduler schedulerOf(@NonNull final ScheduledExecutorService executor) {
+        return new Scheduler() {
+            @Override
+            public void schedule(@NonNull Runnable task, long delayMs) {
+                executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            }
+        };
+    }
+
+    /**
+     * Interface definition of a callback to be invoked with the events of a {@link Player}.
+     */
+    public interface PlayerEventListener {
+        void onPlayerEvent(int event, long arg1, long arg2);
+    }
+
+    /**
+     * Runs tasks after a delay, e.g. a {@link Handler}.
+     */
+    public interface Scheduler {
+        void schedule(@NonNull Runnable task, long delayMs);
+    }
+
+    /**
+     * A registered listener along with its delivery mode.
+     */
+    public static final class Subscription implements Runnable {
+        private final PlayerEventListener mListener;
+        private final Executor mExecutor;
+        private final Scheduler mScheduler;
+        private final long mIntervalNanos;
+
+        private volatile boolean mActive = true;
+
+        //Batch of a coalesced subscription.
+        private final ConcurrentLinkedQueue<long[]> mPending;
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+        private volatile long mLastDeliveryNanos;
+        private volatile boolean mBufferingDirty;
+        private volatile long mBufferingPercent;
+        private volatile boolean mPositionDirty;
+        private volatile long mPositionMs;
+        private volatile long mDurationMs;
+
+        Subscription(PlayerEventListener listener, Executor executor, Scheduler scheduler, long intervalMs) {
+            this.mListener = listener;
+            this.mExecutor = executor;
+            this.mScheduler = scheduler;
+            this.mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+            this.mPending = scheduler != null ? new ConcurrentLinkedQueue<long[]>() : null;
+        }
+
+        void deliver(final int event, final long arg1, final long arg2) {
+            if (!mActive) {
+                return;
+            }
+            if (mScheduler != null) {
+                enqueue(event, arg1, arg2);
+            } else if (mExecutor != null) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mActive) {
+                            mListener.onPlayerEvent(event, arg1, arg2);
+                        }
+                    }
+                });
+            } else {
+                mListener.onPlayerEvent(event, arg1, arg2);
+            }
+        }
+
+        private void enqueue(int event, long arg1, long arg2) {
+            long delayMs = 0;
+            if (event == EVENT_BUFFERING_UPDATE) {
+                mBufferingPercent = arg1;
+                mBufferingDirty = true;
+            } else if (event == EVENT_POSITION) {
+                mPositionMs = arg1;
+                mDurationMs = arg2;
+                mPositionDirty = true;
+            } else {
+                mPending.add(new long[]{event, arg1, arg2});
+            }
+            if (isCoalesced(event)) {
+                long sinceLast = System.nanoTime() - mLastDeliveryNanos;
+                if (sinceLast < mIntervalNanos) {
+                    delayMs = TimeUnit.NANOSECONDS.toMillis(mIntervalNanos - sinceLast);
+                }
+            }
+            if (mScheduled.compareAndSet(false, true)) {
+                mScheduler.schedule(this, delayMs);
+            }
+        }
+
+        /**
+         * Delivers the pending batch of a coalesced subscription.
+         */
+        @Override
+        public void run() {
+            mScheduled.set(false);
+            mLastDeliveryNanos = System.nanoTime();
+            if (!mActive) {
+                return;
+            }
+            if (mBufferingDirty) {
+                mBufferingDirty = false;
+                mListener.onPlayerEvent(EVENT_BUFFERING_UPDATE, mBufferingPercent, 0);
+            }
+            if (mPositionDirty) {
+                mPositionDirty = false;
+                mListener.onPlayerEvent(EVENT_POSITION, mPositionMs, mDurationMs);
+            }
+            long[] pending;
+            while ((pending = mPending.poll()) != null) {
+                mListener.onPlayerEvent((int) pending[0], pending[1], pending[2]);
+            }
+        }
+    }
+}
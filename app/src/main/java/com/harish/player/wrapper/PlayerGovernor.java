@@ -0,0 +1,409 @@
+package com.harish.player.wrapper;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Process-wide governor capping the number of players holding codecs and memory.
+ * <p>
+ * Every tracked {@link Player} is counted by its state: decoding ({@link Player#STATE_STARTED}), holding
+ * codecs (decoding, preparing, prepared, paused or completed) and stopped (no codecs, but the native
+ * instance and its buffers). When a count exceeds its limit, the least recently used players are demoted
+ * one step: playing to paused, prepared, paused or completed to stopped, stopped to reset. Players set
+ * as the next player of another one are left alone, as the engine starts them on completion. Demoted
+ * players save their position and restore themselves on the next start(), prepare() or prepareAsync(),
+ * see {@link Player#isDemoted()}.
+ * <p>
+ * Limits tighten with the {@link #onTrimMemory(int)} level, register the governor through
+ * {@link android.content.Context#registerComponentCallbacks} to follow memory pressure. Demotions run on
+ * an executor, never on the thread which changed the state of a player.
+ */
+public final class PlayerGovernor implements ComponentCallbacks2 {
+    private static final String TAG = PlayerGovernor.class.getSimpleName();
+
+    //Governor every new player is tracked by, if installed.
+    private static volatile PlayerGovernor sInstance;
+
+    private final int mMaxDecoding;
+    private final int mMaxPrepared;
+    private final int mMaxStopped;
+    private final Executor mExecutor;
+
+    //Tracked players, least recently used first.
+    private final LinkedHashMap<Player, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    //Counts by state category, guarded by this.
+    private int mDecoding;
+    private int mPrepared;
+    private int mStopped;
+
+    //Players holding codecs without decoding nor preparing, the ones a prepared limit can demote.
+    private int mIdleCodecs;
+
+    //Limits in effect for the current trim level, guarded by this.
+    private int mDecodingLimit;
+    private int mPreparedLimit;
+    private int mStoppedLimit;
+
+    private boolean mEnforceScheduled;
+
+    //Counters, guarded by this.
+    private long mPauses;
+    private long mStops;
+    private long mResets;
+
+    private final Runnable mEnforce = new Runnable() {
+        @Override
+        public void run() {
+            enforce();
+        }
+    };
+
+    /**
+     * Constructor, demoting on a dedicated background thread.
+     *
+     * @param maxDecoding maximum number of playing players.
+     * @param maxPrepared maximum number of players holding codecs, playing ones included.
+     * @param maxStopped  maximum number of stopped players.
+     */
+    public PlayerGovernor(int maxDecoding, int maxPrepared, int maxStopped) {
+        this(maxDecoding, maxPrepared, maxStopped, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxDecoding maximum number of playing players.
+     * @param maxPrepared maximum number of players holding codecs, playing ones included.
+     * @param maxStopped  maximum number of stopped players.
+     * @param executor    the executor to demote players on, null for a dedicated background thread.
+     */
+    public PlayerGovernor(int maxDecoding, int maxPrepared, int maxStopped, @Nullable Executor executor) {
+        if (maxDecoding < 1 || maxPrepared < maxDecoding || maxStopped < 0) {
+            throw new IllegalArgumentException("Invalid limits " + maxDecoding + "/" + maxPrepared + "/" + maxStopped);
+        }
+        this.mMaxDecoding = maxDecoding;
+        this.mMaxPrepared = maxPrepared;
+        this.mMaxStopped = maxStopped;
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        this.mExecutor = executor;
+        applyTrimLevelLocked(0);
+    }
+
+    /**
+     * Installs the governor every player created afterwards is tracked by.
+     *
+     * @param governor the governor, or null to stop tracking new players.
+     */
+    public static void install(@Nullable PlayerGovernor governor) {
+        sInstance = governor;
+    }
+
+    /**
+     * @return the installed governor, or null if none.
+     */
+    @Nullable
+    public static PlayerGovernor getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Starts tracking the given player until it is released. Players created after
+     * {@link #install(PlayerGovernor)} are tracked already.
+     *
+     * @param player the player to track.
+     */
+    public void track(@NonNull final Player player) {
+        final Entry entry = new Entry(player);
+        synchronized (this) {
+            if (mEntries.containsKey(player)) {
+                return;
+            }
+            mEntries.put(player, entry);
+            entry.subscription = player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+                @Override
+                public void onPlayerEvent(int event, long arg1, long arg2) {
+                    if (event == PlayerEventBus.EVENT_STATE_CHANGED) {
+                        onStateChanged(entry, (int) arg2);
+                    }
+                }
+            });
+            updateLocked(entry, player.getCurrentState());
+        }
+    }
+
+    /**
+     * Stops tracking the given player.
+     *
+     * @param player the player to stop tracking.
+     */
+    public void untrack(@NonNull Player player) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.remove(player);
+            if (entry == null) {
+                return;
+            }
+            updateLocked(entry, Player.STATE_ENDED);
+        }
+        player.getEventBus().unsubscribe(entry.subscription);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        synchronized (this) {
+            applyTrimLevelLocked(level);
+            scheduleIfOverLocked();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        //Not relevant.
+    }
+
+    /**
+     * Restores the full limits after a trim, e.g. when the app returns to the foreground.
+     */
+    public void resetTrimLevel() {
+        synchronized (this) {
+            applyTrimLevelLocked(0);
+        }
+    }
+
+    /**
+     * @return number of tracked players.
+     */
+    public synchronized int getTrackedCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return number of playing players.
+     */
+    public synchronized int getDecodingCount() {
+        return mDecoding;
+    }
+
+    /**
+     * @return number of players holding codecs, playing ones included.
+     */
+    public synchronized int getPreparedCount() {
+        return mPrepared;
+    }
+
+    /**
+     * @return number of stopped players.
+     */
+    public synchronized int getStoppedCount() {
+        return mStopped;
+    }
+
+    /**
+     * @return number of playing players paused by the governor.
+     */
+    public synchronized long getPauseCount() {
+        return mPauses;
+    }
+
+    /**
+     * @return number of players stopped by the governor.
+     */
+    public synchronized long getStopCount() {
+        return mStops;
+    }
+
+    /**
+     * @return number of stopped players reset by the governor.
+     */
+    public synchronized long getResetCount() {
+        return mResets;
+    }
+
+    private void onStateChanged(Entry entry, int to) {
+        synchronized (this) {
+            if (to == Player.STATE_ENDED) {
+                mEntries.remove(entry.player);
+                updateLocked(entry, to);
+                entry.player.getEventBus().unsubscribe(entry.subscription);
+                return;
+            }
+            if (!mEntries.containsKey(entry.player)) {
+                return;
+            }
+            if (isActive(to)) {
+                //Marks the player as recently used. Demotions only lead to inactive states, and do not.
+                mEntries.get(entry.player);
+            }
+            //The current state rather than the event's, events of racing transitions may arrive out of order.
+            updateLocked(entry, entry.player.getCurrentState());
+            scheduleIfOverLocked();
+        }
+    }
+
+    private void updateLocked(Entry entry, int state) {
+        count(entry.state, -1);
+        entry.state = state;
+        count(state, 1);
+    }
+
+    private void count(int state, int delta) {
+        switch (state) {
+            case Player.STATE_STARTED:
+                mDecoding += delta;
+                mPrepared += delta;
+                break;
+            case Player.STATE_PREPARING:
+                mPrepared += delta;
+                break;
+            case Player.STATE_PREPARED:
+            case Player.STATE_PAUSED:
+            case Player.STATE_COMPLETED:
+                mPrepared += delta;
+                mIdleCodecs += delta;
+                break;
+            case Player.STATE_STOPPED:
+                mStopped += delta;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static boolean isActive(int state) {
+        return state == Player.STATE_INITIALIZED || state == Player.STATE_PREPARING
+                || state == Player.STATE_PREPARED || state == Player.STATE_STARTED;
+    }
+
+    private void applyTrimLevelLocked(int level) {
+        mDecodingLimit = mMaxDecoding;
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            //Nothing on screen, only players still playing (e.g. audio) keep their codecs.
+            mPreparedLimit = 0;
+            mStoppedLimit = 0;
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            mPreparedLimit = Math.max(mMaxDecoding, mMaxPrepared / 2);
+            mStoppedLimit = 0;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            mPreparedLimit = mMaxPrepared;
+            mStoppedLimit = mMaxStopped / 2;
+        } else {
+            mPreparedLimit = mMaxPrepared;
+            mStoppedLimit = mMaxStopped;
+        }
+    }
+
+    private void scheduleIfOverLocked() {
+        if (mEnforceScheduled) {
+            return;
+        }
+        //Playing and preparing players count towards the prepared limit, but are not demoted for it.
+        if (mDecoding > mDecodingLimit || (mPrepared > mPreparedLimit && mIdleCodecs > 0)
+                || mStopped > mStoppedLimit) {
+            mEnforceScheduled = true;
+            mExecutor.execute(mEnforce);
+        }
+    }
+
+    /**
+     * Demotes the least recently used players until the counts are within limits, or no
+     * player is left to demote. Player calls are made without holding the lock of the governor,
+     * since their state changes call back into it.
+     */
+    private void enforce() {
+        Entry[] entries;
+        synchronized (this) {
+            mEnforceScheduled = false;
+            entries = mEntries.values().toArray(new Entry[mEntries.size()]);
+        }
+        Set<Player> linked = Collections.newSetFromMap(new IdentityHashMap<Player, Boolean>());
+        for (Entry entry : entries) {
+            Player next = entry.player.getNextPlayer();
+            if (next != null) {
+                linked.add(next);
+            }
+        }
+        for (Entry entry : entries) {
+            if (linked.contains(entry.player)) {
+                //Stopping it would leave the hand off with a stopped engine.
+                continue;
+            }
+            int state = entry.player.getCurrentState();
+            synchronized (this) {
+                if (!isOverLocked(state)) {
+                    continue;
+                }
+            }
+            boolean demoted;
+            try {
+                demoted = entry.player.demote();
+            } catch (IllegalStateException e) {
+                //Raced with a control call of the owner.
+                demoted = false;
+            }
+            if (demoted) {
+                synchronized (this) {
+                    if (state == Player.STATE_STARTED) {
+                        mPauses++;
+                    } else if (state == Player.STATE_STOPPED) {
+                        mResets++;
+                    } else {
+                        mStops++;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isOverLocked(int state) {
+        switch (state) {
+            case Player.STATE_STARTED:
+                return mDecoding > mDecodingLimit;
+            case Player.STATE_PREPARED:
+            case Player.STATE_PAUSED:
+            case Player.STATE_COMPLETED:
+                return mPrepared > mPreparedLimit;
+            case Player.STATE_STOPPED:
+                return mStopped > mStoppedLimit;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Tracked player, along with the state it is counted in.
+     */
+    private static final class Entry {
+        final Player player;
+        int state = Player.STATE_UNKNOWN;
+        PlayerEventBus.Subscription subscription;
+
+        Entry(Player player) {
+            this.player = player;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.harish.player.wrapper;
 
+import android.os.Looper;
+
 /**
  * @author HARISH.
  *         <p>
@@ -26,8 +28,25 @@ public final class PlayerHelper {
      * @return TRUE if initialized, FALSE otherwise.
      */
     public static boolean isInitialized(Player player) {
-        return player != null
-                && (player.getCurrentState() >= Player.STATE_INITIALIZED
-                && player.getCurrentState() <= Player.STATE_COMPLETED);
+        if (player == null) {
+            return false;
+        }
+        //Read once, the state may change in between.
+        int state = player.getCurrentState();
+        return state >= Player.STATE_INITIALIZED && state <= Player.STATE_COMPLETED;
+    }
+
+    /**
+     * Helper method to see if the caller runs on the main thread.
+     *
+     * @return TRUE if called on the main thread, FALSE otherwise or when not running on a device.
+     */
+    public static boolean isMainThread() {
+        try {
+            return Looper.myLooper() == Looper.getMainLooper();
+        } catch (RuntimeException e) {
+            //Stubbed Looper, e.g. in the JVM benchmarks.
+            return false;
+        }
     }
 }
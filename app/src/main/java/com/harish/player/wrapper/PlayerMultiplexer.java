@@ -0,0 +1,492 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Plays the tiles of a grid or feed on a fixed set of {@link Player} instances, driven by visibility.
+ * <p>
+ * Tiles are identified by their position in the feed and report their visible fraction through
+ * {@link #setVisibility(int, float)}, or all at once per scroll event through
+ * {@link #setVisibility(int[], float[], int)}. The most visible tiles play, at most maxPlaying of
+ * them. The next visible tiles and then the tiles next to the visible range, at most maxPrepared of
+ * them, are kept prepared (or paused) so that they start right away once scrolled in. Every other tile
+ * holds no player, the players are reset and handed to the tiles which need one. Only maxPlaying +
+ * maxPrepared players are ever created, so the number of decoders is bounded however many tiles the
+ * feed has.
+ * <p>
+ * Tiles are kept ordered both by visibility and by position, so a change is scheduled in
+ * O((maxPlaying + maxPrepared) log n) for n tiles, i.e. O(log n) for fixed limits. Transitions are
+ * derived from the tracked state of each player, a player already in the wanted state is left alone.
+ * <p>
+ * The players are driven by this class and must not be controlled directly, bind their output to the
+ * tile views through a {@link TileListener}.
+ */
+public final class PlayerMultiplexer {
+    private static final String TAG = PlayerMultiplexer.class.getSimpleName();
+
+    private final int mMaxPlaying;
+    private final Slot[] mSlots;
+
+    //Slots not bound to any tile.
+    private final ArrayDeque<Slot> mFree = new ArrayDeque<>();
+
+    //Every tile, by position.
+    private final TreeMap<Integer, Tile> mTiles = new TreeMap<>();
+
+    //Visible tiles, by position and by decreasing visibility.
+    private final TreeMap<Integer, Tile> mVisible = new TreeMap<>();
+    private final TreeSet<Tile> mRanked = new TreeSet<>(new Comparator<Tile>() {
+        @Override
+        public int compare(Tile a, Tile b) {
+            int byVisibility = Float.compare(b.visibility, a.visibility);
+            return byVisibility != 0 ? byVisibility : Integer.compare(a.position, b.position);
+        }
+    });
+
+    //Tiles wanted by the last scheduling, the first mWantedPlaying ones play.
+    private final Tile[] mWanted;
+    private int mWantedCount;
+    private int mWantedPlaying;
+
+    //Marks the tiles wanted by the current scheduling.
+    private int mGeneration;
+
+    private volatile TileListener mListener;
+    private boolean mReleased;
+
+    //Counters.
+    private long mScheduleCount;
+    private long mStarts;
+    private long mPauses;
+    private long mLoads;
+    private long mUnloads;
+
+    /**
+     * Constructor, backed by the native player.
+     *
+     * @param maxPlaying  the maximum number of playing tiles.
+     * @param maxPrepared the maximum number of prepared tiles, besides the playing ones.
+     */
+    public PlayerMultiplexer(int maxPlaying, int maxPrepared) {
+        this(maxPlaying, maxPrepared, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxPlaying    the maximum number of playing tiles.
+     * @param maxPrepared   the maximum number of prepared tiles, besides the playing ones.
+     * @param engineFactory creates the engines of the players, null for the native player.
+     */
+    public PlayerMultiplexer(int maxPlaying, int maxPrepared, @Nullable PlaybackEngine.Factory engineFactory) {
+        if (maxPlaying < 1 || maxPrepared < 0) {
+            throw new IllegalArgumentException("Invalid limits " + maxPlaying + "/" + maxPrepared);
+        }
+        this.mMaxPlaying = maxPlaying;
+        mSlots = new Slot[maxPlaying + maxPrepared];
+        mWanted = new Tile[mSlots.length];
+        for (int i = 0; i < mSlots.length; i++) {
+            Player player = engineFactory != null ? new Player(engineFactory) : new Player();
+            mSlots[i] = new Slot(player);
+            mSlots[i].subscription = player.getEventBus().subscribe(mSlots[i]);
+            mFree.addLast(mSlots[i]);
+        }
+    }
+
+    /**
+     * Register a callback to be invoked when players are bound to and unbound from tiles.
+     *
+     * @param listener the callback that will be run
+     */
+    public void setTileListener(@Nullable TileListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Adds a tile, or replaces the data source of a tile. A new tile is not visible.
+     *
+     * @param position the position of the tile in the feed.
+     * @param path     the path or http/rtsp URL of the tile, see {@link Player#setDataSource(String)}.
+     */
+    public synchronized void setTile(int position, @NonNull String path) {
+        checkNotReleased();
+        Tile tile = mTiles.get(position);
+        if (tile == null) {
+            mTiles.put(position, new Tile(position, path));
+        } else if (!tile.path.equals(path)) {
+            tile.path = path;
+            if (tile.slot != null) {
+                //Reloaded by the scheduling below.
+                Slot slot = tile.slot;
+                unbind(slot);
+                mFree.addLast(slot);
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Removes a tile, e.g. once it left the feed.
+     *
+     * @param position the position of the tile in the feed.
+     */
+    public synchronized void removeTile(int position) {
+        checkNotReleased();
+        Tile tile = mTiles.remove(position);
+        if (tile == null) {
+            return;
+        }
+        if (tile.visibility > 0) {
+            mRanked.remove(tile);
+            mVisible.remove(position);
+        }
+        if (tile.slot != null) {
+            Slot slot = tile.slot;
+            unbind(slot);
+            mFree.addLast(slot);
+        }
+        schedule();
+    }
+
+    /**
+     * Removes every tile, resetting all players.
+     */
+    public synchronized void clearTiles() {
+        for (Slot slot : mSlots) {
+            if (slot.tile != null) {
+                unbind(slot);
+                mFree.addLast(slot);
+            }
+        }
+        mTiles.clear();
+        mVisible.clear();
+        mRanked.clear();
+        mWantedCount = 0;
+        mWantedPlaying = 0;
+    }
+
+    /**
+     * Updates the visible fraction of a tile and schedules the players accordingly.
+     *
+     * @param position   the position of the tile in the feed.
+     * @param visibility the visible fraction of the tile, in [0, 1].
+     */
+    public synchronized void setVisibility(int position, float visibility) {
+        checkNotReleased();
+        if (updateVisibility(position, visibility)) {
+            schedule();
+        }
+    }
+
+    /**
+     * Updates the visible fraction of several tiles, e.g. every tile a scroll event moved, and schedules
+     * the players once.
+     *
+     * @param positions    the positions of the tiles in the feed.
+     * @param visibilities the visible fraction of each tile, in [0, 1].
+     * @param count        the number of tiles.
+     * @throws IllegalArgumentException if a tile is unknown, in which case no visibility is updated.
+     */
+    public synchronized void setVisibility(@NonNull int[] positions, @NonNull float[] visibilities, int count) {
+        checkNotReleased();
+        if (count < 0 || count > positions.length || count > visibilities.length) {
+            throw new IndexOutOfBoundsException("Count " + count + " of " + positions.length + "/" + visibilities.length);
+        }
+        //Validated up front, so that a bad position does not leave the batch half applied.
+        for (int i = 0; i < count; i++) {
+            if (!mTiles.containsKey(positions[i])) {
+                throw new IllegalArgumentException("Unknown tile " + positions[i]);
+            }
+        }
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            changed |= updateVisibility(positions[i], visibilities[i]);
+        }
+        if (changed) {
+            schedule();
+        }
+    }
+
+    /**
+     * @param position the position of the tile in the feed.
+     * @return the player bound to the tile, or null if the tile holds no player.
+     */
+    @Nullable
+    public synchronized Player getPlayer(int position) {
+        Tile tile = mTiles.get(position);
+        return tile != null && tile.slot != null ? tile.slot.player : null;
+    }
+
+    /**
+     * @param position the position of the tile in the feed.
+     * @return TRUE if the tile is scheduled to play, it may still be preparing.
+     */
+    public synchronized boolean isPlaying(int position) {
+        Tile tile = mTiles.get(position);
+        return tile != null && tile.slot != null && tile.play;
+    }
+
+    /**
+     * @return number of tiles.
+     */
+    public synchronized int getTileCount() {
+        return mTiles.size();
+    }
+
+    /**
+     * @return number of scheduling passes, one per change of the tiles or their visibility.
+     */
+    public synchronized long getScheduleCount() {
+        return mScheduleCount;
+    }
+
+    /**
+     * @return number of start() calls made to players.
+     */
+    public synchronized long getStartCount() {
+        return mStarts;
+    }
+
+    /**
+     * @return number of pause() calls made to players.
+     */
+    public synchronized long getPauseCount() {
+        return mPauses;
+    }
+
+    /**
+     * @return number of data sources set and prepared on players.
+     */
+    public synchronized long getLoadCount() {
+        return mLoads;
+    }
+
+    /**
+     * @return number of players reset to be bound to another tile.
+     */
+    public synchronized long getUnloadCount() {
+        return mUnloads;
+    }
+
+    /**
+     * Releases all players, the multiplexer cannot be used afterwards.
+     */
+    public synchronized void release() {
+        if (mReleased) {
+            return;
+        }
+        clearTiles();
+        mReleased = true;
+        for (Slot slot : mSlots) {
+            slot.player.getEventBus().unsubscribe(slot.subscription);
+            if (slot.player.getCurrentState() != Player.STATE_ENDED) {
+                slot.player.release();
+            }
+        }
+        mFree.clear();
+    }
+
+    private void checkNotReleased() {
+        if (mReleased) {
+            throw new IllegalStateException("Multiplexer has been released!");
+        }
+    }
+
+    private boolean updateVisibility(int position, float visibility) {
+        Tile tile = mTiles.get(position);
+        if (tile == null) {
+            throw new IllegalArgumentException("Unknown tile " + position);
+        }
+        visibility = Math.max(0, Math.min(1, visibility));
+        if (tile.visibility == visibility) {
+            return false;
+        }
+        //Reorder, the sorted sets must not see the key change.
+        if (tile.visibility > 0) {
+            mRanked.remove(tile);
+            mVisible.remove(position);
+        }
+        tile.visibility = visibility;
+        if (visibility > 0) {
+            mRanked.add(tile);
+            mVisible.put(position, tile);
+        }
+        return true;
+    }
+
+    //Binds players to the wanted tiles, in O(slots * log n).
+    private void schedule() {
+        mScheduleCount++;
+        int generation = ++mGeneration;
+        mWantedCount = 0;
+
+        //The most visible tiles play, the next visible ones are prepared.
+        Iterator<Tile> ranked = mRanked.iterator();
+        while (mWantedCount < mWanted.length && ranked.hasNext()) {
+            want(ranked.next(), generation, mWantedCount < mMaxPlaying);
+        }
+        mWantedPlaying = Math.min(mWantedCount, mMaxPlaying);
+
+        //Then the tiles around the visible range, alternately after and before it.
+        if (!mVisible.isEmpty()) {
+            Map.Entry<Integer, Tile> after = mTiles.higherEntry(mVisible.lastKey());
+            Map.Entry<Integer, Tile> before = mTiles.lowerEntry(mVisible.firstKey());
+            while (mWantedCount < mWanted.length && (after != null || before != null)) {
+                if (after != null) {
+                    want(after.getValue(), generation, false);
+                    after = mTiles.higherEntry(after.getKey());
+                }
+                if (before != null && mWantedCount < mWanted.length) {
+                    want(before.getValue(), generation, false);
+                    before = mTiles.lowerEntry(before.getKey());
+                }
+            }
+        }
+
+        //Free the players of the tiles no longer wanted, first, so that there is one for every wanted tile.
+        for (Slot slot : mSlots) {
+            if (slot.tile != null && slot.tile.generation != generation) {
+                unbind(slot);
+                mFree.addLast(slot);
+            }
+        }
+        //Pause before starting, so that no more than maxPlaying decode at once.
+        for (int i = mWantedPlaying; i < mWantedCount; i++) {
+            Tile tile = mWanted[i];
+            if (tile.slot == null) {
+                bind(mFree.pollFirst(), tile);
+            } else if (tile.slot.player.getCurrentState() == Player.STATE_STARTED) {
+                tile.slot.player.pause();
+                mPauses++;
+            }
+        }
+        for (int i = 0; i < mWantedPlaying; i++) {
+            Tile tile = mWanted[i];
+            if (tile.slot == null) {
+                bind(mFree.pollFirst(), tile);
+            }
+            startIfReady(tile);
+        }
+    }
+
+    private void want(Tile tile, int generation, boolean play) {
+        tile.generation = generation;
+        tile.play = play;
+        mWanted[mWantedCount++] = tile;
+    }
+
+    private void bind(Slot slot, Tile tile) {
+        slot.tile = tile;
+        tile.slot = slot;
+        TileListener listener = mListener;
+        if (listener != null) {
+            listener.onTileBound(tile.position, slot.player);
+        }
+        try {
+            mLoads++;
+            slot.player.setDataSource(tile.path);
+            slot.player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            //Keep the tile bound, so that it is not retried on every scroll event.
+            if (listener != null) {
+                listener.onTileFailed(tile.position, e);
+            }
+        }
+    }
+
+    private void unbind(Slot slot) {
+        Tile tile = slot.tile;
+        slot.tile = null;
+        tile.slot = null;
+        int state = slot.player.getCurrentState();
+        if (state != Player.STATE_IDLE && state != Player.STATE_ENDED) {
+            slot.player.reset();
+            mUnloads++;
+        }
+        TileListener listener = mListener;
+        if (listener != null) {
+            listener.onTileUnbound(tile.position, slot.player);
+        }
+    }
+
+    private void startIfReady(Tile tile) {
+        if (tile.slot == null || !tile.play) {
+            return;
+        }
+        int state = tile.slot.player.getCurrentState();
+        if (state == Player.STATE_PREPARED || state == Player.STATE_PAUSED) {
+            tile.slot.player.start();
+            mStarts++;
+        }
+    }
+
+    private synchronized void onSlotPrepared(Slot slot) {
+        Tile tile = slot.tile;
+        if (tile != null) {
+            startIfReady(tile);
+        }
+    }
+
+    /**
+     * Interface definition of a callback to be invoked when the players move between tiles.
+     */
+    public interface TileListener {
+        /**
+         * The player is about to load the tile, e.g. set its surface.
+         */
+        void onTileBound(int position, Player player);
+
+        /**
+         * The player has been reset and left the tile, e.g. detach its surface.
+         */
+        void onTileUnbound(int position, Player player);
+
+        void onTileFailed(int position, Exception error);
+    }
+
+    /**
+     * Tile of the feed, along with the slot playing it.
+     */
+    private static final class Tile {
+        final int position;
+        String path;
+        float visibility;
+        Slot slot;
+        int generation;
+        boolean play;
+
+        Tile(int position, String path) {
+            this.position = position;
+            this.path = path;
+        }
+    }
+
+    /**
+     * One of the players, along with the tile it plays.
+     */
+    private final class Slot implements PlayerEventBus.PlayerEventListener {
+        final Player player;
+        Tile tile;
+        PlayerEventBus.Subscription subscription;
+
+        Slot(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void onPlayerEvent(int event, long arg1, long arg2) {
+            if (event == PlayerEventBus.EVENT_PREPARED) {
+                onSlotPrepared(this);
+            }
+        }
+    }
+}
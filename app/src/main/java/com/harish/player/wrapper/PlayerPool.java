@@ -0,0 +1,343 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded pool of {@link Player} instances which are kept alive between uses.
+ * <p>
+ * Players handed back through {@link #recycle(Player)} are {@link Player#reset()} instead of
+ * {@link Player#release()}, so the next {@link #acquire(String)} does not pay for the native
+ * player construction. Upcoming data sources can be prepared ahead of time with
+ * {@link #preload(List)}, in which case {@link #acquire(String)} hands out a player which is
+ * already in {@link Player#STATE_PREPARED} (or still in {@link Player#STATE_PREPARING}) and
+ * {@link Player#start()} can be called right away.
+ * <p>
+ * Idle players are kept in least recently used order, the eldest one is released once the pool
+ * holds more than its capacity. The capacity bounds the players handed out as well: once all of them
+ * are in use, {@link #acquire(String)} fails and {@link #preload(List)} prepares nothing more.
+ */
+public final class PlayerPool {
+    private static final String TAG = PlayerPool.class.getSimpleName();
+
+    //Maximum number of players kept alive by the pool, including the ones handed out.
+    private final int mCapacity;
+
+    //Maximum number of data sources prepared ahead in #preload(List).
+    private final int mPrepareAhead;
+
+    //Idle players bound to a data source, in access order (eldest first).
+    private final LinkedHashMap<String, Entry> mBound = new LinkedHashMap<>(16, 0.75f, true);
+
+    //Idle players in STATE_IDLE, not bound to any data source.
+    private final ArrayDeque<Entry> mFree = new ArrayDeque<>();
+
+    //Creates the engine of every new pooled player, or null for the native player.
+    private final PlaybackEngine.Factory mEngineFactory;
+
+    //Players currently handed out through #acquire(String).
+    private final Map<Player, Entry> mInUse = new LinkedHashMap<>();
+
+    //Counters.
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+    private long mPrepareCount;
+    private long mPrepareTotalNanos;
+    private long mPrepareMaxNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity     the maximum number of players kept alive by the pool.
+     * @param prepareAhead the maximum number of data sources prepared ahead of time.
+     */
+    public PlayerPool(int capacity, int prepareAhead) {
+        this(capacity, prepareAhead, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity      the maximum number of players kept alive by the pool.
+     * @param prepareAhead  the maximum number of data sources prepared ahead of time.
+     * @param engineFactory creates the engine of every new pooled player, null for the native player.
+     */
+    public PlayerPool(int capacity, int prepareAhead, @Nullable PlaybackEngine.Factory engineFactory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        }
+        if (prepareAhead < 0 || prepareAhead > capacity) {
+            throw new IllegalArgumentException("Prepare ahead must be within [0, capacity], was " + prepareAhead);
+        }
+        this.mCapacity = capacity;
+        this.mPrepareAhead = prepareAhead;
+        this.mEngineFactory = engineFactory;
+    }
+
+    /**
+     * Returns a player for the given data source. If the source was prepared ahead through
+     * {@link #preload(List)} the same player is returned (pool hit), otherwise an idle player is
+     * reset and initialized with the source and preparation is started asynchronously (pool miss).
+     * <p>
+     * The returned player must be handed back through {@link #recycle(Player)} once done.
+     *
+     * @param path the path of the file, or the http/rtsp URL of the stream you want to play.
+     * @return a player which is either preparing or already prepared for the given source.
+     * @throws IOException           if the data source could not be set.
+     * @throws IllegalStateException if all the players of the pool are handed out.
+     */
+    public synchronized Player acquire(@NonNull String path) throws IOException {
+        Entry entry = mBound.remove(path);
+        if (entry != null && isUsable(entry.player)) {
+            mHits++;
+        } else {
+            mMisses++;
+            if (entry != null) {
+                //Stale binding (error or released), drop it.
+                discard(entry);
+            }
+            entry = obtainEntry();
+            if (entry == null) {
+                throw new IllegalStateException("Pool exhausted, all " + mCapacity + " players are in use!");
+            }
+            bind(entry, path);
+        }
+        mInUse.put(entry.player, entry);
+        trimToCapacity();
+        return entry.player;
+    }
+
+    /**
+     * Prepares the first data sources of the given list ahead of time, at most the configured
+     * prepare-ahead count. Sources which are already bound to a pooled player are left untouched.
+     * Preloading stops early if no player is left to bind, i.e. the others are handed out.
+     *
+     * @param paths the upcoming data sources, most likely to be played first.
+     * @throws IOException if a data source could not be set.
+     */
+    public synchronized void preload(@NonNull List<String> paths) throws IOException {
+        int count = Math.min(paths.size(), mPrepareAhead);
+        for (int i = 0; i < count; i++) {
+            String path = paths.get(i);
+            Entry entry = mBound.get(path);
+            if (entry != null && isUsable(entry.player)) {
+                continue;
+            }
+            if (entry != null) {
+                mBound.remove(path);
+                discard(entry);
+            }
+            entry = obtainEntry();
+            if (entry == null) {
+                break;
+            }
+            bind(entry, path);
+            mBound.put(path, entry);
+        }
+        trimToCapacity();
+    }
+
+    /**
+     * Hands a player obtained through {@link #acquire(String)} back to the pool.
+     * The player is reset and kept alive for the next {@link #acquire(String)}.
+     *
+     * @param player the player to be recycled.
+     */
+    public synchronized void recycle(@NonNull Player player) {
+        Entry entry = mInUse.remove(player);
+        if (entry == null) {
+            throw new IllegalArgumentException("Player is not owned by this pool!");
+        }
+        if (player.getCurrentState() == Player.STATE_ENDED) {
+            return;
+        }
+        player.reset();
+        entry.path = null;
+        mFree.addLast(entry);
+        trimToCapacity();
+    }
+
+    /**
+     * Releases all idle players. Players which are currently handed out are released once
+     * they are recycled.
+     */
+    public synchronized void clear() {
+        for (Entry entry : mBound.values()) {
+            release(entry);
+        }
+        mBound.clear();
+        for (Entry entry : mFree) {
+            release(entry);
+        }
+        mFree.clear();
+    }
+
+    /**
+     * @return number of {@link #acquire(String)} calls served by a player prepared ahead.
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return number of {@link #acquire(String)} calls which had to initialize a player.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return number of idle players released because the pool was over capacity.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * @return number of completed preparations started by the pool.
+     */
+    public synchronized long getPrepareCount() {
+        return mPrepareCount;
+    }
+
+    /**
+     * @return average time from prepareAsync() until the player was prepared, in nanoseconds.
+     */
+    public synchronized long getAveragePrepareLatencyNanos() {
+        return mPrepareCount == 0 ? 0 : mPrepareTotalNanos / mPrepareCount;
+    }
+
+    /**
+     * @return longest time from prepareAsync() until the player was prepared, in nanoseconds.
+     */
+    public synchronized long getMaxPrepareLatencyNanos() {
+        return mPrepareMaxNanos;
+    }
+
+    /**
+     * @return total number of players alive in the pool, including the ones handed out.
+     */
+    public synchronized int size() {
+        return mBound.size() + mFree.size() + mInUse.size();
+    }
+
+    private static boolean isUsable(Player player) {
+        int state = player.getCurrentState();
+        return state == Player.STATE_PREPARING || state == Player.STATE_PREPARED;
+    }
+
+    //Returns an idle player, creating one below capacity, or null if all the players are handed out.
+    @Nullable
+    private Entry obtainEntry() {
+        Entry entry = mFree.pollFirst();
+        if (entry != null) {
+            return entry;
+        }
+        if (size() >= mCapacity) {
+            if (mBound.isEmpty()) {
+                return null;
+            }
+            //Steal the least recently used prepared player instead of growing the pool.
+            Iterator<Entry> eldest = mBound.values().iterator();
+            entry = eldest.next();
+            eldest.remove();
+            mEvictions++;
+            entry.player.reset();
+            entry.path = null;
+            return entry;
+        }
+        Entry created = new Entry(mEngineFactory != null ? new Player(mEngineFactory) : new Player());
+        //Through the event bus, the prepared listener of the player is left to the caller.
+        created.subscription = created.player.getEventBus().subscribe(created);
+        return created;
+    }
+
+    private void bind(Entry entry, String path) throws IOException {
+        Player player = entry.player;
+        if (player.getCurrentState() != Player.STATE_IDLE) {
+            player.reset();
+        }
+        try {
+            player.setDataSource(path);
+            entry.path = path;
+            entry.prepareStartNanos = System.nanoTime();
+            player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            //Keep the player around for the next source instead of leaking it.
+            player.reset();
+            entry.path = null;
+            mFree.addLast(entry);
+            throw e;
+        }
+    }
+
+    private static void release(Entry entry) {
+        entry.player.getEventBus().unsubscribe(entry.subscription);
+        entry.player.release();
+    }
+
+    private void discard(Entry entry) {
+        if (entry.player.getCurrentState() == Player.STATE_ENDED) {
+            return;
+        }
+        entry.player.reset();
+        entry.path = null;
+        mFree.addLast(entry);
+    }
+
+    private void trimToCapacity() {
+        while (size() > mCapacity && !mFree.isEmpty()) {
+            release(mFree.pollFirst());
+            mEvictions++;
+        }
+        while (size() > mCapacity && !mBound.isEmpty()) {
+            Iterator<Entry> eldest = mBound.values().iterator();
+            Entry entry = eldest.next();
+            eldest.remove();
+            release(entry);
+            mEvictions++;
+        }
+    }
+
+    private synchronized void onEntryPrepared(Entry entry) {
+        if (entry.prepareStartNanos == 0) {
+            return;
+        }
+        long latency = System.nanoTime() - entry.prepareStartNanos;
+        entry.prepareStartNanos = 0;
+        mPrepareCount++;
+        mPrepareTotalNanos += latency;
+        if (latency > mPrepareMaxNanos) {
+            mPrepareMaxNanos = latency;
+        }
+    }
+
+    /**
+     * Pooled player along with the data source it is bound to.
+     */
+    private final class Entry implements PlayerEventBus.PlayerEventListener {
+        final Player player;
+        PlayerEventBus.Subscription subscription;
+        String path;
+        long prepareStartNanos;
+
+        Entry(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void onPlayerEvent(int event, long arg1, long arg2) {
+            if (event == PlayerEventBus.EVENT_PREPARED) {
+                onEntryPrepared(this);
+            }
+        }
+    }
+}
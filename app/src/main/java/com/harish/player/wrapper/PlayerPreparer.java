@@ -0,0 +1,157 @@
+package com.harish.player.wrapper;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Prepares players on a background thread, so that neither the construction of the native player
+ * nor the synchronous setDataSource() and prepare() calls block the main thread.
+ * <p>
+ * Players are expected in {@link Player#STATE_IDLE}, e.g. freshly constructed, which is cheap since the
+ * native player is created on the first setDataSource(). The returned future completes once the player
+ * is in {@link Player#STATE_PREPARED}, or fails with the exception thrown by the player, or with a
+ * {@link CancellationException} if the player was reset or released meanwhile. Cancelling the future does
+ * not interrupt a native prepare already running, the player is left in the state it reaches.
+ * <p>
+ * The time spent blocking is recorded by the {@link PlaybackMetrics} of each player, split by thread.
+ */
+public final class PlayerPreparer {
+    private static final String TAG = PlayerPreparer.class.getSimpleName();
+
+    private final Executor mExecutor;
+    private final ExecutorService mOwnedExecutor;
+
+    //Counters, guarded by this.
+    private long mPrepared;
+    private long mFailed;
+
+    /**
+     * Constructor, preparing on a dedicated background thread.
+     */
+    public PlayerPreparer() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param executor the executor to prepare on, null for a dedicated background thread.
+     */
+    public PlayerPreparer(@Nullable Executor executor) {
+        if (executor == null) {
+            mOwnedExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mExecutor = mOwnedExecutor;
+        } else {
+            mOwnedExecutor = null;
+            mExecutor = executor;
+        }
+    }
+
+    /**
+     * Sets the data source (file-path or http/rtsp URL) and prepares the player in the background.
+     *
+     * @param player the idle player.
+     * @param path   the path of the file, or the http/rtsp URL of the stream.
+     * @return the future of the prepared player.
+     */
+    public Future<Player> prepare(@NonNull final Player player, @NonNull final String path) {
+        return submit(new Callable<Player>() {
+            @Override
+            public Player call() throws Exception {
+                player.setDataSource(path);
+                player.prepare();
+                return player;
+            }
+        });
+    }
+
+    /**
+     * Sets the data source as a content Uri and prepares the player in the background.
+     *
+     * @param player  the idle player.
+     * @param context the Context to use when resolving the Uri.
+     * @param uri     the Content URI of the data to play.
+     * @param headers the headers to be sent together with the request for the data, may be null.
+     * @return the future of the prepared player.
+     */
+    public Future<Player> prepare(@NonNull final Player player, @NonNull final Context context,
+                                  @NonNull final Uri uri, @Nullable final Map<String, String> headers) {
+        return submit(new Callable<Player>() {
+            @Override
+            public Player call() throws Exception {
+                player.setDataSource(context, uri, headers);
+                player.prepare();
+                return player;
+            }
+        });
+    }
+
+    /**
+     * Shuts down the dedicated background thread, if any. Preparations already submitted still run.
+     */
+    public void shutdown() {
+        if (mOwnedExecutor != null) {
+            mOwnedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @return number of players prepared.
+     */
+    public synchronized long getPreparedCount() {
+        return mPrepared;
+    }
+
+    /**
+     * @return number of preparations which failed or were abandoned.
+     */
+    public synchronized long getFailedCount() {
+        return mFailed;
+    }
+
+    private Future<Player> submit(final Callable<Player> preparation) {
+        FutureTask<Player> task = new FutureTask<>(new Callable<Player>() {
+            @Override
+            public Player call() throws Exception {
+                try {
+                    Player prepared = preparation.call();
+                    int state = prepared.getCurrentState();
+                    if (state != Player.STATE_PREPARED) {
+                        //prepare() returns normally when abandoned by reset() or release().
+                        throw new CancellationException("Preparation abandoned in state " + state);
+                    }
+                    synchronized (PlayerPreparer.this) {
+                        mPrepared++;
+                    }
+                    return prepared;
+                } catch (Exception e) {
+                    synchronized (PlayerPreparer.this) {
+                        mFailed++;
+                    }
+                    throw e;
+                }
+            }
+        });
+        mExecutor.execute(task);
+        return task;
+    }
+}
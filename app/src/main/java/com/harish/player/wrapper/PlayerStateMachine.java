@@ -0,0 +1,107 @@
+package com.harish.player.wrapper;
+
+import static com.harish.player.wrapper.Player.STATE_COMPLETED;
+import static com.harish.player.wrapper.Player.STATE_ENDED;
+import static com.harish.player.wrapper.Player.STATE_ERROR;
+import static com.harish.player.wrapper.Player.STATE_IDLE;
+import static com.harish.player.wrapper.Player.STATE_INITIALIZED;
+import static com.harish.player.wrapper.Player.STATE_PAUSED;
+import static com.harish.player.wrapper.Player.STATE_PREPARED;
+import static com.harish.player.wrapper.Player.STATE_PREPARING;
+import static com.harish.player.wrapper.Player.STATE_STARTED;
+import static com.harish.player.wrapper.Player.STATE_STOPPED;
+import static com.harish.player.wrapper.Player.STATE_UNKNOWN;
+
+/**
+ * @author HARISH.
+ *         <p>
+ *         Legal state transitions of {@link Player}, as per the state diagram of the native
+ *         player (refer "MediaPlayer_states.png").
+ *         <p>
+ *         Every state is mapped to a bit, and the states a transition may start from are kept as
+ *         a bit mask per target state, so a lookup is a shift and a mask test.
+ */
+public final class PlayerStateMachine {
+    private static final String TAG = PlayerStateMachine.class.getSimpleName();
+
+    //Bit mask of the states each state can be reached from, indexed by the target state.
+    private static final int[] SOURCES = new int[STATE_ENDED - STATE_UNKNOWN + 1];
+
+    //Every state other than STATE_UNKNOWN and STATE_ENDED.
+    private static final int LIVE = mask(STATE_ERROR, STATE_IDLE, STATE_INITIALIZED, STATE_PREPARING,
+            STATE_PREPARED, STATE_STARTED, STATE_PAUSED, STATE_STOPPED, STATE_COMPLETED);
+
+    //States in which seeking is accepted.
+    private static final int SEEKABLE = mask(STATE_PREPARED, STATE_STARTED, STATE_PAUSED, STATE_COMPLETED);
+
+    static {
+        //setDataSource().
+        SOURCES[index(STATE_INITIALIZED)] = mask(STATE_IDLE);
+        //prepare() and prepareAsync().
+        SOURCES[index(STATE_PREPARING)] = mask(STATE_INITIALIZED, STATE_STOPPED);
+        //onPrepared().
+        SOURCES[index(STATE_PREPARED)] = mask(STATE_PREPARING);
+        //start().
+        SOURCES[index(STATE_STARTED)] = mask(STATE_PREPARED, STATE_STARTED, STATE_PAUSED, STATE_COMPLETED);
+        //pause().
+        SOURCES[index(STATE_PAUSED)] = mask(STATE_STARTED, STATE_PAUSED, STATE_COMPLETED);
+        //stop().
+        SOURCES[index(STATE_STOPPED)] = mask(STATE_PREPARED, STATE_STARTED, STATE_PAUSED,
+                STATE_STOPPED, STATE_COMPLETED);
+        //onCompletion(), also raised after an unhandled onError().
+        SOURCES[index(STATE_COMPLETED)] = mask(STATE_STARTED, STATE_PAUSED, STATE_ERROR);
+        //reset().
+        SOURCES[index(STATE_IDLE)] = LIVE | mask(STATE_UNKNOWN);
+        //onError().
+        SOURCES[index(STATE_ERROR)] = LIVE;
+        //release(), allowed from anywhere and idempotent.
+        SOURCES[index(STATE_ENDED)] = LIVE | mask(STATE_UNKNOWN, STATE_ENDED);
+    }
+
+    private PlayerStateMachine() {
+    }
+
+    /**
+     * Checks whether the player may move from one state to another.
+     *
+     * @param from the current state.
+     * @param to   the requested state.
+     * @return TRUE if the transition is legal, FALSE otherwise.
+     */
+    public static boolean canTransition(int from, int to) {
+        if (!isValid(from) || !isValid(to)) {
+            return false;
+        }
+        return (SOURCES[index(to)] & bit(from)) != 0;
+    }
+
+    /**
+     * Checks whether a seek is accepted in the given state.
+     *
+     * @param state the current state.
+     * @return TRUE if seeking is legal, FALSE otherwise.
+     */
+    public static boolean canSeek(int state) {
+        return isValid(state) && (SEEKABLE & bit(state)) != 0;
+    }
+
+    private static boolean isValid(int state) {
+        return state >= STATE_UNKNOWN && state <= STATE_ENDED;
+    }
+
+    private static int index(int state) {
+        return state - STATE_UNKNOWN;
+    }
+
+    private static int bit(int state) {
+        return 1 << index(state);
+    }
+
+    private static int mask(int... states) {
+        int mask = 0;
+        for (int state : states) {
+            mask |= bit(state);
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,525 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays a list of data sources back to back without gaps, on two alternating {@link Player} instances.
+ * <p>
+ * While the current player plays, the other one prepares the successor in the play order and is
+ * chained through {@link Player#setNextPlayer(Player)}, so the engine starts it right when the current
+ * one completes. On completion both players swap roles and the completed one prepares the following
+ * item, so no player is created per track. Changing the shuffle mode, the repeat mode or the order of
+ * the items only re-prepares the standby player if its item is no longer the successor.
+ * <p>
+ * The players are driven by this class and must not be controlled directly. An unhandled error of the
+ * current item ends in its completion, which moves on to the next item.
+ */
+public final class PlaylistPlayer {
+    private static final String TAG = PlaylistPlayer.class.getSimpleName();
+
+    //Repeat modes.
+    public static final int REPEAT_OFF = 0;     //Stop after the last item.
+    public static final int REPEAT_ONE = 1;     //Repeat the current item.
+    public static final int REPEAT_ALL = 2;     //Start over after the last item.
+
+    //No item.
+    private static final int NONE = -1;
+
+    private final Slot[] mSlots = new Slot[2];
+
+    //Index of the slot of the current item within mSlots, the other one is on standby.
+    private int mCurrent;
+
+    private final List<String> mItems = new ArrayList<>();
+
+    //Play order, as indices into mItems, and the position of the current item within it.
+    private int[] mOrder = new int[0];
+    private int mOrderPosition = NONE;
+
+    private boolean mShuffle;
+    private int mRepeatMode = REPEAT_OFF;
+    private boolean mPlayWhenReady;
+    private final Random mRandom;
+
+    private volatile PlaylistListener mListener;
+
+    //Counters.
+    private long mGaplessTransitions;
+    private long mManualTransitions;
+
+    /**
+     * Constructor, backed by the native player.
+     */
+    public PlaylistPlayer() {
+        this(null, new Random());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param engineFactory creates the engines of both players, null for the native player.
+     * @param random        the source of the shuffle order.
+     */
+    public PlaylistPlayer(@Nullable PlaybackEngine.Factory engineFactory, @NonNull Random random) {
+        for (int i = 0; i < mSlots.length; i++) {
+            Player player = engineFactory != null ? new Player(engineFactory) : new Player();
+            mSlots[i] = new Slot(player);
+            mSlots[i].subscription = player.getEventBus().subscribe(mSlots[i]);
+        }
+        this.mRandom = random;
+    }
+
+    /**
+     * Register a callback to be invoked on playlist events.
+     *
+     * @param listener the callback that will be run
+     */
+    public void setPlaylistListener(@Nullable PlaylistListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Replaces the items, stopping the playback.
+     *
+     * @param items the path or http/rtsp URL of every item, see {@link Player#setDataSource(String)}.
+     */
+    public synchronized void setItems(@NonNull List<String> items) {
+        for (Slot slot : mSlots) {
+            unload(slot);
+        }
+        mItems.clear();
+        mItems.addAll(items);
+        mOrderPosition = NONE;
+        mPlayWhenReady = false;
+        rebuildOrder(NONE);
+    }
+
+    /**
+     * Starts playing the given item as soon as it is prepared.
+     *
+     * @param item the index of the item.
+     */
+    public synchronized void play(int item) {
+        checkItem(item);
+        mPlayWhenReady = true;
+        Slot standby = standby();
+        if (standby.item == item && isLoaded(standby.player)) {
+            //Successor already prepared, e.g. when skipping forward.
+            switchToStandby();
+        } else {
+            unlink();
+            Slot current = current();
+            unload(current);
+            load(current, item);
+        }
+        mOrderPosition = positionOf(item);
+        startIfReady();
+        refreshSuccessor();
+    }
+
+    /**
+     * Skips to the next item in the play order, if any.
+     */
+    public synchronized void skipToNext() {
+        int next = mOrderPosition + 1;
+        if (next >= mOrder.length) {
+            if (mRepeatMode == REPEAT_OFF || mOrder.length == 0) {
+                return;
+            }
+            next = 0;
+        }
+        play(mOrder[next]);
+    }
+
+    /**
+     * Pauses the current item.
+     */
+    public synchronized void pause() {
+        mPlayWhenReady = false;
+        Player player = current().player;
+        if (player.getCurrentState() == Player.STATE_STARTED) {
+            player.pause();
+        }
+    }
+
+    /**
+     * Resumes the current item, or starts it once prepared.
+     */
+    public synchronized void resume() {
+        mPlayWhenReady = true;
+        startIfReady();
+    }
+
+    /**
+     * Enables or disables shuffling. The current item stays current, the order of the other items changes.
+     */
+    public synchronized void setShuffle(boolean shuffle) {
+        if (mShuffle == shuffle) {
+            return;
+        }
+        mShuffle = shuffle;
+        int item = currentItem();
+        rebuildOrder(item);
+        mOrderPosition = item == NONE ? NONE : positionOf(item);
+        refreshSuccessor();
+    }
+
+    /**
+     * Sets the repeat mode.
+     *
+     * @param repeatMode one of {@link #REPEAT_OFF}, {@link #REPEAT_ONE} or {@link #REPEAT_ALL}.
+     */
+    public synchronized void setRepeatMode(int repeatMode) {
+        if (repeatMode < REPEAT_OFF || repeatMode > REPEAT_ALL) {
+            throw new IllegalArgumentException("Unknown repeat mode " + repeatMode);
+        }
+        mRepeatMode = repeatMode;
+        refreshSuccessor();
+    }
+
+    /**
+     * Moves an item to another position, keeping the current item playing.
+     *
+     * @param from the current index of the item.
+     * @param to   the new index of the item.
+     */
+    public synchronized void moveItem(int from, int to) {
+        checkItem(from);
+        checkItem(to);
+        if (from == to) {
+            return;
+        }
+        mItems.add(to, mItems.remove(from));
+        for (Slot slot : mSlots) {
+            slot.item = movedIndex(slot.item, from, to);
+        }
+        for (int i = 0; i < mOrder.length; i++) {
+            mOrder[i] = movedIndex(mOrder[i], from, to);
+        }
+        if (!mShuffle) {
+            //Play order follows the list order.
+            int item = currentItem();
+            rebuildOrder(item);
+            mOrderPosition = item == NONE ? NONE : positionOf(item);
+        }
+        refreshSuccessor();
+    }
+
+    /**
+     * @return the index of the current item, or -1 if none.
+     */
+    public synchronized int getCurrentItem() {
+        return currentItem();
+    }
+
+    /**
+     * @return the player of the current item, to be observed but not controlled.
+     */
+    public synchronized Player getCurrentPlayer() {
+        return current().player;
+    }
+
+    /**
+     * @return number of transitions handed off by the engine, without any gap.
+     */
+    public synchronized long getGaplessTransitionCount() {
+        return mGaplessTransitions;
+    }
+
+    /**
+     * @return number of transitions which had to start the next item after completion.
+     */
+    public synchronized long getManualTransitionCount() {
+        return mManualTransitions;
+    }
+
+    /**
+     * Releases both players, the playlist cannot be used afterwards.
+     */
+    public synchronized void release() {
+        mPlayWhenReady = false;
+        for (Slot slot : mSlots) {
+            slot.player.getEventBus().unsubscribe(slot.subscription);
+            slot.player.release();
+            slot.item = NONE;
+        }
+    }
+
+    private Slot current() {
+        return mSlots[mCurrent];
+    }
+
+    private Slot standby() {
+        return mSlots[1 - mCurrent];
+    }
+
+    private int currentItem() {
+        return mOrderPosition == NONE ? NONE : mOrder[mOrderPosition];
+    }
+
+    private void checkItem(int item) {
+        if (item < 0 || item >= mItems.size()) {
+            throw new IndexOutOfBoundsException("Item " + item + " of " + mItems.size());
+        }
+    }
+
+    private int positionOf(int item) {
+        for (int i = 0; i < mOrder.length; i++) {
+            if (mOrder[i] == item) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    private static int movedIndex(int index, int from, int to) {
+        if (index == NONE) {
+            return NONE;
+        }
+        if (index == from) {
+            return to;
+        }
+        if (from < to && index > from && index <= to) {
+            return index - 1;
+        }
+        if (from > to && index >= to && index < from) {
+            return index + 1;
+        }
+        return index;
+    }
+
+    //Rebuilds the play order, keeping the given item (if any) first when shuffling.
+    private void rebuildOrder(int first) {
+        int count = mItems.size();
+        if (mOrder.length != count) {
+            mOrder = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            mOrder[i] = i;
+        }
+        if (!mShuffle) {
+            return;
+        }
+        int start = 0;
+        if (first != NONE) {
+            mOrder[first] = 0;
+            mOrder[0] = first;
+            start = 1;
+        }
+        for (int i = count - 1; i > start; i--) {
+            int j = start + mRandom.nextInt(i - start + 1);
+            int swap = mOrder[i];
+            mOrder[i] = mOrder[j];
+            mOrder[j] = swap;
+        }
+    }
+
+    //Item to be played after the current one, or NONE.
+    private int successorItem() {
+        if (mOrderPosition == NONE) {
+            return NONE;
+        }
+        if (mRepeatMode == REPEAT_ONE) {
+            return mOrder[mOrderPosition];
+        }
+        int next = mOrderPosition + 1;
+        if (next >= mOrder.length) {
+            if (mRepeatMode != REPEAT_ALL) {
+                return NONE;
+            }
+            next = 0;
+        }
+        return mOrder[next];
+    }
+
+    private int successorPosition() {
+        if (mRepeatMode == REPEAT_ONE) {
+            return mOrderPosition;
+        }
+        int next = mOrderPosition + 1;
+        return next >= mOrder.length ? (mRepeatMode == REPEAT_ALL ? 0 : NONE) : next;
+    }
+
+    private static boolean isLoaded(Player player) {
+        int state = player.getCurrentState();
+        return state == Player.STATE_PREPARING || state == Player.STATE_PREPARED;
+    }
+
+    //Makes sure the standby player holds the successor, re-preparing it only if it changed.
+    private void refreshSuccessor() {
+        Slot standby = standby();
+        int successor = successorItem();
+        if (successor != NONE && standby.item == successor && isLoaded(standby.player)) {
+            link();
+            return;
+        }
+        unlink();
+        unload(standby);
+        if (successor != NONE) {
+            load(standby, successor);
+        }
+    }
+
+    //Chains the standby player to the current one once both are ready.
+    private void link() {
+        Player current = current().player;
+        Slot standby = standby();
+        if (standby.player.getCurrentState() != Player.STATE_PREPARED || standby.item != successorItem()) {
+            return;
+        }
+        int state = current.getCurrentState();
+        if ((state == Player.STATE_PREPARED || state == Player.STATE_STARTED || state == Player.STATE_PAUSED)
+                && current.getNextPlayer() != standby.player) {
+            current.setNextPlayer(standby.player);
+        }
+    }
+
+    private void unlink() {
+        Player current = current().player;
+        if (current.getNextPlayer() != null) {
+            current.setNextPlayer(null);
+        }
+    }
+
+    private void load(Slot slot, int item) {
+        try {
+            slot.item = item;
+            slot.player.setDataSource(mItems.get(item));
+            slot.player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            unload(slot);
+            PlaylistListener listener = mListener;
+            if (listener != null) {
+                listener.onItemFailed(item, e);
+            }
+        }
+    }
+
+    private void unload(Slot slot) {
+        slot.item = NONE;
+        slot.started = false;
+        int state = slot.player.getCurrentState();
+        if (state != Player.STATE_IDLE && state != Player.STATE_ENDED) {
+            slot.player.reset();
+        }
+    }
+
+    private void startIfReady() {
+        Slot current = current();
+        int state = current.player.getCurrentState();
+        //A player demoted by the governor restores itself on start().
+        if (!mPlayWhenReady || (state != Player.STATE_PREPARED && state != Player.STATE_PAUSED
+                && !current.player.isDemoted())) {
+            return;
+        }
+        current.player.start();
+        if (!current.started) {
+            current.started = true;
+            notifyItemStarted(current.item);
+        }
+    }
+
+    //Stops the current item and makes the standby player current.
+    private void switchToStandby() {
+        unlink();
+        Slot previous = current();
+        mCurrent = 1 - mCurrent;
+        unload(previous);
+    }
+
+    private void notifyItemStarted(int item) {
+        PlaylistListener listener = mListener;
+        if (listener != null) {
+            listener.onItemStarted(item);
+        }
+    }
+
+    private synchronized void onSlotPrepared(Slot slot) {
+        if (slot == current()) {
+            startIfReady();
+            link();
+        } else {
+            link();
+        }
+    }
+
+    private synchronized void onSlotCompleted(Slot slot) {
+        if (slot != current()) {
+            return;
+        }
+        Slot standby = standby();
+        int position = successorPosition();
+        if (position == NONE || standby.item != mOrder[position]) {
+            //Nothing lined up, the playlist has ended.
+            mPlayWhenReady = false;
+            PlaylistListener listener = mListener;
+            if (listener != null) {
+                listener.onPlaylistEnded();
+            }
+            return;
+        }
+        boolean gapless = standby.player.getCurrentState() == Player.STATE_STARTED;
+        if (gapless) {
+            mGaplessTransitions++;
+        } else {
+            mManualTransitions++;
+        }
+        mCurrent = 1 - mCurrent;
+        mOrderPosition = position;
+        unload(slot);
+        if (gapless) {
+            standby.started = true;
+            notifyItemStarted(standby.item);
+        } else {
+            //Prepared too late for the handoff, or still preparing.
+            startIfReady();
+        }
+        refreshSuccessor();
+    }
+
+    /**
+     * Interface definition of a callback to be invoked on playlist events.
+     */
+    public interface PlaylistListener {
+        void onItemStarted(int item);
+
+        void onItemFailed(int item, Exception error);
+
+        void onPlaylistEnded();
+    }
+
+    /**
+     * One of both players, along with the item it holds.
+     */
+    private final class Slot implements PlayerEventBus.PlayerEventListener {
+        final Player player;
+        int item = NONE;
+        //Whether the item has been started, and its start reported.
+        boolean started;
+        PlayerEventBus.Subscription subscription;
+
+        Slot(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void onPlayerEvent(int event, long arg1, long arg2) {
+            switch (event) {
+                case PlayerEventBus.EVENT_PREPARED:
+                    onSlotPrepared(this);
+                    break;
+                case PlayerEventBus.EVENT_COMPLETION:
+                    onSlotCompleted(this);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link RandomAccessSource} reading ahead of a sequential reader, e.g. the extractor of the native player.
+ * <p>
+ * The resource is split into chunks of a fixed size. A ring of reusable chunk buffers forms a window
+ * ahead of the read position. Once a few consecutive reads continue where the previous one ended,
+ * the chunks of the window are fetched asynchronously, and later reads are served from the buffers
+ * without reaching the upstream. A read outside the window is treated as a seek: read-ahead which has
+ * not started yet is cancelled and the buffered chunks are dropped.
+ * <p>
+ * Buffers are plain arrays, since the byte[] based {@link android.media.MediaDataSource} contract
+ * needs one copy into the reader's buffer anyway. A direct buffer would only add a second copy.
+ */
+public final class PrefetchingSource implements RandomAccessSource {
+    private static final String TAG = PrefetchingSource.class.getSimpleName();
+
+    //Consecutive sequential reads before read-ahead starts.
+    private static final int SEQUENTIAL_THRESHOLD = 2;
+
+    //Chunk states.
+    private static final int EMPTY = 0;
+    private static final int LOADING = 1;
+    private static final int READY = 2;
+
+    private final RandomAccessSource mUpstream;
+    private final int mChunkSize;
+    private final Chunk[] mRing;
+    private final Executor mExecutor;
+    private final ExecutorService mOwnedExecutor;
+
+    //Guards the ring and the access tracking, notified when a chunk finished loading.
+    private final Object mLock = new Object();
+
+    //End of the previous read and the number of sequential reads in a row.
+    private long mLastEnd = -1;
+    private int mSequentialRun;
+
+    //Bumped on every seek, read-ahead of an older generation is skipped.
+    private int mGeneration;
+
+    private long mSize = -2;
+    private boolean mClosed;
+
+    //Counters, guarded by mLock.
+    private long mHits;
+    private long mMisses;
+    private long mWaits;
+    private long mSeeks;
+    private long mStallNanos;
+    private long mPrefetchedBytes;
+    private long mWastedBytes;
+
+    /**
+     * Constructor, reading ahead on a dedicated background thread.
+     *
+     * @param upstream   the source to read from.
+     * @param chunkSize  the size of a read-ahead chunk in bytes.
+     * @param chunkCount the number of chunks in the read-ahead window.
+     */
+    public PrefetchingSource(@NonNull RandomAccessSource upstream, int chunkSize, int chunkCount) {
+        this(upstream, chunkSize, chunkCount, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param upstream   the source to read from, closed along with this source.
+     * @param chunkSize  the size of a read-ahead chunk in bytes.
+     * @param chunkCount the number of chunks in the read-ahead window, at least 2.
+     * @param executor   the executor to read ahead on, null for a dedicated background thread.
+     */
+    public PrefetchingSource(@NonNull RandomAccessSource upstream, int chunkSize, int chunkCount,
+                             @Nullable Executor executor) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, was " + chunkSize);
+        }
+        if (chunkCount < 2) {
+            throw new IllegalArgumentException("Chunk count must be at least 2, was " + chunkCount);
+        }
+        this.mUpstream = upstream;
+        this.mChunkSize = chunkSize;
+        this.mRing = new Chunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            mRing[i] = new Chunk(chunkSize);
+        }
+        if (executor == null) {
+            mOwnedExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            mExecutor = mOwnedExecutor;
+        } else {
+            mOwnedExecutor = null;
+            mExecutor = executor;
+        }
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        long startNanos = System.nanoTime();
+        long index = position / mChunkSize;
+        synchronized (mLock) {
+            if (mClosed) {
+                throw new IOException("Source has been closed!");
+            }
+            trackAccess(position);
+            Chunk chunk = mRing[slot(index)];
+            if (chunk.index == index && chunk.state == LOADING) {
+                mWaits++;
+                try {
+                    while (!mClosed && chunk.index == index && chunk.state == LOADING) {
+                        mLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for read-ahead");
+                } finally {
+                    //Counted once, a read-through following a failed load counts from here on.
+                    long now = System.nanoTime();
+                    mStallNanos += now - startNanos;
+                    startNanos = now;
+                }
+                if (mClosed) {
+                    throw new IOException("Source has been closed!");
+                }
+            }
+            if (chunk.index == index && chunk.state == READY) {
+                int chunkOffset = (int) (position - index * mChunkSize);
+                if (chunkOffset >= chunk.length) {
+                    //Short chunk, the end of the resource.
+                    return -1;
+                }
+                int count = Math.min(size, chunk.length - chunkOffset);
+                System.arraycopy(chunk.data, chunkOffset, buffer, offset, count);
+                chunk.consumed = true;
+                mHits++;
+                mLastEnd = position + count;
+                readAhead(index);
+                return count;
+            }
+            mMisses++;
+            readAhead(index);
+        }
+        //Not buffered, read through while the read-ahead (if any) continues.
+        int count = mUpstream.readAt(position, buffer, offset, size);
+        synchronized (mLock) {
+            mStallNanos += System.nanoTime() - startNanos;
+            if (count > 0) {
+                mLastEnd = position + count;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        synchronized (mLock) {
+            if (mSize != -2) {
+                return mSize;
+            }
+        }
+        long size = mUpstream.getSize();
+        synchronized (mLock) {
+            mSize = size;
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (mLock) {
+            mClosed = true;
+            mGeneration++;
+            //Queued loads are dropped by shutdownNow() and would never finish.
+            for (Chunk chunk : mRing) {
+                if (chunk.state == LOADING) {
+                    chunk.state = EMPTY;
+                    chunk.index = -1;
+                }
+            }
+            mLock.notifyAll();
+        }
+        if (mOwnedExecutor != null) {
+            mOwnedExecutor.shutdownNow();
+        }
+        mUpstream.close();
+    }
+
+    /**
+     * @return number of reads served from the read-ahead window.
+     */
+    public long getHitCount() {
+        synchronized (mLock) {
+            return mHits;
+        }
+    }
+
+    /**
+     * @return number of reads which had to reach the upstream.
+     */
+    public long getMissCount() {
+        synchronized (mLock) {
+            return mMisses;
+        }
+    }
+
+    /**
+     * @return number of reads which waited for a chunk still being read ahead.
+     */
+    public long getWaitCount() {
+        synchronized (mLock) {
+            return mWaits;
+        }
+    }
+
+    /**
+     * @return number of reads detected as seeks, which dropped the read-ahead window.
+     */
+    public long getSeekCount() {
+        synchronized (mLock) {
+            return mSeeks;
+        }
+    }
+
+    /**
+     * @return total time readers were blocked on the upstream or on read-ahead, in nanoseconds.
+     */
+    public long getStallNanos() {
+        synchronized (mLock) {
+            return mStallNanos;
+        }
+    }
+
+    /**
+     * @return number of bytes read ahead.
+     */
+    public long getPrefetchedBytes() {
+        synchronized (mLock) {
+            return mPrefetchedBytes;
+        }
+    }
+
+    /**
+     * @return number of bytes read ahead but dropped before being read.
+     */
+    public long getWastedBytes() {
+        synchronized (mLock) {
+            return mWastedBytes;
+        }
+    }
+
+    private int slot(long index) {
+        return (int) (index % mRing.length);
+    }
+
+    //Classifies the read at the given position as sequential or as a seek.
+    private void trackAccess(long position) {
+        if (mLastEnd < 0) {
+            mLastEnd = position;
+        }
+        long distance = position - mLastEnd;
+        if (distance >= 0 && distance < mChunkSize) {
+            mSequentialRun++;
+            return;
+        }
+        long index = position / mChunkSize;
+        if (mRing[slot(index)].index == index) {
+            //Backwards or forwards within the window, e.g. the extractor reading an index, not a seek.
+            return;
+        }
+        mSeeks++;
+        mSequentialRun = 0;
+        mGeneration++;
+        for (Chunk chunk : mRing) {
+            if (chunk.state == READY) {
+                if (!chunk.consumed) {
+                    mWastedBytes += chunk.length;
+                }
+                chunk.state = EMPTY;
+                chunk.index = -1;
+            }
+        }
+    }
+
+    //Schedules the chunks of the window following the given chunk.
+    private void readAhead(long index) {
+        if (mSequentialRun < SEQUENTIAL_THRESHOLD) {
+            return;
+        }
+        long size = mSize;
+        for (int i = 1; i < mRing.length; i++) {
+            long next = index + i;
+            if (size >= 0 && next * mChunkSize >= size) {
+                return;
+            }
+            Chunk chunk = mRing[slot(next)];
+            if (chunk.index == next || chunk.state == LOADING) {
+                //Already buffered, or the slot is busy with a stale load which cannot be interrupted.
+                continue;
+            }
+            if (chunk.state == READY && !chunk.consumed) {
+                mWastedBytes += chunk.length;
+            }
+            chunk.index = next;
+            chunk.state = LOADING;
+            chunk.consumed = false;
+            chunk.length = 0;
+            try {
+                mExecutor.execute(new Load(chunk, next, mGeneration));
+            } catch (RejectedExecutionException e) {
+                //No read-ahead for now, the reader reads through.
+                chunk.state = EMPTY;
+                chunk.index = -1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Buffer of the ring, along with the chunk it holds.
+     */
+    private static final class Chunk {
+        final byte[] data;
+        long index = -1;
+        int state = EMPTY;
+        int length;
+        boolean consumed;
+
+        Chunk(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    /**
+     * Reads one chunk ahead.
+     */
+    private final class Load implements Runnable {
+        private final Chunk mChunk;
+        private final long mIndex;
+        private final int mGeneration;
+
+        Load(Chunk chunk, long index, int generation) {
+            this.mChunk = chunk;
+            this.mIndex = index;
+            this.mGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                if (mGeneration != PrefetchingSource.this.mGeneration) {
+                    //Cancelled by a seek before it started.
+                    finish(EMPTY, 0);
+                    return;
+                }
+            }
+            int length = 0;
+            int state = READY;
+            try {
+                long position = mIndex * mChunkSize;
+                while (length < mChunkSize) {
+                    int count = mUpstream.readAt(position + length, mChunk.data, length, mChunkSize - length);
+                    if (count <= 0) {
+                        break;
+                    }
+                    length += count;
+                }
+            } catch (IOException | RuntimeException e) {
+                //Left to the reader, which reads through and sees the error itself.
+                state = EMPTY;
+            }
+            synchronized (mLock) {
+                mPrefetchedBytes += length;
+                finish(state, length);
+            }
+        }
+
+        private void finish(int state, int length) {
+            mChunk.state = state;
+            mChunk.length = length;
+            if (state == EMPTY) {
+                mChunk.index = -1;
+            }
+            mLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * Single timer sampling the position of any number of players, instead of one polling timer per seek bar.
+ * <p>
+ * Positions are published as {@link PlayerEventBus#EVENT_POSITION} on the event bus of each player, as
+ * primitive longs. Only players in {@link Player#STATE_STARTED} are sampled: the ticker follows their state
+ * changes and goes quiet when none of them is playing. Each player is sampled no faster than its progress
+ * can move the seek bar by a pixel, i.e. its duration divided by the visible width of the bar, within
+ * the configured bounds. A width of 0 stops sampling, e.g. while the bar is off screen.
+ * <p>
+ * Sampling does not allocate, players are kept in a copy-on-write array and the scheduled tasks are reused.
+ */
+public final class ProgressTicker {
+    private static final String TAG = ProgressTicker.class.getSimpleName();
+
+    //Default bounds of the sampling interval, a frame and a second.
+    public static final long DEFAULT_MIN_INTERVAL_MS = 16;
+    public static final long DEFAULT_MAX_INTERVAL_MS = 1000;
+
+    //No tick scheduled.
+    private static final long IDLE = Long.MAX_VALUE;
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private final PlayerEventBus.Scheduler mScheduler;
+    private final PlaybackMetrics.Clock mClock;
+    private final long mMinIntervalMs;
+    private final long mMaxIntervalMs;
+
+    //Copy-on-write, replaced as a whole under the lock of this ticker.
+    private volatile Entry[] mEntries = EMPTY;
+
+    //Scheduling, guarded by this. Only the latest scheduled tick samples, earlier ones are stale.
+    private final ArrayDeque<Tick> mFreeTicks = new ArrayDeque<>();
+    private int mTickSequence;
+    private long mNextTickMs = IDLE;
+
+    //Counters, guarded by this.
+    private long mTicks;
+    private long mSamples;
+
+    /**
+     * Constructor, sampling between {@link #DEFAULT_MIN_INTERVAL_MS} and {@link #DEFAULT_MAX_INTERVAL_MS}.
+     *
+     * @param scheduler the scheduler to sample on, e.g. {@link PlayerEventBus#schedulerOf(android.os.Handler)}
+     *                  of the main looper.
+     */
+    public ProgressTicker(@NonNull PlayerEventBus.Scheduler scheduler) {
+        this(scheduler, PlaybackMetrics.Clock.SYSTEM, DEFAULT_MIN_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param scheduler     the scheduler to sample on.
+     * @param clock         the monotonic clock the sampling is timed with.
+     * @param minIntervalMs minimum interval between two samples of a player.
+     * @param maxIntervalMs maximum interval between two samples of a player, also used when its duration is unknown.
+     */
+    public ProgressTicker(@NonNull PlayerEventBus.Scheduler scheduler, @NonNull PlaybackMetrics.Clock clock,
+                          long minIntervalMs, long maxIntervalMs) {
+        if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException("Invalid interval bounds " + minIntervalMs + "/" + maxIntervalMs);
+        }
+        this.mScheduler = scheduler;
+        this.mClock = clock;
+        this.mMinIntervalMs = minIntervalMs;
+        this.mMaxIntervalMs = maxIntervalMs;
+    }
+
+    /**
+     * Starts sampling the given player whenever it plays, until it is released or removed.
+     *
+     * @param player  the player to sample.
+     * @param widthPx the visible width of its seek bar in pixels, 0 to not sample it for now.
+     */
+    public void add(@NonNull Player player, int widthPx) {
+        final Entry entry = new Entry(player, widthPx);
+        synchronized (this) {
+            if (find(player) != null) {
+                setWidth(player, widthPx);
+                return;
+            }
+            Entry[] current = mEntries;
+            Entry[] updated = new Entry[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = entry;
+            mEntries = updated;
+            entry.subscription = player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+                @Override
+                public void onPlayerEvent(int event, long arg1, long arg2) {
+                    if (event == PlayerEventBus.EVENT_STATE_CHANGED) {
+                        onStateChanged(entry, (int) arg2);
+                    }
+                }
+            });
+        }
+        onStateChanged(entry, player.getCurrentState());
+    }
+
+    /**
+     * Updates the visible width of the seek bar of the given player, e.g. on layout.
+     *
+     * @param player  the sampled player.
+     * @param widthPx the visible width in pixels, 0 to not sample it for now.
+     */
+    public void setWidth(@NonNull Player player, int widthPx) {
+        Entry entry = find(player);
+        if (entry == null || entry.widthPx == widthPx) {
+            return;
+        }
+        entry.widthPx = widthPx;
+        entry.nextDueMs = 0;
+        wake();
+    }
+
+    /**
+     * Stops sampling the given player.
+     *
+     * @param player the sampled player.
+     */
+    public void remove(@NonNull Player player) {
+        Entry entry;
+        synchronized (this) {
+            entry = find(player);
+            if (entry == null) {
+                return;
+            }
+            Entry[] current = mEntries;
+            Entry[] updated = new Entry[current.length - 1];
+            int j = 0;
+            for (Entry other : current) {
+                if (other != entry) {
+                    updated[j++] = other;
+                }
+            }
+            mEntries = updated;
+        }
+        entry.active = false;
+        player.getEventBus().unsubscribe(entry.subscription);
+    }
+
+    /**
+     * @return number of sampled players, playing or not.
+     */
+    public int getPlayerCount() {
+        return mEntries.length;
+    }
+
+    /**
+     * @return number of ticks run.
+     */
+    public synchronized long getTickCount() {
+        return mTicks;
+    }
+
+    /**
+     * @return number of positions published.
+     */
+    public synchronized long getSampleCount() {
+        return mSamples;
+    }
+
+    private Entry find(Player player) {
+        for (Entry entry : mEntries) {
+            if (entry.player == player) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void onStateChanged(Entry entry, int state) {
+        if (state == Player.STATE_ENDED) {
+            remove(entry.player);
+            return;
+        }
+        boolean active = state == Player.STATE_STARTED;
+        if (active == entry.active) {
+            return;
+        }
+        if (active) {
+            entry.durationMs = entry.player.getDuration();
+            entry.nextDueMs = 0;
+        }
+        entry.active = active;
+        if (active) {
+            wake();
+        }
+    }
+
+    //Samples right away, e.g. for a player which started playing.
+    private void wake() {
+        long now = nowMs();
+        scheduleAt(now, now);
+    }
+
+    private void scheduleAt(long dueMs, long nowMs) {
+        synchronized (this) {
+            if (dueMs >= mNextTickMs) {
+                //An earlier tick is on its way.
+                return;
+            }
+            mNextTickMs = dueMs;
+            Tick tick = mFreeTicks.poll();
+            if (tick == null) {
+                tick = new Tick();
+            }
+            tick.sequence = ++mTickSequence;
+            mScheduler.schedule(tick, Math.max(0, dueMs - nowMs));
+        }
+    }
+
+    private void tick() {
+        long now = nowMs();
+        long next = IDLE;
+        int samples = 0;
+        for (Entry entry : mEntries) {
+            if (!entry.active || entry.widthPx <= 0) {
+                continue;
+            }
+            if (entry.nextDueMs <= now) {
+                if (sample(entry)) {
+                    samples++;
+                }
+                entry.nextDueMs = now + interval(entry);
+            }
+            next = Math.min(next, entry.nextDueMs);
+        }
+        synchronized (this) {
+            mTicks++;
+            mSamples += samples;
+        }
+        if (next != IDLE) {
+            scheduleAt(next, now);
+        }
+    }
+
+    private boolean sample(Entry entry) {
+        int positionMs;
+        try {
+            positionMs = entry.player.getCurrentPosition();
+            if (entry.durationMs <= 0) {
+                entry.durationMs = entry.player.getDuration();
+            }
+        } catch (IllegalStateException e) {
+            //Left STATE_STARTED meanwhile.
+            return false;
+        }
+        entry.player.getEventBus().publish(PlayerEventBus.EVENT_POSITION, positionMs, entry.durationMs);
+        return true;
+    }
+
+    //Time it takes the progress of the player to move the bar by a pixel.
+    private long interval(Entry entry) {
+        long durationMs = entry.durationMs;
+        if (durationMs <= 0) {
+            return mMaxIntervalMs;
+        }
+        return Math.max(mMinIntervalMs, Math.min(mMaxIntervalMs, durationMs / entry.widthPx));
+    }
+
+    private long nowMs() {
+        return mClock.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Sampled player, along with its sampling schedule.
+     */
+    private static final class Entry {
+        final Player player;
+        PlayerEventBus.Subscription subscription;
+        volatile int widthPx;
+        volatile boolean active;
+        volatile long durationMs;
+        volatile long nextDueMs;
+
+        Entry(Player player, int widthPx) {
+            this.player = player;
+            this.widthPx = widthPx;
+        }
+    }
+
+    /**
+     * Scheduled tick, recycled once run.
+     */
+    private final class Tick implements Runnable {
+        int sequence;
+
+        @Override
+        public void run() {
+            synchronized (ProgressTicker.this) {
+                mFreeTicks.add(this);
+                if (sequence != mTickSequence) {
+                    //Superseded by an earlier tick, scheduled later.
+                    return;
+                }
+                mNextTickMs = IDLE;
+            }
+            tick();
+        }
+    }
+}
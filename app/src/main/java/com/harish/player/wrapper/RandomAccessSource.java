@@ -0,0 +1,33 @@
+package com.harish.player.wrapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Random access to the bytes of a media resource, the plain Java counterpart of
+ * {@link android.media.MediaDataSource}.
+ * <p>
+ * Sources can be stacked, e.g. a {@link CachedSource} in front of an {@link HttpSource}, and are
+ * handed to {@link Player#setDataSource(android.media.MediaDataSource)} through a
+ * {@link MediaDataSourceAdapter}. Keeping them free of Android classes allows running them on a plain JVM.
+ */
+public interface RandomAccessSource extends Closeable {
+
+    /**
+     * Reads up to the given number of bytes at the given position.
+     *
+     * @param position the position in the resource to read from.
+     * @param buffer   the buffer to read into.
+     * @param offset   the offset within the buffer.
+     * @param size     the number of bytes to read.
+     * @return the number of bytes read, or -1 if the end of the resource has been reached.
+     * @throws IOException if the resource could not be read.
+     */
+    int readAt(long position, byte[] buffer, int offset, int size) throws IOException;
+
+    /**
+     * @return the size of the resource in bytes, or -1 if unknown.
+     * @throws IOException if the size could not be determined.
+     */
+    long getSize() throws IOException;
+}
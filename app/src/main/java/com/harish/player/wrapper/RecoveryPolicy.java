@@ -0,0 +1,107 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+import android.support.annotation.NonNull;
+
+import java.util.Random;
+
+/**
+ * Policy of the error recovery of a {@link Player}, set through {@link Player#setRecoveryPolicy(RecoveryPolicy)}.
+ * <p>
+ * Decides which errors are worth a retry, how many attempts a recovery may take and how long to
+ * wait before each of them. Delays grow exponentially from the base delay up to the maximum delay,
+ * and are jittered within the upper half of the range, so that players failing together, e.g. on a
+ * network drop, do not retry in lockstep. One policy can be shared by any number of players.
+ */
+public final class RecoveryPolicy {
+    private static final String TAG = RecoveryPolicy.class.getSimpleName();
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+    private final PlayerEventBus.Scheduler mScheduler;
+    private final Random mRandom;
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts maximum number of attempts of a recovery, before the error is passed on.
+     * @param baseDelayMs delay before the first attempt, in milliseconds.
+     * @param maxDelayMs  maximum delay before an attempt, in milliseconds.
+     * @param scheduler   the scheduler to run the attempts on, e.g. {@link PlayerEventBus#schedulerOf(android.os.Handler)}.
+     */
+    public RecoveryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, @NonNull PlayerEventBus.Scheduler scheduler) {
+        this(maxAttempts, baseDelayMs, maxDelayMs, scheduler, new Random());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts maximum number of attempts of a recovery, before the error is passed on.
+     * @param baseDelayMs delay before the first attempt, in milliseconds.
+     * @param maxDelayMs  maximum delay before an attempt, in milliseconds.
+     * @param scheduler   the scheduler to run the attempts on.
+     * @param random      the source of the jitter, seeded for reproducible delays.
+     */
+    public RecoveryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, @NonNull PlayerEventBus.Scheduler scheduler,
+                          @NonNull Random random) {
+        if (maxAttempts < 1 || baseDelayMs < 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Invalid policy " + maxAttempts + "/" + baseDelayMs + "/" + maxDelayMs);
+        }
+        this.mMaxAttempts = maxAttempts;
+        this.mBaseDelayMs = baseDelayMs;
+        this.mMaxDelayMs = maxDelayMs;
+        this.mScheduler = scheduler;
+        this.mRandom = random;
+    }
+
+    /**
+     * Checks whether an error is worth a retry. Server deaths, I/O errors and timeouts are, while
+     * malformed or unsupported media fail the same way again.
+     *
+     * @param what  the type of the error, as passed to onError().
+     * @param extra the extra code of the error.
+     * @return TRUE if the player should recover from the error.
+     */
+    public boolean isRecoverable(int what, int extra) {
+        if (extra == MediaPlayer.MEDIA_ERROR_MALFORMED || extra == MediaPlayer.MEDIA_ERROR_UNSUPPORTED) {
+            return false;
+        }
+        if (what == MediaPlayer.MEDIA_ERROR_SERVER_DIED) {
+            return true;
+        }
+        return what == MediaPlayer.MEDIA_ERROR_UNKNOWN
+                && (extra == MediaPlayer.MEDIA_ERROR_IO || extra == MediaPlayer.MEDIA_ERROR_TIMED_OUT);
+    }
+
+    /**
+     * @return maximum number of attempts of a recovery.
+     */
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Returns the delay before the given attempt, doubling per attempt and jittered within [delay / 2, delay].
+     *
+     * @param attempt the number of attempts made so far within the recovery, starting at 0.
+     * @return the delay in milliseconds.
+     */
+    public long getDelayMs(int attempt) {
+        long delay = mBaseDelayMs;
+        for (int i = 0; i < attempt && delay < mMaxDelayMs; i++) {
+            delay <<= 1;
+        }
+        delay = Math.min(delay, mMaxDelayMs);
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half));
+    }
+
+    /**
+     * @return the scheduler the attempts run on.
+     */
+    @NonNull
+    public PlayerEventBus.Scheduler getScheduler() {
+        return mScheduler;
+    }
+}
@@ -0,0 +1,449 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size bounded on-disk cache of fixed size blocks of media resources, in least recently used order.
+ * <p>
+ * Blocks live in slots of a single preallocated data file. Blocks are written with positional writes
+ * and read through a memory mapping of that file. The index of the slots is kept in memory and
+ * persisted on {@link #flush()} and {@link #close()}, so blocks survive process restarts. The index file
+ * is removed before the first change following a flush, so a crash leaves an empty cache rather than
+ * an index pointing at overwritten slots.
+ * <p>
+ * Resources are identified by a key, usually their URL, which is mapped to a compact id through
+ * {@link #keyId(String)}.
+ */
+public final class SegmentCache implements Closeable {
+    private static final String TAG = SegmentCache.class.getSimpleName();
+
+    private static final String DATA_FILE = "segments.dat";
+    private static final String INDEX_FILE = "segments.idx";
+    private static final int INDEX_MAGIC = 0x53454731;  //"SEG1".
+
+    //Blocks of a resource are addressed by (key id << BLOCK_BITS) | block index.
+    private static final int BLOCK_BITS = 40;
+
+    private final File mDirectory;
+    private final int mBlockSize;
+    private final int mSlotCount;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final MappedByteBuffer mMap;
+
+    //Occupied slots in access order (eldest first), and free slots.
+    private final LinkedHashMap<Long, Slot> mEntries = new LinkedHashMap<>(64, 0.75f, true);
+    private final ArrayDeque<Slot> mFree = new ArrayDeque<>();
+
+    //Keys, their ids and the resource sizes if known.
+    private final Map<String, Integer> mKeyIds = new HashMap<>();
+    private final List<String> mKeys = new ArrayList<>();
+    private final Map<Integer, Long> mSizes = new HashMap<>();
+
+    //Whether the persisted index is out of date (and has been removed).
+    private boolean mDirty;
+    private boolean mClosed;
+
+    //Counters.
+    private long mHits;
+    private long mMisses;
+    private long mBytesServed;
+    private long mBytesStored;
+    private long mEvictions;
+
+    /**
+     * Constructor, opening or creating the cache in the given directory.
+     *
+     * @param directory the directory of the cache, created if missing.
+     * @param blockSize the size of a block in bytes.
+     * @param maxBytes  the maximum size of the cache in bytes, at most {@link Integer#MAX_VALUE}.
+     * @throws IOException if the cache could not be opened.
+     */
+    public SegmentCache(@NonNull File directory, int blockSize, long maxBytes) throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive, was " + blockSize);
+        }
+        if (maxBytes < blockSize || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Size must be within [blockSize, 2GB), was " + maxBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.mDirectory = directory;
+        this.mBlockSize = blockSize;
+        this.mSlotCount = (int) (maxBytes / blockSize);
+
+        long length = (long) mSlotCount * blockSize;
+        mFile = new RandomAccessFile(new File(directory, DATA_FILE), "rw");
+        try {
+            if (mFile.length() != length) {
+                mFile.setLength(length);
+            }
+            mChannel = mFile.getChannel();
+            mMap = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+
+        Slot[] slots = new Slot[mSlotCount];
+        for (int i = 0; i < mSlotCount; i++) {
+            slots[i] = new Slot(i);
+        }
+        loadIndex(slots);
+        for (Slot slot : slots) {
+            if (slot.key == Slot.FREE) {
+                mFree.addLast(slot);
+            }
+        }
+    }
+
+    /**
+     * @return the size of a block in bytes.
+     */
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    /**
+     * Returns the compact id of a resource key, assigning one if needed.
+     *
+     * @param key the key of the resource, e.g. its URL.
+     * @return the id to address the blocks of the resource with.
+     */
+    public synchronized int keyId(@NonNull String key) {
+        Integer id = mKeyIds.get(key);
+        if (id == null) {
+            id = mKeys.size();
+            mKeys.add(key);
+            mKeyIds.put(key, id);
+            markDirty();
+        }
+        return id;
+    }
+
+    /**
+     * @return the size of the resource recorded through {@link #setSize(int, long)}, or -1 if unknown.
+     */
+    public synchronized long getSize(int keyId) {
+        Long size = mSizes.get(keyId);
+        return size == null ? -1 : size;
+    }
+
+    /**
+     * Records the size of a resource, so that it is known without reaching the upstream.
+     */
+    public synchronized void setSize(int keyId, long size) {
+        Long previous = mSizes.put(keyId, size);
+        if (previous == null || previous != size) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Reads from a cached block.
+     *
+     * @param keyId       the id of the resource.
+     * @param block       the index of the block within the resource.
+     * @param blockOffset the offset within the block to read from.
+     * @param buffer      the buffer to read into.
+     * @param offset      the offset within the buffer.
+     * @param size        the number of bytes to read.
+     * @return the number of bytes read, or -1 if the block is not cached or shorter than the offset.
+     */
+    public synchronized int read(int keyId, long block, int blockOffset, byte[] buffer, int offset, int size) {
+        checkOpen();
+        Slot slot = mEntries.get(address(keyId, block));
+        if (slot == null || blockOffset >= slot.length) {
+            mMisses++;
+            return -1;
+        }
+        int count = Math.min(size, slot.length - blockOffset);
+        mMap.position(slot.index * mBlockSize + blockOffset);
+        mMap.get(buffer, offset, count);
+        mHits++;
+        mBytesServed += count;
+        return count;
+    }
+
+    /**
+     * Stores a block, evicting the least recently used one if the cache is full.
+     *
+     * @param keyId  the id of the resource.
+     * @param block  the index of the block within the resource.
+     * @param buffer the content of the block.
+     * @param offset the offset of the block within the buffer.
+     * @param length the length of the block, less than the block size only for the last block.
+     * @throws IOException if the block could not be written.
+     */
+    public synchronized void write(int keyId, long block, byte[] buffer, int offset, int length) throws IOException {
+        checkOpen();
+        if (length <= 0 || length > mBlockSize) {
+            throw new IllegalArgumentException("Length must be within [1, blockSize], was " + length);
+        }
+        markDirty();
+        long address = address(keyId, block);
+        Slot slot = mEntries.remove(address);
+        if (slot == null) {
+            slot = mFree.pollFirst();
+        }
+        if (slot == null) {
+            Iterator<Slot> eldest = mEntries.values().iterator();
+            slot = eldest.next();
+            eldest.remove();
+            mEvictions++;
+        }
+        //Not addressable until the content has been written.
+        slot.key = Slot.FREE;
+        ByteBuffer source = ByteBuffer.wrap(buffer, offset, length);
+        long position = (long) slot.index * mBlockSize;
+        try {
+            while (source.hasRemaining()) {
+                position += mChannel.write(source, position);
+            }
+        } catch (IOException e) {
+            mFree.addFirst(slot);
+            throw e;
+        }
+        slot.key = address;
+        slot.length = length;
+        mEntries.put(address, slot);
+        mBytesStored += length;
+    }
+
+    /**
+     * Drops every cached block of the given resource.
+     *
+     * @param key the key of the resource.
+     */
+    public synchronized void remove(@NonNull String key) {
+        Integer id = mKeyIds.get(key);
+        if (id == null) {
+            return;
+        }
+        markDirty();
+        mSizes.remove(id);
+        Iterator<Slot> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Slot slot = iterator.next();
+            if ((int) (slot.key >>> BLOCK_BITS) == id) {
+                iterator.remove();
+                slot.key = Slot.FREE;
+                mFree.addLast(slot);
+            }
+        }
+    }
+
+    /**
+     * Persists the index, after forcing the blocks written so far to storage.
+     *
+     * @throws IOException if the index could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        if (!mDirty) {
+            return;
+        }
+        mChannel.force(false);
+        File temp = new File(mDirectory, INDEX_FILE + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(mBlockSize);
+            output.writeInt(mSlotCount);
+            output.writeInt(mKeys.size());
+            for (String key : mKeys) {
+                output.writeUTF(key);
+            }
+            output.writeInt(mSizes.size());
+            for (Map.Entry<Integer, Long> size : mSizes.entrySet()) {
+                output.writeInt(size.getKey());
+                output.writeLong(size.getValue());
+            }
+            output.writeInt(mEntries.size());
+            //Eldest first, so that loading restores the access order.
+            for (Slot slot : mEntries.values()) {
+                output.writeInt(slot.index);
+                output.writeLong(slot.key);
+                output.writeInt(slot.length);
+            }
+        } finally {
+            output.close();
+        }
+        if (!temp.renameTo(new File(mDirectory, INDEX_FILE))) {
+            throw new IOException("Could not persist the index of " + mDirectory);
+        }
+        mDirty = false;
+    }
+
+    /**
+     * Persists the index and closes the cache.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            mClosed = true;
+            mFile.close();
+        }
+    }
+
+    /**
+     * @return number of block reads served from the cache.
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return number of block reads not found in the cache.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return share of the block reads served from the cache, within [0, 1].
+     */
+    public synchronized float getHitRatio() {
+        long total = mHits + mMisses;
+        return total == 0 ? 0f : (float) mHits / total;
+    }
+
+    /**
+     * @return number of bytes served from the cache, i.e. not fetched again from the upstream.
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesServed;
+    }
+
+    /**
+     * @return number of bytes written to the cache.
+     */
+    public synchronized long getBytesStored() {
+        return mBytesStored;
+    }
+
+    /**
+     * @return number of blocks evicted to make room for newer ones.
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictions;
+    }
+
+    /**
+     * @return number of cached blocks.
+     */
+    public synchronized int getBlockCount() {
+        return mEntries.size();
+    }
+
+    private static long address(int keyId, long block) {
+        return ((long) keyId << BLOCK_BITS) | block;
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Cache has been closed!");
+        }
+    }
+
+    private void markDirty() {
+        if (!mDirty) {
+            mDirty = true;
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, INDEX_FILE).delete();
+        }
+    }
+
+    private void loadIndex(Slot[] slots) {
+        File file = new File(mDirectory, INDEX_FILE);
+        if (!file.exists()) {
+            //Nothing persisted, or the data file may have changed since.
+            mDirty = true;
+            return;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != INDEX_MAGIC || input.readInt() != mBlockSize
+                        || input.readInt() != mSlotCount) {
+                    throw new IOException("Index does not match the cache layout");
+                }
+                int keys = input.readInt();
+                for (int i = 0; i < keys; i++) {
+                    String key = input.readUTF();
+                    mKeyIds.put(key, i);
+                    mKeys.add(key);
+                }
+                int sizes = input.readInt();
+                for (int i = 0; i < sizes; i++) {
+                    mSizes.put(input.readInt(), input.readLong());
+                }
+                int entries = input.readInt();
+                for (int i = 0; i < entries; i++) {
+                    Slot slot = slots[input.readInt()];
+                    slot.key = input.readLong();
+                    slot.length = input.readInt();
+                    mEntries.put(slot.key, slot);
+                }
+            } finally {
+                input.close();
+            }
+            mDirty = false;
+        } catch (IOException | RuntimeException e) {
+            //Start over with an empty cache rather than serving wrong blocks.
+            mKeyIds.clear();
+            mKeys.clear();
+            mSizes.clear();
+            mEntries.clear();
+            for (Slot slot : slots) {
+                slot.key = Slot.FREE;
+            }
+            markDirty();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Slot of the data file along with the block it holds.
+     */
+    private static final class Slot {
+        static final long FREE = -1;
+
+        final int index;
+        long key = FREE;
+        int length;
+
+        Slot(int index) {
+            this.index = index;
+        }
+    }
+}
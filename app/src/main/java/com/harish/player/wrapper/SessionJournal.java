@@ -0,0 +1,558 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of the playback session of a {@link Player}, to resume playback after the
+ * process has been killed.
+ * <p>
+ * The journal is a memory-mapped file of a fixed size: a header, written in two alternating slots so
+ * that a torn write leaves the other one intact, followed by a ring of fixed-width records. A session
+ * starts whenever the attached player gets a new data source, whose location is kept in the header.
+ * Every state change, and a position checkpoint per flush interval while playing, is appended as a
+ * record. Once the ring is full it rotates, overwriting the oldest records.
+ * <p>
+ * Records and the header are only written on the journal thread: appending from any other thread, e.g. a
+ * state change published with the lock of the player held, only hands the record over, without any I/O
+ * nor reading the position from the engine. The journal thread writes records into the mapping, forces
+ * it to disk once per flush interval and stores the sequence reached in the header. Records carry their
+ * sequence number and a checksum, so that opening the journal finds the last complete record by scanning
+ * only the records appended since the last flush, skipping a record torn by a crash mid-write.
+ */
+public final class SessionJournal implements Closeable {
+    private static final String TAG = SessionJournal.class.getSimpleName();
+
+    //Record types.
+    public static final int RECORD_STATE = 1;          //State change.
+    public static final int RECORD_CHECKPOINT = 2;     //Position checkpoint while playing.
+
+    private static final int MAGIC = 0x534a524e;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //Header slot: magic, version, generation, session id, cursor, capacity, location length, location, checksum.
+    private static final int HEADER_SLOT_SIZE = 2048;
+    private static final int HEADER_SIZE = 2 * HEADER_SLOT_SIZE;
+    private static final int HEADER_FIXED_SIZE = 4 + 4 + 8 + 4 + 8 + 4 + 4;
+    private static final int MAX_LOCATION_BYTES = HEADER_SLOT_SIZE - HEADER_FIXED_SIZE - 4;
+
+    //Record: sequence, wall clock time, position, duration, session id, type, state, checksum.
+    public static final int RECORD_SIZE = 48;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private final long mFlushIntervalMs;
+
+    //Journal thread, the only one writing into the mapping once the journal is open.
+    private final ScheduledExecutorService mWriter;
+
+    //Sequence number of the next record, and the header fields, confined to the journal thread.
+    private long mCursor;
+    private long mHeaderGeneration;
+    private int mSessionId;
+    private byte[] mLocation = new byte[0];
+    private long mFlushedCursor;
+
+    private final Session mLastSession;
+
+    //Attached player, with the location its session was started for, confined to the journal thread.
+    private volatile Player mPlayer;
+    private String mSessionLocation;
+    private PlayerEventBus.Subscription mSubscription;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushNow();
+        }
+    };
+
+    //Counters.
+    private final AtomicLong mRecords = new AtomicLong();
+    private final AtomicLong mFlushes = new AtomicLong();
+    private volatile int mTornRecords;
+
+    /**
+     * Opens the journal at the given file, creating it if needed, and recovers the last session.
+     *
+     * @param file            the journal file.
+     * @param capacity        the number of records kept before rotating.
+     * @param flushIntervalMs the interval between two flushes and position checkpoints.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public SessionJournal(@NonNull File file, int capacity, long flushIntervalMs) throws IOException {
+        if (capacity < 2 || flushIntervalMs <= 0) {
+            throw new IllegalArgumentException("Invalid journal " + capacity + "/" + flushIntervalMs);
+        }
+        this.mCapacity = capacity;
+        this.mFlushIntervalMs = flushIntervalMs;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            if (mFile.length() != size) {
+                //New journal, or one of another capacity which cannot be read as a ring of this one.
+                mFile.setLength(0);
+                mFile.setLength(size);
+            }
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+        mLastSession = recover();
+        mWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mWriter.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkpoint();
+                flushNow();
+            }
+        }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the session found when the journal was opened, i.e. the last one before the process died.
+     *
+     * @return the last session, or null if the journal was empty.
+     */
+    @Nullable
+    public Session getLastSession() {
+        return mLastSession;
+    }
+
+    /**
+     * Starts journaling the given player, replacing the player attached before. A new session starts
+     * whenever the player gets a data source with a path or Uri.
+     *
+     * @param player the player to journal.
+     */
+    public synchronized void attach(@NonNull final Player player) {
+        detach();
+        mPlayer = player;
+        mSubscription = player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event == PlayerEventBus.EVENT_STATE_CHANGED) {
+                    onStateChanged(player, (int) arg2, System.currentTimeMillis());
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops journaling the attached player, if any.
+     */
+    public synchronized void detach() {
+        Player player = mPlayer;
+        if (player != null) {
+            player.getEventBus().unsubscribe(mSubscription);
+            mPlayer = null;
+            mSubscription = null;
+            //After the records of the player handed over already.
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mSessionLocation = null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Resumes the given session on an idle player: sets the data source, prepares it asynchronously,
+     * seeks to the saved position and starts playback if the session was playing. The player is
+     * attached to the journal.
+     *
+     * @param player  the idle player.
+     * @param session the session to resume, e.g. {@link #getLastSession()}.
+     * @throws IOException if the data source cannot be set.
+     */
+    public void resume(@NonNull final Player player, @NonNull final Session session) throws IOException {
+        final PlayerEventBus bus = player.getEventBus();
+        final PlayerEventBus.Subscription[] subscription = new PlayerEventBus.Subscription[1];
+        subscription[0] = bus.subscribe(new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event != PlayerEventBus.EVENT_PREPARED) {
+                    return;
+                }
+                bus.unsubscribe(subscription[0]);
+                if (session.positionMs > 0) {
+                    player.seekTo(session.positionMs);
+                }
+                if (session.wasPlaying()) {
+                    player.start();
+                }
+            }
+        });
+        attach(player);
+        try {
+            player.setDataSource(session.location);
+            player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            bus.unsubscribe(subscription[0]);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a record to the current session. Called on any thread, the record is written on the
+     * journal thread, in the order of the calls. Records appended after close() are dropped.
+     *
+     * @param type       {@link #RECORD_STATE} or {@link #RECORD_CHECKPOINT}.
+     * @param state      the state of the player.
+     * @param positionMs the position of the player.
+     * @param durationMs the duration of the media, -1 if unknown.
+     */
+    public void append(final int type, final int state, final long positionMs, final long durationMs) {
+        final long timeMs = System.currentTimeMillis();
+        post(new Runnable() {
+            @Override
+            public void run() {
+                write(timeMs, type, state, positionMs, durationMs);
+            }
+        });
+    }
+
+    /**
+     * Forces the records appended so far to disk on the journal thread, ahead of the next flush interval.
+     */
+    public void flush() {
+        post(mFlush);
+    }
+
+    //Forces the records written so far to disk and stores the sequence reached in the header. Runs on the
+    //journal thread once per flush interval, blocks on I/O.
+    private void flushNow() {
+        if (mCursor == mFlushedCursor) {
+            return;
+        }
+        mFlushedCursor = mCursor;
+        writeHeader();
+        mBuffer.force();
+        mFlushes.incrementAndGet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        detach();
+        //Records handed over already are still written, the periodic checkpoints are cancelled.
+        mWriter.shutdown();
+        try {
+            if (!mWriter.awaitTermination(mFlushIntervalMs, TimeUnit.MILLISECONDS)) {
+                mWriter.shutdownNow();
+                mWriter.awaitTermination(mFlushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //The journal thread has terminated, this thread is the only writer left.
+        flushNow();
+        mFile.close();
+    }
+
+    /**
+     * @return number of records appended since the journal was opened.
+     */
+    public long getRecordCount() {
+        return mRecords.get();
+    }
+
+    /**
+     * @return number of flushes to disk.
+     */
+    public long getFlushCount() {
+        return mFlushes.get();
+    }
+
+    /**
+     * @return number of torn records skipped when the journal was opened.
+     */
+    public int getTornRecordCount() {
+        return mTornRecords;
+    }
+
+    //Called with the lock of the player held, the position and duration are read on the journal thread.
+    private void onStateChanged(final Player player, final int state, final long timeMs) {
+        final String location = player.getDataSourceLocation();
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (location != null && !location.equals(mSessionLocation) && state != Player.STATE_IDLE) {
+                    mSessionLocation = location;
+                    startSession(location);
+                }
+                if (mSessionLocation == null) {
+                    return;
+                }
+                write(timeMs, RECORD_STATE, state, position(player, state), duration(player, state));
+            }
+        });
+    }
+
+    private void post(Runnable task) {
+        try {
+            mWriter.execute(task);
+        } catch (RejectedExecutionException e) {
+            //Closed.
+        }
+    }
+
+    //Writes a position checkpoint of the attached player while playing, on the journal thread.
+    private void checkpoint() {
+        Player player = mPlayer;
+        if (player == null || mSessionLocation == null) {
+            return;
+        }
+        int state = player.getCurrentState();
+        if (state == Player.STATE_STARTED) {
+            write(System.currentTimeMillis(), RECORD_CHECKPOINT, state, position(player, state),
+                    duration(player, state));
+        }
+    }
+
+    private void write(long timeMs, int type, int state, long positionMs, long durationMs) {
+        writeRecord(mCursor++, timeMs, positionMs, durationMs, mSessionId, type, state);
+        mRecords.incrementAndGet();
+    }
+
+    private void startSession(String location) {
+        byte[] bytes = location.getBytes(UTF_8);
+        mSessionId++;
+        //Too long to be kept, the session cannot be resumed.
+        mLocation = bytes.length <= MAX_LOCATION_BYTES ? bytes : new byte[0];
+        writeHeader();
+    }
+
+    private static long position(Player player, int state) {
+        if (state == Player.STATE_PREPARED || state == Player.STATE_STARTED || state == Player.STATE_PAUSED) {
+            try {
+                return player.getCurrentPosition();
+            } catch (IllegalStateException e) {
+                //Changed state meanwhile.
+            }
+        }
+        return -1;
+    }
+
+    private static long duration(Player player, int state) {
+        if (state == Player.STATE_PREPARED || state == Player.STATE_STARTED || state == Player.STATE_PAUSED) {
+            try {
+                return player.getDuration();
+            } catch (IllegalStateException e) {
+                //Changed state meanwhile.
+            }
+        }
+        return -1;
+    }
+
+    private void writeRecord(long sequence, long timeMs, long positionMs, long durationMs,
+                             int sessionId, int type, int state) {
+        int offset = recordOffset(sequence);
+        //Invalidated first, a crash in between leaves a record failing its checksum.
+        mBuffer.putInt(offset + 44, 0);
+        mBuffer.putLong(offset, sequence);
+        mBuffer.putLong(offset + 8, timeMs);
+        mBuffer.putLong(offset + 16, positionMs);
+        mBuffer.putLong(offset + 24, durationMs);
+        mBuffer.putInt(offset + 32, sessionId);
+        mBuffer.putInt(offset + 36, type);
+        mBuffer.putInt(offset + 40, state);
+        mBuffer.putInt(offset + 44, checksum(sequence, timeMs, positionMs, durationMs, sessionId, type, state));
+    }
+
+    private int recordOffset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % mCapacity) * RECORD_SIZE;
+    }
+
+    //TRUE if the record slot of the given sequence holds that record, complete.
+    private boolean isValidRecord(long sequence) {
+        int offset = recordOffset(sequence);
+        if (mBuffer.getLong(offset) != sequence) {
+            return false;
+        }
+        return mBuffer.getInt(offset + 44) == checksum(sequence, mBuffer.getLong(offset + 8),
+                mBuffer.getLong(offset + 16), mBuffer.getLong(offset + 24), mBuffer.getInt(offset + 32),
+                mBuffer.getInt(offset + 36), mBuffer.getInt(offset + 40));
+    }
+
+    private void writeHeader() {
+        mHeaderGeneration++;
+        int offset = (int) (mHeaderGeneration % 2) * HEADER_SLOT_SIZE;
+        int checksumOffset = offset + HEADER_FIXED_SIZE + mLocation.length;
+        //Invalidated first, a crash in between leaves the other slot as the valid one.
+        mBuffer.putInt(offset, 0);
+        mBuffer.putInt(offset + 4, VERSION);
+        mBuffer.putLong(offset + 8, mHeaderGeneration);
+        mBuffer.putInt(offset + 16, mSessionId);
+        mBuffer.putLong(offset + 20, mFlushedCursor);
+        mBuffer.putInt(offset + 28, mCapacity);
+        mBuffer.putInt(offset + 32, mLocation.length);
+        for (int i = 0; i < mLocation.length; i++) {
+            mBuffer.put(offset + HEADER_FIXED_SIZE + i, mLocation[i]);
+        }
+        mBuffer.putInt(checksumOffset, headerChecksum(offset, checksumOffset));
+        mBuffer.putInt(offset, MAGIC);
+    }
+
+    /**
+     * Reads the valid header slot of the latest generation and the records appended after its
+     * cursor, and returns the last session.
+     */
+    private Session recover() {
+        int slot = -1;
+        long generation = -1;
+        for (int i = 0; i < 2; i++) {
+            int offset = i * HEADER_SLOT_SIZE;
+            if (mBuffer.getInt(offset) != MAGIC || mBuffer.getInt(offset + 4) != VERSION
+                    || mBuffer.getInt(offset + 28) != mCapacity) {
+                continue;
+            }
+            int length = mBuffer.getInt(offset + 32);
+            if (length < 0 || length > MAX_LOCATION_BYTES) {
+                continue;
+            }
+            int checksumOffset = offset + HEADER_FIXED_SIZE + length;
+            if (mBuffer.getInt(checksumOffset) != headerChecksum(offset, checksumOffset)) {
+                continue;
+            }
+            long slotGeneration = mBuffer.getLong(offset + 8);
+            if (slotGeneration > generation) {
+                generation = slotGeneration;
+                slot = offset;
+            }
+        }
+        if (slot < 0) {
+            return null;
+        }
+        mHeaderGeneration = generation;
+        mSessionId = mBuffer.getInt(slot + 16);
+        long cursor = mBuffer.getLong(slot + 20);
+        mLocation = new byte[mBuffer.getInt(slot + 32)];
+        for (int i = 0; i < mLocation.length; i++) {
+            mLocation[i] = mBuffer.get(slot + HEADER_FIXED_SIZE + i);
+        }
+
+        //Records appended after the last flush, at most a flush interval of them.
+        long end = cursor;
+        while (end - cursor < mCapacity && isValidRecord(end)) {
+            end++;
+        }
+        //Torn records at or before the flushed cursor, claimed before the flush but not completed.
+        long last = end - 1;
+        while (last >= 0 && end - last <= mCapacity && !isValidRecord(last)) {
+            mTornRecords++;
+            last--;
+        }
+        if (!isValidRecord(end)) {
+            int offset = recordOffset(end);
+            if (mBuffer.getLong(offset) == end) {
+                mTornRecords++;
+            }
+        }
+        mCursor = end;
+        mFlushedCursor = end;
+        if (mLocation.length == 0) {
+            return null;
+        }
+        String location = new String(mLocation, UTF_8);
+        if (last < 0 || end - last > mCapacity) {
+            return new Session(mSessionId, location, Player.STATE_IDLE, 0, -1, 0);
+        }
+        int offset = recordOffset(last);
+        if (mBuffer.getInt(offset + 32) != mSessionId) {
+            //Session started, nothing recorded yet.
+            return new Session(mSessionId, location, Player.STATE_IDLE, 0, -1, 0);
+        }
+        long positionMs = mBuffer.getLong(offset + 16);
+        int state = mBuffer.getInt(offset + 40);
+        if (positionMs < 0) {
+            //E.g. stopped, the position of the last checkpoint is not worth a scan.
+            positionMs = 0;
+        }
+        return new Session(mSessionId, location, state, positionMs, mBuffer.getLong(offset + 24),
+                mBuffer.getLong(offset + 8));
+    }
+
+    private int headerChecksum(int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        //Magic excluded, it is written last.
+        for (int i = from + 4; i < to; i++) {
+            hash = (hash ^ (mBuffer.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int checksum(long sequence, long timeMs, long positionMs, long durationMs,
+                                int sessionId, int type, int state) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ sequence) * 0x100000001b3L;
+        hash = (hash ^ timeMs) * 0x100000001b3L;
+        hash = (hash ^ positionMs) * 0x100000001b3L;
+        hash = (hash ^ durationMs) * 0x100000001b3L;
+        hash = (hash ^ sessionId) * 0x100000001b3L;
+        hash = (hash ^ type) * 0x100000001b3L;
+        hash = (hash ^ state) * 0x100000001b3L;
+        int checksum = (int) (hash ^ (hash >>> 32));
+        //0 marks a record being written.
+        return checksum == 0 ? 1 : checksum;
+    }
+
+    /**
+     * Last recorded state of a playback session.
+     */
+    public static final class Session {
+        public final int id;
+        public final String location;
+        public final int state;
+        public final long positionMs;
+        public final long durationMs;
+        public final long timestampMs;
+
+        Session(int id, String location, int state, long positionMs, long durationMs, long timestampMs) {
+            this.id = id;
+            this.location = location;
+            this.state = state;
+            this.positionMs = positionMs;
+            this.durationMs = durationMs;
+            this.timestampMs = timestampMs;
+        }
+
+        /**
+         * @return TRUE if the player was playing when the session was last recorded.
+         */
+        public boolean wasPlaying() {
+            return state == Player.STATE_STARTED;
+        }
+
+        /**
+         * @return TRUE if playback had reached the end, there is nothing to resume.
+         */
+        public boolean isCompleted() {
+            return state == Player.STATE_COMPLETED;
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects players whose engine hangs: a preparation or a seek which never completes, or playback
+ * stuck in {@link Player#STATE_STARTED} with a frozen position. {@link Player} only moves on engine
+ * callbacks, so without a watchdog such a player waits forever.
+ * <p>
+ * Deadlines are armed from the events of each watched player: on entering {@link Player#STATE_PREPARING},
+ * on every seek issued to the engine and, while started, on progress. A progress deadline checks the
+ * position once when it expires and is armed again if the position moved, so a playing player costs one
+ * position read per timeout, and a frozen position is detected within one to two timeouts. All deadlines
+ * of all players live in one hashed timer wheel, driven by a single task on the scheduler which only runs
+ * while a deadline is armed. Arming and cancelling a deadline is O(1) and does not allocate.
+ * <p>
+ * An expired deadline is reported to the {@link StallListener} with a {@link Stall} describing it, and
+ * published as {@link PlayerEventBus#EVENT_STALL} on the bus of the player. Optionally, the player is
+ * then reset and prepared again, resuming at its position, up to a number of restarts until it plays
+ * again.
+ * <p>
+ * Between MEDIA_INFO_BUFFERING_START and _END the engine waits for the network rather than hangs, the
+ * progress deadline then uses the longer buffering timeout, and a frozen position is reported without
+ * restarting the player.
+ */
+public final class StallWatchdog {
+    private static final String TAG = StallWatchdog.class.getSimpleName();
+
+    //Stall types.
+    public static final int STALL_PREPARE = 1;      //No onPrepared() in time.
+    public static final int STALL_SEEK = 2;         //No onSeekComplete() in time.
+    public static final int STALL_PROGRESS = 3;     //Started, but the position did not move in time.
+
+    //Default timeouts.
+    public static final long DEFAULT_PREPARE_TIMEOUT_MS = 15_000;
+    public static final long DEFAULT_SEEK_TIMEOUT_MS = 10_000;
+    public static final long DEFAULT_PROGRESS_TIMEOUT_MS = 8_000;
+    public static final long DEFAULT_BUFFERING_TIMEOUT_MS = 30_000;
+    public static final long DEFAULT_TICK_MS = 100;
+
+    //Buckets of the wheel, a power of two. Deadlines further away than a turn wait for later turns.
+    private static final int WHEEL_SIZE = 512;
+
+    private final PlayerEventBus.Scheduler mScheduler;
+    private final PlaybackMetrics.Clock mClock;
+    private final long mPrepareTimeoutMs;
+    private final long mSeekTimeoutMs;
+    private final long mProgressTimeoutMs;
+    private final long mBufferingTimeoutMs;
+    private final long mTickMs;
+
+    //Watched players, guarded by this.
+    private final Map<Player, Entry> mEntries = new IdentityHashMap<>();
+
+    //Sentinel heads of the circular timer lists of the buckets, guarded by this.
+    private final Timer[] mWheel = new Timer[WHEEL_SIZE];
+    private long mCurrentTick;
+    private int mArmed;
+    private boolean mTickScheduled;
+
+    private volatile StallListener mListener;
+    private volatile int mMaxRestarts;
+
+    //Counters, guarded by this.
+    private long mTicks;
+    private long mStalls;
+    private long mRestarts;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    /**
+     * Constructor, with the default timeouts.
+     *
+     * @param scheduler the scheduler to run the wheel on, e.g. {@link PlayerEventBus#schedulerOf(android.os.Handler)}.
+     */
+    public StallWatchdog(@NonNull PlayerEventBus.Scheduler scheduler) {
+        this(scheduler, PlaybackMetrics.Clock.SYSTEM, DEFAULT_PREPARE_TIMEOUT_MS, DEFAULT_SEEK_TIMEOUT_MS,
+                DEFAULT_PROGRESS_TIMEOUT_MS, DEFAULT_BUFFERING_TIMEOUT_MS, DEFAULT_TICK_MS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param scheduler         the scheduler to run the wheel on.
+     * @param clock             the monotonic clock the deadlines are timed with.
+     * @param prepareTimeoutMs  maximum time in {@link Player#STATE_PREPARING}.
+     * @param seekTimeoutMs     maximum time from issuing a seek until it completes.
+     * @param progressTimeoutMs  maximum time in {@link Player#STATE_STARTED} without the position moving.
+     * @param bufferingTimeoutMs the same while buffering, usually longer.
+     * @param tickMs             the resolution of the deadlines.
+     */
+    public StallWatchdog(@NonNull PlayerEventBus.Scheduler scheduler, @NonNull PlaybackMetrics.Clock clock,
+                         long prepareTimeoutMs, long seekTimeoutMs, long progressTimeoutMs,
+                         long bufferingTimeoutMs, long tickMs) {
+        if (prepareTimeoutMs <= 0 || seekTimeoutMs <= 0 || progressTimeoutMs <= 0 || bufferingTimeoutMs <= 0
+                || tickMs <= 0) {
+            throw new IllegalArgumentException("Invalid timeouts " + prepareTimeoutMs + "/" + seekTimeoutMs
+                    + "/" + progressTimeoutMs + "/" + bufferingTimeoutMs + "/" + tickMs);
+        }
+        this.mScheduler = scheduler;
+        this.mClock = clock;
+        this.mPrepareTimeoutMs = prepareTimeoutMs;
+        this.mSeekTimeoutMs = seekTimeoutMs;
+        this.mProgressTimeoutMs = progressTimeoutMs;
+        this.mBufferingTimeoutMs = bufferingTimeoutMs;
+        this.mTickMs = tickMs;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            Timer head = new Timer(null, 0);
+            head.previous = head;
+            head.next = head;
+            mWheel[i] = head;
+        }
+        mCurrentTick = nowTick();
+    }
+
+    /**
+     * Register a callback to be invoked when a player stalls.
+     *
+     * @param listener the callback that will be run
+     */
+    public void setStallListener(@Nullable StallListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Sets how many times in a row a stalled player is reset and prepared again, resuming at its position.
+     * The count starts over once the player makes progress. Players stalled while buffering are not restarted.
+     *
+     * @param maxRestarts the maximum number of restarts, 0 to only report stalls.
+     */
+    public void setMaxRestarts(int maxRestarts) {
+        if (maxRestarts < 0) {
+            throw new IllegalArgumentException("Invalid restarts " + maxRestarts);
+        }
+        this.mMaxRestarts = maxRestarts;
+    }
+
+    /**
+     * Starts watching the given player, until it is released or removed.
+     *
+     * @param player the player to watch.
+     */
+    public void add(@NonNull Player player) {
+        Entry entry;
+        synchronized (this) {
+            if (mEntries.containsKey(player)) {
+                return;
+            }
+            entry = new Entry(player);
+            mEntries.put(player, entry);
+        }
+        //Outside the lock, events are published under the lock of the player.
+        entry.subscription = player.getEventBus().subscribe(entry);
+        int state = player.getCurrentState();
+        synchronized (this) {
+            if (mEntries.get(player) == entry) {
+                onStateChanged(entry, state);
+            }
+        }
+    }
+
+    /**
+     * Stops watching the given player.
+     *
+     * @param player the player to stop watching.
+     */
+    public void remove(@NonNull Player player) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.remove(player);
+            if (entry == null) {
+                return;
+            }
+            cancelAll(entry);
+        }
+        if (entry.subscription != null) {
+            player.getEventBus().unsubscribe(entry.subscription);
+        }
+    }
+
+    /**
+     * @return number of watched players.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return number of armed deadlines.
+     */
+    public synchronized int getArmedCount() {
+        return mArmed;
+    }
+
+    /**
+     * @return number of ticks of the wheel.
+     */
+    public synchronized long getTickCount() {
+        return mTicks;
+    }
+
+    /**
+     * @return number of stalls detected.
+     */
+    public synchronized long getStallCount() {
+        return mStalls;
+    }
+
+    /**
+     * @return number of restarts of stalled players.
+     */
+    public synchronized long getRestartCount() {
+        return mRestarts;
+    }
+
+    private synchronized void onEntryEvent(Entry entry, int event, long arg1) {
+        if (mEntries.get(entry.player) != entry) {
+            return;
+        }
+        switch (event) {
+            case PlayerEventBus.EVENT_STATE_CHANGED:
+                //arg2 is the new state, taken from the player below to skip stale events.
+                onStateChanged(entry, entry.player.getCurrentState());
+                break;
+            case PlayerEventBus.EVENT_SEEK_STARTED:
+                arm(entry.seek, mSeekTimeoutMs);
+                break;
+            case PlayerEventBus.EVENT_SEEK_COMPLETE:
+                cancel(entry.seek);
+                break;
+            case PlayerEventBus.EVENT_INFO:
+                if (arg1 == MediaPlayer.MEDIA_INFO_BUFFERING_START) {
+                    setBuffering(entry, true);
+                } else if (arg1 == MediaPlayer.MEDIA_INFO_BUFFERING_END) {
+                    setBuffering(entry, false);
+                }
+                break;
+            case PlayerEventBus.EVENT_BUFFERING_UPDATE:
+                entry.bufferedPercent = (int) arg1;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onStateChanged(Entry entry, int state) {
+        if (state == Player.STATE_ENDED) {
+            mEntries.remove(entry.player);
+            cancelAll(entry);
+            //Unsubscribing is pointless, the bus of a released player stays silent.
+            return;
+        }
+        if (state == Player.STATE_PREPARING) {
+            if (!entry.prepare.isArmed()) {
+                arm(entry.prepare, mPrepareTimeoutMs);
+            }
+        } else {
+            cancel(entry.prepare);
+        }
+        if (state == Player.STATE_STARTED) {
+            if (!entry.progress.isArmed()) {
+                entry.lastPositionMs = -1;
+                arm(entry.progress, progressTimeoutMs(entry));
+            }
+        } else {
+            cancel(entry.progress);
+        }
+        if (!PlayerStateMachine.canSeek(state)) {
+            cancel(entry.seek);
+            //Buffering of the previous data source, no _END follows a reset or an error.
+            entry.buffering = false;
+        }
+    }
+
+    private void setBuffering(Entry entry, boolean buffering) {
+        if (entry.buffering == buffering) {
+            return;
+        }
+        entry.buffering = buffering;
+        if (entry.progress.isArmed()) {
+            //Takes a new baseline under the timeout which applies from now on.
+            entry.lastPositionMs = -1;
+            arm(entry.progress, progressTimeoutMs(entry));
+        }
+    }
+
+    private long progressTimeoutMs(Entry entry) {
+        return entry.buffering ? mBufferingTimeoutMs : mProgressTimeoutMs;
+    }
+
+    private void tick() {
+        List<Timer> expired = null;
+        synchronized (this) {
+            mTickScheduled = false;
+            mTicks++;
+            long now = nowTick();
+            //A late tick may have skipped whole turns, visiting every bucket once is then enough.
+            long from = Math.max(mCurrentTick + 1, now - WHEEL_SIZE + 1);
+            for (long tick = from; tick <= now; tick++) {
+                Timer head = mWheel[(int) (tick & (WHEEL_SIZE - 1))];
+                Timer timer = head.next;
+                while (timer != head) {
+                    Timer next = timer.next;
+                    if (timer.deadlineTick <= now) {
+                        unlink(timer);
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(timer);
+                    }
+                    timer = next;
+                }
+            }
+            mCurrentTick = now;
+            scheduleTickLocked();
+        }
+        //Outside the lock, the player is asked and may be restarted.
+        if (expired != null) {
+            for (Timer timer : expired) {
+                onExpired(timer);
+            }
+        }
+    }
+
+    private void onExpired(Timer timer) {
+        Entry entry = timer.entry;
+        Player player = entry.player;
+        int state = player.getCurrentState();
+        long stalledMs;
+        long positionMs = -1;
+        boolean buffering;
+        synchronized (this) {
+            if (mEntries.get(player) != entry || timer.isArmed()) {
+                //Removed, or armed again meanwhile.
+                return;
+            }
+            stalledMs = (mClock.nanoTime() - timer.armedNanos) / 1_000_000;
+            buffering = entry.buffering;
+        }
+        if (timer == entry.progress) {
+            if (state != Player.STATE_STARTED) {
+                return;
+            }
+            try {
+                positionMs = player.getCurrentPosition();
+            } catch (IllegalStateException e) {
+                return;
+            }
+            synchronized (this) {
+                if (positionMs != entry.lastPositionMs) {
+                    //Moving, check again after another timeout. The first check only takes the baseline.
+                    if (entry.lastPositionMs >= 0) {
+                        entry.restarts = 0;
+                    }
+                    entry.lastPositionMs = positionMs;
+                    if (!timer.isArmed() && mEntries.get(player) == entry) {
+                        arm(timer, progressTimeoutMs(entry));
+                    }
+                    return;
+                }
+                buffering = entry.buffering;
+            }
+        } else if (timer == entry.seek && !player.isSeekInFlight()) {
+            //The engine refused the seek, nothing is pending.
+            return;
+        } else if (timer == entry.prepare && state != Player.STATE_PREPARING) {
+            return;
+        }
+        //A restart would only drop what has been buffered so far.
+        boolean restartable = !(timer == entry.progress && buffering);
+        report(entry, timer.type, state, stalledMs, positionMs, restartable);
+    }
+
+    private void report(Entry entry, int type, int state, long stalledMs, long positionMs, boolean restartable) {
+        Player player = entry.player;
+        boolean restart;
+        Stall stall;
+        synchronized (this) {
+            mStalls++;
+            restart = restartable && entry.restarts < mMaxRestarts;
+            if (restart) {
+                entry.restarts++;
+                mRestarts++;
+            }
+            stall = new Stall(type, state, stalledMs, positionMs, entry.buffering, entry.bufferedPercent,
+                    entry.restarts, restart, player.getDataSourceLocation());
+        }
+        player.getEventBus().publish(PlayerEventBus.EVENT_STALL, type, stalledMs);
+        StallListener listener = mListener;
+        if (listener != null) {
+            listener.onStall(player, stall);
+        }
+        if (restart) {
+            try {
+                player.restart();
+            } catch (RuntimeException e) {
+                //Data source could not be set again, the player is left as it is.
+            }
+        }
+    }
+
+    private long nowTick() {
+        return mClock.nanoTime() / 1_000_000 / mTickMs;
+    }
+
+    private void arm(Timer timer, long timeoutMs) {
+        if (timer.isArmed()) {
+            unlink(timer);
+        }
+        timer.armedNanos = mClock.nanoTime();
+        //Rounded up, a deadline never expires early.
+        timer.deadlineTick = Math.max(nowTick(), mCurrentTick) + (timeoutMs + mTickMs - 1) / mTickMs;
+        Timer head = mWheel[(int) (timer.deadlineTick & (WHEEL_SIZE - 1))];
+        timer.previous = head.previous;
+        timer.next = head;
+        head.previous.next = timer;
+        head.previous = timer;
+        mArmed++;
+        scheduleTickLocked();
+    }
+
+    private void cancel(Timer timer) {
+        if (timer.isArmed()) {
+            unlink(timer);
+        }
+    }
+
+    private void cancelAll(Entry entry) {
+        cancel(entry.prepare);
+        cancel(entry.seek);
+        cancel(entry.progress);
+    }
+
+    private void unlink(Timer timer) {
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.previous = null;
+        timer.next = null;
+        mArmed--;
+    }
+
+    private void scheduleTickLocked() {
+        if (mArmed > 0 && !mTickScheduled) {
+            mTickScheduled = true;
+            mScheduler.schedule(mTick, mTickMs);
+        }
+    }
+
+    /**
+     * Interface definition of a callback to be invoked when a player stalls.
+     */
+    public interface StallListener {
+        void onStall(Player player, Stall stall);
+    }
+
+    /**
+     * Diagnostics of a stall.
+     */
+    public static final class Stall {
+        public final int type;              //One of the STALL_* types.
+        public final int state;             //State of the player when detected.
+        public final long stalledMs;        //Time since the deadline was armed.
+        public final long positionMs;       //Frozen position of a progress stall, -1 otherwise.
+        public final boolean buffering;     //Between MEDIA_INFO_BUFFERING_START and _END.
+        public final int bufferedPercent;   //Last buffering update, 0 if none.
+        public final int restarts;          //Restarts in a row, including this one if restarting.
+        public final boolean restarting;    //Whether the player is being reset and prepared again.
+        @Nullable
+        public final String location;       //Data source of the player, if addressable.
+
+        Stall(int type, int state, long stalledMs, long positionMs, boolean buffering, int bufferedPercent,
+              int restarts, boolean restarting, @Nullable String location) {
+            this.type = type;
+            this.state = state;
+            this.stalledMs = stalledMs;
+            this.positionMs = positionMs;
+            this.buffering = buffering;
+            this.bufferedPercent = bufferedPercent;
+            this.restarts = restarts;
+            this.restarting = restarting;
+            this.location = location;
+        }
+
+        @Override
+        public String toString() {
+            return "type=" + type + " state=" + state + " stalledMs=" + stalledMs + " positionMs=" + positionMs
+                    + " buffering=" + buffering + " bufferedPercent=" + bufferedPercent + " restarts=" + restarts
+                    + " restarting=" + restarting + " location=" + location;
+        }
+    }
+
+    /**
+     * Deadline of a player, linked into a bucket of the wheel while armed.
+     */
+    private static final class Timer {
+        final Entry entry;
+        final int type;
+        Timer previous;
+        Timer next;
+        long deadlineTick;
+        long armedNanos;
+
+        Timer(Entry entry, int type) {
+            this.entry = entry;
+            this.type = type;
+        }
+
+        boolean isArmed() {
+            return next != null;
+        }
+    }
+
+    /**
+     * Watched player, along with its deadlines.
+     */
+    private final class Entry implements PlayerEventBus.PlayerEventListener {
+        final Player player;
+        final Timer prepare = new Timer(this, STALL_PREPARE);
+        final Timer seek = new Timer(this, STALL_SEEK);
+        final Timer progress = new Timer(this, STALL_PROGRESS);
+        PlayerEventBus.Subscription subscription;
+        long lastPositionMs = -1;
+        boolean buffering;
+        int bufferedPercent;
+        int restarts;
+
+        Entry(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public void onPlayerEvent(int event, long arg1, long arg2) {
+            onEntryEvent(this, event, arg1);
+        }
+    }
+}
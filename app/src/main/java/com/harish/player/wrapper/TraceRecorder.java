@@ -0,0 +1,303 @@
+package com.harish.player.wrapper;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records every control call and engine callback passing through the players it is set on, see
+ * {@link Player#setTraceRecorder(TraceRecorder)}, to reproduce races of the state handling offline
+ * with {@link TraceReplayer}.
+ * <p>
+ * Each record holds the nanosecond timestamp, the id of the calling thread, the operation with its
+ * arguments, the player and the state the player was in when the call or callback arrived. Records
+ * are kept in a ring of fixed capacity, overwriting the oldest ones. Recording is lock-free and does
+ * not allocate: a record slot is claimed by incrementing a cursor, and published by its sequence
+ * number once written. Reading checks the sequence number before and after the fields, so records
+ * overwritten while being read are skipped instead of torn.
+ * <p>
+ * {@link #dump(OutputStream)} writes the records in a compact binary format: varint encoded, the
+ * timestamps relative to the previous record. {@link #read(InputStream)} reads them back as a {@link Trace}.
+ */
+public final class TraceRecorder {
+    private static final String TAG = TraceRecorder.class.getSimpleName();
+
+    //Control calls, arguments as noted.
+    public static final int OP_SET_DATA_SOURCE = 1;
+    public static final int OP_PREPARE = 2;
+    public static final int OP_PREPARE_ASYNC = 3;
+    public static final int OP_START = 4;
+    public static final int OP_PAUSE = 5;
+    public static final int OP_STOP = 6;
+    public static final int OP_SEEK = 7;                //arg1: position in milliseconds, arg2: mode.
+    public static final int OP_SET_NEXT_PLAYER = 8;     //arg1: id of the next player, 0 to clear it.
+    public static final int OP_RESET = 9;
+    public static final int OP_RELEASE = 10;
+
+    //Engine callbacks, arguments as passed.
+    public static final int CB_PREPARED = 16;
+    public static final int CB_COMPLETION = 17;
+    public static final int CB_ERROR = 18;              //arg1: what, arg2: extra.
+    public static final int CB_INFO = 19;               //arg1: what, arg2: extra.
+    public static final int CB_BUFFERING_UPDATE = 20;   //arg1: percent.
+    public static final int CB_SEEK_COMPLETE = 21;
+
+    //Set on callbacks of an engine the player no longer uses, e.g. racing reset().
+    public static final int FLAG_STALE = 0x80;
+
+    private static final int MAGIC = 0x50545243;
+    private static final int VERSION = 1;
+
+    //Longs per record: sequence, timestamp, thread id, packed op/state/player, arg1, arg2.
+    private static final int STRIDE = 6;
+
+    //Sequence of a slot being written.
+    private static final long WRITING = -1;
+
+    private final int mCapacity;
+    private final AtomicLongArray mRecords;
+    private final AtomicLong mCursor = new AtomicLong();
+    private final AtomicInteger mPlayerIds = new AtomicInteger();
+    private final PlaybackMetrics.Clock mClock;
+
+    /**
+     * Constructor, timestamping with {@link System#nanoTime()}.
+     *
+     * @param capacity the number of records kept.
+     */
+    public TraceRecorder(int capacity) {
+        this(capacity, PlaybackMetrics.Clock.SYSTEM);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the number of records kept.
+     * @param clock    the monotonic clock to timestamp with.
+     */
+    public TraceRecorder(int capacity, @NonNull PlaybackMetrics.Clock clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.mCapacity = capacity;
+        this.mRecords = new AtomicLongArray(capacity * STRIDE);
+        for (int i = 0; i < capacity; i++) {
+            mRecords.set(i * STRIDE, WRITING);
+        }
+        this.mClock = clock;
+    }
+
+    /**
+     * Assigns an id to a player recorded by this recorder, ids start at 1.
+     *
+     * @return the id.
+     */
+    int register() {
+        return mPlayerIds.incrementAndGet();
+    }
+
+    /**
+     * Appends a record, overwriting the oldest one if the ring is full.
+     *
+     * @param player the id of the player.
+     * @param op     one of the OP_* or CB_* values, possibly with {@link #FLAG_STALE}.
+     * @param state  the state of the player on arrival.
+     * @param arg1   the first argument.
+     * @param arg2   the second argument.
+     */
+    public void record(int player, int op, int state, long arg1, long arg2) {
+        long sequence = mCursor.getAndIncrement();
+        int base = (int) (sequence % mCapacity) * STRIDE;
+        //Invalidated first, ordered before the fields, readers skip the slot until it is published again.
+        mRecords.lazySet(base, WRITING);
+        mRecords.lazySet(base + 1, mClock.nanoTime());
+        mRecords.lazySet(base + 2, Thread.currentThread().getId());
+        mRecords.lazySet(base + 3, pack(player, op, state));
+        mRecords.lazySet(base + 4, arg1);
+        mRecords.lazySet(base + 5, arg2);
+        mRecords.lazySet(base, sequence);
+    }
+
+    /**
+     * @return number of records appended so far, including the ones overwritten.
+     */
+    public long getRecordCount() {
+        return mCursor.get();
+    }
+
+    /**
+     * @return the number of records kept.
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Copies the records kept into a trace, oldest first. Records still being written or overwritten
+     * meanwhile are left out.
+     *
+     * @return the trace.
+     */
+    @NonNull
+    public Trace snapshot() {
+        long end = mCursor.get();
+        long start = Math.max(0, end - mCapacity);
+        Trace trace = new Trace((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            int base = (int) (sequence % mCapacity) * STRIDE;
+            if (mRecords.get(base) != sequence) {
+                continue;
+            }
+            long timeNanos = mRecords.get(base + 1);
+            long threadId = mRecords.get(base + 2);
+            long packed = mRecords.get(base + 3);
+            long arg1 = mRecords.get(base + 4);
+            long arg2 = mRecords.get(base + 5);
+            if (mRecords.get(base) != sequence) {
+                //Overwritten while being read.
+                continue;
+            }
+            trace.add(timeNanos, threadId, (int) (packed >>> 32), (int) (packed >>> 16) & 0xffff,
+                    (short) packed, arg1, arg2);
+        }
+        return trace;
+    }
+
+    /**
+     * Writes the records kept to the given stream, which is left open.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if writing fails.
+     */
+    public void dump(@NonNull OutputStream out) throws IOException {
+        snapshot().write(out);
+    }
+
+    /**
+     * Reads a trace written by {@link #dump(OutputStream)}.
+     *
+     * @param in the stream to read from, which is left open.
+     * @return the trace.
+     * @throws IOException if reading fails or the stream does not hold a trace.
+     */
+    @NonNull
+    public static Trace read(@NonNull InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a trace");
+        }
+        int count = data.readInt();
+        Trace trace = new Trace(count);
+        long timeNanos = 0;
+        for (int i = 0; i < count; i++) {
+            timeNanos += readVarLong(data);
+            long threadId = readVarLong(data);
+            int player = (int) readVarLong(data);
+            int op = data.readUnsignedByte();
+            int state = (int) readVarLong(data);
+            trace.add(timeNanos, threadId, player, op, state, readVarLong(data), readVarLong(data));
+        }
+        return trace;
+    }
+
+    private static long pack(int player, int op, int state) {
+        return ((long) player << 32) | ((long) (op & 0xffff) << 16) | (state & 0xffff);
+    }
+
+    //Zigzag varint, small magnitudes of either sign take a single byte.
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7fL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7f) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new EOFException("Malformed varint");
+    }
+
+    /**
+     * Records of a trace, oldest first, as parallel arrays.
+     */
+    public static final class Trace {
+        public final long[] timeNanos;
+        public final long[] threadIds;
+        public final int[] players;
+        public final int[] ops;
+        public final int[] states;
+        public final long[] args1;
+        public final long[] args2;
+        private int mSize;
+
+        Trace(int capacity) {
+            timeNanos = new long[capacity];
+            threadIds = new long[capacity];
+            players = new int[capacity];
+            ops = new int[capacity];
+            states = new int[capacity];
+            args1 = new long[capacity];
+            args2 = new long[capacity];
+        }
+
+        /**
+         * @return number of records.
+         */
+        public int size() {
+            return mSize;
+        }
+
+        void add(long time, long threadId, int player, int op, int state, long arg1, long arg2) {
+            int i = mSize++;
+            timeNanos[i] = time;
+            threadIds[i] = threadId;
+            players[i] = player;
+            ops[i] = op;
+            states[i] = state;
+            args1[i] = arg1;
+            args2[i] = arg2;
+        }
+
+        /**
+         * Writes this trace in the binary format of {@link TraceRecorder#dump(OutputStream)}.
+         *
+         * @param out the stream to write to, which is left open.
+         * @throws IOException if writing fails.
+         */
+        public void write(@NonNull OutputStream out) throws IOException {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(mSize);
+            long previous = 0;
+            for (int i = 0; i < mSize; i++) {
+                writeVarLong(data, timeNanos[i] - previous);
+                previous = timeNanos[i];
+                writeVarLong(data, threadIds[i]);
+                writeVarLong(data, players[i]);
+                data.writeByte(ops[i]);
+                writeVarLong(data, states[i]);
+                writeVarLong(data, args1[i]);
+                writeVarLong(data, args2[i]);
+            }
+            data.flush();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.harish.player.wrapper;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaDataSource;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drives the state handling of {@link Player} from a trace recorded by {@link TraceRecorder}, on the JVM
+ * and at full speed, to reproduce races offline and to measure the state machine on real traffic.
+ * <p>
+ * Every player of the trace is replayed by a player on an engine which does nothing by itself: control
+ * calls are made in the recorded order, and engine callbacks are raised exactly where they were recorded,
+ * callbacks of a stale engine from an engine the player no longer uses. Before each record, the state of
+ * the replayed player is compared with the state recorded on arrival, the first record where both differ
+ * is where the replay diverges from production. Replaying prefixes of increasing length bisects a trace.
+ * <p>
+ * Records are replayed one after the other, hence nested ones are not: restores of demoted players and
+ * recoveries from errors make nested calls, and engines calling back from within a call, such as
+ * {@code FakePlaybackEngine} without delays, raise nested callbacks. A trace which wrapped around the
+ * ring starts in the middle of a session, and diverges until its players are reset.
+ */
+public final class TraceReplayer {
+    private static final String TAG = TraceReplayer.class.getSimpleName();
+
+    //Engine of no player, the source of stale callbacks.
+    private static final PlaybackEngine STALE = new ReplayEngine();
+
+    private final TraceRecorder.Trace mTrace;
+
+    /**
+     * Constructor.
+     *
+     * @param trace the trace to replay, e.g. from {@link TraceRecorder#read(java.io.InputStream)}.
+     */
+    public TraceReplayer(@NonNull TraceRecorder.Trace trace) {
+        this.mTrace = trace;
+    }
+
+    /**
+     * Replays the whole trace on fresh players.
+     *
+     * @return the result of the replay.
+     */
+    @NonNull
+    public Result replay() {
+        return replay(mTrace.size());
+    }
+
+    /**
+     * Replays the first records of the trace on fresh players.
+     *
+     * @param count the number of records to replay.
+     * @return the result of the replay.
+     */
+    @NonNull
+    public Result replay(int count) {
+        count = Math.min(count, mTrace.size());
+        Map<Integer, Replayed> players = new HashMap<>();
+        Result result = new Result();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Replayed replayed = replayedOf(players, mTrace.players[i]);
+            if (replayed.player.getCurrentState() != mTrace.states[i]) {
+                result.divergences++;
+                if (result.firstDivergence < 0) {
+                    result.firstDivergence = i;
+                }
+            }
+            try {
+                apply(players, replayed, i);
+            } catch (IllegalStateException | IllegalArgumentException | IOException e) {
+                result.rejected++;
+            }
+            result.replayed++;
+        }
+        result.elapsedNanos = System.nanoTime() - startNanos;
+        for (Replayed replayed : players.values()) {
+            result.players++;
+            if (replayed.player.getCurrentState() != Player.STATE_ENDED) {
+                replayed.player.release();
+            }
+        }
+        return result;
+    }
+
+    private static Replayed replayedOf(Map<Integer, Replayed> players, int id) {
+        Replayed replayed = players.get(id);
+        if (replayed == null) {
+            replayed = new Replayed();
+            players.put(id, replayed);
+        }
+        return replayed;
+    }
+
+    private void apply(Map<Integer, Replayed> players, Replayed replayed, int i) throws IOException {
+        Player player = replayed.player;
+        int op = mTrace.ops[i];
+        long arg1 = mTrace.args1[i];
+        long arg2 = mTrace.args2[i];
+        PlaybackEngine engine = (op & TraceRecorder.FLAG_STALE) != 0 ? STALE : replayed.engine;
+        switch (op & ~TraceRecorder.FLAG_STALE) {
+            case TraceRecorder.OP_SET_DATA_SOURCE:
+                player.setDataSource(TAG);
+                break;
+            case TraceRecorder.OP_PREPARE:
+                player.prepare();
+                break;
+            case TraceRecorder.OP_PREPARE_ASYNC:
+                player.prepareAsync();
+                break;
+            case TraceRecorder.OP_START:
+                player.start();
+                break;
+            case TraceRecorder.OP_PAUSE:
+                player.pause();
+                break;
+            case TraceRecorder.OP_STOP:
+                player.stop();
+                break;
+            case TraceRecorder.OP_SEEK:
+                player.seekTo(arg1, (int) arg2);
+                break;
+            case TraceRecorder.OP_SET_NEXT_PLAYER:
+                player.setNextPlayer(arg1 == 0 ? null : replayedOf(players, (int) arg1).player);
+                break;
+            case TraceRecorder.OP_RESET:
+                player.reset();
+                break;
+            case TraceRecorder.OP_RELEASE:
+                player.release();
+                break;
+            case TraceRecorder.CB_PREPARED:
+                player.onPrepared(engine);
+                break;
+            case TraceRecorder.CB_COMPLETION:
+                player.onCompletion(engine);
+                break;
+            case TraceRecorder.CB_ERROR:
+                player.onError(engine, (int) arg1, (int) arg2);
+                break;
+            case TraceRecorder.CB_INFO:
+                player.onInfo(engine, (int) arg1, (int) arg2);
+                break;
+            case TraceRecorder.CB_BUFFERING_UPDATE:
+                player.onBufferingUpdate(engine, (int) arg1);
+                break;
+            case TraceRecorder.CB_SEEK_COMPLETE:
+                player.onSeekComplete(engine);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+
+    /**
+     * Player of the trace, along with its engine.
+     */
+    private static final class Replayed {
+        final ReplayEngine engine = new ReplayEngine();
+        final Player player = new Player(engine);
+    }
+
+    /**
+     * Result of a replay.
+     */
+    public static final class Result {
+        public int replayed;
+        public int players;
+        public int rejected;        //Calls the state machine rejected, as in production if there is no divergence.
+        public int divergences;     //Records which arrived in another state than recorded.
+        public int firstDivergence = -1;
+        public long elapsedNanos;
+
+        @Override
+        public String toString() {
+            return "replayed=" + replayed + " players=" + players + " rejected=" + rejected
+                    + " divergences=" + divergences + " firstDivergence=" + firstDivergence
+                    + " elapsedNanos=" + elapsedNanos;
+        }
+    }
+
+    /**
+     * Engine accepting every call without raising any callback, the trace raises them.
+     */
+    private static final class ReplayEngine implements PlaybackEngine {
+        private int mPositionMs;
+
+        @Override
+        public void setDataSource(String path) {
+        }
+
+        @Override
+        public void setDataSource(FileDescriptor fd) {
+        }
+
+        @Override
+        public void setDataSource(FileDescriptor fd, long offset, long length) {
+        }
+
+        @Override
+        public void setDataSource(@NonNull AssetFileDescriptor afd) {
+        }
+
+        @Override
+        public void setDataSource(@NonNull Context context, @NonNull Uri uri, @Nullable Map<String, String> headers) {
+        }
+
+        @Override
+        public void setDataSource(@NonNull Context context, @NonNull Uri uri, @Nullable Map<String, String> headers,
+                                  @Nullable List<HttpCookie> cookies) {
+        }
+
+        @Override
+        public void setDataSource(MediaDataSource dataSource) {
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void prepareAsync() {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void seekTo(long msec, int mode) {
+            mPositionMs = (int) msec;
+        }
+
+        @Override
+        public void setNextEngine(@Nullable PlaybackEngine next) {
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return false;
+        }
+
+        @Override
+        public int getCurrentPosition() {
+            return mPositionMs;
+        }
+
+        @Override
+        public int getDuration() {
+            return 0;
+        }
+
+        @Override
+        public int getAudioSessionId() {
+            return 0;
+        }
+
+        @Override
+        public void reset() {
+            mPositionMs = 0;
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public void setCallback(@Nullable Callback callback) {
+        }
+    }
+}
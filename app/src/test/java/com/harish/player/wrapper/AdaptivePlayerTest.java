@@ -0,0 +1,98 @@
+package com.harish.player.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptivePlayerTest {
+    private final List<FakePlaybackEngine> mEngines = new ArrayList<>();
+    private final List<Integer> mChanges = new ArrayList<>();
+    private AdaptivePlayer mPlayer;
+
+    @Before
+    public void setUp() {
+        mPlayer = new AdaptivePlayer(new PlaybackEngine.Factory() {
+            @Override
+            public PlaybackEngine create() {
+                FakePlaybackEngine engine = new FakePlaybackEngine(100, 300, 60_000);
+                mEngines.add(engine);
+                return engine;
+            }
+        }, new AdaptivePlayer.DefaultSwitchPolicy(), PlaybackMetrics.Clock.SYSTEM);
+        mPlayer.setAutoSwitch(false);
+        mPlayer.setVariantListener(new AdaptivePlayer.VariantListener() {
+            @Override
+            public void onVariantChanged(int from, int to) {
+                mChanges.add(to);
+            }
+
+            @Override
+            public void onVariantFailed(int variant, Exception error) {
+                throw new AssertionError(error);
+            }
+        });
+        mPlayer.setVariants(Arrays.asList(new AdaptivePlayer.Variant("low", 500_000),
+                new AdaptivePlayer.Variant("high", 2_000_000)));
+    }
+
+    private void advanceBy(long deltaMs) {
+        for (FakePlaybackEngine engine : mEngines) {
+            engine.advanceBy(deltaMs);
+        }
+    }
+
+    @Test
+    public void switchDoesNotRewindBySeekLatency() {
+        mPlayer.play(0);
+        advanceBy(100);
+        advanceBy(1_000);
+        mPlayer.switchTo(1);
+        //Prepared at 1000, the seek completes at 1300.
+        advanceBy(100);
+        advanceBy(300);
+        assertEquals(0, mPlayer.getCurrentVariant());
+        assertEquals(Player.STATE_PAUSED, mPlayer.getCurrentPlayer().getCurrentState());
+        //Seeked again to where the current player was paused.
+        advanceBy(300);
+        assertEquals(1, mPlayer.getCurrentVariant());
+        assertEquals(Arrays.asList(1), mChanges);
+        Player current = mPlayer.getCurrentPlayer();
+        assertEquals(Player.STATE_STARTED, current.getCurrentState());
+        assertTrue(current.getCurrentPosition() >= 1_300);
+    }
+
+    @Test
+    public void pausedSwitchHandsOffAfterOneSeek() {
+        mPlayer.play(0);
+        advanceBy(100);
+        advanceBy(1_000);
+        mPlayer.pause();
+        mPlayer.switchTo(1);
+        advanceBy(100);
+        advanceBy(300);
+        assertEquals(1, mPlayer.getCurrentVariant());
+        Player current = mPlayer.getCurrentPlayer();
+        assertEquals(Player.STATE_PREPARED, current.getCurrentState());
+        assertEquals(1_000, current.getCurrentPosition());
+    }
+
+    @Test
+    public void cancelledSwitchResumesHeldPlayer() {
+        mPlayer.play(0);
+        advanceBy(100);
+        advanceBy(1_000);
+        mPlayer.switchTo(1);
+        advanceBy(100);
+        advanceBy(300);
+        assertEquals(Player.STATE_PAUSED, mPlayer.getCurrentPlayer().getCurrentState());
+        mPlayer.seekTo(5_000);
+        assertEquals(AdaptivePlayer.NONE, mPlayer.getPendingVariant());
+        assertEquals(Player.STATE_STARTED, mPlayer.getCurrentPlayer().getCurrentState());
+    }
+}
@@ -0,0 +1,246 @@
+package com.harish.player.wrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AudioTapTest {
+    private static final int CAPTURE_SIZE = 100;
+    private static final int SAMPLING_RATE = 10_000;
+    //A capture per buffer worth of audio.
+    private static final long POLL_MS = CAPTURE_SIZE * 1000L / SAMPLING_RATE;
+
+    private final ManualScheduler mScheduler = new ManualScheduler();
+    private final FakeCaptureFactory mFactory = new FakeCaptureFactory();
+    private FakePlaybackEngine mEngine;
+    private Player mPlayer;
+
+    @Before
+    public void setUp() throws Exception {
+        mEngine = new FakePlaybackEngine();
+        mPlayer = new Player(mEngine);
+        mPlayer.setDataSource("http://localhost/media");
+    }
+
+    @After
+    public void tearDown() {
+        mPlayer.release();
+    }
+
+    private AudioTap acquire() {
+        return AudioTap.acquire(mPlayer, mScheduler, mFactory, 1024);
+    }
+
+    @Test
+    public void capturesOnlyWhileStarted() throws Exception {
+        AudioTap tap = acquire();
+        mPlayer.prepare();
+        mScheduler.advanceBy(10 * POLL_MS);
+        assertFalse(tap.isEnabled());
+        assertTrue(mFactory.mCaptures.isEmpty());
+
+        mPlayer.start();
+        mScheduler.advanceBy(0);
+        assertTrue(tap.isEnabled());
+        assertEquals(1, mFactory.mCaptures.size());
+        FakeCapture capture = mFactory.mCaptures.get(0);
+        assertEquals(mPlayer.getAudioSessionId(), capture.mAudioSessionId);
+        assertTrue(capture.mEnabled);
+        assertEquals(SAMPLING_RATE, tap.getSamplingRate());
+
+        mScheduler.advanceBy(4 * POLL_MS);
+        assertEquals(5, tap.getCaptureCount());
+        assertEquals(5 * CAPTURE_SIZE, tap.getRing().getWrittenCount());
+        float[] window = new float[CAPTURE_SIZE];
+        assertTrue(tap.getRing().newReader().readLatest(window));
+        assertEquals(0.5f, window[0], 0);
+
+        mPlayer.pause();
+        mScheduler.advanceBy(10 * POLL_MS);
+        assertFalse(tap.isEnabled());
+        assertFalse(capture.mEnabled);
+        assertEquals(5, tap.getCaptureCount());
+
+        //Resumes on the same capture.
+        mPlayer.start();
+        mScheduler.advanceBy(0);
+        assertTrue(tap.isEnabled());
+        assertTrue(capture.mEnabled);
+        assertEquals(1, mFactory.mCaptures.size());
+        assertEquals(6, tap.getCaptureCount());
+        tap.release();
+    }
+
+    @Test
+    public void freedWhenThePlayerIsReleased() throws Exception {
+        AudioTap tap = acquire();
+        mPlayer.prepare();
+        mPlayer.start();
+        mScheduler.advanceBy(POLL_MS);
+        FakeCapture capture = mFactory.mCaptures.get(0);
+
+        mPlayer.release();
+        mScheduler.advanceBy(0);
+        assertTrue(capture.mReleased);
+        assertFalse(tap.isEnabled());
+        long captures = tap.getCaptureCount();
+        mScheduler.advanceBy(10 * POLL_MS);
+        assertEquals(captures, tap.getCaptureCount());
+        assertEquals(0, capture.mCapturesAfterRelease);
+        tap.release();
+    }
+
+    @Test
+    public void sharedUntilTheLastRelease() throws Exception {
+        AudioTap first = acquire();
+        AudioTap second = acquire();
+        assertSame(first, second);
+        mPlayer.prepare();
+        mPlayer.start();
+        mScheduler.advanceBy(0);
+        assertEquals(1, mFactory.mCaptures.size());
+        FakeCapture capture = mFactory.mCaptures.get(0);
+
+        first.release();
+        mScheduler.advanceBy(POLL_MS);
+        assertFalse(capture.mReleased);
+        assertTrue(second.isEnabled());
+
+        second.release();
+        assertTrue(capture.mReleased);
+        assertFalse(second.isEnabled());
+        //Unbalanced releases are ignored.
+        second.release();
+
+        //No longer following the player.
+        mPlayer.pause();
+        mPlayer.start();
+        mScheduler.advanceBy(POLL_MS);
+        assertEquals(1, mFactory.mCaptures.size());
+
+        AudioTap third = acquire();
+        assertNotSame(first, third);
+        mScheduler.advanceBy(0);
+        assertTrue(third.isEnabled());
+        assertEquals(2, mFactory.mCaptures.size());
+        third.release();
+    }
+
+    @Test
+    public void failedCaptureIsCounted() throws Exception {
+        mFactory.mFail = true;
+        AudioTap tap = acquire();
+        mPlayer.prepare();
+        mScheduler.advanceBy(0);
+        mPlayer.start();
+        mScheduler.advanceBy(POLL_MS);
+        assertFalse(tap.isEnabled());
+        assertEquals(1, tap.getFailureCount());
+        assertEquals(0, tap.getSamplingRate());
+        tap.release();
+    }
+
+    private static final class FakeCaptureFactory implements AudioTap.Capture.Factory {
+        final List<FakeCapture> mCaptures = new ArrayList<>();
+        boolean mFail;
+
+        @Override
+        public AudioTap.Capture create(int audioSessionId) {
+            if (mFail) {
+                throw new UnsupportedOperationException("No such session " + audioSessionId);
+            }
+            FakeCapture capture = new FakeCapture(audioSessionId);
+            mCaptures.add(capture);
+            return capture;
+        }
+    }
+
+    private static final class FakeCapture implements AudioTap.Capture {
+        final int mAudioSessionId;
+        boolean mEnabled;
+        boolean mReleased;
+        int mCapturesAfterRelease;
+
+        FakeCapture(int audioSessionId) {
+            this.mAudioSessionId = audioSessionId;
+        }
+
+        @Override
+        public int getCaptureSize() {
+            return CAPTURE_SIZE;
+        }
+
+        @Override
+        public int getSamplingRate() {
+            return SAMPLING_RATE;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            mEnabled = enabled;
+        }
+
+        @Override
+        public int capture(byte[] out) {
+            if (mReleased) {
+                mCapturesAfterRelease++;
+                return -1;
+            }
+            if (!mEnabled) {
+                return 0;
+            }
+            //Half scale.
+            Arrays.fill(out, (byte) 192);
+            return out.length;
+        }
+
+        @Override
+        public void release() {
+            mEnabled = false;
+            mReleased = true;
+        }
+    }
+
+    /**
+     * Scheduler under manual control, running the tasks which became due as time advances.
+     */
+    private static final class ManualScheduler implements PlayerEventBus.Scheduler {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDueMs = new ArrayList<>();
+        private long mNowMs;
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            mTasks.add(task);
+            mDueMs.add(mNowMs + delayMs);
+        }
+
+        void advanceBy(long deltaMs) {
+            long target = mNowMs + deltaMs;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mDueMs.size(); i++) {
+                    if (mDueMs.get(i) <= target && (next < 0 || mDueMs.get(i) < mDueMs.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    mNowMs = target;
+                    return;
+                }
+                mNowMs = Math.max(mNowMs, mDueMs.remove(next));
+                mTasks.remove(next).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.harish.player.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferHealthEstimatorTest {
+    private static final long DURATION_MS = 100_000;
+    private static final long HORIZON_MS = 10_000;
+    private static final double DELTA = 1e-9;
+
+    private final ManualClock mClock = new ManualClock();
+    private BufferHealthEstimator mEstimator;
+
+    @Before
+    public void setUp() {
+        mEstimator = new BufferHealthEstimator(mClock, BufferHealthEstimator.DEFAULT_FAST_HALF_LIFE_MS,
+                BufferHealthEstimator.DEFAULT_SLOW_HALF_LIFE_MS);
+        mEstimator.onPosition(0, DURATION_MS);
+    }
+
+    //Buffers the given percents of DURATION_MS over the given time, from a baseline of 0%.
+    private void buffer(int percent, long elapsedMs) {
+        mEstimator.onBufferingUpdate(0);
+        mClock.advanceBy(elapsedMs);
+        mEstimator.onBufferingUpdate(percent);
+    }
+
+    @Test
+    public void testFirstSampleIsNotBiasedTowardsZero() {
+        //10% of 100s in 5s, twice as fast as playback.
+        buffer(10, 5_000);
+        assertEquals(1, mEstimator.getSampleCount());
+        assertEquals(2.0, mEstimator.getFillRate(), DELTA);
+    }
+
+    @Test
+    public void testSamplesAreAveraged() {
+        buffer(10, 5_000);
+        //Then 1% in 2s, half as fast as playback.
+        mClock.advanceBy(2_000);
+        mEstimator.onBufferingUpdate(11);
+        double rate = mEstimator.getFillRate();
+        assertTrue(rate > 0.5 && rate < 2.0);
+        //The fast average follows the drop, the slow one lags behind, the lower one is used.
+        double fastAlpha = 1 - Math.pow(0.5, 2_000.0 / BufferHealthEstimator.DEFAULT_FAST_HALF_LIFE_MS);
+        double fastWeight = 1 - Math.pow(0.5, 7_000.0 / BufferHealthEstimator.DEFAULT_FAST_HALF_LIFE_MS);
+        double fastRate = ((1 - fastAlpha) * 2.0 * (fastWeight - fastAlpha) / (1 - fastAlpha) + fastAlpha * 0.5)
+                / fastWeight;
+        assertEquals(fastRate, rate, 1e-6);
+    }
+
+    @Test
+    public void testRateIsCappedByOnePercentSinceTheLastUpdate() {
+        buffer(10, 5_000);
+        //No new percent for 10s, at most 1% (1s of media) was downloaded meanwhile.
+        mClock.advanceBy(10_000);
+        mEstimator.onBufferingUpdate(10);
+        assertEquals(0.1, mEstimator.getFillRate(), DELTA);
+        //Within the first 500ms the averaged rate is still lower than the cap.
+        mEstimator.onBufferingUpdate(11);
+        mClock.advanceBy(400);
+        assertTrue(mEstimator.getFillRate() < 1_000.0 / 400);
+    }
+
+    @Test
+    public void testBufferedAheadIsExtrapolated() {
+        buffer(10, 5_000);
+        assertEquals(10_000, mEstimator.getBufferedAheadMs());
+        //Twice as fast as playback.
+        mClock.advanceBy(200);
+        assertEquals(10_400, mEstimator.getBufferedAheadMs());
+        //Short of the next percent, which has not been reported yet.
+        mClock.advanceBy(600);
+        assertEquals(10_999, mEstimator.getBufferedAheadMs());
+        mClock.advanceBy(5_000);
+        assertEquals(10_999, mEstimator.getBufferedAheadMs());
+        mEstimator.onBufferingUpdate(11);
+        assertEquals(11_000, mEstimator.getBufferedAheadMs());
+    }
+
+    @Test
+    public void testBufferedAheadOfShortMedia() {
+        mEstimator.onPosition(0, 50);
+        //50% of 50ms in 10ms.
+        buffer(50, 10);
+        assertEquals(25, mEstimator.getBufferedAheadMs());
+        mClock.advanceBy(1);
+        assertEquals(25, mEstimator.getBufferedAheadMs());
+    }
+
+    @Test
+    public void testBufferedAheadDrainsWhilePlaying() {
+        buffer(10, 5_000);
+        mEstimator.onPosition(4_000, DURATION_MS);
+        assertEquals(6_000, mEstimator.getBufferedAheadMs());
+        mEstimator.onPlaying(true);
+        mEstimator.onBufferingUpdate(10);
+        mClock.advanceBy(5_000);
+        mEstimator.onBufferingUpdate(15);
+        assertEquals(6_000, mEstimator.getBufferedAheadMs());
+        //Frozen while stalled.
+        mEstimator.onStall(true);
+        mClock.advanceBy(1_000);
+        assertEquals(0, mEstimator.getTimeUntilStallMs());
+    }
+
+    @Test
+    public void testTimeUntilStall() {
+        //Half as fast as playback, 10s of media in 20s.
+        buffer(10, 20_000);
+        mEstimator.onPosition(5_000, DURATION_MS);
+        assertEquals(BufferHealthEstimator.NEVER, mEstimator.getTimeUntilStallMs());
+        mEstimator.onPlaying(true);
+        //5s ahead, draining by half a second per second.
+        assertEquals(10_000, mEstimator.getTimeUntilStallMs(), 1);
+        assertTrue(mEstimator.isStallExpected(HORIZON_MS));
+        assertFalse(mEstimator.isStallExpected(HORIZON_MS / 2));
+        mEstimator.onPlaying(false);
+        assertEquals(BufferHealthEstimator.NEVER, mEstimator.getTimeUntilStallMs());
+    }
+
+    @Test
+    public void testNoStallWhileDownloadingFasterThanPlaying() {
+        buffer(10, 5_000);
+        mEstimator.onPlaying(true);
+        assertEquals(BufferHealthEstimator.NEVER, mEstimator.getTimeUntilStallMs());
+        mEstimator.onBufferingUpdate(100);
+        assertEquals(BufferHealthEstimator.NEVER, mEstimator.getTimeUntilStallMs());
+    }
+
+    @Test
+    public void testThroughputDropPredictsStall() {
+        //10 minutes of media, 1% is 6s. Starts with 30s buffered, downloads at 1.5x for a minute, then
+        //drops to 0.5x.
+        long durationMs = 600_000;
+        double downloadedMs = 30_000;
+        mEstimator.onPosition(0, durationMs);
+        mEstimator.onBufferingUpdate(5);
+        mEstimator.onPlaying(true);
+        long firstAlarmMs = -1;
+        long stallMs = -1;
+        for (long now = 0; now < 240_000; now += 1_000) {
+            double rate = now < 60_000 ? 1.5 : 0.5;
+            downloadedMs += rate * 1_000;
+            mClock.advanceBy(1_000);
+            //The player reports every second, in whole percents.
+            mEstimator.onPosition(mClock.mNowMs, durationMs);
+            mEstimator.onBufferingUpdate((int) (downloadedMs * 100 / durationMs));
+            if (now < 60_000) {
+                assertFalse("Alarm at " + now, mEstimator.isStallExpected(HORIZON_MS));
+            } else if (firstAlarmMs < 0 && mEstimator.isStallExpected(HORIZON_MS)) {
+                firstAlarmMs = mClock.mNowMs;
+            }
+            if (stallMs < 0 && mClock.mNowMs >= downloadedMs) {
+                stallMs = mClock.mNowMs;
+            }
+        }
+        assertTrue(firstAlarmMs > 0);
+        assertTrue(stallMs > 0);
+        //Predicted ahead of time, though not too long ahead.
+        assertTrue("Alarm at " + firstAlarmMs + ", stall at " + stallMs, firstAlarmMs < stallMs);
+        assertTrue("Alarm at " + firstAlarmMs + ", stall at " + stallMs, stallMs - firstAlarmMs <= 2 * HORIZON_MS);
+    }
+
+    /**
+     * Clock under manual control.
+     */
+    private static final class ManualClock implements PlaybackMetrics.Clock {
+        long mNowMs;
+
+        @Override
+        public long nanoTime() {
+            return mNowMs * 1_000_000;
+        }
+
+        void advanceBy(long deltaMs) {
+            mNowMs += deltaMs;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.harish.player.wrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CachedSourceTest {
+    private static final int MEDIA_SIZE = 100_000;
+    private static final int BLOCK_SIZE = 16 * 1024;
+    private static final int READ_SIZE = 4 * 1024;
+
+    private byte[] mPayload;
+    private LocalHttpServer mServer;
+    private File mDirectory;
+    private SegmentCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mPayload = new byte[MEDIA_SIZE];
+        new Random(42).nextBytes(mPayload);
+        mServer = new LocalHttpServer(mPayload, 0);
+        mDirectory = Files.createTempDirectory("cached-source").toFile();
+        mCache = new SegmentCache(mDirectory, BLOCK_SIZE, 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCache.close();
+        mServer.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    private CachedSource open() throws Exception {
+        return new CachedSource(mCache, mServer.url(), new HttpSource(mServer.url(), null));
+    }
+
+    //Reads the whole resource in small sequential reads, the way the extractor does.
+    private byte[] replay(CachedSource source) throws Exception {
+        byte[] content = new byte[(int) source.getSize()];
+        int position = 0;
+        while (position < content.length) {
+            int read = source.readAt(position, content, position, Math.min(READ_SIZE, content.length - position));
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        assertEquals(-1, source.readAt(position, new byte[1], 0, 1));
+        return Arrays.copyOf(content, position);
+    }
+
+    @Test
+    public void missesFetchWholeBlocks() throws Exception {
+        CachedSource source = open();
+        assertArrayEquals(mPayload, replay(source));
+        int blocks = (MEDIA_SIZE + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        assertEquals(blocks, source.getMissCount());
+        assertEquals(MEDIA_SIZE, source.getBytesFromUpstream());
+        //Reads within a block fetched already are hits.
+        assertEquals((MEDIA_SIZE + READ_SIZE - 1) / READ_SIZE - blocks, source.getHitCount());
+    }
+
+    @Test
+    public void replayIsServedFromTheCache() throws Exception {
+        replay(open());
+        long requests = mServer.getRequestCount();
+
+        CachedSource source = open();
+        assertArrayEquals(mPayload, replay(source));
+        assertEquals(0, source.getMissCount());
+        assertEquals(0, source.getBytesFromUpstream());
+        assertEquals(MEDIA_SIZE, source.getBytesSaved());
+        assertEquals(1f, source.getHitRatio(), 0);
+        //Not even the size was requested again.
+        assertEquals(requests, mServer.getRequestCount());
+    }
+
+    @Test
+    public void replaySurvivesReopeningTheCache() throws Exception {
+        replay(open());
+        mCache.close();
+        mCache = new SegmentCache(mDirectory, BLOCK_SIZE, 1024 * 1024);
+        long requests = mServer.getRequestCount();
+
+        CachedSource source = open();
+        assertArrayEquals(mPayload, replay(source));
+        assertEquals(0, source.getMissCount());
+        assertEquals(requests, mServer.getRequestCount());
+    }
+}
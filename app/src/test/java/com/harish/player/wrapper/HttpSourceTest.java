@@ -0,0 +1,57 @@
+package com.harish.player.wrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HttpSourceTest {
+    private static final int MEDIA_SIZE = 100_000;
+
+    private byte[] mPayload;
+    private LocalHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mPayload = new byte[MEDIA_SIZE];
+        new Random(42).nextBytes(mPayload);
+        mServer = new LocalHttpServer(mPayload, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+    }
+
+    @Test
+    public void resolvesTheSizeOnce() throws Exception {
+        HttpSource source = new HttpSource(mServer.url(), null);
+        assertEquals(MEDIA_SIZE, source.getSize());
+        assertEquals(MEDIA_SIZE, source.getSize());
+        assertEquals(1, source.getRequestCount());
+    }
+
+    @Test
+    public void readsTheRequestedRange() throws Exception {
+        HttpSource source = new HttpSource(mServer.url(), null);
+        byte[] buffer = new byte[1_000];
+        assertEquals(500, source.readAt(40_000, buffer, 100, 500));
+        assertArrayEquals(Arrays.copyOfRange(mPayload, 40_000, 40_500), Arrays.copyOfRange(buffer, 100, 600));
+        //Only the range went over the wire, next to the size probe.
+        assertEquals(500, source.getBytesFetched());
+        assertEquals(501, mServer.getBytesServed());
+    }
+
+    @Test
+    public void readsAreCutAtTheEnd() throws Exception {
+        HttpSource source = new HttpSource(mServer.url(), null);
+        byte[] buffer = new byte[1_000];
+        assertEquals(100, source.readAt(MEDIA_SIZE - 100, buffer, 0, 1_000));
+        assertEquals(-1, source.readAt(MEDIA_SIZE, buffer, 0, 1_000));
+    }
+}
@@ -0,0 +1,289 @@
+package com.harish.player.wrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaIndexTest {
+    private static final String LOCATION = "http://localhost/media";
+    private static final String OTHER_LOCATION = "http://localhost/other";
+    private static final long TIMEOUT_MS = 5_000;
+
+    private File mDirectory;
+    private FakeExtractor mExtractor;
+    private MediaIndex mIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("media", ".index");
+        assertTrue(mDirectory.delete());
+        mExtractor = new FakeExtractor();
+        mIndex = new MediaIndex(mDirectory, 4, 8, 2, mExtractor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExtractor.release();
+        mIndex.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testRoundTripAcrossReopen() throws Exception {
+        assertEquals(1000, requestAndWait(LOCATION, "v1").durationMs);
+        assertEquals(1000, requestAndWait(OTHER_LOCATION, "v1").durationMs);
+        reopen();
+
+        MediaIndex.Metadata metadata = mIndex.get(LOCATION, "v1");
+        assertNotNull(metadata);
+        assertEquals(LOCATION, metadata.location);
+        assertEquals("v1", metadata.validator);
+        assertEquals(1000, metadata.durationMs);
+        assertEquals(1920, metadata.width);
+        assertEquals("video/mp4", metadata.mimeType);
+        assertTrue(metadata.hasVideo);
+        assertEquals(1, mIndex.getDiskHitCount());
+        assertNotNull(mIndex.get(LOCATION, "v1"));
+        assertEquals(1, mIndex.getMemoryHitCount());
+        assertEquals(2, mIndex.size());
+
+        //Known, not extracted again.
+        requestAndWait(OTHER_LOCATION, "v1");
+        assertEquals(2, mExtractor.getCallCount());
+    }
+
+    @Test
+    public void testTruncatedTailIsDropped() throws Exception {
+        requestAndWait(LOCATION, "v1");
+        requestAndWait(OTHER_LOCATION, "v1");
+        mIndex.close();
+        File log = new File(mDirectory, "media.idx");
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+        long tornLength = log.length();
+        mIndex = new MediaIndex(mDirectory, 4, 8, 2, mExtractor);
+
+        assertNotNull(mIndex.get(LOCATION, "v1"));
+        assertNull(mIndex.get(OTHER_LOCATION, "v1"));
+        assertEquals(1, mIndex.size());
+        assertTrue(log.length() < tornLength);
+
+        //Appended after the last good record.
+        requestAndWait(OTHER_LOCATION, "v1");
+        reopen();
+        assertNotNull(mIndex.get(LOCATION, "v1"));
+        assertNotNull(mIndex.get(OTHER_LOCATION, "v1"));
+    }
+
+    @Test
+    public void testCorruptedTailIsDropped() throws Exception {
+        requestAndWait(LOCATION, "v1");
+        requestAndWait(OTHER_LOCATION, "v1");
+        mIndex.close();
+        RandomAccessFile file = new RandomAccessFile(new File(mDirectory, "media.idx"), "rw");
+        try {
+            long last = file.length() - 1;
+            file.seek(last);
+            int value = file.read();
+            file.seek(last);
+            file.write(value ^ 0xff);
+        } finally {
+            file.close();
+        }
+        mIndex = new MediaIndex(mDirectory, 4, 8, 2, mExtractor);
+
+        assertNotNull(mIndex.get(LOCATION, "v1"));
+        assertNull(mIndex.get(OTHER_LOCATION, "v1"));
+        assertEquals(1, mIndex.size());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        requestAndWait(OTHER_LOCATION, "v1");
+        long length = new File(mDirectory, "media.idx").length();
+        //One live record per location, every new version leaves a stale one behind.
+        for (int i = 0; i < 300; i++) {
+            requestAndWait(LOCATION, "v" + i);
+        }
+        File log = new File(mDirectory, "media.idx");
+        assertTrue(log.length() < length * 100);
+        assertFalse(new File(mDirectory, "media.idx.tmp").exists());
+        assertEquals(2, mIndex.size());
+
+        reopen();
+        assertNotNull(mIndex.get(OTHER_LOCATION, "v1"));
+        assertNotNull(mIndex.get(LOCATION, "v299"));
+        assertNull(mIndex.get(LOCATION, "v298"));
+        assertEquals(2, mIndex.size());
+    }
+
+    @Test
+    public void testStaleValidator() throws Exception {
+        requestAndWait(LOCATION, "v1");
+        long misses = mIndex.getMissCount();
+        assertNull(mIndex.get(LOCATION, "v2"));
+        assertEquals(misses + 1, mIndex.getMissCount());
+        //Any version of a remote resource.
+        assertNotNull(mIndex.get(LOCATION, null));
+
+        MediaIndex.Metadata metadata = requestAndWait(LOCATION, "v2");
+        assertEquals("v2", metadata.validator);
+        assertEquals(2, mExtractor.getCallCount());
+        assertNotNull(mIndex.get(LOCATION, "v2"));
+        assertNull(mIndex.get(LOCATION, "v1"));
+
+        reopen();
+        assertNotNull(mIndex.get(LOCATION, "v2"));
+        assertNull(mIndex.get(LOCATION, "v1"));
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneExtraction() throws Exception {
+        mExtractor.block();
+        Listener first = new Listener();
+        Listener second = new Listener();
+        mIndex.request(LOCATION, "v1", null, first);
+        mIndex.request(LOCATION, "v1", null, second);
+        mExtractor.release();
+
+        assertEquals("v1", first.await().validator);
+        assertEquals("v1", second.await().validator);
+        assertEquals(1, mExtractor.getCallCount());
+        assertEquals(1, mIndex.getExtractionCount());
+    }
+
+    @Test
+    public void testRequestsOfAnotherVersionAreNotShared() throws Exception {
+        mExtractor.block();
+        Listener first = new Listener();
+        Listener second = new Listener();
+        mIndex.request(LOCATION, "v1", null, first);
+        mIndex.request(LOCATION, "v2", null, second);
+        mExtractor.release();
+
+        assertEquals("v1", first.await().validator);
+        assertEquals("v2", second.await().validator);
+        assertEquals(2, mExtractor.getCallCount());
+    }
+
+    @Test
+    public void testFailedExtraction() throws Exception {
+        mExtractor.setError(new IOException("Unreachable"));
+        Listener listener = new Listener();
+        mIndex.request(LOCATION, "v1", null, listener);
+
+        assertTrue(listener.mLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNull(listener.mMetadata);
+        assertEquals(LOCATION, listener.mFailedLocation);
+        assertEquals(1, mIndex.getFailureCount());
+        assertNull(mIndex.get(LOCATION, "v1"));
+    }
+
+    private MediaIndex.Metadata requestAndWait(String location, String validator) throws Exception {
+        Listener listener = new Listener();
+        mIndex.request(location, validator, null, listener);
+        return listener.await();
+    }
+
+    private void reopen() throws IOException {
+        mIndex.close();
+        mIndex = new MediaIndex(mDirectory, 4, 8, 2, mExtractor);
+    }
+
+    private static final class Listener implements MediaIndex.MetadataListener {
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        volatile MediaIndex.Metadata mMetadata;
+        volatile String mFailedLocation;
+
+        @Override
+        public void onMetadata(MediaIndex.Metadata metadata) {
+            mMetadata = metadata;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onMetadataFailed(String location, Exception error) {
+            mFailedLocation = location;
+            mLatch.countDown();
+        }
+
+        MediaIndex.Metadata await() throws InterruptedException {
+            assertTrue(mLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertNotNull(mMetadata);
+            return mMetadata;
+        }
+    }
+
+    private static final class FakeExtractor implements MediaIndex.Extractor {
+        private final List<String> mCalls = new ArrayList<>();
+        private CountDownLatch mGate;
+        private IOException mError;
+
+        synchronized void block() {
+            mGate = new CountDownLatch(1);
+        }
+
+        synchronized void release() {
+            if (mGate != null) {
+                mGate.countDown();
+            }
+        }
+
+        synchronized void setError(IOException error) {
+            mError = error;
+        }
+
+        synchronized int getCallCount() {
+            return mCalls.size();
+        }
+
+        @Override
+        public MediaIndex.Metadata extract(String location, String validator, Map<String, String> headers)
+                throws IOException {
+            CountDownLatch gate;
+            IOException error;
+            synchronized (this) {
+                mCalls.add(location + " " + validator);
+                gate = mGate;
+                error = mError;
+            }
+            if (gate != null) {
+                try {
+                    gate.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return new MediaIndex.Metadata(location, validator, 1000, 1920, 1080, 0, 2_000_000, "video/mp4",
+                    true, true, 2);
+        }
+    }
+}
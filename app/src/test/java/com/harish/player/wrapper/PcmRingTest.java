@@ -0,0 +1,100 @@
+package com.harish.player.wrapper;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PcmRingTest {
+    //Samples carry their own position, modulo a range floats represent exactly.
+    private static final int RANGE = 1 << 20;
+
+    @Test
+    public void readsInOrder() {
+        PcmRing ring = new PcmRing(8);
+        PcmRing.Reader reader = ring.newReader();
+        ring.write(new float[]{1, 2, 3}, 0, 3);
+        float[] out = new float[4];
+        assertEquals(3, reader.read(out, 0, 4));
+        assertEquals(1f, out[0], 0);
+        assertEquals(3f, out[2], 0);
+        assertEquals(0, reader.read(out, 0, 4));
+    }
+
+    @Test
+    public void overrunSkipsToTheOldestSample() {
+        PcmRing ring = new PcmRing(4);
+        PcmRing.Reader reader = ring.newReader();
+        ring.write(new float[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        float[] out = new float[4];
+        assertEquals(4, reader.read(out, 0, 4));
+        assertEquals(3f, out[0], 0);
+        assertEquals(6f, out[3], 0);
+        assertEquals(1, reader.getOverrunCount());
+    }
+
+    @Test
+    public void readersNeverSeeTornWindows() throws Exception {
+        final PcmRing ring = new PcmRing(256);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float[] chunk = new float[ring.getCapacity()];
+                long position = 0;
+                int size = 1;
+                while (!done.get()) {
+                    for (int i = 0; i < size; i++) {
+                        chunk[i] = (position + i) % RANGE;
+                    }
+                    ring.write(chunk, 0, size);
+                    position += size;
+                    size = (size + 7) % chunk.length + 1;
+                }
+            }
+        });
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            final boolean latest = r == 0;
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    PcmRing.Reader reader = ring.newReader();
+                    float[] out = new float[latest ? 200 : 64];
+                    while (!done.get() && failure.get() == null) {
+                        int count;
+                        if (latest) {
+                            count = reader.readLatest(out) ? out.length : 0;
+                        } else {
+                            count = reader.read(out, 0, out.length);
+                        }
+                        for (int i = 1; i < count; i++) {
+                            if (out[i] != (out[i - 1] + 1) % RANGE) {
+                                failure.set("Torn window at " + i + ": " + out[i - 1] + ", " + out[i]);
+                                return;
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        producer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(2));
+        done.set(true);
+        producer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get(), failure.get());
+        assertTrue(ring.getWrittenCount() > 0);
+    }
+}
@@ -0,0 +1,227 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackMetricsTest {
+    private static final long MS = 1_000_000;
+
+    private final ManualClock mClock = new ManualClock();
+    private PlaybackMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mMetrics = new PlaybackMetrics(mClock);
+    }
+
+    private PlaybackMetrics.Snapshot snapshot() {
+        return mMetrics.snapshot(new PlaybackMetrics.Snapshot());
+    }
+
+    //Takes the recorder from idle to started, the given time apart.
+    private void start(long stepMs) {
+        mMetrics.onStateChanged(Player.STATE_IDLE, Player.STATE_INITIALIZED);
+        mClock.advanceBy(stepMs);
+        mMetrics.onStateChanged(Player.STATE_INITIALIZED, Player.STATE_PREPARING);
+        mClock.advanceBy(stepMs);
+        mMetrics.onStateChanged(Player.STATE_PREPARING, Player.STATE_PREPARED);
+        mClock.advanceBy(stepMs);
+        mMetrics.onStateChanged(Player.STATE_PREPARED, Player.STATE_STARTED);
+    }
+
+    @Test
+    public void recordsPrepareLatencyAndSessions() {
+        start(100);
+        PlaybackMetrics.Snapshot snapshot = snapshot();
+        assertEquals(1, snapshot.sessions);
+        assertEquals(1, snapshot.prepare.count);
+        assertEquals(100 * MS, snapshot.prepare.totalNanos);
+        //[64, 128) milliseconds.
+        assertEquals(1, snapshot.prepare.histogram[7]);
+        assertEquals(Player.STATE_STARTED, snapshot.state);
+
+        mMetrics.onStateChanged(Player.STATE_STARTED, Player.STATE_IDLE);
+        start(50);
+        snapshot = snapshot();
+        assertEquals(2, snapshot.sessions);
+        assertEquals(2, snapshot.prepare.count);
+        assertEquals(100 * MS, snapshot.prepare.maxNanos);
+        assertEquals(50 * MS, snapshot.prepare.lastNanos);
+        assertEquals(75 * MS, snapshot.prepare.getAverageNanos());
+    }
+
+    @Test
+    public void recordsTimeToFirstFrameOncePerSession() {
+        start(10);
+        mClock.advanceBy(300);
+        mMetrics.onInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+        mMetrics.onStateChanged(Player.STATE_STARTED, Player.STATE_PAUSED);
+        mMetrics.onStateChanged(Player.STATE_PAUSED, Player.STATE_STARTED);
+        mClock.advanceBy(100);
+        mMetrics.onInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+        PlaybackMetrics.Snapshot snapshot = snapshot();
+        assertEquals(1, snapshot.firstFrame.count);
+        assertEquals(300 * MS, snapshot.firstFrame.totalNanos);
+
+        //Measured again in the next session.
+        mMetrics.onStateChanged(Player.STATE_STARTED, Player.STATE_IDLE);
+        start(10);
+        mClock.advanceBy(200);
+        mMetrics.onInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+        assertEquals(2, snapshot().firstFrame.count);
+        assertEquals(200 * MS, snapshot().firstFrame.lastNanos);
+    }
+
+    @Test
+    public void recordsRebuffers() {
+        start(10);
+        mMetrics.onInfo(MediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+        mClock.advanceBy(400);
+        mMetrics.onInfo(MediaPlayer.MEDIA_INFO_BUFFERING_END, 0);
+        mClock.advanceBy(600);
+        //Still buffering, included up to now.
+        mMetrics.onInfo(MediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+        mClock.advanceBy(100);
+        PlaybackMetrics.Snapshot snapshot = snapshot();
+        assertEquals(2, snapshot.rebuffer.count);
+        assertEquals(500 * MS, snapshot.rebuffer.totalNanos);
+        //Of 1.1s played.
+        assertEquals(5f / 11, snapshot.getRebufferRatio(), 0.001f);
+
+        //Ended by leaving playback.
+        mMetrics.onStateChanged(Player.STATE_STARTED, Player.STATE_STOPPED);
+        mClock.advanceBy(1_000);
+        mMetrics.onInfo(MediaPlayer.MEDIA_INFO_BUFFERING_END, 0);
+        assertEquals(500 * MS, snapshot().rebuffer.totalNanos);
+    }
+
+    @Test
+    public void recordsDwellTimes() {
+        start(100);
+        mClock.advanceBy(1_000);
+        mMetrics.onStateChanged(Player.STATE_STARTED, Player.STATE_PAUSED);
+        mClock.advanceBy(500);
+        PlaybackMetrics.Snapshot snapshot = snapshot();
+        assertEquals(100 * MS, snapshot.getDwell(Player.STATE_PREPARING).totalNanos);
+        assertEquals(1_000 * MS, snapshot.getDwell(Player.STATE_STARTED).totalNanos);
+        //Current state, up to now.
+        assertEquals(500 * MS, snapshot.getDwell(Player.STATE_PAUSED).totalNanos);
+
+        mMetrics.clear();
+        snapshot = snapshot();
+        assertEquals(0, snapshot.sessions);
+        assertEquals(0, snapshot.getDwell(Player.STATE_STARTED).count);
+        assertEquals(Player.STATE_PAUSED, snapshot.state);
+    }
+
+    @Test
+    public void recordsRecoveries() {
+        start(10);
+        mMetrics.onRecoveryAttempt(1);
+        mClock.advanceBy(300);
+        mMetrics.onRecoveryAttempt(2);
+        mClock.advanceBy(200);
+        mMetrics.onRecovered();
+        mMetrics.onRecoveryAttempt(1);
+        mMetrics.onRecoveryFailed();
+        mMetrics.onRecovered();
+        PlaybackMetrics.Snapshot snapshot = snapshot();
+        assertEquals(3, snapshot.recoveryAttempts);
+        assertEquals(1, snapshot.recoveryFailures);
+        assertEquals(1, snapshot.recovery.count);
+        assertEquals(500 * MS, snapshot.recovery.totalNanos);
+    }
+
+    @Test
+    public void governorRestoreCarriesTheSessionOn() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = new Player(engine);
+        player.setPlaybackMetrics(mMetrics);
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        player.start();
+        mClock.advanceBy(250);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+        engine.advanceBy(5_000);
+
+        //Playing to paused, to stopped, to reset.
+        assertTrue(player.demote());
+        assertTrue(player.demote());
+        assertTrue(player.demote());
+        assertEquals(Player.STATE_IDLE, player.getCurrentState());
+        player.start();
+        assertEquals(Player.STATE_STARTED, player.getCurrentState());
+        mClock.advanceBy(100);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+
+        PlaybackMetrics.Snapshot snapshot = snapshot();
+        assertEquals(1, snapshot.sessions);
+        assertEquals(1, snapshot.firstFrame.count);
+        assertEquals(250 * MS, snapshot.firstFrame.totalNanos);
+
+        //A reset by the caller still ends the session.
+        player.reset();
+        player.setDataSource("http://localhost/other");
+        assertEquals(2, snapshot().sessions);
+        player.release();
+    }
+
+    @Test
+    public void recoveryCarriesTheSessionOn() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = new Player(engine);
+        final List<Runnable> attempts = new ArrayList<>();
+        player.setRecoveryPolicy(new RecoveryPolicy(3, 0, 0, new PlayerEventBus.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                attempts.add(task);
+            }
+        }, new Random(0)));
+        player.setPlaybackMetrics(mMetrics);
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        player.start();
+        mClock.advanceBy(250);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+        engine.advanceBy(5_000);
+
+        engine.injectError(MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+        mClock.advanceBy(400);
+        attempts.remove(0).run();
+        assertEquals(Player.STATE_STARTED, player.getCurrentState());
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START, 0);
+
+        PlaybackMetrics.Snapshot snapshot = snapshot();
+        assertEquals(1, snapshot.sessions);
+        assertEquals(1, snapshot.firstFrame.count);
+        assertEquals(1, snapshot.recovery.count);
+        assertEquals(400 * MS, snapshot.recovery.totalNanos);
+        assertEquals(2, snapshot.prepare.count);
+        player.release();
+    }
+
+    /**
+     * Clock under manual control.
+     */
+    private static final class ManualClock implements PlaybackMetrics.Clock {
+        private long mNowMs;
+
+        @Override
+        public long nanoTime() {
+            return mNowMs * MS;
+        }
+
+        void advanceBy(long deltaMs) {
+            mNowMs += deltaMs;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.harish.player.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlayerCommandQueueTest {
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    private FakePlaybackEngine mEngine;
+    private Player mPlayer;
+    private PlayerCommandQueue mQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        mEngine = new FakePlaybackEngine();
+        mPlayer = new Player(mEngine);
+        mPlayer.setDataSource("http://localhost/media");
+        mPlayer.prepare();
+        mQueue = new PlayerCommandQueue(mPlayer, new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                mTasks.addLast(task);
+            }
+        });
+    }
+
+    //Runs the scheduled drain tasks, returning the number which threw.
+    private int drain() {
+        int thrown = 0;
+        Runnable task;
+        while ((task = mTasks.pollFirst()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                thrown++;
+            }
+        }
+        return thrown;
+    }
+
+    @Test
+    public void burstOfStartAndPauseCollapsesIntoLast() throws Exception {
+        Future<Integer> first = mQueue.start();
+        Future<Integer> second = mQueue.pause();
+        Future<Integer> third = mQueue.start();
+        assertFalse(first.isDone());
+        assertEquals(1, mQueue.getQueueDepth());
+        drain();
+        assertEquals(Player.STATE_STARTED, (int) first.get());
+        assertEquals(Player.STATE_STARTED, (int) second.get());
+        assertEquals(Player.STATE_STARTED, (int) third.get());
+        assertEquals(3, mQueue.getSubmittedCount());
+        assertEquals(2, mQueue.getCoalescedCount());
+        assertEquals(1, mQueue.getExecutedCount());
+    }
+
+    @Test
+    public void onlyLastSeekOfBurstReachesPlayer() throws Exception {
+        mQueue.seekTo(1_000, Player.SEEK_MODE_PRECISE);
+        mQueue.seekTo(2_000, Player.SEEK_MODE_PRECISE);
+        Future<Integer> last = mQueue.seekTo(3_000, Player.SEEK_MODE_PRECISE);
+        drain();
+        assertEquals(Player.STATE_PREPARED, (int) last.get());
+        assertEquals(1, mQueue.getExecutedCount());
+        assertEquals(3_000, mPlayer.getCurrentPosition());
+    }
+
+    @Test
+    public void redundantCommandIsSkipped() throws Exception {
+        mQueue.start();
+        drain();
+        Future<Integer> again = mQueue.start();
+        drain();
+        assertEquals(Player.STATE_STARTED, (int) again.get());
+        assertEquals(1, mQueue.getExecutedCount());
+        assertEquals(1, mQueue.getSkippedCount());
+    }
+
+    @Test
+    public void illegalCommandFailsItsFuture() throws Exception {
+        mPlayer.reset();
+        Future<Integer> start = mQueue.start();
+        drain();
+        try {
+            start.get();
+            fail("start() in STATE_IDLE succeeded");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void throwingListenerDoesNotWedgeQueue() throws Exception {
+        mQueue.setCommandListener(new PlayerCommandQueue.CommandListener() {
+            @Override
+            public void onCommandCompleted(int command, int state) {
+                throw new IllegalStateException("Listener failed");
+            }
+
+            @Override
+            public void onCommandFailed(int command, RuntimeException error) {
+            }
+        });
+        Future<Integer> start = mQueue.start();
+        Future<Integer> stop = mQueue.stop();
+        assertEquals(2, drain());
+        assertTrue(start.isDone());
+        assertTrue(stop.isDone());
+        mQueue.setCommandListener(null);
+        Future<Integer> reset = mQueue.reset();
+        drain();
+        assertEquals(Player.STATE_IDLE, (int) reset.get());
+    }
+}
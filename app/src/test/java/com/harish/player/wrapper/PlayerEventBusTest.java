@@ -0,0 +1,203 @@
+package com.harish.player.wrapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerEventBusTest {
+    private final PlayerEventBus mBus = new PlayerEventBus();
+
+    @Test
+    public void deliversDirectlyInOrder() {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        assertFalse(mBus.hasSubscribers());
+        mBus.subscribe(first);
+        mBus.subscribe(second, null);
+        assertTrue(mBus.hasSubscribers());
+        mBus.publish(PlayerEventBus.EVENT_STATE_CHANGED, Player.STATE_IDLE, Player.STATE_INITIALIZED);
+        mBus.publish(PlayerEventBus.EVENT_POSITION, 1_000, 60_000);
+        assertEquals("1:" + Player.STATE_IDLE + ":" + Player.STATE_INITIALIZED + " 8:1000:60000", first.toString());
+        assertEquals(first.toString(), second.toString());
+    }
+
+    @Test
+    public void deliversOnTheExecutor() {
+        Recorder recorder = new Recorder();
+        QueueExecutor executor = new QueueExecutor();
+        PlayerEventBus.Subscription subscription = mBus.subscribe(recorder, executor);
+        mBus.publish(PlayerEventBus.EVENT_PREPARED, 0, 0);
+        mBus.publish(PlayerEventBus.EVENT_COMPLETION, 0, 0);
+        assertEquals("", recorder.toString());
+        executor.runAll();
+        assertEquals("2:0:0 3:0:0", recorder.toString());
+
+        //Handed over, but dropped once unsubscribed.
+        mBus.publish(PlayerEventBus.EVENT_PREPARED, 0, 0);
+        mBus.unsubscribe(subscription);
+        executor.runAll();
+        assertEquals("2:0:0 3:0:0", recorder.toString());
+        assertFalse(mBus.hasSubscribers());
+    }
+
+    @Test
+    public void coalescesHighFrequencyEvents() {
+        Recorder recorder = new Recorder();
+        ManualScheduler scheduler = new ManualScheduler();
+        mBus.subscribeCoalesced(recorder, scheduler, 0);
+        mBus.publish(PlayerEventBus.EVENT_POSITION, 1_000, 60_000);
+        mBus.publish(PlayerEventBus.EVENT_BUFFERING_UPDATE, 10, 0);
+        mBus.publish(PlayerEventBus.EVENT_STATE_CHANGED, Player.STATE_STARTED, Player.STATE_PAUSED);
+        mBus.publish(PlayerEventBus.EVENT_POSITION, 1_100, 60_000);
+        mBus.publish(PlayerEventBus.EVENT_BUFFERING_UPDATE, 12, 0);
+        mBus.publish(PlayerEventBus.EVENT_INFO, 701, 0);
+        //One batch for all of them.
+        assertEquals(1, scheduler.mTasks.size());
+        scheduler.runAll();
+        //Latest values first, then the other events in publishing order.
+        assertEquals("7:12:0 8:1100:60000 1:" + Player.STATE_STARTED + ":" + Player.STATE_PAUSED + " 5:701:0",
+                recorder.toString());
+
+        scheduler.runAll();
+        assertEquals(4, recorder.mEvents.size());
+    }
+
+    @Test
+    public void coalescedBatchesAreSpacedByTheInterval() {
+        Recorder recorder = new Recorder();
+        ManualScheduler scheduler = new ManualScheduler();
+        long intervalMs = 60_000;
+        mBus.subscribeCoalesced(recorder, scheduler, intervalMs);
+        mBus.publish(PlayerEventBus.EVENT_POSITION, 1_000, 60_000);
+        //Nothing delivered yet, the first batch goes right away.
+        assertEquals(0, (long) scheduler.mDelays.get(0));
+        scheduler.runAll();
+
+        mBus.publish(PlayerEventBus.EVENT_POSITION, 2_000, 60_000);
+        long delayMs = scheduler.mDelays.get(1);
+        assertTrue(delayMs > intervalMs / 2 && delayMs <= intervalMs);
+        scheduler.runAll();
+        assertEquals("8:1000:60000 8:2000:60000", recorder.toString());
+    }
+
+    @Test
+    public void unsubscribedBatchIsDropped() {
+        Recorder recorder = new Recorder();
+        ManualScheduler scheduler = new ManualScheduler();
+        PlayerEventBus.Subscription subscription = mBus.subscribeCoalesced(recorder, scheduler, 0);
+        mBus.publish(PlayerEventBus.EVENT_BUFFERING_UPDATE, 10, 0);
+        mBus.publish(PlayerEventBus.EVENT_PREPARED, 0, 0);
+        mBus.unsubscribe(subscription);
+        scheduler.runAll();
+        assertEquals("", recorder.toString());
+    }
+
+    @Test
+    public void unsubscribeDuringDispatch() {
+        final Recorder later = new Recorder();
+        final List<PlayerEventBus.Subscription> subscriptions = new ArrayList<>();
+        Recorder first = new Recorder() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                super.onPlayerEvent(event, arg1, arg2);
+                //Drops itself and the one after it.
+                mBus.unsubscribe(subscriptions.get(0));
+                mBus.unsubscribe(subscriptions.get(1));
+            }
+        };
+        Recorder last = new Recorder();
+        subscriptions.add(mBus.subscribe(first));
+        subscriptions.add(mBus.subscribe(later));
+        mBus.subscribe(last);
+
+        mBus.publish(PlayerEventBus.EVENT_PREPARED, 0, 0);
+        assertEquals("2:0:0", first.toString());
+        //Part of the dispatch already, but not called once unsubscribed.
+        assertEquals("", later.toString());
+        assertEquals("2:0:0", last.toString());
+
+        mBus.publish(PlayerEventBus.EVENT_COMPLETION, 0, 0);
+        assertEquals("2:0:0", first.toString());
+        assertEquals("2:0:0 3:0:0", last.toString());
+    }
+
+    @Test
+    public void subscribeDuringDispatch() {
+        final Recorder added = new Recorder();
+        mBus.subscribe(new PlayerEventBus.PlayerEventListener() {
+            private boolean mSubscribed;
+
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (!mSubscribed) {
+                    mSubscribed = true;
+                    mBus.subscribe(added);
+                }
+            }
+        });
+        mBus.publish(PlayerEventBus.EVENT_PREPARED, 0, 0);
+        //From the next event on.
+        assertEquals("", added.toString());
+        mBus.publish(PlayerEventBus.EVENT_COMPLETION, 0, 0);
+        assertEquals("3:0:0", added.toString());
+    }
+
+    private static class Recorder implements PlayerEventBus.PlayerEventListener {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onPlayerEvent(int event, long arg1, long arg2) {
+            mEvents.add(event + ":" + arg1 + ":" + arg2);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (String event : mEvents) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(event);
+            }
+            return builder.toString();
+        }
+    }
+
+    private static final class QueueExecutor implements Executor {
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            mTasks.add(task);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+
+    private static final class ManualScheduler implements PlayerEventBus.Scheduler {
+        final List<Runnable> mTasks = new ArrayList<>();
+        final List<Long> mDelays = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            mTasks.add(task);
+            mDelays.add(delayMs);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.harish.player.wrapper;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerGovernorTest {
+    private final QueueExecutor mExecutor = new QueueExecutor();
+    private PlayerGovernor mGovernor;
+
+    @Before
+    public void setUp() {
+        mGovernor = new PlayerGovernor(1, 2, 1, mExecutor);
+    }
+
+    private Player prepared(FakePlaybackEngine engine) throws Exception {
+        Player player = new Player(engine);
+        mGovernor.track(player);
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        return player;
+    }
+
+    @Test
+    public void pausesTheLeastRecentlyStartedPlayer() throws Exception {
+        Player first = prepared(new FakePlaybackEngine());
+        first.start();
+        Player second = prepared(new FakePlaybackEngine());
+        second.start();
+        assertEquals(2, mGovernor.getDecodingCount());
+        //Demotions run on the executor.
+        assertEquals(Player.STATE_STARTED, first.getCurrentState());
+
+        mExecutor.runAll();
+        assertEquals(Player.STATE_PAUSED, first.getCurrentState());
+        assertEquals(Player.STATE_STARTED, second.getCurrentState());
+        assertEquals(1, mGovernor.getDecodingCount());
+        assertEquals(1, mGovernor.getPauseCount());
+        assertFalse(first.isDemoted());
+    }
+
+    @Test
+    public void stopsAndRestoresTheLeastRecentlyUsedPlayer() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player first = prepared(engine);
+        first.start();
+        engine.advanceBy(5_000);
+        first.pause();
+        Player second = prepared(new FakePlaybackEngine());
+        mExecutor.runAll();
+        assertEquals(0, mGovernor.getStopCount());
+
+        Player third = prepared(new FakePlaybackEngine());
+        assertEquals(3, mGovernor.getPreparedCount());
+        mExecutor.runAll();
+        assertEquals(Player.STATE_STOPPED, first.getCurrentState());
+        assertTrue(first.isDemoted());
+        assertEquals(5_000, first.getCurrentPosition());
+        assertEquals(Player.STATE_PREPARED, second.getCurrentState());
+        assertEquals(Player.STATE_PREPARED, third.getCurrentState());
+        assertEquals(2, mGovernor.getPreparedCount());
+        assertEquals(1, mGovernor.getStoppedCount());
+        assertEquals(1, mGovernor.getStopCount());
+
+        //Restored on start, where it was.
+        first.start();
+        assertFalse(first.isDemoted());
+        assertEquals(Player.STATE_STARTED, first.getCurrentState());
+        assertEquals(5_000, first.getCurrentPosition());
+        //Now the second one is the least recently used.
+        mExecutor.runAll();
+        assertEquals(Player.STATE_STOPPED, second.getCurrentState());
+        assertEquals(Player.STATE_PREPARED, third.getCurrentState());
+    }
+
+    @Test
+    public void resetsStoppedPlayersOverTheLimit() throws Exception {
+        Player first = prepared(new FakePlaybackEngine());
+        first.stop();
+        Player second = prepared(new FakePlaybackEngine());
+        second.stop();
+        assertEquals(2, mGovernor.getStoppedCount());
+        mExecutor.runAll();
+        assertEquals(Player.STATE_IDLE, first.getCurrentState());
+        assertTrue(first.isDemoted());
+        assertEquals(Player.STATE_STOPPED, second.getCurrentState());
+        assertEquals(1, mGovernor.getResetCount());
+
+        //Sets its data source again, stopped by the caller it starts from the beginning.
+        first.prepare();
+        assertEquals(Player.STATE_PREPARED, first.getCurrentState());
+        assertFalse(first.isDemoted());
+        assertEquals(0, first.getCurrentPosition());
+    }
+
+    @Test
+    public void tightensWithTheTrimLevel() throws Exception {
+        Player playing = prepared(new FakePlaybackEngine());
+        playing.start();
+        Player paused = prepared(new FakePlaybackEngine());
+        paused.start();
+        paused.pause();
+        mExecutor.runAll();
+        assertEquals(Player.STATE_PAUSED, paused.getCurrentState());
+
+        mGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        mExecutor.runAll();
+        //Only players still playing keep their codecs, nothing stopped is kept.
+        assertEquals(Player.STATE_STARTED, playing.getCurrentState());
+        assertEquals(Player.STATE_IDLE, paused.getCurrentState());
+        assertTrue(paused.isDemoted());
+
+        mGovernor.resetTrimLevel();
+        paused.prepare();
+        mExecutor.runAll();
+        assertEquals(Player.STATE_PREPARED, paused.getCurrentState());
+    }
+
+    @Test
+    public void leavesNextPlayersAlone() throws Exception {
+        Player next = prepared(new FakePlaybackEngine());
+        Player first = prepared(new FakePlaybackEngine());
+        first.setNextPlayer(next);
+        Player third = prepared(new FakePlaybackEngine());
+        mExecutor.runAll();
+        //The least recently used one is linked, the next one is stopped instead.
+        assertEquals(Player.STATE_PREPARED, next.getCurrentState());
+        assertEquals(Player.STATE_STOPPED, first.getCurrentState());
+        assertEquals(Player.STATE_PREPARED, third.getCurrentState());
+    }
+
+    @Test
+    public void untracksReleasedPlayers() throws Exception {
+        Player first = prepared(new FakePlaybackEngine());
+        Player second = prepared(new FakePlaybackEngine());
+        assertEquals(2, mGovernor.getTrackedCount());
+        first.release();
+        assertEquals(1, mGovernor.getTrackedCount());
+        assertEquals(1, mGovernor.getPreparedCount());
+        mGovernor.untrack(second);
+        assertEquals(0, mGovernor.getTrackedCount());
+        assertEquals(0, mGovernor.getPreparedCount());
+        second.start();
+        assertEquals(0, mGovernor.getDecodingCount());
+    }
+
+    private static final class QueueExecutor implements Executor {
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            mTasks.add(task);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+}
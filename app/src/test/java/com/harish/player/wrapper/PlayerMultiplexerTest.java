@@ -0,0 +1,57 @@
+package com.harish.player.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlayerMultiplexerTest {
+    private PlayerMultiplexer mMultiplexer;
+
+    @Before
+    public void setUp() {
+        mMultiplexer = new PlayerMultiplexer(1, 1, new PlaybackEngine.Factory() {
+            @Override
+            public PlaybackEngine create() {
+                return new FakePlaybackEngine();
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            mMultiplexer.setTile(i, "http://localhost/" + i);
+        }
+    }
+
+    @Test
+    public void mostVisibleTilePlays() {
+        mMultiplexer.setVisibility(new int[]{0, 1}, new float[]{0.4f, 0.9f}, 2);
+        assertTrue(mMultiplexer.isPlaying(1));
+        assertFalse(mMultiplexer.isPlaying(0));
+        assertNotNull(mMultiplexer.getPlayer(0));
+        assertNull(mMultiplexer.getPlayer(3));
+    }
+
+    @Test
+    public void batchWithUnknownTileIsRejectedWhole() {
+        mMultiplexer.setVisibility(0, 1f);
+        try {
+            mMultiplexer.setVisibility(new int[]{0, 1, 7}, new float[]{0f, 1f, 1f}, 3);
+            fail("Unknown tile accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertTrue(mMultiplexer.isPlaying(0));
+        assertFalse(mMultiplexer.isPlaying(1));
+        //Consistent enough to move on.
+        mMultiplexer.setVisibility(new int[]{0, 1}, new float[]{0f, 1f}, 2);
+        assertTrue(mMultiplexer.isPlaying(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void removeTileAfterReleaseThrows() {
+        mMultiplexer.release();
+        mMultiplexer.removeTile(0);
+    }
+}
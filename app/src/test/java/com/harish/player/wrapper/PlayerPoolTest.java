@@ -0,0 +1,114 @@
+package com.harish.player.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PlayerPoolTest {
+    private final List<FakePlaybackEngine> mEngines = new ArrayList<>();
+    private PlayerPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new PlayerPool(2, 1, new PlaybackEngine.Factory() {
+            @Override
+            public PlaybackEngine create() {
+                FakePlaybackEngine engine = new FakePlaybackEngine(100, 0, 60_000);
+                mEngines.add(engine);
+                return engine;
+            }
+        });
+    }
+
+    private void advanceBy(long deltaMs) {
+        for (FakePlaybackEngine engine : new ArrayList<>(mEngines)) {
+            engine.advanceBy(deltaMs);
+        }
+    }
+
+    @Test
+    public void preloadedSourceIsHit() throws IOException {
+        mPool.preload(Arrays.asList("a"));
+        advanceBy(100);
+        Player player = mPool.acquire("a");
+        assertEquals(Player.STATE_PREPARED, player.getCurrentState());
+        assertEquals(1, mPool.getHitCount());
+        assertEquals(0, mPool.getMissCount());
+        assertEquals(1, mPool.getPrepareCount());
+    }
+
+    @Test
+    public void recycledPlayerIsReused() throws IOException {
+        Player player = mPool.acquire("a");
+        mPool.recycle(player);
+        assertEquals(Player.STATE_IDLE, player.getCurrentState());
+        assertSame(player, mPool.acquire("b"));
+        assertEquals(1, mEngines.size());
+        assertEquals(2, mPool.getMissCount());
+    }
+
+    @Test
+    public void acquireStealsPreloadedPlayerAtCapacity() throws IOException {
+        mPool.acquire("a");
+        mPool.preload(Arrays.asList("b"));
+        Player player = mPool.acquire("c");
+        assertEquals(2, mPool.size());
+        assertEquals(2, mEngines.size());
+        assertEquals(1, mPool.getEvictionCount());
+        assertEquals(Player.STATE_PREPARING, player.getCurrentState());
+    }
+
+    @Test
+    public void acquireFailsWhenExhausted() throws IOException {
+        mPool.acquire("a");
+        mPool.acquire("b");
+        try {
+            mPool.acquire("c");
+            fail("Pool grew past its capacity");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(2, mPool.size());
+        assertEquals(2, mEngines.size());
+    }
+
+    @Test
+    public void preloadStopsWhenExhausted() throws IOException {
+        Player a = mPool.acquire("a");
+        mPool.acquire("b");
+        mPool.preload(Arrays.asList("c"));
+        assertEquals(2, mPool.size());
+        mPool.recycle(a);
+        mPool.preload(Arrays.asList("c"));
+        advanceBy(100);
+        assertSame(a, mPool.acquire("c"));
+        assertEquals(1, mPool.getHitCount());
+    }
+
+    @Test
+    public void callerPreparedListenerDoesNotBreakLatency() throws IOException {
+        final int[] prepared = new int[1];
+        Player player = mPool.acquire("a");
+        player.setOnPreparedListener(new Player.PlayerPreparationListener() {
+            @Override
+            public void onPlayerPrepared() {
+                prepared[0]++;
+            }
+        });
+        advanceBy(100);
+        assertEquals(1, prepared[0]);
+        assertEquals(1, mPool.getPrepareCount());
+        mPool.recycle(player);
+        assertSame(player, mPool.acquire("b"));
+        advanceBy(100);
+        assertEquals(2, prepared[0]);
+        assertEquals(2, mPool.getPrepareCount());
+    }
+}
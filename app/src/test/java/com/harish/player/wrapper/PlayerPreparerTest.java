@@ -0,0 +1,59 @@
+package com.harish.player.wrapper;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlayerPreparerTest {
+    private final PlayerPreparer mPreparer = new PlayerPreparer();
+
+    @After
+    public void tearDown() {
+        mPreparer.shutdown();
+    }
+
+    @Test
+    public void completesWithPreparedPlayer() throws Exception {
+        Player player = new Player(new FakePlaybackEngine());
+        Future<Player> future = mPreparer.prepare(player, "http://localhost/media");
+        assertSame(player, future.get(5, TimeUnit.SECONDS));
+        assertEquals(Player.STATE_PREPARED, player.getCurrentState());
+        assertEquals(1, mPreparer.getPreparedCount());
+        assertEquals(0, mPreparer.getFailedCount());
+    }
+
+    @Test
+    public void failsWhenResetDuringPrepare() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        CountDownLatch gate = new CountDownLatch(1);
+        engine.setPrepareGate(gate);
+        Player player = new Player(engine);
+        Future<Player> future = mPreparer.prepare(player, "http://localhost/media");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (player.getCurrentState() != Player.STATE_PREPARING) {
+            assertTrue("prepare() not reached", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        player.reset();
+        gate.countDown();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Abandoned preparation completed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CancellationException);
+        }
+        assertEquals(Player.STATE_IDLE, player.getCurrentState());
+        assertEquals(0, mPreparer.getPreparedCount());
+        assertEquals(1, mPreparer.getFailedCount());
+    }
+}
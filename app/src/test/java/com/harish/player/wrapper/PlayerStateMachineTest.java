@@ -0,0 +1,127 @@
+package com.harish.player.wrapper;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.harish.player.wrapper.Player.STATE_COMPLETED;
+import static com.harish.player.wrapper.Player.STATE_ENDED;
+import static com.harish.player.wrapper.Player.STATE_ERROR;
+import static com.harish.player.wrapper.Player.STATE_IDLE;
+import static com.harish.player.wrapper.Player.STATE_INITIALIZED;
+import static com.harish.player.wrapper.Player.STATE_PAUSED;
+import static com.harish.player.wrapper.Player.STATE_PREPARED;
+import static com.harish.player.wrapper.Player.STATE_PREPARING;
+import static com.harish.player.wrapper.Player.STATE_STARTED;
+import static com.harish.player.wrapper.Player.STATE_STOPPED;
+import static com.harish.player.wrapper.Player.STATE_UNKNOWN;
+import static org.junit.Assert.assertEquals;
+
+public class PlayerStateMachineTest {
+    //Every state, along with values out of range on both sides.
+    private static final int[] STATES = {STATE_UNKNOWN - 1, STATE_UNKNOWN, STATE_ERROR, STATE_IDLE,
+            STATE_INITIALIZED, STATE_PREPARING, STATE_PREPARED, STATE_STARTED, STATE_PAUSED, STATE_STOPPED,
+            STATE_COMPLETED, STATE_ENDED, STATE_ENDED + 1};
+
+    //Legal transitions as {from, to}, after the state diagram of the native player. Anything else is illegal.
+    private static final int[][] LEGAL = {
+            //setDataSource().
+            {STATE_IDLE, STATE_INITIALIZED},
+            //prepare() and prepareAsync().
+            {STATE_INITIALIZED, STATE_PREPARING},
+            {STATE_STOPPED, STATE_PREPARING},
+            //onPrepared().
+            {STATE_PREPARING, STATE_PREPARED},
+            //start().
+            {STATE_PREPARED, STATE_STARTED},
+            {STATE_STARTED, STATE_STARTED},
+            {STATE_PAUSED, STATE_STARTED},
+            {STATE_COMPLETED, STATE_STARTED},
+            //pause().
+            {STATE_STARTED, STATE_PAUSED},
+            {STATE_PAUSED, STATE_PAUSED},
+            {STATE_COMPLETED, STATE_PAUSED},
+            //stop().
+            {STATE_PREPARED, STATE_STOPPED},
+            {STATE_STARTED, STATE_STOPPED},
+            {STATE_PAUSED, STATE_STOPPED},
+            {STATE_STOPPED, STATE_STOPPED},
+            {STATE_COMPLETED, STATE_STOPPED},
+            //onCompletion(), also after an unhandled onError().
+            {STATE_STARTED, STATE_COMPLETED},
+            {STATE_PAUSED, STATE_COMPLETED},
+            {STATE_ERROR, STATE_COMPLETED},
+            //reset().
+            {STATE_UNKNOWN, STATE_IDLE},
+            {STATE_ERROR, STATE_IDLE},
+            {STATE_IDLE, STATE_IDLE},
+            {STATE_INITIALIZED, STATE_IDLE},
+            {STATE_PREPARING, STATE_IDLE},
+            {STATE_PREPARED, STATE_IDLE},
+            {STATE_STARTED, STATE_IDLE},
+            {STATE_PAUSED, STATE_IDLE},
+            {STATE_STOPPED, STATE_IDLE},
+            {STATE_COMPLETED, STATE_IDLE},
+            //onError().
+            {STATE_ERROR, STATE_ERROR},
+            {STATE_IDLE, STATE_ERROR},
+            {STATE_INITIALIZED, STATE_ERROR},
+            {STATE_PREPARING, STATE_ERROR},
+            {STATE_PREPARED, STATE_ERROR},
+            {STATE_STARTED, STATE_ERROR},
+            {STATE_PAUSED, STATE_ERROR},
+            {STATE_STOPPED, STATE_ERROR},
+            {STATE_COMPLETED, STATE_ERROR},
+            //release(), idempotent.
+            {STATE_UNKNOWN, STATE_ENDED},
+            {STATE_ERROR, STATE_ENDED},
+            {STATE_IDLE, STATE_ENDED},
+            {STATE_INITIALIZED, STATE_ENDED},
+            {STATE_PREPARING, STATE_ENDED},
+            {STATE_PREPARED, STATE_ENDED},
+            {STATE_STARTED, STATE_ENDED},
+            {STATE_PAUSED, STATE_ENDED},
+            {STATE_STOPPED, STATE_ENDED},
+            {STATE_COMPLETED, STATE_ENDED},
+            {STATE_ENDED, STATE_ENDED},
+    };
+
+    //States in which seekTo() is accepted.
+    private static final int[] SEEKABLE = {STATE_PREPARED, STATE_STARTED, STATE_PAUSED, STATE_COMPLETED};
+
+    @Test
+    public void transitions() {
+        Set<String> legal = new HashSet<>();
+        for (int[] transition : LEGAL) {
+            legal.add(transition[0] + "->" + transition[1]);
+        }
+        int checked = 0;
+        for (int from : STATES) {
+            for (int to : STATES) {
+                String transition = from + "->" + to;
+                assertEquals(transition, legal.contains(transition), PlayerStateMachine.canTransition(from, to));
+                checked++;
+            }
+        }
+        assertEquals(STATES.length * STATES.length, checked);
+    }
+
+    @Test
+    public void seeks() {
+        Set<Integer> seekable = new HashSet<>();
+        for (int state : SEEKABLE) {
+            seekable.add(state);
+        }
+        for (int state : STATES) {
+            assertEquals("seek in " + state, seekable.contains(state), PlayerStateMachine.canSeek(state));
+        }
+    }
+
+    @Test
+    public void endedIsFinal() {
+        for (int to : STATES) {
+            assertEquals(to == STATE_ENDED, PlayerStateMachine.canTransition(STATE_ENDED, to));
+        }
+    }
+}
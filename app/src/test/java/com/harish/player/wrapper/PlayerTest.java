@@ -0,0 +1,230 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlayerTest {
+
+    private static PlaybackEngine.Factory factory(final FakePlaybackEngine engine) {
+        return new PlaybackEngine.Factory() {
+            @Override
+            public PlaybackEngine create() {
+                return engine;
+            }
+        };
+    }
+
+    @Test
+    public void accessorsBeforeTheEngineIsCreated() {
+        Player player = new Player(factory(new FakePlaybackEngine()));
+        assertFalse(player.isPlaying());
+        assertEquals(0, player.getCurrentPosition());
+        assertEquals(-1, player.getDuration());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void accessorsAfterReleaseThrow() {
+        Player player = new Player(factory(new FakePlaybackEngine()));
+        player.release();
+        player.getDuration();
+    }
+
+    @Test
+    public void prepareDoesNotBlockReset() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        CountDownLatch gate = new CountDownLatch(1);
+        engine.setPrepareGate(gate);
+        final Player player = new Player(engine);
+        player.setDataSource("http://localhost/media");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> prepare = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        player.prepare();
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (player.getCurrentState() != Player.STATE_PREPARING && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(Player.STATE_PREPARING, player.getCurrentState());
+
+            //Returns while the engine is still blocked in prepare().
+            long startNanos = System.nanoTime();
+            player.reset();
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1));
+            assertEquals(Player.STATE_IDLE, player.getCurrentState());
+
+            //The abandoned preparation neither fails nor moves the player on.
+            gate.countDown();
+            prepare.get(5, TimeUnit.SECONDS);
+            assertEquals(Player.STATE_IDLE, player.getCurrentState());
+        } finally {
+            gate.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void prepareCompletesOnceTheEngineIsPrepared() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = new Player(engine);
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        assertEquals(Player.STATE_PREPARED, player.getCurrentState());
+        assertEquals(60_000, player.getDuration());
+    }
+
+    @Test
+    public void synchronousPrepareNotifiesOnceWhenCallbackIsPosted() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        engine.setPostPreparedCallback(true);
+        Player player = new Player(engine);
+        final int[] prepared = new int[2];
+        player.setOnPreparedListener(new Player.PlayerPreparationListener() {
+            @Override
+            public void onPlayerPrepared() {
+                prepared[0]++;
+            }
+        });
+        player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event == PlayerEventBus.EVENT_PREPARED) {
+                    prepared[1]++;
+                }
+            }
+        });
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        assertEquals(Player.STATE_PREPARED, player.getCurrentState());
+        //The posted callback arrives once prepare() has returned.
+        engine.advanceBy(0);
+        assertEquals(1, prepared[0]);
+        assertEquals(1, prepared[1]);
+    }
+
+    @Test
+    public void rejectedSeekKeepsLastPosition() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = new Player(engine);
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        player.start();
+        engine.advanceBy(5_000);
+        assertEquals(5_000, player.getCurrentPosition());
+        player.stop();
+        try {
+            player.seekTo(20_000);
+            fail("seekTo() accepted in STATE_STOPPED");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(player.restart());
+        assertEquals(Player.STATE_PREPARED, player.getCurrentState());
+        assertEquals(5_000, player.getCurrentPosition());
+    }
+
+    @Test
+    public void seeksWhileOneIsInFlightCollapseIntoLast() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine(0, 100, 60_000);
+        Player player = new Player(engine);
+        final List<Integer> superseded = new ArrayList<>();
+        player.setOnSeekLatencyListener(new Player.PlayerSeekLatencyListener() {
+            @Override
+            public void onSeekLatency(long latencyNanos, int supersededSeeks) {
+                superseded.add(supersededSeeks);
+            }
+        });
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        player.seekTo(1_000, Player.SEEK_MODE_FAST);
+        player.seekTo(2_000, Player.SEEK_MODE_PRECISE);
+        player.seekTo(3_000, Player.SEEK_MODE_PRECISE);
+        assertTrue(player.isSeekInFlight());
+        long calls = engine.getCallCount();
+        engine.advanceBy(100);
+        //The first seek completed, only the last pending target is issued.
+        assertEquals(calls + 1, engine.getCallCount());
+        assertTrue(superseded.isEmpty());
+        engine.advanceBy(100);
+        assertFalse(player.isSeekInFlight());
+        assertEquals(3_000, player.getCurrentPosition());
+        assertEquals(1, superseded.size());
+        assertEquals(2, (int) superseded.get(0));
+    }
+
+    @Test
+    public void recoveryRestoresPositionOfError() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = new Player(engine);
+        List<Runnable> attempts = new ArrayList<>();
+        player.setRecoveryPolicy(new RecoveryPolicy(3, 0, 0, scheduler(attempts), new Random(0)));
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        player.start();
+        engine.advanceBy(5_000);
+        engine.injectError(MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+        engine.advanceBy(1_000);
+        assertEquals(1, attempts.size());
+        attempts.remove(0).run();
+        assertEquals(Player.STATE_STARTED, player.getCurrentState());
+        assertEquals(5_000, player.getCurrentPosition());
+    }
+
+    @Test
+    public void failedRecoveryPublishesError() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = new Player(engine);
+        List<Runnable> attempts = new ArrayList<>();
+        player.setRecoveryPolicy(new RecoveryPolicy(1, 0, 0, scheduler(attempts), new Random(0)));
+        final List<Long> errors = new ArrayList<>();
+        player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event == PlayerEventBus.EVENT_ERROR) {
+                    errors.add(arg2);
+                }
+            }
+        });
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        engine.injectError(MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_TIMED_OUT);
+        //Taken by recovery, not published.
+        assertTrue(errors.isEmpty());
+        engine.setPrepareError(new IllegalStateException("Unreachable"));
+        attempts.remove(0).run();
+        assertTrue(attempts.isEmpty());
+        assertEquals(Player.STATE_ERROR, player.getCurrentState());
+        assertEquals(1, errors.size());
+        assertEquals(MediaPlayer.MEDIA_ERROR_IO, (long) errors.get(0));
+    }
+
+    private static PlayerEventBus.Scheduler scheduler(final List<Runnable> tasks) {
+        return new PlayerEventBus.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                tasks.add(task);
+            }
+        };
+    }
+}
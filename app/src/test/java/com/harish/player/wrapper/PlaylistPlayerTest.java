@@ -0,0 +1,90 @@
+package com.harish.player.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaylistPlayerTest {
+    private final List<FakePlaybackEngine> mEngines = new ArrayList<>();
+    private final List<Integer> mStarted = new ArrayList<>();
+    private PlaylistPlayer mPlaylist;
+
+    @Before
+    public void setUp() {
+        mPlaylist = new PlaylistPlayer(new PlaybackEngine.Factory() {
+            @Override
+            public PlaybackEngine create() {
+                FakePlaybackEngine engine = new FakePlaybackEngine(100, 0, 60_000);
+                mEngines.add(engine);
+                return engine;
+            }
+        }, new Random(0));
+        mPlaylist.setPlaylistListener(new PlaylistPlayer.PlaylistListener() {
+            @Override
+            public void onItemStarted(int item) {
+                mStarted.add(item);
+            }
+
+            @Override
+            public void onItemFailed(int item, Exception error) {
+                throw new AssertionError(error);
+            }
+
+            @Override
+            public void onPlaylistEnded() {
+            }
+        });
+        mPlaylist.setItems(Arrays.asList("a", "b", "c"));
+    }
+
+    private void advanceBy(long deltaMs) {
+        for (FakePlaybackEngine engine : new ArrayList<>(mEngines)) {
+            engine.advanceBy(deltaMs);
+        }
+    }
+
+    @Test
+    public void startsOncePrepared() {
+        mPlaylist.play(0);
+        advanceBy(100);
+        assertEquals(Player.STATE_STARTED, mPlaylist.getCurrentPlayer().getCurrentState());
+        assertEquals(Arrays.asList(0), mStarted);
+    }
+
+    @Test
+    public void resumeRestoresPausedPlayerDemotedByGovernor() {
+        mPlaylist.play(0);
+        advanceBy(100);
+        mPlaylist.pause();
+        Player player = mPlaylist.getCurrentPlayer();
+        assertTrue(player.demote());
+        assertTrue(player.isDemoted());
+
+        mPlaylist.resume();
+        advanceBy(100);
+        assertEquals(Player.STATE_STARTED, player.getCurrentState());
+        assertEquals(Arrays.asList(0), mStarted);
+    }
+
+    @Test
+    public void resumeStartsPreparedPlayerDemotedBeforeItStarted() {
+        mPlaylist.play(0);
+        mPlaylist.pause();
+        advanceBy(100);
+        Player player = mPlaylist.getCurrentPlayer();
+        assertEquals(Player.STATE_PREPARED, player.getCurrentState());
+        assertTrue(player.demote());
+
+        mPlaylist.resume();
+        advanceBy(100);
+        assertEquals(Player.STATE_STARTED, player.getCurrentState());
+        assertEquals(Arrays.asList(0), mStarted);
+    }
+}
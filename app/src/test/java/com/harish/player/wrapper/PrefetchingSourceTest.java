@@ -0,0 +1,206 @@
+package com.harish.player.wrapper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrefetchingSourceTest {
+    private static final int CHUNK = 16;
+
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    private final Executor mManual = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            synchronized (mTasks) {
+                mTasks.addLast(task);
+            }
+        }
+    };
+
+    private void runTasks() {
+        while (true) {
+            Runnable task;
+            synchronized (mTasks) {
+                task = mTasks.pollFirst();
+            }
+            if (task == null) {
+                return;
+            }
+            task.run();
+        }
+    }
+
+    private static byte[] read(RandomAccessSource source, long position, int size) throws IOException {
+        byte[] buffer = new byte[size];
+        assertEquals(size, source.readAt(position, buffer, 0, size));
+        return buffer;
+    }
+
+    private static byte[] slice(byte[] data, int from, int size) {
+        byte[] slice = new byte[size];
+        System.arraycopy(data, from, slice, 0, size);
+        return slice;
+    }
+
+    @Test
+    public void sequentialReadsAreServedAhead() throws IOException {
+        MemorySource upstream = new MemorySource(CHUNK * 8);
+        PrefetchingSource source = new PrefetchingSource(upstream, CHUNK, 4, mManual);
+        read(source, 0, CHUNK);
+        read(source, CHUNK, CHUNK);
+        runTasks();
+        int reads = upstream.reads;
+        for (int i = 2; i < 5; i++) {
+            assertArrayEquals(slice(upstream.data, i * CHUNK, CHUNK), read(source, i * CHUNK, CHUNK));
+            runTasks();
+        }
+        assertEquals(3, source.getHitCount());
+        assertEquals(2, source.getMissCount());
+        assertTrue(upstream.reads > reads);
+        assertEquals(0, source.getSeekCount());
+    }
+
+    @Test
+    public void seekDropsWindow() throws IOException {
+        MemorySource upstream = new MemorySource(CHUNK * 64);
+        PrefetchingSource source = new PrefetchingSource(upstream, CHUNK, 4, mManual);
+        read(source, 0, CHUNK);
+        read(source, CHUNK, CHUNK);
+        runTasks();
+        assertArrayEquals(slice(upstream.data, 40 * CHUNK, CHUNK), read(source, 40 * CHUNK, CHUNK));
+        assertEquals(1, source.getSeekCount());
+        assertEquals(3 * CHUNK, source.getWastedBytes());
+    }
+
+    @Test
+    public void closeWakesReaderWaitingForQueuedLoad() throws Exception {
+        final PrefetchingSource source = new PrefetchingSource(new MemorySource(CHUNK * 8), CHUNK, 4, mManual);
+        read(source, 0, CHUNK);
+        read(source, CHUNK, CHUNK);
+        //The loads stay queued, as if dropped by a shutdown.
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> waiting = reader.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    return source.readAt(2 * CHUNK, new byte[CHUNK], 0, CHUNK);
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (source.getWaitCount() == 0) {
+                assertTrue("Reader did not wait", System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+            source.close();
+            try {
+                waiting.get(5, TimeUnit.SECONDS);
+                fail("Read completed on a closed source");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectedReadAheadReadsThrough() throws IOException {
+        MemorySource upstream = new MemorySource(CHUNK * 8);
+        PrefetchingSource source = new PrefetchingSource(upstream, CHUNK, 4, new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                throw new RejectedExecutionException("Shut down");
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(slice(upstream.data, i * CHUNK, CHUNK), read(source, i * CHUNK, CHUNK));
+        }
+        assertEquals(0, source.getWaitCount());
+        assertEquals(5, source.getMissCount());
+    }
+
+    @Test
+    public void failedLoadStallIsCountedOnce() throws IOException {
+        final MemorySource upstream = new MemorySource(CHUNK * 8);
+        upstream.failOtherThreads = Thread.currentThread();
+        PrefetchingSource source = new PrefetchingSource(upstream, CHUNK, 4, new Executor() {
+            @Override
+            public void execute(final Runnable task) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        task.run();
+                    }
+                }).start();
+            }
+        });
+        read(source, 0, CHUNK);
+        read(source, CHUNK, CHUNK);
+        long startNanos = System.nanoTime();
+        assertArrayEquals(slice(upstream.data, 2 * CHUNK, CHUNK), read(source, 2 * CHUNK, CHUNK));
+        long elapsedNanos = System.nanoTime() - startNanos;
+        assertEquals(1, source.getWaitCount());
+        //Not counting the wait twice, the reads before are negligible.
+        assertTrue(source.getStallNanos() < elapsedNanos + TimeUnit.MILLISECONDS.toNanos(50));
+        source.close();
+    }
+
+    /**
+     * In memory upstream, failing reads from threads other than the given one if set.
+     */
+    private static final class MemorySource implements RandomAccessSource {
+        final byte[] data;
+        volatile int reads;
+        volatile Thread failOtherThreads;
+
+        MemorySource(int size) {
+            data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) (i * 31);
+            }
+        }
+
+        @Override
+        public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+            Thread allowed = failOtherThreads;
+            if (allowed != null && Thread.currentThread() != allowed) {
+                throw new IOException("Unreachable");
+            }
+            reads++;
+            if (position >= data.length) {
+                return -1;
+            }
+            int count = (int) Math.min(size, data.length - position);
+            System.arraycopy(data, (int) position, buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public long getSize() {
+            return data.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.harish.player.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressTickerTest {
+    private static final long MIN_INTERVAL_MS = 16;
+    private static final long MAX_INTERVAL_MS = 1_000;
+    //A pixel of a 600px bar is 100ms of a minute.
+    private static final int WIDTH_PX = 600;
+    private static final long PIXEL_MS = 100;
+
+    private final ManualScheduler mScheduler = new ManualScheduler();
+    private ProgressTicker mTicker;
+
+    @Before
+    public void setUp() {
+        mTicker = new ProgressTicker(mScheduler, mScheduler, MIN_INTERVAL_MS, MAX_INTERVAL_MS);
+    }
+
+    private Player prepared(FakePlaybackEngine engine) throws Exception {
+        Player player = new Player(engine);
+        player.setDataSource("http://localhost/media");
+        player.prepare();
+        return player;
+    }
+
+    //Moves the scheduler and the engines forward together, a millisecond at a time.
+    private void play(long durationMs, FakePlaybackEngine... engines) {
+        for (long elapsed = 0; elapsed < durationMs; elapsed++) {
+            for (FakePlaybackEngine engine : engines) {
+                engine.advanceBy(1);
+            }
+            mScheduler.advanceBy(1);
+        }
+    }
+
+    private static List<Long> positions(Player player) {
+        final List<Long> positions = new ArrayList<>();
+        player.getEventBus().subscribe(new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event == PlayerEventBus.EVENT_POSITION) {
+                    assertEquals(60_000, arg2);
+                    positions.add(arg1);
+                }
+            }
+        });
+        return positions;
+    }
+
+    @Test
+    public void samplesOnlyWhilePlaying() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = prepared(engine);
+        List<Long> positions = positions(player);
+        mTicker.add(player, WIDTH_PX);
+        play(1_000, engine);
+        assertTrue(positions.isEmpty());
+        assertEquals(0, mScheduler.mTasks.size());
+
+        player.start();
+        mScheduler.advanceBy(0);
+        play(1_000, engine);
+        //Right away, then once per pixel.
+        assertEquals(11, positions.size());
+        assertEquals(0, (long) positions.get(0));
+        assertEquals(1_000, (long) positions.get(10));
+
+        player.pause();
+        play(1_000, engine);
+        assertEquals(11, positions.size());
+        //Quiet, nothing left scheduled.
+        assertEquals(0, mScheduler.mTasks.size());
+    }
+
+    @Test
+    public void intervalIsBoundedByTheConfiguration() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = prepared(engine);
+        List<Long> positions = positions(player);
+        //A pixel would be 10ms, sampled at most once per frame.
+        mTicker.add(player, 6_000);
+        player.start();
+        play(MIN_INTERVAL_MS * 10, engine);
+        assertEquals(11, positions.size());
+
+        //A pixel would be a minute, sampled at least once per second.
+        mTicker.setWidth(player, 1);
+        positions.clear();
+        play(3 * MAX_INTERVAL_MS, engine);
+        assertEquals(4, positions.size());
+    }
+
+    @Test
+    public void zeroWidthStopsSampling() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = prepared(engine);
+        List<Long> positions = positions(player);
+        mTicker.add(player, WIDTH_PX);
+        player.start();
+        play(PIXEL_MS, engine);
+        assertEquals(2, positions.size());
+
+        mTicker.setWidth(player, 0);
+        play(10 * PIXEL_MS, engine);
+        assertEquals(2, positions.size());
+
+        //Back on screen, sampled right away.
+        mTicker.setWidth(player, WIDTH_PX);
+        mScheduler.advanceBy(0);
+        assertEquals(3, positions.size());
+    }
+
+    @Test
+    public void playersShareOneTimer() throws Exception {
+        FakePlaybackEngine firstEngine = new FakePlaybackEngine();
+        FakePlaybackEngine secondEngine = new FakePlaybackEngine();
+        Player first = prepared(firstEngine);
+        Player second = prepared(secondEngine);
+        List<Long> firstPositions = positions(first);
+        List<Long> secondPositions = positions(second);
+        mTicker.add(first, WIDTH_PX);
+        mTicker.add(second, WIDTH_PX);
+        assertEquals(2, mTicker.getPlayerCount());
+        first.start();
+        second.start();
+        play(10 * PIXEL_MS, firstEngine, secondEngine);
+        assertEquals(11, firstPositions.size());
+        assertEquals(11, secondPositions.size());
+        assertEquals(22, mTicker.getSampleCount());
+        //Started within the same millisecond, sampled by the same ticks.
+        assertTrue(mTicker.getTickCount() <= 12);
+        assertTrue(mScheduler.mTasks.size() <= 1);
+    }
+
+    @Test
+    public void releasedPlayersAreRemoved() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = prepared(engine);
+        List<Long> positions = positions(player);
+        mTicker.add(player, WIDTH_PX);
+        player.start();
+        play(PIXEL_MS, engine);
+        player.release();
+        assertEquals(0, mTicker.getPlayerCount());
+        play(10 * PIXEL_MS, engine);
+        assertEquals(2, positions.size());
+
+        Player other = prepared(new FakePlaybackEngine());
+        mTicker.add(other, WIDTH_PX);
+        mTicker.remove(other);
+        other.start();
+        mScheduler.advanceBy(PIXEL_MS);
+        assertEquals(0, mTicker.getPlayerCount());
+    }
+
+    /**
+     * Scheduler and clock under manual control, running the tasks which became due as time advances.
+     */
+    private static final class ManualScheduler implements PlayerEventBus.Scheduler, PlaybackMetrics.Clock {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDueMs = new ArrayList<>();
+        private long mNowMs;
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            mTasks.add(task);
+            mDueMs.add(mNowMs + delayMs);
+        }
+
+        @Override
+        public long nanoTime() {
+            return mNowMs * 1_000_000;
+        }
+
+        void advanceBy(long deltaMs) {
+            long target = mNowMs + deltaMs;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mDueMs.size(); i++) {
+                    if (mDueMs.get(i) <= target && (next < 0 || mDueMs.get(i) < mDueMs.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    mNowMs = target;
+                    return;
+                }
+                mNowMs = Math.max(mNowMs, mDueMs.remove(next));
+                mTasks.remove(next).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.harish.player.wrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentCacheTest {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int BLOCKS = 4;
+
+    private File mDirectory;
+    private SegmentCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("segment-cache").toFile();
+        mCache = new SegmentCache(mDirectory, BLOCK_SIZE, BLOCKS * BLOCK_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCache.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    private static byte[] block(int value, int length) {
+        byte[] block = new byte[length];
+        Arrays.fill(block, (byte) value);
+        return block;
+    }
+
+    private boolean isCached(int keyId, long block) {
+        return mCache.read(keyId, block, 0, new byte[1], 0, 1) == 1;
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws Exception {
+        int key = mCache.keyId("a");
+        mCache.write(key, 3, block(7, BLOCK_SIZE), 0, BLOCK_SIZE);
+        byte[] buffer = new byte[100];
+        assertEquals(100, mCache.read(key, 3, 500, buffer, 0, 100));
+        assertArrayEquals(block(7, 100), buffer);
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(100, mCache.getBytesSaved());
+    }
+
+    @Test
+    public void missesUnknownBlocksAndOffsetsPastTheEnd() throws Exception {
+        int key = mCache.keyId("a");
+        mCache.write(key, 0, block(1, 200), 0, 200);
+        byte[] buffer = new byte[100];
+        assertEquals(-1, mCache.read(key, 1, 0, buffer, 0, 100));
+        assertEquals(-1, mCache.read(key, 0, 200, buffer, 0, 100));
+        //The last block of a resource is shorter.
+        assertEquals(50, mCache.read(key, 0, 150, buffer, 0, 100));
+        assertEquals(2, mCache.getMissCount());
+        assertEquals(1, mCache.getHitCount());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedBlock() throws Exception {
+        int key = mCache.keyId("a");
+        for (int i = 0; i < BLOCKS; i++) {
+            mCache.write(key, i, block(i, BLOCK_SIZE), 0, BLOCK_SIZE);
+        }
+        //Block 0 used again, block 1 becomes the eldest.
+        assertTrue(isCached(key, 0));
+        mCache.write(key, BLOCKS, block(BLOCKS, BLOCK_SIZE), 0, BLOCK_SIZE);
+        assertEquals(1, mCache.getEvictionCount());
+        assertEquals(BLOCKS, mCache.getBlockCount());
+        assertFalse(isCached(key, 1));
+        assertTrue(isCached(key, 0));
+        byte[] buffer = new byte[BLOCK_SIZE];
+        assertEquals(BLOCK_SIZE, mCache.read(key, BLOCKS, 0, buffer, 0, BLOCK_SIZE));
+        assertArrayEquals(block(BLOCKS, BLOCK_SIZE), buffer);
+    }
+
+    @Test
+    public void removeDropsTheBlocksOfAResource() throws Exception {
+        int a = mCache.keyId("a");
+        int b = mCache.keyId("b");
+        mCache.write(a, 0, block(1, BLOCK_SIZE), 0, BLOCK_SIZE);
+        mCache.write(b, 0, block(2, BLOCK_SIZE), 0, BLOCK_SIZE);
+        mCache.setSize(a, 10_000);
+        mCache.remove("a");
+        assertFalse(isCached(a, 0));
+        assertTrue(isCached(b, 0));
+        assertEquals(-1, mCache.getSize(a));
+    }
+
+    @Test
+    public void blocksSurviveReopening() throws Exception {
+        int key = mCache.keyId("a");
+        mCache.write(key, 0, block(5, BLOCK_SIZE), 0, BLOCK_SIZE);
+        mCache.setSize(key, 10_000);
+        mCache.close();
+
+        mCache = new SegmentCache(mDirectory, BLOCK_SIZE, BLOCKS * BLOCK_SIZE);
+        key = mCache.keyId("a");
+        assertEquals(10_000, mCache.getSize(key));
+        byte[] buffer = new byte[BLOCK_SIZE];
+        assertEquals(BLOCK_SIZE, mCache.read(key, 0, 0, buffer, 0, BLOCK_SIZE));
+        assertArrayEquals(block(5, BLOCK_SIZE), buffer);
+    }
+}
@@ -0,0 +1,126 @@
+package com.harish.player.wrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionJournalTest {
+    private static final int CAPACITY = 16;
+    private static final long FLUSH_INTERVAL_MS = 60_000;
+    //Header slots ahead of the records.
+    private static final int HEADER_SIZE = 2 * 2048;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("session", ".journal");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    //Records a session of four state changes: preparing, prepared, started and paused. The session starts
+    //with preparing, the data source is not known yet when initialized is published.
+    private void record() throws Exception {
+        SessionJournal journal = new SessionJournal(mFile, CAPACITY, FLUSH_INTERVAL_MS);
+        try {
+            assertNull(journal.getLastSession());
+            FakePlaybackEngine engine = new FakePlaybackEngine();
+            Player player = new Player(engine);
+            journal.attach(player);
+            player.setDataSource("http://localhost/media");
+            player.prepare();
+            player.start();
+            engine.advanceBy(5_000);
+            player.pause();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private SessionJournal.Session reopen() throws Exception {
+        SessionJournal journal = new SessionJournal(mFile, CAPACITY, FLUSH_INTERVAL_MS);
+        try {
+            return journal.getLastSession();
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void recoversTheLastSession() throws Exception {
+        record();
+        SessionJournal.Session session = reopen();
+        assertNotNull(session);
+        assertEquals("http://localhost/media", session.location);
+        assertEquals(Player.STATE_PAUSED, session.state);
+        assertEquals(5_000, session.positionMs);
+        assertEquals(60_000, session.durationMs);
+    }
+
+    @Test
+    public void skipsACorruptedRecord() throws Exception {
+        record();
+        //Flips a byte of the position of the last record, sequence 3.
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            long offset = HEADER_SIZE + 3 * SessionJournal.RECORD_SIZE + 16;
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 0x40);
+        }
+        SessionJournal journal = new SessionJournal(mFile, CAPACITY, FLUSH_INTERVAL_MS);
+        try {
+            SessionJournal.Session session = journal.getLastSession();
+            assertNotNull(session);
+            assertEquals(1, journal.getTornRecordCount());
+            assertEquals(Player.STATE_STARTED, session.state);
+            assertTrue(session.wasPlaying());
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void startsOverOnATruncatedFile() throws Exception {
+        record();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(HEADER_SIZE + 2 * SessionJournal.RECORD_SIZE);
+        }
+        assertNull(reopen());
+        //Usable again afterwards.
+        record();
+        assertEquals(Player.STATE_PAUSED, reopen().state);
+    }
+
+    @Test
+    public void appendsFromAnyThreadAreWrittenInOrder() throws Exception {
+        SessionJournal journal = new SessionJournal(mFile, CAPACITY, FLUSH_INTERVAL_MS);
+        try {
+            FakePlaybackEngine engine = new FakePlaybackEngine();
+            Player player = new Player(engine);
+            journal.attach(player);
+            player.setDataSource("http://localhost/media");
+            player.prepare();
+            journal.append(SessionJournal.RECORD_CHECKPOINT, Player.STATE_STARTED, 1_000, 60_000);
+            journal.append(SessionJournal.RECORD_CHECKPOINT, Player.STATE_STARTED, 2_000, 60_000);
+        } finally {
+            journal.close();
+        }
+        assertEquals(4, journal.getRecordCount());
+        SessionJournal.Session session = reopen();
+        assertEquals(2_000, session.positionMs);
+    }
+}
@@ -0,0 +1,239 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StallWatchdogTest {
+    private static final long PREPARE_TIMEOUT_MS = 1_000;
+    private static final long SEEK_TIMEOUT_MS = 500;
+    private static final long PROGRESS_TIMEOUT_MS = 800;
+    private static final long BUFFERING_TIMEOUT_MS = 3_000;
+    private static final long TICK_MS = 100;
+
+    private final ManualScheduler mScheduler = new ManualScheduler();
+    private final List<StallWatchdog.Stall> mStalls = new ArrayList<>();
+    private StallWatchdog mWatchdog;
+
+    @Before
+    public void setUp() {
+        mWatchdog = new StallWatchdog(mScheduler, mScheduler, PREPARE_TIMEOUT_MS, SEEK_TIMEOUT_MS,
+                PROGRESS_TIMEOUT_MS, BUFFERING_TIMEOUT_MS, TICK_MS);
+        mWatchdog.setStallListener(new StallWatchdog.StallListener() {
+            @Override
+            public void onStall(Player player, StallWatchdog.Stall stall) {
+                mStalls.add(stall);
+            }
+        });
+    }
+
+    private Player watch(FakePlaybackEngine engine) throws Exception {
+        Player player = new Player(engine);
+        player.setDataSource("http://localhost/media");
+        mWatchdog.add(player);
+        return player;
+    }
+
+    private Player started(FakePlaybackEngine engine) throws Exception {
+        Player player = watch(engine);
+        player.prepare();
+        player.start();
+        return player;
+    }
+
+    //Moves the watchdog and the engine forward together, the engine playing along.
+    private void play(FakePlaybackEngine engine, long durationMs) {
+        for (long elapsed = 0; elapsed < durationMs; elapsed += TICK_MS) {
+            engine.advanceBy(TICK_MS);
+            mScheduler.advanceBy(TICK_MS);
+        }
+    }
+
+    @Test
+    public void preparationExpires() throws Exception {
+        Player player = watch(new FakePlaybackEngine(60_000, 0, 60_000));
+        player.prepareAsync();
+        mScheduler.advanceBy(PREPARE_TIMEOUT_MS - TICK_MS);
+        assertEquals(0, mStalls.size());
+        mScheduler.advanceBy(2 * TICK_MS);
+        assertEquals(1, mStalls.size());
+        assertEquals(StallWatchdog.STALL_PREPARE, mStalls.get(0).type);
+        assertEquals(Player.STATE_PREPARING, mStalls.get(0).state);
+    }
+
+    @Test
+    public void seekExpires() throws Exception {
+        Player player = watch(new FakePlaybackEngine(0, 60_000, 60_000));
+        player.prepare();
+        player.seekTo(10_000);
+        mScheduler.advanceBy(SEEK_TIMEOUT_MS + TICK_MS);
+        assertEquals(1, mStalls.size());
+        assertEquals(StallWatchdog.STALL_SEEK, mStalls.get(0).type);
+    }
+
+    @Test
+    public void completedSeekIsCancelled() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine(0, 200, 60_000);
+        Player player = watch(engine);
+        player.prepare();
+        player.seekTo(10_000);
+        engine.advanceBy(200);
+        mScheduler.advanceBy(SEEK_TIMEOUT_MS * 4);
+        assertEquals(0, mStalls.size());
+        assertEquals(0, mWatchdog.getArmedCount());
+    }
+
+    @Test
+    public void frozenPositionExpires() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        started(engine);
+        play(engine, 1_000);
+        //The engine stops moving, detected within one to two timeouts.
+        mScheduler.advanceBy(2 * PROGRESS_TIMEOUT_MS + TICK_MS);
+        assertEquals(1, mStalls.size());
+        StallWatchdog.Stall stall = mStalls.get(0);
+        assertEquals(StallWatchdog.STALL_PROGRESS, stall.type);
+        assertEquals(1_000, stall.positionMs);
+        assertFalse(stall.restarting);
+    }
+
+    @Test
+    public void progressRearmsTheDeadline() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        started(engine);
+        play(engine, 10 * PROGRESS_TIMEOUT_MS);
+        assertEquals(0, mStalls.size());
+        assertEquals(1, mWatchdog.getArmedCount());
+    }
+
+    @Test
+    public void pausedPlayerIsNotWatched() throws Exception {
+        Player player = started(new FakePlaybackEngine());
+        player.pause();
+        mScheduler.advanceBy(10 * PROGRESS_TIMEOUT_MS);
+        assertEquals(0, mStalls.size());
+        assertEquals(0, mWatchdog.getArmedCount());
+    }
+
+    @Test
+    public void restartResumesAtThePosition() throws Exception {
+        mWatchdog.setMaxRestarts(1);
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = started(engine);
+        play(engine, 5_000);
+        mScheduler.advanceBy(2 * PROGRESS_TIMEOUT_MS + TICK_MS);
+        assertEquals(1, mStalls.size());
+        assertTrue(mStalls.get(0).restarting);
+        assertEquals(1, mWatchdog.getRestartCount());
+        assertEquals(Player.STATE_STARTED, player.getCurrentState());
+        assertEquals(5_000, player.getCurrentPosition());
+    }
+
+    @Test
+    public void restartsStartOverOnceProgressing() throws Exception {
+        mWatchdog.setMaxRestarts(1);
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        started(engine);
+        play(engine, 1_000);
+        mScheduler.advanceBy(2 * PROGRESS_TIMEOUT_MS + TICK_MS);
+        assertEquals(1, mStalls.size());
+        assertTrue(mStalls.get(0).restarting);
+
+        //Playing again after the restart, then frozen again.
+        play(engine, 3 * PROGRESS_TIMEOUT_MS);
+        mScheduler.advanceBy(2 * PROGRESS_TIMEOUT_MS + TICK_MS);
+        assertEquals(2, mStalls.size());
+        assertTrue(mStalls.get(1).restarting);
+        assertEquals(1, mStalls.get(1).restarts);
+        assertEquals(2, mWatchdog.getRestartCount());
+    }
+
+    @Test
+    public void restartsAreCappedWithoutProgress() throws Exception {
+        mWatchdog.setMaxRestarts(1);
+        started(new FakePlaybackEngine());
+        mScheduler.advanceBy(2 * (2 * PROGRESS_TIMEOUT_MS + TICK_MS));
+        assertEquals(2, mStalls.size());
+        assertTrue(mStalls.get(0).restarting);
+        assertFalse(mStalls.get(1).restarting);
+        assertEquals(1, mWatchdog.getRestartCount());
+    }
+
+    @Test
+    public void bufferingUsesTheLongerTimeoutAndNeverRestarts() throws Exception {
+        mWatchdog.setMaxRestarts(3);
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        Player player = started(engine);
+        play(engine, 1_000);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+        mScheduler.advanceBy(2 * PROGRESS_TIMEOUT_MS + TICK_MS);
+        assertEquals(0, mStalls.size());
+
+        mScheduler.advanceBy(2 * BUFFERING_TIMEOUT_MS);
+        assertEquals(1, mStalls.size());
+        StallWatchdog.Stall stall = mStalls.get(0);
+        assertEquals(StallWatchdog.STALL_PROGRESS, stall.type);
+        assertTrue(stall.buffering);
+        assertFalse(stall.restarting);
+        assertEquals(0, mWatchdog.getRestartCount());
+        assertEquals(Player.STATE_STARTED, player.getCurrentState());
+    }
+
+    @Test
+    public void bufferingEndRestoresTheProgressTimeout() throws Exception {
+        FakePlaybackEngine engine = new FakePlaybackEngine();
+        started(engine);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+        mScheduler.advanceBy(BUFFERING_TIMEOUT_MS / 2);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_BUFFERING_END, 0);
+        mScheduler.advanceBy(2 * PROGRESS_TIMEOUT_MS + TICK_MS);
+        assertEquals(1, mStalls.size());
+        assertFalse(mStalls.get(0).buffering);
+    }
+
+    /**
+     * Scheduler and clock under manual control, running the tasks which became due as time advances.
+     */
+    private static final class ManualScheduler implements PlayerEventBus.Scheduler, PlaybackMetrics.Clock {
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private final List<Long> mDueMs = new ArrayList<>();
+        private long mNowMs;
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            mTasks.add(task);
+            mDueMs.add(mNowMs + delayMs);
+        }
+
+        @Override
+        public long nanoTime() {
+            return mNowMs * 1_000_000;
+        }
+
+        void advanceBy(long deltaMs) {
+            long target = mNowMs + deltaMs;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mDueMs.size(); i++) {
+                    if (mDueMs.get(i) <= target && (next < 0 || mDueMs.get(i) < mDueMs.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    mNowMs = target;
+                    return;
+                }
+                mNowMs = Math.max(mNowMs, mDueMs.remove(next));
+                mTasks.remove(next).run();
+            }
+        }
+    }
+}
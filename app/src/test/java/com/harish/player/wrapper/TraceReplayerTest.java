@@ -0,0 +1,137 @@
+package com.harish.player.wrapper;
+
+import android.media.MediaPlayer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceReplayerTest {
+    private static final int CAPACITY = 256;
+
+    //Delays keep every callback out of the call raising it, records are not replayed nested.
+    private static FakePlaybackEngine engine() {
+        return new FakePlaybackEngine(100, 50, 60_000);
+    }
+
+    //Records a session: prepared, played with buffering, seeks and an error, reset and released.
+    private static void session(TraceRecorder recorder) throws Exception {
+        FakePlaybackEngine engine = engine();
+        Player player = new Player(engine);
+        player.setTraceRecorder(recorder);
+        player.setDataSource("http://localhost/media");
+        player.prepareAsync();
+        engine.advanceBy(100);
+        player.start();
+        engine.advanceBy(1_000);
+        engine.injectBufferingUpdate(20);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+        engine.injectInfo(MediaPlayer.MEDIA_INFO_BUFFERING_END, 0);
+        player.seekTo(10_000);
+        player.seekTo(20_000);
+        engine.advanceBy(200);
+        player.pause();
+        player.stop();
+        player.prepareAsync();
+        engine.advanceBy(100);
+        player.start();
+        engine.injectError(MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+        player.reset();
+        player.release();
+    }
+
+    private static TraceRecorder.Trace roundTrip(TraceRecorder recorder) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        recorder.dump(bytes);
+        return TraceRecorder.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static int count(TraceRecorder.Trace trace, int op) {
+        int count = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.ops[i] == op) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void replaysARecordedSessionWithoutDivergence() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(CAPACITY);
+        session(recorder);
+        TraceRecorder.Trace trace = roundTrip(recorder);
+        assertEquals(recorder.getRecordCount(), trace.size());
+        TraceRecorder.Trace recorded = recorder.snapshot();
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(recorded.ops[i], trace.ops[i]);
+            assertEquals(recorded.states[i], trace.states[i]);
+            assertEquals(recorded.args1[i], trace.args1[i]);
+            assertEquals(recorded.timeNanos[i], trace.timeNanos[i]);
+        }
+
+        //Callbacks included.
+        assertEquals(2, count(trace, TraceRecorder.CB_PREPARED));
+        assertEquals(2, count(trace, TraceRecorder.CB_SEEK_COMPLETE));
+        assertEquals(1, count(trace, TraceRecorder.CB_ERROR));
+
+        TraceReplayer.Result result = new TraceReplayer(trace).replay();
+        assertEquals(0, result.divergences);
+        assertEquals(-1, result.firstDivergence);
+        assertEquals(0, result.rejected);
+        assertEquals(trace.size(), result.replayed);
+        assertEquals(1, result.players);
+    }
+
+    @Test
+    public void replaysRejectedCallsAndSeveralPlayers() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(CAPACITY);
+        FakePlaybackEngine firstEngine = engine();
+        FakePlaybackEngine secondEngine = engine();
+        Player first = new Player(firstEngine);
+        Player second = new Player(secondEngine);
+        first.setTraceRecorder(recorder);
+        second.setTraceRecorder(recorder);
+        first.setDataSource("http://localhost/first");
+        second.setDataSource("http://localhost/second");
+        try {
+            //Illegal, rejected in production as well.
+            first.start();
+        } catch (IllegalStateException e) {
+            //Expected.
+        }
+        first.prepareAsync();
+        second.prepareAsync();
+        firstEngine.advanceBy(100);
+        secondEngine.advanceBy(100);
+        second.start();
+        first.release();
+        second.release();
+
+        TraceReplayer.Result result = new TraceReplayer(roundTrip(recorder)).replay();
+        assertEquals(0, result.divergences);
+        assertEquals(1, result.rejected);
+        assertEquals(2, result.players);
+    }
+
+    @Test
+    public void reportsTheFirstDivergence() throws Exception {
+        TraceRecorder recorder = new TraceRecorder(CAPACITY);
+        session(recorder);
+        TraceRecorder.Trace trace = roundTrip(recorder);
+        int tampered = trace.size() / 2;
+        trace.states[tampered] = Player.STATE_UNKNOWN;
+
+        TraceReplayer replayer = new TraceReplayer(trace);
+        TraceReplayer.Result result = replayer.replay();
+        assertEquals(1, result.divergences);
+        assertEquals(tampered, result.firstDivergence);
+        //Bisecting: the prefix up to the record replays cleanly.
+        assertEquals(0, replayer.replay(tampered).divergences);
+        assertTrue(replayer.replay(tampered + 1).divergences > 0);
+    }
+}
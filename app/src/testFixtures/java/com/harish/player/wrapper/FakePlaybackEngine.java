@@ -0,0 +1,508 @@
+package com.harish.player.wrapper;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaDataSource;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FileDescriptor;
+import java.net.HttpCookie;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deterministic in-memory {@link PlaybackEngine} for running {@link Player} without the native layer.
+ * <p>
+ * Time is virtual and only moves forward through {@link #advanceBy(long)}. Preparation and seeks
+ * complete after the configured delays of virtual time, playback progresses while started and
+ * completes once the configured duration is reached. With a delay of zero the corresponding callback
+ * is raised synchronously from within the call. Calls made in a state the native player would
+ * reject throw {@link IllegalStateException}, mirroring {@link android.media.MediaPlayer}.
+ * <p>
+ * Callbacks are raised on the thread calling into the engine, never while holding its lock.
+ */
+public final class FakePlaybackEngine implements PlaybackEngine {
+    private static final String TAG = FakePlaybackEngine.class.getSimpleName();
+
+    //Pending event marker.
+    private static final long NONE = -1;
+
+    //Events raised towards the callback.
+    private static final int EVENT_PREPARED = 1;
+    private static final int EVENT_SEEK_COMPLETE = 2;
+    private static final int EVENT_COMPLETION = 3;
+
+    private static final AtomicInteger sAudioSessionIds = new AtomicInteger();
+
+    private long mPrepareDelayMs;
+    private long mSeekDelayMs;
+    private int mDurationMs;
+
+    //Virtual time, in milliseconds.
+    private long mNowMs;
+
+    //Engine state, one of the Player#STATE_* values.
+    private int mState = Player.STATE_IDLE;
+    private long mPositionMs;
+
+    //Virtual time at which the pending operation completes, or NONE.
+    private long mPrepareDueMs = NONE;
+    private long mSeekDueMs = NONE;
+    private long mSeekTargetMs;
+
+    //Number of calls which reached the engine, for assertions and benchmarks.
+    private long mCallCount;
+
+    //Engine started when this one completes.
+    private FakePlaybackEngine mNext;
+
+    //Optional gate holding the synchronous prepare() in real time, as a slow native prepare would.
+    private volatile CountDownLatch mPrepareGate;
+
+    //Whether prepare() posts its prepared callback to the next advanceBy() instead of raising it.
+    private boolean mPostPrepared;
+    private boolean mPreparedPosted;
+
+    //Optional failure of prepareAsync(), as when the source cannot be reached.
+    private RuntimeException mPrepareError;
+
+    private volatile Callback mCallback;
+
+    //Unique per engine, as for the native player.
+    private final int mAudioSessionId = sAudioSessionIds.incrementAndGet();
+
+    /**
+     * Constructor, with instant preparation and seeks and a one minute long media.
+     */
+    public FakePlaybackEngine() {
+        this(0, 0, 60_000);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param prepareDelayMs virtual time from prepareAsync() until the engine is prepared.
+     * @param seekDelayMs    virtual time from seekTo() until the seek is completed.
+     * @param durationMs     duration of the simulated media.
+     */
+    public FakePlaybackEngine(long prepareDelayMs, long seekDelayMs, int durationMs) {
+        this.mPrepareDelayMs = prepareDelayMs;
+        this.mSeekDelayMs = seekDelayMs;
+        this.mDurationMs = durationMs;
+    }
+
+    public synchronized void setPrepareDelayMs(long prepareDelayMs) {
+        this.mPrepareDelayMs = prepareDelayMs;
+    }
+
+    public synchronized void setSeekDelayMs(long seekDelayMs) {
+        this.mSeekDelayMs = seekDelayMs;
+    }
+
+    public synchronized void setDurationMs(int durationMs) {
+        this.mDurationMs = durationMs;
+    }
+
+    /**
+     * Blocks the synchronous prepare() until the gate is opened, without holding the lock of the engine,
+     * so that reset() and release() can be called meanwhile. A prepare() overtaken by them fails.
+     *
+     * @param gate the gate to wait for, or null to prepare right away.
+     */
+    public void setPrepareGate(@Nullable CountDownLatch gate) {
+        this.mPrepareGate = gate;
+    }
+
+    /**
+     * Makes the synchronous prepare() post its prepared callback, raised by the next advanceBy() once
+     * prepare() has returned, as the native player posts it to its handler.
+     *
+     * @param post TRUE to post the callback, FALSE to raise it from within prepare().
+     */
+    public synchronized void setPostPreparedCallback(boolean post) {
+        this.mPostPrepared = post;
+    }
+
+    /**
+     * Makes prepareAsync() throw, until cleared.
+     *
+     * @param error the exception to throw, or null to prepare normally.
+     */
+    public synchronized void setPrepareError(@Nullable RuntimeException error) {
+        this.mPrepareError = error;
+    }
+
+    /**
+     * @return the virtual time of this engine, in milliseconds.
+     */
+    public synchronized long getTimeMs() {
+        return mNowMs;
+    }
+
+    /**
+     * @return number of control calls which reached this engine.
+     */
+    public synchronized long getCallCount() {
+        return mCallCount;
+    }
+
+    /**
+     * @return the engine state, one of the Player#STATE_* values.
+     */
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * Moves the virtual time forward and raises every event which became due, in time order.
+     *
+     * @param deltaMs the amount of virtual time to advance, in milliseconds.
+     */
+    public void advanceBy(long deltaMs) {
+        if (deltaMs < 0) {
+            throw new IllegalArgumentException("Time only moves forward, was " + deltaMs);
+        }
+        long target;
+        boolean posted;
+        synchronized (this) {
+            target = mNowMs + deltaMs;
+            posted = mPreparedPosted;
+            mPreparedPosted = false;
+        }
+        if (posted) {
+            dispatch(EVENT_PREPARED);
+        }
+        while (true) {
+            int event;
+            synchronized (this) {
+                long due = nextDueLocked();
+                if (due == NONE || due > target) {
+                    progressLocked(target);
+                    return;
+                }
+                progressLocked(due);
+                event = fireDueLocked();
+            }
+            if (event == EVENT_COMPLETION) {
+                FakePlaybackEngine next;
+                synchronized (this) {
+                    next = mNext;
+                    mNext = null;
+                }
+                if (next != null) {
+                    next.startByHandoff();
+                }
+            }
+            dispatch(event);
+        }
+    }
+
+    /**
+     * Raises an error, as the native player would on a failed asynchronous operation.
+     */
+    public void injectError(int what, int extra) {
+        synchronized (this) {
+            mState = Player.STATE_ERROR;
+            mPrepareDueMs = NONE;
+            mSeekDueMs = NONE;
+        }
+        Callback callback = mCallback;
+        if (callback != null && !callback.onError(this, what, extra)) {
+            //Unhandled errors end in completion, as with the native player.
+            synchronized (this) {
+                mState = Player.STATE_COMPLETED;
+            }
+            callback.onCompletion(this);
+        }
+    }
+
+    /**
+     * Raises an info/warning event.
+     */
+    public void injectInfo(int what, int extra) {
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onInfo(this, what, extra);
+        }
+    }
+
+    /**
+     * Raises a buffering update.
+     */
+    public void injectBufferingUpdate(int percent) {
+        Callback callback = mCallback;
+        if (callback != null) {
+            callback.onBufferingUpdate(this, percent);
+        }
+    }
+
+    @Override
+    public void setDataSource(String path) {
+        onSetDataSource();
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd) {
+        onSetDataSource();
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd, long offset, long length) {
+        onSetDataSource();
+    }
+
+    @Override
+    public void setDataSource(@NonNull AssetFileDescriptor afd) {
+        onSetDataSource();
+    }
+
+    @Override
+    public void setDataSource(@NonNull Context context, @NonNull Uri uri,
+                              @Nullable Map<String, String> headers) {
+        onSetDataSource();
+    }
+
+    @Override
+    public void setDataSource(@NonNull Context context, @NonNull Uri uri,
+                              @Nullable Map<String, String> headers,
+                              @Nullable List<HttpCookie> cookies) {
+        onSetDataSource();
+    }
+
+    @Override
+    public void setDataSource(MediaDataSource dataSource) {
+        onSetDataSource();
+    }
+
+    @Override
+    public void prepare() {
+        CountDownLatch gate = mPrepareGate;
+        if (gate != null) {
+            synchronized (this) {
+                checkState("prepare", Player.STATE_INITIALIZED, Player.STATE_STOPPED);
+            }
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("prepare() interrupted", e);
+            }
+        }
+        synchronized (this) {
+            checkState("prepare", Player.STATE_INITIALIZED, Player.STATE_STOPPED);
+            mNowMs += mPrepareDelayMs;
+            mPositionMs = 0;
+            mState = Player.STATE_PREPARED;
+            if (mPostPrepared) {
+                mPreparedPosted = true;
+                return;
+            }
+        }
+        dispatch(EVENT_PREPARED);
+    }
+
+    @Override
+    public void prepareAsync() {
+        synchronized (this) {
+            checkState("prepareAsync", Player.STATE_INITIALIZED, Player.STATE_STOPPED);
+            if (mPrepareError != null) {
+                throw mPrepareError;
+            }
+            mState = Player.STATE_PREPARING;
+            mPositionMs = 0;
+            mPrepareDueMs = mNowMs + mPrepareDelayMs;
+            if (mPrepareDelayMs > 0) {
+                return;
+            }
+        }
+        advanceBy(0);
+    }
+
+    @Override
+    public synchronized void start() {
+        checkState("start", Player.STATE_PREPARED, Player.STATE_STARTED,
+                Player.STATE_PAUSED, Player.STATE_COMPLETED);
+        if (mState == Player.STATE_COMPLETED) {
+            mPositionMs = 0;
+        }
+        mState = Player.STATE_STARTED;
+    }
+
+    @Override
+    public synchronized void pause() {
+        checkState("pause", Player.STATE_STARTED, Player.STATE_PAUSED, Player.STATE_COMPLETED);
+        mState = Player.STATE_PAUSED;
+    }
+
+    @Override
+    public synchronized void stop() {
+        checkState("stop", Player.STATE_PREPARED, Player.STATE_STARTED, Player.STATE_PAUSED,
+                Player.STATE_STOPPED, Player.STATE_COMPLETED);
+        mState = Player.STATE_STOPPED;
+        mSeekDueMs = NONE;
+    }
+
+    @Override
+    public void seekTo(long msec, int mode) {
+        synchronized (this) {
+            checkState("seekTo", Player.STATE_PREPARED, Player.STATE_STARTED,
+                    Player.STATE_PAUSED, Player.STATE_COMPLETED);
+            mSeekTargetMs = Math.max(0, Math.min(msec, mDurationMs));
+            mSeekDueMs = mNowMs + mSeekDelayMs;
+            if (mSeekDelayMs > 0) {
+                return;
+            }
+        }
+        advanceBy(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The next engine keeps its own virtual time, it is started on completion of this one and
+     * progresses once its own time is advanced.
+     */
+    @Override
+    public synchronized void setNextEngine(@Nullable PlaybackEngine next) {
+        mCallCount++;
+        if (next != null && !(next instanceof FakePlaybackEngine)) {
+            throw new IllegalArgumentException("Can only hand off to a " + TAG + ", was " + next);
+        }
+        if (next == this) {
+            throw new IllegalArgumentException("Next engine cannot be the same engine");
+        }
+        mNext = (FakePlaybackEngine) next;
+    }
+
+    @Override
+    public synchronized boolean isPlaying() {
+        return mState == Player.STATE_STARTED;
+    }
+
+    @Override
+    public synchronized int getCurrentPosition() {
+        return (int) mPositionMs;
+    }
+
+    @Override
+    public synchronized int getDuration() {
+        return mDurationMs;
+    }
+
+    @Override
+    public int getAudioSessionId() {
+        return mAudioSessionId;
+    }
+
+    @Override
+    public synchronized void reset() {
+        mCallCount++;
+        mNext = null;
+        mState = Player.STATE_IDLE;
+        mPositionMs = 0;
+        mPrepareDueMs = NONE;
+        mSeekDueMs = NONE;
+        mPreparedPosted = false;
+    }
+
+    @Override
+    public synchronized void release() {
+        mCallCount++;
+        mNext = null;
+        mState = Player.STATE_ENDED;
+        mPrepareDueMs = NONE;
+        mSeekDueMs = NONE;
+        mPreparedPosted = false;
+    }
+
+    @Override
+    public void setCallback(@Nullable Callback callback) {
+        this.mCallback = callback;
+    }
+
+    private synchronized void onSetDataSource() {
+        checkState("setDataSource", Player.STATE_IDLE);
+        mState = Player.STATE_INITIALIZED;
+    }
+
+    private void checkState(String call, int... allowed) {
+        mCallCount++;
+        for (int state : allowed) {
+            if (mState == state) {
+                return;
+            }
+        }
+        throw new IllegalStateException(call + "() called in state " + mState);
+    }
+
+    private long nextDueLocked() {
+        long due = NONE;
+        if (mPrepareDueMs != NONE) {
+            due = mPrepareDueMs;
+        }
+        if (mSeekDueMs != NONE && (due == NONE || mSeekDueMs < due)) {
+            due = mSeekDueMs;
+        }
+        if (mState == Player.STATE_STARTED) {
+            long completion = mNowMs + Math.max(0, mDurationMs - mPositionMs);
+            if (due == NONE || completion < due) {
+                due = completion;
+            }
+        }
+        return due;
+    }
+
+    private void progressLocked(long timeMs) {
+        if (mState == Player.STATE_STARTED) {
+            mPositionMs = Math.min(mDurationMs, mPositionMs + (timeMs - mNowMs));
+        }
+        mNowMs = timeMs;
+    }
+
+    //Applies the event due at the current time and returns it.
+    private int fireDueLocked() {
+        if (mPrepareDueMs == mNowMs) {
+            mPrepareDueMs = NONE;
+            mState = Player.STATE_PREPARED;
+            return EVENT_PREPARED;
+        }
+        if (mSeekDueMs == mNowMs) {
+            mSeekDueMs = NONE;
+            mPositionMs = mSeekTargetMs;
+            return EVENT_SEEK_COMPLETE;
+        }
+        mState = Player.STATE_COMPLETED;
+        return EVENT_COMPLETION;
+    }
+
+    //Starts this engine as the successor of a completed one.
+    private synchronized void startByHandoff() {
+        if (mState == Player.STATE_PREPARED) {
+            mState = Player.STATE_STARTED;
+        }
+    }
+
+    private void dispatch(int event) {
+        Callback callback = mCallback;
+        if (callback == null) {
+            return;
+        }
+        switch (event) {
+            case EVENT_PREPARED:
+                callback.onPrepared(this);
+                break;
+            case EVENT_SEEK_COMPLETE:
+                callback.onSeekComplete(this);
+                break;
+            case EVENT_COMPLETION:
+                callback.onCompletion(this);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.harish.player.wrapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal HTTP server on the loopback interface, serving a single in-memory payload with range
+ * support. Stands in for a media CDN when running the data source stack on a plain JVM, in the unit
+ * tests and the benchmarks.
+ */
+public final class LocalHttpServer implements Closeable {
+    private final byte[] mPayload;
+    private final long mLatencyMs;
+    private final ServerSocket mSocket;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mBytesServed = new AtomicLong();
+
+    /**
+     * @param payload   the content served for every path.
+     * @param latencyMs delay before answering each request, to simulate the network round trip.
+     */
+    public LocalHttpServer(byte[] payload, long latencyMs) throws IOException {
+        mPayload = payload;
+        mLatencyMs = latencyMs;
+        mSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        });
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + mSocket.getLocalPort() + "/media.mp4";
+    }
+
+    public long getRequestCount() {
+        return mRequests.get();
+    }
+
+    public long getBytesServed() {
+        return mBytesServed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+        mExecutor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!mSocket.isClosed()) {
+            try {
+                final Socket client = mSocket.accept();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                });
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+            String line = reader.readLine();
+            long start = 0;
+            long end = mPayload.length - 1;
+            boolean partial = false;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                if (line.regionMatches(true, 0, "Range: bytes=", 0, 13)) {
+                    String[] range = line.substring(13).trim().split("-");
+                    start = Long.parseLong(range[0]);
+                    if (range.length > 1 && !range[1].isEmpty()) {
+                        end = Math.min(end, Long.parseLong(range[1]));
+                    }
+                    partial = true;
+                }
+            }
+            mRequests.incrementAndGet();
+            if (mLatencyMs > 0) {
+                Thread.sleep(mLatencyMs);
+            }
+            OutputStream output = client.getOutputStream();
+            if (start >= mPayload.length) {
+                output.write(("HTTP/1.1 416 Range Not Satisfiable\r\nContent-Range: bytes */" + mPayload.length
+                        + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            } else {
+                int length = (int) (end - start + 1);
+                String header = (partial ? "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes " + start + "-" + end
+                        + "/" + mPayload.length + "\r\n" : "HTTP/1.1 200 OK\r\n")
+                        + "Content-Length: " + length + "\r\nConnection: close\r\n\r\n";
+                //Counted ahead of the write, a client which has read the bytes always sees them counted.
+                mBytesServed.addAndGet(length);
+                output.write(header.getBytes(StandardCharsets.US_ASCII));
+                output.write(mPayload, (int) start, length);
+            }
+            output.flush();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            //Client went away, nothing to do.
+        } finally {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+                //Closing anyway.
+            }
+        }
+    }
+}
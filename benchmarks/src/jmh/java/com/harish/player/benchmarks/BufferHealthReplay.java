@@ -0,0 +1,267 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.BufferHealthEstimator;
+import com.harish.player.wrapper.PlaybackMetrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays recorded buffering traces through {@link BufferHealthEstimator}, against a fake clock.
+ * <p>
+ * A trace is a text file of one event per line, "timeMs event [value] [value]", where the event is one of:
+ * <ul>
+ * <li>"buffering percent", a buffering update.</li>
+ * <li>"position positionMs durationMs", a position sample.</li>
+ * <li>"play" and "pause".</li>
+ * <li>"stall" and "resume", MEDIA_INFO_BUFFERING_START and MEDIA_INFO_BUFFERING_END.</li>
+ * <li>"seek positionMs".</li>
+ * </ul>
+ * Lines starting with '#' are ignored. Running main() with trace files prints, for every stall of each
+ * trace, the time until stall predicted at a few horizons before it, and the number of false alarms:
+ * stalls predicted within the alarm horizon which did not happen. Without arguments, a synthetic trace
+ * of a throughput drop is replayed. The benchmark measures the cost of replaying that trace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BufferHealthReplay {
+
+    //Horizons before each stall at which the prediction is reported, and the alarm horizon.
+    private static final long[] HORIZONS_MS = {10_000, 5_000, 2_000};
+    private static final long ALARM_HORIZON_MS = 5_000;
+
+    private List<long[]> mTrace;
+    private FakeClock mClock;
+    private BufferHealthEstimator mEstimator;
+
+    @Setup
+    public void setUp() throws IOException {
+        mTrace = parse(new StringReader(syntheticTrace()));
+        mClock = new FakeClock();
+        mEstimator = new BufferHealthEstimator(mClock, BufferHealthEstimator.DEFAULT_FAST_HALF_LIFE_MS,
+                BufferHealthEstimator.DEFAULT_SLOW_HALF_LIFE_MS);
+    }
+
+    @Benchmark
+    public long replay() {
+        mEstimator.clear();
+        long predictions = 0;
+        for (long[] event : mTrace) {
+            mClock.nowMs = event[0];
+            apply(mEstimator, event);
+            predictions += mEstimator.getTimeUntilStallMs() == BufferHealthEstimator.NEVER ? 0 : 1;
+        }
+        return predictions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            report("synthetic", parse(new StringReader(syntheticTrace())));
+            return;
+        }
+        for (String path : args) {
+            try (Reader reader = new FileReader(path)) {
+                report(path, parse(reader));
+            }
+        }
+    }
+
+    private static void report(String name, List<long[]> trace) {
+        FakeClock clock = new FakeClock();
+        BufferHealthEstimator estimator = new BufferHealthEstimator(clock,
+                BufferHealthEstimator.DEFAULT_FAST_HALF_LIFE_MS, BufferHealthEstimator.DEFAULT_SLOW_HALF_LIFE_MS);
+
+        //Stall times first, to know how far each prediction is from the next one.
+        List<Long> stalls = new ArrayList<>();
+        for (long[] event : trace) {
+            if (event[1] == Event.STALL) {
+                stalls.add(event[0]);
+            }
+        }
+        long[][] predicted = new long[stalls.size()][HORIZONS_MS.length];
+        int falseAlarms = 0;
+        long lastAlarmMs = Long.MIN_VALUE;
+        int next = 0;
+        long endMs = trace.isEmpty() ? 0 : trace.get(trace.size() - 1)[0];
+        int eventIndex = 0;
+        //Predictions are sampled every 100ms of trace time, as a seek bar ticker would.
+        for (long now = 0; now <= endMs; now += 100) {
+            while (eventIndex < trace.size() && trace.get(eventIndex)[0] <= now) {
+                clock.nowMs = trace.get(eventIndex)[0];
+                apply(estimator, trace.get(eventIndex++));
+            }
+            clock.nowMs = now;
+            while (next < stalls.size() && stalls.get(next) <= now) {
+                next++;
+            }
+            long prediction = estimator.getTimeUntilStallMs();
+            long untilMs = next < stalls.size() ? stalls.get(next) - now : Long.MAX_VALUE;
+            for (int h = 0; h < HORIZONS_MS.length && next < stalls.size(); h++) {
+                if (untilMs <= HORIZONS_MS[h] && untilMs > HORIZONS_MS[h] - 100) {
+                    predicted[next][h] = prediction;
+                }
+            }
+            if (prediction > 0 && prediction <= ALARM_HORIZON_MS && untilMs > 2 * ALARM_HORIZON_MS
+                    && now - lastAlarmMs > ALARM_HORIZON_MS) {
+                falseAlarms++;
+                lastAlarmMs = now;
+            }
+        }
+
+        System.out.println(name + ": " + stalls.size() + " stalls, " + falseAlarms + " false alarms");
+        for (int s = 0; s < stalls.size(); s++) {
+            StringBuilder line = new StringBuilder(String.format(Locale.US, "  stall at %dms:", stalls.get(s)));
+            for (int h = 0; h < HORIZONS_MS.length; h++) {
+                long value = predicted[s][h];
+                line.append(String.format(Locale.US, " %ds before -> %s", HORIZONS_MS[h] / 1000,
+                        value == BufferHealthEstimator.NEVER ? "never" : value + "ms"));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static void apply(BufferHealthEstimator estimator, long[] event) {
+        switch ((int) event[1]) {
+            case Event.BUFFERING:
+                estimator.onBufferingUpdate((int) event[2]);
+                break;
+            case Event.POSITION:
+                estimator.onPosition(event[2], event[3]);
+                break;
+            case Event.PLAY:
+                estimator.onPlaying(true);
+                break;
+            case Event.PAUSE:
+                estimator.onPlaying(false);
+                break;
+            case Event.STALL:
+                estimator.onStall(true);
+                break;
+            case Event.RESUME:
+                estimator.onStall(false);
+                break;
+            case Event.SEEK:
+                estimator.onSeek(event[2]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static List<long[]> parse(Reader reader) throws IOException {
+        List<long[]> trace = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            long[] event = new long[4];
+            event[0] = Long.parseLong(fields[0]);
+            event[1] = Event.parse(fields[1]);
+            for (int i = 2; i < fields.length && i < 4; i++) {
+                event[i] = Long.parseLong(fields[i]);
+            }
+            trace.add(event);
+        }
+        return trace;
+    }
+
+    /**
+     * Ten minutes of media at 1.5x real time for 20s, then a drop to 0.6x until the buffer runs dry,
+     * a stall until 5s of media are buffered, and a recovery to 1.2x.
+     */
+    private static String syntheticTrace() {
+        StringBuilder trace = new StringBuilder();
+        long durationMs = 600_000;
+        double bufferedMs = 0;
+        double positionMs = 0;
+        boolean stalled = false;
+        trace.append("0 position 0 ").append(durationMs).append('\n');
+        trace.append("0 buffering 0\n");
+        trace.append("0 play\n");
+        for (long now = 100; now <= 90_000; now += 100) {
+            double rate = now < 20_000 ? 1.5 : now < 60_000 ? 0.6 : 1.2;
+            bufferedMs += rate * 100;
+            if (!stalled) {
+                positionMs += 100;
+                if (positionMs >= bufferedMs) {
+                    positionMs = bufferedMs;
+                    stalled = true;
+                    trace.append(now).append(" stall\n");
+                }
+            } else if (bufferedMs - positionMs >= 5_000) {
+                stalled = false;
+                trace.append(now).append(" resume\n");
+            }
+            if (now % 1000 == 0) {
+                //MediaPlayer reports about once per second, in whole percents.
+                trace.append(now).append(" buffering ").append((int) (bufferedMs * 100 / durationMs)).append('\n');
+                trace.append(now).append(" position ").append((long) positionMs).append(' ')
+                        .append(durationMs).append('\n');
+            }
+        }
+        return trace.toString();
+    }
+
+    /**
+     * Event types of a trace.
+     */
+    private static final class Event {
+        static final int BUFFERING = 1;
+        static final int POSITION = 2;
+        static final int PLAY = 3;
+        static final int PAUSE = 4;
+        static final int STALL = 5;
+        static final int RESUME = 6;
+        static final int SEEK = 7;
+
+        static int parse(String name) {
+            switch (name) {
+                case "buffering":
+                    return BUFFERING;
+                case "position":
+                    return POSITION;
+                case "play":
+                    return PLAY;
+                case "pause":
+                    return PAUSE;
+                case "stall":
+                    return STALL;
+                case "resume":
+                    return RESUME;
+                case "seek":
+                    return SEEK;
+                default:
+                    throw new IllegalArgumentException("Unknown event " + name);
+            }
+        }
+    }
+
+    private static final class FakeClock implements PlaybackMetrics.Clock {
+        long nowMs;
+
+        @Override
+        public long nanoTime() {
+            return nowMs * 1_000_000;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.FakePlaybackEngine;
+import com.harish.player.wrapper.PlaybackEngine;
+import com.harish.player.wrapper.Player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of dispatching engine callbacks through {@link Player} to 0, 1 or N listeners.
+ * <p>
+ * {@link Player} holds a single listener per event, N listeners are reached through a fan-out
+ * listener the way callers do today. Events of a foreign engine measure the identity check alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class CallbackDispatchBenchmark {
+
+    @Param({"0", "1", "8"})
+    public int listeners;
+
+    private FakePlaybackEngine mEngine;
+    private FakePlaybackEngine mForeignEngine;
+    private Player mPlayer;
+    private int mPercent;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) throws Exception {
+        mEngine = new FakePlaybackEngine();
+        mForeignEngine = new FakePlaybackEngine();
+        mPlayer = new Player(mEngine);
+        if (listeners > 0) {
+            FanOut fanOut = new FanOut(listeners, blackhole);
+            mPlayer.setOnInfoListener(fanOut);
+            mPlayer.setOnBufferingUpdateListener(fanOut);
+            mPlayer.setOnSeekCompleteListener(fanOut);
+        }
+    }
+
+    @Benchmark
+    public boolean onInfo() {
+        return mPlayer.onInfo(mEngine, 701, 0);
+    }
+
+    @Benchmark
+    public int onBufferingUpdate() {
+        mPercent = (mPercent + 1) % 101;
+        mPlayer.onBufferingUpdate(mEngine, mPercent);
+        return mPercent;
+    }
+
+    @Benchmark
+    public void onSeekComplete() {
+        mPlayer.onSeekComplete(mEngine);
+    }
+
+    @Benchmark
+    public boolean onInfoForeignEngine() {
+        return mPlayer.onInfo(mForeignEngine, 701, 0);
+    }
+
+    /**
+     * Forwards every event to a fixed number of consumers.
+     */
+    private static final class FanOut implements Player.PlayerInfoListener,
+            Player.PlayerBufferingUpdateListener,
+            Player.PlayerSeekCompletionListener {
+        private final Blackhole[] mConsumers;
+
+        FanOut(int count, Blackhole blackhole) {
+            mConsumers = new Blackhole[count];
+            for (int i = 0; i < count; i++) {
+                mConsumers[i] = blackhole;
+            }
+        }
+
+        @Override
+        public boolean onInfo(int what, int extra) {
+            for (Blackhole consumer : mConsumers) {
+                consumer.consume(what);
+            }
+            return true;
+        }
+
+        @Override
+        public void onBufferingUpdate(int percent) {
+            for (Blackhole consumer : mConsumers) {
+                consumer.consume(percent);
+            }
+        }
+
+        @Override
+        public void onSeekCompleted() {
+            for (Blackhole consumer : mConsumers) {
+                consumer.consume(true);
+            }
+        }
+    }
+}
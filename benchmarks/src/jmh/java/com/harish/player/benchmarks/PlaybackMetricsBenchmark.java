@@ -0,0 +1,59 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.PlaybackMetrics;
+import com.harish.player.wrapper.Player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of recording {@link PlaybackMetrics} on the transition and info paths of {@link Player}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PlaybackMetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean recording;
+
+    private Player mPlayer;
+    private PlaybackMetrics mMetrics;
+    private PlaybackMetrics.Snapshot mSnapshot;
+
+    @Setup
+    public void setUp() throws Exception {
+        mPlayer = StateTransitionBenchmark.Players.started();
+        mMetrics = new PlaybackMetrics();
+        mSnapshot = new PlaybackMetrics.Snapshot();
+        if (recording) {
+            mPlayer.setPlaybackMetrics(mMetrics);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPlayer.release();
+    }
+
+    @Benchmark
+    public int pauseStart() {
+        mPlayer.pause();
+        mPlayer.start();
+        return mPlayer.getCurrentState();
+    }
+
+    @Benchmark
+    public long snapshot() {
+        return mMetrics.snapshot(mSnapshot).timestampNanos;
+    }
+}
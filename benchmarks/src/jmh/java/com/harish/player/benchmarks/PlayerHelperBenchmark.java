@@ -0,0 +1,57 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.FakePlaybackEngine;
+import com.harish.player.wrapper.Player;
+import com.harish.player.wrapper.PlayerHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link PlayerHelper} queries over players spread across the lifecycle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class PlayerHelperBenchmark {
+    private Player[] mPlayers;
+
+    @Setup
+    public void setUp() throws Exception {
+        Player idle = new Player(new FakePlaybackEngine());
+        Player initialized = new Player(new FakePlaybackEngine());
+        initialized.setDataSource(StateTransitionBenchmark.Players.SOURCE);
+        Player prepared = new Player(new FakePlaybackEngine());
+        prepared.setDataSource(StateTransitionBenchmark.Players.SOURCE);
+        prepared.prepareAsync();
+        Player started = StateTransitionBenchmark.Players.started();
+        Player ended = new Player(new FakePlaybackEngine());
+        ended.release();
+        mPlayers = new Player[]{idle, initialized, prepared, started, ended, null};
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void isReady(Blackhole blackhole) {
+        for (Player player : mPlayers) {
+            blackhole.consume(PlayerHelper.isReady(player));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void isInitialized(Blackhole blackhole) {
+        for (Player player : mPlayers) {
+            blackhole.consume(PlayerHelper.isInitialized(player));
+        }
+    }
+}
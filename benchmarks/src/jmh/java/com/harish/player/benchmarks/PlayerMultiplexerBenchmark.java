@@ -0,0 +1,131 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.FakePlaybackEngine;
+import com.harish.player.wrapper.PlaybackEngine;
+import com.harish.player.wrapper.PlayerMultiplexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scheduling a scroll event of a grid on {@link PlayerMultiplexer}, simulated on the JVM with
+ * instantly preparing engines. A viewport of 4 rows of 3 tiles scrolls down the feed by a third of a row
+ * per event and jumps back to the top at the end. Each event updates the tiles of the rows it moved.
+ * <p>
+ * Runs with 1,000 and 10,000 tiles: the scheduling is O(log n), both should cost about the same.
+ * {@link #main(String[])} runs a single pass over 1,000 tiles and prints the transitions made.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PlayerMultiplexerBenchmark {
+
+    private static final int COLUMNS = 3;
+    private static final int TILE_HEIGHT = 300;
+    private static final int VIEWPORT_HEIGHT = 4 * TILE_HEIGHT;
+    private static final int SCROLL_STEP = TILE_HEIGHT / 3;
+
+    @Param({"1000", "10000"})
+    public int tiles;
+
+    private PlayerMultiplexer mMultiplexer;
+    private int mOffset;
+
+    //Tiles updated by one event, preallocated.
+    private int[] mPositions;
+    private float[] mVisibilities;
+
+    @Setup
+    public void setUp() {
+        mMultiplexer = newMultiplexer(tiles);
+        int maxUpdated = (VIEWPORT_HEIGHT / TILE_HEIGHT + 3) * COLUMNS * 2;
+        mPositions = new int[maxUpdated];
+        mVisibilities = new float[maxUpdated];
+        mOffset = 0;
+        scrollTo(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mMultiplexer.release();
+    }
+
+    @Benchmark
+    public long scroll() {
+        int rows = (tiles + COLUMNS - 1) / COLUMNS;
+        int next = mOffset + SCROLL_STEP;
+        if (next + VIEWPORT_HEIGHT > rows * TILE_HEIGHT) {
+            next = 0;
+        }
+        scrollTo(next);
+        return mMultiplexer.getScheduleCount();
+    }
+
+    //Updates the tiles of the rows visible before or after the scroll.
+    private void scrollTo(int offset) {
+        int rows = (tiles + COLUMNS - 1) / COLUMNS;
+        int count = 0;
+        count = collect(mOffset, offset, rows, count);
+        if (offset != mOffset) {
+            count = collect(offset, offset, rows, count);
+        }
+        mOffset = offset;
+        mMultiplexer.setVisibility(mPositions, mVisibilities, count);
+    }
+
+    //Adds the tiles of the rows overlapping [from, from + viewport), with their visibility at offset.
+    private int collect(int from, int offset, int rows, int count) {
+        int first = from / TILE_HEIGHT;
+        int last = Math.min(rows - 1, (from + VIEWPORT_HEIGHT - 1) / TILE_HEIGHT);
+        for (int row = first; row <= last; row++) {
+            int top = row * TILE_HEIGHT;
+            int visible = Math.min(top + TILE_HEIGHT, offset + VIEWPORT_HEIGHT) - Math.max(top, offset);
+            float visibility = Math.max(0, visible) / (float) TILE_HEIGHT;
+            for (int column = 0; column < COLUMNS && row * COLUMNS + column < tiles; column++) {
+                mPositions[count] = row * COLUMNS + column;
+                mVisibilities[count] = visibility;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static PlayerMultiplexer newMultiplexer(int tiles) {
+        PlayerMultiplexer multiplexer = new PlayerMultiplexer(COLUMNS, 2 * COLUMNS, new PlaybackEngine.Factory() {
+            @Override
+            public PlaybackEngine create() {
+                return new FakePlaybackEngine();
+            }
+        });
+        for (int i = 0; i < tiles; i++) {
+            multiplexer.setTile(i, "file:///sdcard/tile" + i + ".mp4");
+        }
+        return multiplexer;
+    }
+
+    public static void main(String[] args) {
+        PlayerMultiplexerBenchmark benchmark = new PlayerMultiplexerBenchmark();
+        benchmark.tiles = 1_000;
+        benchmark.setUp();
+        int events = ((benchmark.tiles / COLUMNS) * TILE_HEIGHT - VIEWPORT_HEIGHT) / SCROLL_STEP;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            benchmark.scroll();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        PlayerMultiplexer multiplexer = benchmark.mMultiplexer;
+        System.out.println("events=" + events + " nanosPerEvent=" + elapsedNanos / events
+                + " starts=" + multiplexer.getStartCount() + " pauses=" + multiplexer.getPauseCount()
+                + " loads=" + multiplexer.getLoadCount() + " unloads=" + multiplexer.getUnloadCount());
+        benchmark.tearDown();
+    }
+}
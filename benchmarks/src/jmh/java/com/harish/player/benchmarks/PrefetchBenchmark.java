@@ -0,0 +1,120 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.PrefetchingSource;
+import com.harish.player.wrapper.RandomAccessSource;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reader stall time with and without {@link PrefetchingSource}, reading a resource from a slow upstream
+ * in small sequential reads with some decoding work in between, as the native extractor does.
+ * The stall time of the reader is reported as an auxiliary counter.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PrefetchBenchmark {
+    private static final int MEDIA_SIZE = 2 * 1024 * 1024;
+    private static final int READ_SIZE = 8 * 1024;
+
+    @State(Scope.Thread)
+    public static class Reader {
+        @Param({"false", "true"})
+        public boolean prefetch;
+
+        @Param({"65536"})
+        public int chunkSize;
+
+        @Param({"4"})
+        public int chunkCount;
+
+        RandomAccessSource source;
+        final byte[] buffer = new byte[READ_SIZE];
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            SlowSource upstream = new SlowSource(MEDIA_SIZE, 200);
+            source = prefetch ? new PrefetchingSource(upstream, chunkSize, chunkCount) : upstream;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Stalls {
+        public long stallMs;
+    }
+
+    @Benchmark
+    public long sequentialRead(Reader reader, Stalls stalls) throws IOException {
+        long position = 0;
+        long stallNanos = 0;
+        int count;
+        while (true) {
+            long start = System.nanoTime();
+            count = reader.source.readAt(position, reader.buffer, 0, reader.buffer.length);
+            stallNanos += System.nanoTime() - start;
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+            //Decoding the read bytes.
+            Blackhole.consumeCPU(20_000);
+        }
+        reader.source.close();
+        stalls.stallMs += TimeUnit.NANOSECONDS.toMillis(stallNanos);
+        return position;
+    }
+
+    /**
+     * In-memory resource with a fixed latency per read plus a transfer time per byte.
+     */
+    static final class SlowSource implements RandomAccessSource {
+        private final int mSize;
+        private final long mLatencyMicros;
+
+        SlowSource(int size, long latencyMicros) {
+            mSize = size;
+            mLatencyMicros = latencyMicros;
+        }
+
+        @Override
+        public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+            if (position >= mSize) {
+                return -1;
+            }
+            int count = (int) Math.min(size, mSize - position);
+            //Roughly 50MB/s after the latency.
+            long micros = mLatencyMicros + count / 50;
+            try {
+                TimeUnit.MICROSECONDS.sleep(micros);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) (position + i);
+            }
+            return count;
+        }
+
+        @Override
+        public long getSize() {
+            return mSize;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
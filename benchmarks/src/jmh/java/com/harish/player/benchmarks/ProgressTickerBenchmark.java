@@ -0,0 +1,86 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.PlaybackMetrics;
+import com.harish.player.wrapper.Player;
+import com.harish.player.wrapper.PlayerEventBus;
+import com.harish.player.wrapper.ProgressTicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one tick of {@link ProgressTicker} sampling every playing player, with a direct subscriber
+ * on each. Run with "-prof gc" to confirm that a tick does not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ProgressTickerBenchmark {
+
+    @Param({"1", "16", "128"})
+    public int players;
+
+    private Player[] mPlayers;
+    private ProgressTicker mTicker;
+    private Runnable mScheduled;
+    private long mNowNanos;
+    private long mLastPositionMs;
+
+    @Setup
+    public void setUp() throws Exception {
+        PlayerEventBus.Scheduler scheduler = new PlayerEventBus.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                mScheduled = task;
+            }
+        };
+        PlaybackMetrics.Clock clock = new PlaybackMetrics.Clock() {
+            @Override
+            public long nanoTime() {
+                return mNowNanos;
+            }
+        };
+        mTicker = new ProgressTicker(scheduler, clock, ProgressTicker.DEFAULT_MIN_INTERVAL_MS,
+                ProgressTicker.DEFAULT_MAX_INTERVAL_MS);
+        PlayerEventBus.PlayerEventListener listener = new PlayerEventBus.PlayerEventListener() {
+            @Override
+            public void onPlayerEvent(int event, long arg1, long arg2) {
+                if (event == PlayerEventBus.EVENT_POSITION) {
+                    mLastPositionMs = arg1;
+                }
+            }
+        };
+        mPlayers = new Player[players];
+        for (int i = 0; i < players; i++) {
+            mPlayers[i] = StateTransitionBenchmark.Players.started();
+            mPlayers[i].getEventBus().subscribe(listener);
+            mTicker.add(mPlayers[i], 1080);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Player player : mPlayers) {
+            player.release();
+        }
+    }
+
+    @Benchmark
+    public long tick() {
+        //Every player is due again.
+        mNowNanos += TimeUnit.MILLISECONDS.toNanos(ProgressTicker.DEFAULT_MAX_INTERVAL_MS);
+        Runnable task = mScheduled;
+        mScheduled = null;
+        task.run();
+        return mLastPositionMs;
+    }
+}
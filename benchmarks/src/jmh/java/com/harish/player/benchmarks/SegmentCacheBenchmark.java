@@ -0,0 +1,89 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.CachedSource;
+import com.harish.player.wrapper.HttpSource;
+import com.harish.player.wrapper.LocalHttpServer;
+import com.harish.player.wrapper.RandomAccessSource;
+import com.harish.player.wrapper.SegmentCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to replay a whole resource the way the native extractor reads it, in small sequential reads,
+ * straight from the {@link LocalHttpServer} versus through a warm {@link SegmentCache}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SegmentCacheBenchmark {
+    private static final int MEDIA_SIZE = 4 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int READ_SIZE = 16 * 1024;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private LocalHttpServer mServer;
+    private File mDirectory;
+    private SegmentCache mCache;
+    private byte[] mBuffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] payload = new byte[MEDIA_SIZE];
+        new Random(42).nextBytes(payload);
+        mServer = new LocalHttpServer(payload, 2);
+        mDirectory = Files.createTempDirectory("segment-cache").toFile();
+        mCache = new SegmentCache(mDirectory, BLOCK_SIZE, 2L * MEDIA_SIZE);
+        mBuffer = new byte[READ_SIZE];
+        if (cached) {
+            //First play, fills the cache.
+            replay(open());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        mCache.close();
+        mServer.close();
+        for (File file : mDirectory.listFiles()) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public long replay() throws Exception {
+        return replay(open());
+    }
+
+    private RandomAccessSource open() throws Exception {
+        HttpSource upstream = new HttpSource(mServer.url(), null);
+        return cached ? new CachedSource(mCache, mServer.url(), upstream) : upstream;
+    }
+
+    private long replay(RandomAccessSource source) throws Exception {
+        long position = 0;
+        int count;
+        while ((count = source.readAt(position, mBuffer, 0, mBuffer.length)) > 0) {
+            position += count;
+        }
+        source.close();
+        return position;
+    }
+}
@@ -0,0 +1,82 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.PlaybackMetrics;
+import com.harish.player.wrapper.Player;
+import com.harish.player.wrapper.PlayerEventBus;
+import com.harish.player.wrapper.StallWatchdog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link StallWatchdog} on the control path: toggling between {@link Player#STATE_STARTED}
+ * and {@link Player#STATE_PAUSED} arms and cancels a progress deadline, while hundreds of other players
+ * keep deadlines armed in the same wheel. Compare with {@code unwatched}, the same toggle without watchdog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class StallWatchdogBenchmark {
+
+    @Param({"0", "500"})
+    public int others;
+
+    private StallWatchdog mWatchdog;
+    private Player[] mPlayers;
+    private Player mPlayer;
+    private Player mUnwatched;
+
+    @Setup
+    public void setUp() throws Exception {
+        //Ticks are never run, only the cost of arming and cancelling is measured.
+        PlayerEventBus.Scheduler scheduler = new PlayerEventBus.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+            }
+        };
+        mWatchdog = new StallWatchdog(scheduler, PlaybackMetrics.Clock.SYSTEM,
+                StallWatchdog.DEFAULT_PREPARE_TIMEOUT_MS, StallWatchdog.DEFAULT_SEEK_TIMEOUT_MS,
+                StallWatchdog.DEFAULT_PROGRESS_TIMEOUT_MS, StallWatchdog.DEFAULT_BUFFERING_TIMEOUT_MS,
+                StallWatchdog.DEFAULT_TICK_MS);
+        mPlayers = new Player[others];
+        for (int i = 0; i < others; i++) {
+            mPlayers[i] = StateTransitionBenchmark.Players.started();
+            mWatchdog.add(mPlayers[i]);
+        }
+        mPlayer = StateTransitionBenchmark.Players.started();
+        mWatchdog.add(mPlayer);
+        mUnwatched = StateTransitionBenchmark.Players.started();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Player player : mPlayers) {
+            player.release();
+        }
+        mPlayer.release();
+        mUnwatched.release();
+    }
+
+    @Benchmark
+    public int watched() {
+        mPlayer.pause();
+        mPlayer.start();
+        return mPlayer.getCurrentState();
+    }
+
+    @Benchmark
+    public int unwatched() {
+        mUnwatched.pause();
+        mUnwatched.start();
+        return mUnwatched.getCurrentState();
+    }
+}
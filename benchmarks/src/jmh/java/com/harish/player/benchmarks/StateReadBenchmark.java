@@ -0,0 +1,60 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.Player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Player#getCurrentState()} polled from many threads, as UI and analytics
+ * code does, both on a quiet player and while another thread keeps changing its state.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Group)
+public class StateReadBenchmark {
+    private Player mPlayer;
+
+    @Setup
+    public void setUp() throws Exception {
+        mPlayer = StateTransitionBenchmark.Players.started();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPlayer.release();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int readOnly() {
+        return mPlayer.getCurrentState();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(7)
+    public int reader() {
+        return mPlayer.getCurrentState();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public int writer() {
+        mPlayer.pause();
+        mPlayer.start();
+        return mPlayer.getCurrentState();
+    }
+}
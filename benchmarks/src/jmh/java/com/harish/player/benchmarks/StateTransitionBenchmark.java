@@ -0,0 +1,123 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.FakePlaybackEngine;
+import com.harish.player.wrapper.Player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the control calls of {@link Player}, with and without other threads competing for the
+ * same player. Both runs toggle between {@link Player#STATE_STARTED} and {@link Player#STATE_PAUSED}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StateTransitionBenchmark {
+
+    @State(Scope.Thread)
+    public static class ThreadPlayer {
+        Player player;
+
+        @Setup
+        public void setUp() throws Exception {
+            player = Players.started();
+        }
+
+        @TearDown
+        public void tearDown() {
+            player.release();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedPlayer {
+        Player player;
+
+        @Setup
+        public void setUp() throws Exception {
+            player = Players.started();
+        }
+
+        @TearDown
+        public void tearDown() {
+            player.release();
+        }
+    }
+
+    @Benchmark
+    public int uncontended(ThreadPlayer state) {
+        state.player.pause();
+        state.player.start();
+        return state.player.getCurrentState();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int contended(SharedPlayer state) {
+        state.player.pause();
+        state.player.start();
+        return state.player.getCurrentState();
+    }
+
+    @Benchmark
+    public int prepareCycle(ThreadPlayer state) throws Exception {
+        Player player = state.player;
+        player.reset();
+        player.setDataSource(Players.SOURCE);
+        player.prepareAsync();
+        player.start();
+        return player.getCurrentState();
+    }
+
+    @Benchmark
+    public int rejectedStart(IdlePlayer state) {
+        try {
+            state.player.start();
+        } catch (IllegalStateException e) {
+            //Expected, start() is illegal in STATE_IDLE.
+        }
+        return state.player.getCurrentState();
+    }
+
+    @State(Scope.Thread)
+    public static class IdlePlayer {
+        Player player;
+
+        @Setup
+        public void setUp() {
+            player = new Player(new FakePlaybackEngine());
+        }
+
+        @TearDown
+        public void tearDown() {
+            player.release();
+        }
+    }
+
+    static final class Players {
+        static final String SOURCE = "file:///sdcard/benchmark.mp4";
+
+        private Players() {
+        }
+
+        /**
+         * @return a player in {@link Player#STATE_STARTED}, backed by an instantly preparing fake engine.
+         */
+        static Player started() throws Exception {
+            Player player = new Player(new FakePlaybackEngine());
+            player.setDataSource(SOURCE);
+            player.prepareAsync();
+            player.start();
+            return player;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.harish.player.benchmarks;
+
+import com.harish.player.wrapper.FakePlaybackEngine;
+import com.harish.player.wrapper.Player;
+import com.harish.player.wrapper.TraceRecorder;
+import com.harish.player.wrapper.TraceReplayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of recording a trace on the control path of {@link Player}, alone and with threads
+ * competing for the ring, and throughput of the state machine replaying a recorded trace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraceBenchmark {
+
+    //Playback cycles of the replayed trace.
+    private static final int CYCLES = 1_000;
+
+    @State(Scope.Thread)
+    public static class RecordedPlayer {
+        Player player;
+
+        @Setup
+        public void setUp(SharedRecorder shared) throws Exception {
+            player = StateTransitionBenchmark.Players.started();
+            player.setTraceRecorder(shared.recorder);
+        }
+
+        @TearDown
+        public void tearDown() {
+            player.release();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedRecorder {
+        TraceRecorder recorder = new TraceRecorder(64 * 1024);
+    }
+
+    @State(Scope.Benchmark)
+    public static class RecordedTrace {
+        TraceReplayer replayer;
+
+        @Setup
+        public void setUp() throws Exception {
+            TraceRecorder recorder = new TraceRecorder(CYCLES * 16);
+            FakePlaybackEngine engine = new FakePlaybackEngine(10, 5, 1_000);
+            Player player = new Player(engine);
+            player.setTraceRecorder(recorder);
+            for (int i = 0; i < CYCLES; i++) {
+                player.setDataSource(StateTransitionBenchmark.Players.SOURCE);
+                player.prepareAsync();
+                engine.advanceBy(10);
+                player.start();
+                player.seekTo(500);
+                engine.advanceBy(5);
+                player.pause();
+                player.start();
+                engine.advanceBy(1_000);
+                player.reset();
+            }
+            player.release();
+            //Through the binary format, as a trace pulled from a device.
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            recorder.dump(out);
+            replayer = new TraceReplayer(TraceRecorder.read(new ByteArrayInputStream(out.toByteArray())));
+        }
+    }
+
+    @Benchmark
+    public int pauseStartRecorded(RecordedPlayer state) {
+        state.player.pause();
+        state.player.start();
+        return state.player.getCurrentState();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int pauseStartRecordedContended(RecordedPlayer state) {
+        state.player.pause();
+        state.player.start();
+        return state.player.getCurrentState();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int replay(RecordedTrace state) {
+        return state.replayer.replay().replayed;
+    }
+}